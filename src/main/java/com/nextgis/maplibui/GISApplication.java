@@ -39,12 +39,15 @@ import android.graphics.BitmapFactory;
 import android.location.Location;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.hypertrack.hyperlog.HyperLog;
 import com.nextgis.maplib.api.IGISApplication;
+import com.nextgis.maplib.api.ILayer;
 import com.nextgis.maplib.location.GpsEventSource;
 import com.nextgis.maplib.map.LayerFactory;
 import com.nextgis.maplib.map.MLP.AuthInterceptorNG;
@@ -58,13 +61,18 @@ import com.nextgis.maplibui.mapui.SyncAccountWorker;
 import com.nextgis.maplibui.util.ConstantsUI;
 import com.nextgis.maplibui.util.ControlHelper;
 import com.nextgis.maplibui.util.HyperLogCrashHandler;
+import com.nextgis.maplibui.util.LayerManifest;
 import com.nextgis.maplibui.util.SettingsConstantsUI;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static com.nextgis.maplib.util.AccountUtil.getSyncPeriodForAccount;
@@ -117,10 +125,17 @@ public abstract class GISApplication extends Application
     private Handler handler = new Handler();
 
     private Runnable offlineRunnable = null;
-    protected MapDrawable mMap;
+    protected volatile MapDrawable mMap;
     protected GpsEventSource mGpsEventSource;
     protected SharedPreferences mSharedPreferences;
     protected AccountManager mAccountManager;
+    protected static final ExecutorService mMapLoadExecutor = Executors.newSingleThreadExecutor();
+    protected volatile CountDownLatch mMapLoading;
+    protected volatile Thread mMapLoadThread;
+    protected volatile MapDrawable mLoadingMap;
+    protected List<LayerManifest.Entry> mLayerManifest = Collections.emptyList();
+    protected final List<OnMapLoadListener> mMapLoadListeners = new ArrayList<>();
+    protected final List<OnLayerLoadListener> mLayerLoadListeners = new ArrayList<>();
     boolean isTrackInProgress  = false;
 
 
@@ -134,6 +149,16 @@ public abstract class GISApplication extends Application
 
     static final AuthInterceptorNG interceptorNG = new AuthInterceptorNG();
 
+    public interface OnMapLoadListener
+    {
+        void onMapLoaded(MapBase map);
+    }
+
+    public interface OnLayerLoadListener
+    {
+        void onLayerLoaded(ILayer layer);
+    }
+
     public boolean getIsTrackInProgress(){
         return isTrackInProgress;
     }
@@ -158,49 +183,7 @@ public abstract class GISApplication extends Application
         mGpsEventSource = new GpsEventSource(this);
         mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
 
-        try {
-            getMap();
-        } catch (Exception ex){
-            // check for sd card removed
-            SharedPreferences mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-            File defaultPath = getExternalFilesDir(SettingsConstants.KEY_PREF_MAP);
-            if (defaultPath == null) {
-                defaultPath = new File(getFilesDir(), SettingsConstants.KEY_PREF_MAP);
-            }
-            String mapPath = mSharedPreferences.getString(SettingsConstants.KEY_PREF_MAP_PATH, defaultPath.getPath());
-
-            int warning = R.string.map_load_exception_warning;
-            if (! mapPath.contains(defaultPath.getAbsolutePath())) {
-                //exeption and not default path - seems sdcard removed or changed  check it
-
-                File[] files = ContextCompat.getExternalFilesDirs(this, null);
-                boolean defaultPathExists = false;
-
-                for (File file : files){
-                    if (file != null) {
-                        String path = file.getAbsolutePath();
-                        if (mapPath.contains(path))
-                            defaultPathExists = true;
-                    }
-                }
-
-
-                if (!defaultPathExists)
-                    warning = R.string.map_load_exception_warning;
-            }
-
-            final String finalWarning = getResources().getString(warning);
-            new Handler().postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    Intent msg = new Intent(MESSAGE_ALERT_INTENT);
-                    msg.putExtra(MESSAGE_EXTRA, finalWarning);
-                    msg.putExtra(MESSAGE_TITLE_EXTRA, getResources().getString(R.string.map_load_exception_title));
-                    msg.setPackage(getPackageName());
-                    sendBroadcast(msg);
-                }
-            },1000);
-        }
+        loadMapAsync();
 
         boolean mIsDarkTheme = ControlHelper.isDarkTheme(this);
         setTheme(getThemeId(mIsDarkTheme));
@@ -257,6 +240,20 @@ public abstract class GISApplication extends Application
     }
 
     public void resetMap(){
+        if (null != mMapLoading && isMainThread()) {
+            // reset once the startup load is over, the main thread does not wait for it
+            addMapLoadListener(new OnMapLoadListener()
+            {
+                @Override
+                public void onMapLoaded(MapBase map)
+                {
+                    resetMap();
+                }
+            });
+            return;
+        }
+
+        waitForMapLoad();
         if (null != mMap) {
             mMap = null;
             getMap();
@@ -267,15 +264,55 @@ public abstract class GISApplication extends Application
         mMap = null;
     }
 
+    /**
+     * While the map is loaded the main thread gets the loading map at once: its layers are added
+     * one by one and reported to the map listeners, so the view and the layer list fill in as they
+     * come. Other threads wait for the load to finish.
+     */
     @Override
     public MapBase getMap()
     {
         Log.d("MMAAPP", "getMap" );
+        MapDrawable loadingMap = mLoadingMap;
+        if (null != loadingMap && (Thread.currentThread() == mMapLoadThread || isMainThread())) {
+            return loadingMap;
+        }
+
+        waitForMapLoad();
         if (null != mMap) {
             Log.d("MMAAPP", "getMap null != mMap" );
             return mMap;
         }
 
+        if (isMainThread()) {
+            // the map was reset or failed to load, it is loaded in the background again
+            loadMapAsync();
+            if (null != mLoadingMap) {
+                return mLoadingMap;
+            }
+        }
+
+        mMap = createMap();
+        Log.d("WWALK", "getMap mMap created");
+        mMap.load();
+
+        checkTracksLayerExist();
+
+        final MapDrawable map = mMap;
+        handler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                notifyMapLoaded(map);
+            }
+        });
+
+        return map;
+    }
+
+    protected MapDrawable createMap()
+    {
         mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
         File defaultPath = getExternalFilesDir(KEY_PREF_MAP);
         if (defaultPath == null) {
@@ -283,19 +320,277 @@ public abstract class GISApplication extends Application
         }
 
         String mapPath = mSharedPreferences.getString(SettingsConstants.KEY_PREF_MAP_PATH, defaultPath.getPath());
-        String mapName = mSharedPreferences.getString(SettingsConstantsUI.KEY_PREF_MAP_NAME, "default");
+        String mapName = getMapName();
 
         File mapFullPath = new File(mapPath, mapName + MAP_EXT);
 
         final Bitmap bkBitmap = getMapBackground();
-        mMap = new MapDrawable(bkBitmap, this, mapFullPath, getLayerFactory());
-        Log.d("WWALK", "getMap mMap created");
-        mMap.setName(mapName);
-        mMap.load();
+        MapDrawable map = new MapDrawable(bkBitmap, this, mapFullPath, getLayerFactory());
+        map.setName(mapName);
+        return map;
+    }
 
-        checkTracksLayerExist();
+    protected String getMapName()
+    {
+        return mSharedPreferences.getString(SettingsConstantsUI.KEY_PREF_MAP_NAME, "default");
+    }
+
+    /**
+     * Create the map and load its layers on a background thread, so the application and the first
+     * activity are created meanwhile. The layer list of the previous start is available at once
+     * from {@link #getLayerManifest()}, vector layers are reported to {@link OnLayerLoadListener}
+     * as their cache is loaded and {@link OnMapLoadListener} is called when all layers are loaded.
+     */
+    protected void loadMapAsync()
+    {
+        long start = SystemClock.elapsedRealtime();
+        final File manifest = LayerManifest.getFile(this, getMapName());
+        mLayerManifest = LayerManifest.read(manifest);
+        long manifestTime = SystemClock.elapsedRealtime();
+
+        final MapDrawable map;
+        try {
+            map = createMap();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to create the map", e);
+            showMapLoadWarning();
+            return;
+        }
+        final long createTime = SystemClock.elapsedRealtime();
+        Log.d(TAG, "Map startup: manifest " + (manifestTime - start) + " ms, "
+                + mLayerManifest.size() + " layers; create " + (createTime - manifestTime) + " ms");
+
+        final CountDownLatch loading = new CountDownLatch(1);
+        mLoadingMap = map;
+        mMapLoading = loading;
+        mMapLoadExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mMapLoadThread = Thread.currentThread();
+                boolean loaded = false;
+                try {
+                    map.load();
+                    checkTracksLayerExist();
+                    loaded = true;
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to load the map", e);
+                } finally {
+                    // a failed map is created and loaded again by the next getMap()
+                    if (loaded) {
+                        mMap = map;
+                    }
+                    mMapLoadThread = null;
+                    mLoadingMap = null;
+                    mMapLoading = null;
+                    loading.countDown();
+                }
+
+                Log.d(TAG, "Map startup: load " + (SystemClock.elapsedRealtime() - createTime)
+                        + " ms, " + map.getLayerCount() + " layers");
+                if (loaded) {
+                    LayerManifest.write(manifest, map);
+                }
+
+                final boolean success = loaded;
+                handler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (success) {
+                            notifyMapLoaded(map);
+                        } else {
+                            showMapLoadWarning();
+                        }
+                    }
+                });
+            }
+        });
+    }
 
-        return mMap;
+    /**
+     * The current map like MapBase.getInstance(), but never half loaded. Background threads wait
+     * while the map is loaded at startup, the main thread gets null then and should use
+     * {@link #runWhenMapLoaded(OnMapLoadListener)} instead. May return null if no map was created.
+     */
+    public static MapBase getLoadedMap()
+    {
+        IGISApplication application = instance;
+        if (application instanceof GISApplication) {
+            GISApplication app = (GISApplication) application;
+            if (isMainThread() && !app.isMapLoaded()) {
+                return null;
+            }
+            app.waitForMapLoad();
+        }
+        return MapBase.getInstance();
+    }
+
+    /**
+     * Run the listener on the main thread with the loaded map, at once if the map is loaded
+     * already. Must be called on the main thread.
+     */
+    public static void runWhenMapLoaded(OnMapLoadListener listener)
+    {
+        IGISApplication application = instance;
+        if (application instanceof GISApplication) {
+            ((GISApplication) application).addMapLoadListener(listener);
+        } else {
+            listener.onMapLoaded(MapBase.getInstance());
+        }
+    }
+
+    /**
+     * Called by vector layers when their load is over, the listeners are told on the main thread
+     */
+    public static void onLayerLoaded(final ILayer layer)
+    {
+        IGISApplication application = instance;
+        if (!(application instanceof GISApplication)) {
+            return;
+        }
+
+        final GISApplication app = (GISApplication) application;
+        app.handler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (OnLayerLoadListener listener : new ArrayList<>(app.mLayerLoadListeners)) {
+                    listener.onLayerLoaded(layer);
+                }
+            }
+        });
+    }
+
+    protected static boolean isMainThread()
+    {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * Wait for the startup map load, for background threads only: the main thread returns at once
+     */
+    protected void waitForMapLoad()
+    {
+        CountDownLatch loading = mMapLoading;
+        if (null == loading || Thread.currentThread() == mMapLoadThread) {
+            return;
+        }
+        if (isMainThread()) {
+            Log.w(TAG, "Map startup: the main thread should not wait for the map load");
+            return;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        try {
+            loading.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Log.d(TAG, "Map startup: waited " + (SystemClock.elapsedRealtime() - start) + " ms for the map load");
+    }
+
+    public boolean isMapLoaded()
+    {
+        return null != mMap && null == mMapLoading;
+    }
+
+    /**
+     * @return layers of the map as they were on the previous start, to show before the map is loaded
+     */
+    public List<LayerManifest.Entry> getLayerManifest()
+    {
+        return mLayerManifest;
+    }
+
+    /**
+     * The listener is called on the main thread once the map layers are loaded, or at once if the
+     * map is loaded already
+     */
+    public void addMapLoadListener(OnMapLoadListener listener)
+    {
+        if (isMapLoaded()) {
+            listener.onMapLoaded(mMap);
+            return;
+        }
+        if (!mMapLoadListeners.contains(listener)) {
+            mMapLoadListeners.add(listener);
+        }
+    }
+
+    public void removeMapLoadListener(OnMapLoadListener listener)
+    {
+        mMapLoadListeners.remove(listener);
+    }
+
+    protected void notifyMapLoaded(MapBase map)
+    {
+        List<OnMapLoadListener> listeners = new ArrayList<>(mMapLoadListeners);
+        mMapLoadListeners.clear();
+        for (OnMapLoadListener listener : listeners) {
+            listener.onMapLoaded(map);
+        }
+    }
+
+    /**
+     * The listener is called on the main thread each time a vector layer is loaded, until removed
+     */
+    public void addLayerLoadListener(OnLayerLoadListener listener)
+    {
+        if (!mLayerLoadListeners.contains(listener)) {
+            mLayerLoadListeners.add(listener);
+        }
+    }
+
+    public void removeLayerLoadListener(OnLayerLoadListener listener)
+    {
+        mLayerLoadListeners.remove(listener);
+    }
+
+    protected void showMapLoadWarning()
+    {
+        // check for sd card removed
+        SharedPreferences mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        File defaultPath = getExternalFilesDir(SettingsConstants.KEY_PREF_MAP);
+        if (defaultPath == null) {
+            defaultPath = new File(getFilesDir(), SettingsConstants.KEY_PREF_MAP);
+        }
+        String mapPath = mSharedPreferences.getString(SettingsConstants.KEY_PREF_MAP_PATH, defaultPath.getPath());
+
+        int warning = R.string.map_load_exception_warning;
+        if (! mapPath.contains(defaultPath.getAbsolutePath())) {
+            //exeption and not default path - seems sdcard removed or changed  check it
+
+            File[] files = ContextCompat.getExternalFilesDirs(this, null);
+            boolean defaultPathExists = false;
+
+            for (File file : files){
+                if (file != null) {
+                    String path = file.getAbsolutePath();
+                    if (mapPath.contains(path))
+                        defaultPathExists = true;
+                }
+            }
+
+
+            if (!defaultPathExists)
+                warning = R.string.map_load_exception_warning;
+        }
+
+        final String finalWarning = getResources().getString(warning);
+        new Handler().postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                Intent msg = new Intent(MESSAGE_ALERT_INTENT);
+                msg.putExtra(MESSAGE_EXTRA, finalWarning);
+                msg.putExtra(MESSAGE_TITLE_EXTRA, getResources().getString(R.string.map_load_exception_title));
+                msg.setPackage(getPackageName());
+                sendBroadcast(msg);
+            }
+        },1000);
     }
 
     public Bitmap getMapBackground() {
@@ -22,7 +22,9 @@
 package com.nextgis.maplibui.activity;
 
 import android.app.Activity;
+import android.app.DatePickerDialog;
 import android.app.SearchManager;
+import android.app.TimePickerDialog;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.DialogInterface;
@@ -36,6 +38,7 @@ import android.os.Handler;
 import android.preference.PreferenceManager;
 
 import com.evrencoskun.tableview.TableView;
+import com.evrencoskun.tableview.sort.SortState;
 import com.google.android.material.snackbar.Snackbar;
 
 import androidx.appcompat.app.AlertDialog;
@@ -43,16 +46,21 @@ import androidx.appcompat.widget.AppCompatTextView;
 import androidx.appcompat.widget.SearchView;
 import androidx.core.content.ContextCompat;
 import androidx.appcompat.widget.Toolbar;
+import androidx.recyclerview.widget.RecyclerView;
 
+import android.text.InputType;
 import android.text.TextUtils;
 import android.util.Log;
-import android.view.Gravity;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.DatePicker;
+import android.widget.EditText;
+import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
+import android.widget.TimePicker;
 import android.widget.Toast;
 
 import com.inqbarna.tablefixheaders.TableFixHeaders;
@@ -60,7 +68,6 @@ import com.inqbarna.tablefixheaders.adapters.BaseTableAdapter;
 import com.nextgis.maplib.api.IGISApplication;
 import com.nextgis.maplib.api.ILayer;
 import com.nextgis.maplib.datasource.Feature;
-import com.nextgis.maplib.datasource.Field;
 import com.nextgis.maplib.datasource.GeoPoint;
 import com.nextgis.maplib.map.MapBase;
 import com.nextgis.maplib.map.MapDrawable;
@@ -70,6 +77,8 @@ import com.nextgis.maplib.util.Constants;
 import com.nextgis.maplib.util.GeoConstants;
 import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
+import com.nextgis.maplibui.adapter.attributes.AttributeSearchIndex;
+import com.nextgis.maplibui.adapter.attributes.AttributeTableModel;
 import com.nextgis.maplibui.adapter.attributes.Cell;
 import com.nextgis.maplibui.api.IVectorLayerUI;
 import com.nextgis.maplibui.fragment.BottomToolbar;
@@ -77,20 +86,23 @@ import com.nextgis.maplibui.util.ConstantsUI;
 //import com.nextgis.maplibui.util.MatrixTableAdapter;
 import com.nextgis.maplibui.util.SettingsConstantsUI;
 import com.nextgis.maplibui.adapter.attributes.ICellCLickListener;
+import com.nextgis.maplibui.adapter.attributes.IColumnQueryListener;
 import com.nextgis.maplibui.adapter.attributes.TableViewAdapter;
 import com.nextgis.maplibui.adapter.attributes.TableViewListener;
 import com.nextgis.maplibui.adapter.attributes.TableViewModel;
 
 import java.lang.ref.WeakReference;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.List;
+import java.util.Locale;
 import static com.nextgis.maplib.util.Constants.FIELD_ID;
 import static com.nextgis.maplib.util.Constants.TAG;
-import static com.nextgis.maplib.util.GeoConstants.FTString;
 import static com.nextgis.maplibui.util.UiUtil.showNoEditPermAlert;
 
 public class AttributesActivity extends NGActivity {
@@ -99,8 +111,6 @@ public class AttributesActivity extends NGActivity {
     RelativeLayout mProgressBar;
     TextView progressText;
 
-    boolean nullFeatureExist = false;
-
     protected VectorLayer mLayer;
     protected BottomToolbar mToolbar;
     protected Long selectedRowId; // selected Row in table
@@ -116,26 +126,28 @@ public class AttributesActivity extends NGActivity {
     protected boolean mLoading;
     LoadBigData loadBigDataTask;
 
-    List<Long> ids;
-
-    LinkedHashMap<Long, Feature> featureMap;
-    List<Field> fields;
+    // rows are read from the layer table page by page
+    AttributeTableModel mModel;
+    AttributeSearchIndex mSearchIndex;
 
     boolean firstLoadStart = true;
-    String [][] data ;
-    String [] data0row ;
-    String [] data0Column;
 
     int [] data0rowAlignment ;
 
     final Object syncAdapterChanges = new Object();
 
-    //search part - result here
-    String[][] dataResult;
-    List<Long> idsResult;
-    String[] dataColumnResult;
-
-    int searchedResultLenght = 0;
+    // rows read in background replace their placeholders
+    final AttributeTableModel.OnPageLoadListener mPageLoadListener = new AttributeTableModel.OnPageLoadListener() {
+        @Override
+        public void onPageLoaded(final int firstRow, final int rowCount) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    notifyRowsChanged(firstRow, rowCount);
+                }
+            });
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -285,56 +297,41 @@ public class AttributesActivity extends NGActivity {
 
         if (resultCode == RESULT_OK && requestCode == IVectorLayerUI.MODIFY_REQUEST) {
 
-            if (selectedFeatureId == null || data == null || data0Column == null)
+            if (selectedFeatureId == null || mModel == null)
                 return;
 
-            final String idStr = String.valueOf(selectedFeatureId);
+            mModel.invalidate(selectedFeatureId);
+            if (mSearchIndex != null)
+                mSearchIndex.update();
 
-            // page
-            int rowIndex = -1;
-            for (int i = 0; i < data0Column.length; i++) {
-                if (idStr.equals(data0Column[i])) {
-                    rowIndex = i;
-                    break;
-                }
-            }
-
-            if (rowIndex == -1)
-                return;
-
-
-            // dd
-            // updated feature
-            Feature feature = mLayer.getFeature(selectedFeatureId);
-            if (feature == null)
+            // refresh filter, the feature may not match it anymore
+            if (!TextUtils.isEmpty(searchText)) {
+                onPerformSearch(searchText);
                 return;
-
-            // refresh data
-            data[rowIndex][0] = idStr;
-
-            for (int j = 0; j < fields.size(); j++) {
-                data[rowIndex][j + 1] =
-                        feature.getFieldValueAsString(fields.get(j).getName());
             }
 
-            // refresh filter
-            if (!TextUtils.isEmpty(searchText) && dataResult != null && dataColumnResult != null)
-                onPerformSearch(searchText);
-
             // update UI
-            if (mTableView.getAdapter() != null) {
-                //mTableView.getAdapter().notifyDataSetChanged();
-                ((TableViewAdapter)mTableView.getAdapter()).setData(getCellLists (data));
-                //((TableViewAdapter)mTableView.getAdapter()).updateRowCells(rowIndex, data[rowIndex]);
-
+            if (mTableView.getAdapter() != null && selectedRow != -1) {
                 if (mTableView.getCellRecyclerView().getAdapter()!= null)
-                    mTableView.getCellRecyclerView().getAdapter().notifyItemChanged(rowIndex);
+                    mTableView.getCellRecyclerView().getAdapter().notifyItemChanged(selectedRow);
                 if (mTableView.getRowHeaderRecyclerView().getAdapter() != null)
-                    mTableView.getRowHeaderRecyclerView().getAdapter().notifyItemChanged(rowIndex);
+                    mTableView.getRowHeaderRecyclerView().getAdapter().notifyItemChanged(selectedRow);
             }
         }
     }
 
+    protected void notifyRowsChanged(int firstRow, int rowCount) {
+        notifyRowsChanged(mTableView.getCellRecyclerView().getAdapter(), firstRow, rowCount);
+        notifyRowsChanged(mTableView.getRowHeaderRecyclerView().getAdapter(), firstRow, rowCount);
+    }
+
+    protected void notifyRowsChanged(RecyclerView.Adapter<?> adapter, int firstRow, int rowCount) {
+        // the adapter of the previous query may still be shown
+        if (adapter == null || firstRow >= adapter.getItemCount())
+            return;
+        adapter.notifyItemRangeChanged(firstRow, Math.min(rowCount, adapter.getItemCount() - firstRow));
+    }
+
     public List<List<Cell>> getCellLists(String[][] data) {
         List<List<Cell>> list = new ArrayList<>();
 
@@ -406,35 +403,244 @@ public class AttributesActivity extends NGActivity {
 
         if (!firstLoadStart) {
             loadBigDataTask = new LoadBigData(this, mLayer, progressText, text);
-            loadBigDataTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            loadBigDataTask.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
         } else{
             Toast.makeText(this, R.string.loading_data_inprogress, Toast.LENGTH_LONG).show();
         }
     }
 
     public void onDeleteData(long mId){
+        // row positions after the deleted one are shifted, read the table again
+        reloadTable();
+    }
+
+    /**
+     * Read the table again with the current search, sort and filters
+     */
+    protected void reloadTable() {
+        if (mModel != null && !firstLoadStart) {
+            if (loadBigDataTask != null)
+                loadBigDataTask.cancel(true);
+            loadBigDataTask = new LoadBigData(this, mLayer, progressText, searchText);
+            loadBigDataTask.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
+        }
+    }
+
+    // columns are sorted and filtered by the layer table query
+    protected final IColumnQueryListener mColumnQueryListener = new IColumnQueryListener() {
+        @Override
+        public void onSortColumn(int column, SortState sortState) {
+            if (mModel == null)
+                return;
+            if (sortState == SortState.UNSORTED)
+                mModel.setSort(0, true);
+            else
+                mModel.setSort(column, sortState == SortState.ASCENDING);
+            reloadTable();
+        }
+
+        @Override
+        public void onFilterColumn(int column) {
+            if (mModel != null)
+                showFilterDialog(column);
+        }
+
+        @Override
+        public void onClearFilter(int column) {
+            if (mModel == null)
+                return;
+            mModel.setFilter(column, null);
+            reloadTable();
+        }
+    };
+
+    /**
+     * Range filter for the feature id, numbers, dates and times of day, case insensitive value
+     * for others
+     */
+    protected void showFilterDialog(final int column) {
+        final int type = mModel.getColumnType(column);
+        final boolean isTime = type == GeoConstants.FTTime;
+        final boolean isDate = type == GeoConstants.FTDate || type == GeoConstants.FTDateTime;
+        final boolean isRange = isDate || isTime || column == 0 || type == GeoConstants.FTInteger
+                || type == GeoConstants.FTLong || type == GeoConstants.FTReal;
+        AttributeTableModel.ColumnFilter filter = mModel.getFilter(column);
+
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        int padding = (int) (16 * getResources().getDisplayMetrics().density);
+        layout.setPadding(padding, padding / 2, padding, 0);
+
+        final EditText from, to, value;
+        if (isTime) {
+            from = createTimeFilterInput(layout, R.string.filter_from, null == filter ? null : filter.getFrom(), false);
+            to = createTimeFilterInput(layout, R.string.filter_to, null == filter ? null : filter.getTo(), true);
+            value = null;
+        } else if (isRange) {
+            from = createFilterInput(layout, R.string.filter_from, null == filter ? null : filter.getFrom(), isDate, false);
+            to = createFilterInput(layout, R.string.filter_to, null == filter ? null : filter.getTo(), isDate, true);
+            value = null;
+        } else {
+            from = to = null;
+            value = createFilterInput(layout, R.string.filter_value, null == filter ? null : filter.getValue(), false, false);
+        }
 
-        String isString = String.valueOf(mId);
+        new AlertDialog.Builder(this).setTitle(mModel.getColumnNames()[column])
+                .setView(layout)
+                .setNegativeButton(R.string.cancel, null)
+                .setPositiveButton(R.string.ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialogInterface, int i) {
+                        AttributeTableModel.ColumnFilter newFilter = null;
+                        if (isRange) {
+                            String min = getFilterValue(from, isDate || isTime);
+                            String max = getFilterValue(to, isDate || isTime);
+                            if (min != null || max != null)
+                                newFilter = isTime ? AttributeTableModel.ColumnFilter.timeRange(min, max)
+                                        : AttributeTableModel.ColumnFilter.range(min, max);
+                        } else {
+                            String text = getFilterValue(value, false);
+                            if (text != null)
+                                newFilter = AttributeTableModel.ColumnFilter.equalTo(text);
+                        }
+                        mModel.setFilter(column, newFilter);
+                        reloadTable();
+                    }
+                }).show();
+    }
 
-        if (data != null && data0Column != null && mId > -1 && data0Column.length > 0) {
-            for (int i = 0; i < data0Column.length; i++) {
-                if (data0Column[i].equals(isString)) {
+    /**
+     * Date inputs keep milliseconds in the tag and show a date picker, the upper bound is the
+     * end of the picked day
+     */
+    protected EditText createFilterInput(LinearLayout layout, int hint, String text,
+                                         boolean isDate, final boolean isEndOfDay) {
+        final EditText input = new EditText(this);
+        input.setHint(hint);
+        input.setSingleLine();
+        layout.addView(input, new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT));
+
+        if (!isDate) {
+            input.setInputType(hint == R.string.filter_value ? InputType.TYPE_CLASS_TEXT
+                    : InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_FLAG_DECIMAL | InputType.TYPE_NUMBER_FLAG_SIGNED);
+            input.setText(text);
+            return input;
+        }
 
-                    for (int j = i; j < data0Column.length - 1; j++) {
-                        data0Column[j] = data0Column[j + 1];
-                        data[j] = data[j + 1];
+        final DateFormat format = DateFormat.getDateInstance();
+        Long millis = parseLong(text);
+        if (millis != null) {
+            input.setTag(millis);
+            input.setText(format.format(new Date(millis)));
+        }
+        input.setFocusable(false);
+        input.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                final Calendar calendar = Calendar.getInstance();
+                if (input.getTag() instanceof Long)
+                    calendar.setTimeInMillis((Long) input.getTag());
+                new DatePickerDialog(AttributesActivity.this, new DatePickerDialog.OnDateSetListener() {
+                    @Override
+                    public void onDateSet(DatePicker datePicker, int year, int month, int day) {
+                        calendar.clear();
+                        calendar.set(year, month, day);
+                        if (isEndOfDay) {
+                            calendar.add(Calendar.DAY_OF_MONTH, 1);
+                            calendar.add(Calendar.MILLISECOND, -1);
+                        }
+                        input.setTag(calendar.getTimeInMillis());
+                        input.setText(format.format(calendar.getTime()));
                     }
-                    data0Column[data0Column.length - 1] = "-1";
+                }, calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH),
+                        calendar.get(Calendar.DAY_OF_MONTH)).show();
+            }
+        });
+        input.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View view) {
+                input.setTag(null);
+                input.setText(null);
+                return true;
+            }
+        });
+        return input;
+    }
 
-                    data[data0Column.length - 1] = new String[data0row.length];
-                    for (int k = 0; k < data0row.length; k++)
-                        data[data0Column.length - 1][k] = "";
-                    break;
-                }
+    /**
+     * Time inputs keep the time of day in the tag and show a time picker, the upper bound is the
+     * end of the picked minute
+     */
+    protected EditText createTimeFilterInput(LinearLayout layout, int hint, String text,
+                                             final boolean isEndOfMinute) {
+        final EditText input = new EditText(this);
+        input.setHint(hint);
+        input.setSingleLine();
+        layout.addView(input, new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT));
+
+        final DateFormat format = DateFormat.getTimeInstance(DateFormat.SHORT);
+        final SimpleDateFormat tagFormat = new SimpleDateFormat(AttributeTableModel.TIME_PATTERN, Locale.US);
+        if (text != null) {
+            try {
+                input.setText(format.format(tagFormat.parse(text)));
+                input.setTag(text);
+            } catch (ParseException ignored) {
             }
-        } else {
-            // no action - when no search was activated
         }
+        input.setFocusable(false);
+        input.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                final Calendar calendar = Calendar.getInstance();
+                if (input.getTag() instanceof String) {
+                    try {
+                        calendar.setTime(tagFormat.parse((String) input.getTag()));
+                    } catch (ParseException ignored) {
+                    }
+                }
+                new TimePickerDialog(AttributesActivity.this, new TimePickerDialog.OnTimeSetListener() {
+                    @Override
+                    public void onTimeSet(TimePicker timePicker, int hour, int minute) {
+                        calendar.clear();
+                        calendar.set(Calendar.HOUR_OF_DAY, hour);
+                        calendar.set(Calendar.MINUTE, minute);
+                        if (isEndOfMinute)
+                            calendar.set(Calendar.SECOND, 59);
+                        input.setTag(tagFormat.format(calendar.getTime()));
+                        input.setText(format.format(calendar.getTime()));
+                    }
+                }, calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE), true).show();
+            }
+        });
+        input.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View view) {
+                input.setTag(null);
+                input.setText(null);
+                return true;
+            }
+        });
+        return input;
+    }
+
+    protected String getFilterValue(EditText input, boolean isPicked) {
+        if (isPicked)
+            return input.getTag() instanceof Long || input.getTag() instanceof String ? input.getTag().toString() : null;
+        String text = input.getText().toString().trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (loadBigDataTask != null)
+            loadBigDataTask.cancel(true);
+        if (mModel != null)
+            mModel.close();
+        if (mSearchIndex != null)
+            mSearchIndex.close();
+        super.onDestroy();
     }
 
     @Override
@@ -451,12 +657,13 @@ public class AttributesActivity extends NGActivity {
             final ILayer layer = map.getLayerById(mLayerId);
             if (null != layer && layer instanceof VectorLayer) {
                 mLayer = (VectorLayer) layer;
+                mSearchIndex = AttributeSearchIndex.get(this, mLayer);
 
                 if (loadBigDataTask != null )
                     loadBigDataTask.cancel(true);
 
                 loadBigDataTask = new LoadBigData(this, mLayer, progressText, "");
-                loadBigDataTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                loadBigDataTask.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
 
 
                 final TableViewModel tableViewModel = new TableViewModel(0, 0, new String[0][], new String[0], new String[0]);
@@ -498,7 +705,7 @@ public class AttributesActivity extends NGActivity {
                     }
                 };
 
-                mTableView.setTableViewListener(new TableViewListener(mTableView, iCellCLickListener, iColumnHeadCLickListener));
+                mTableView.setTableViewListener(new TableViewListener(mTableView, iCellCLickListener, iColumnHeadCLickListener, mColumnQueryListener));
 
                 synchronized (syncAdapterChanges) {
                     mTableView.setAdapter(tableViewAdapter);
@@ -528,9 +735,6 @@ public class AttributesActivity extends NGActivity {
         final TextView progressText;
         final String filterText;
 
-        String [][] dataToShow ;
-        String [] data0ColumnToShow ;
-
         public LoadBigData(
                 final Context context,
                 final VectorLayer layer,
@@ -543,16 +747,6 @@ public class AttributesActivity extends NGActivity {
             this.filterText = filterText;
         }
 
-        @Override
-        protected void onCancelled(String s) {
-            super.onCancelled(s);
-        }
-
-        @Override
-        protected void onCancelled() {
-            super.onCancelled();
-        }
-
         @Override
         protected void onPreExecute()        {
             mLoading = true;
@@ -569,46 +763,30 @@ public class AttributesActivity extends NGActivity {
         protected String doInBackground(Void... voids) {
             publishProgress(0);
 
-
-            if (ids == null) {
-                ids = mLayer.query(null);
-                Collections.sort(ids);
+            if (mModel == null) {
+                mModel = new AttributeTableModel(layer);
+                mModel.setOnPageLoadListener(mPageLoadListener);
             }
-            if (featureMap == null)
-                featureMap = mLayer.getFeatures();
-            if (fields == null)
-                fields = mLayer.getFields();
-
-            if (featureMap == null)
-                return "";
-
-            if (data == null)
-                data = getData(false, false, filterText);
-
-            if (data0row == null)
-                data0row = get0Row();
 
             if (data0rowAlignment == null)
-                data0rowAlignment = get0RowAlignment();
-
-            if (data0Column == null)
-                data0Column = get0Column();
-
-            dataToShow = data;
-            data0ColumnToShow = data0Column;
-
-            try {
-                Thread.sleep(300);
-            } catch (Exception ex){
-
+                data0rowAlignment = mModel.getColumnAlignment();
+
+            if (TextUtils.isEmpty(filterText)) {
+                mModel.setSearch(null, null);
+            } else {
+                List<String> args = new ArrayList<>();
+                String selection;
+                if (mSearchIndex != null && mSearchIndex.isReady())
+                    selection = mSearchIndex.getSelection(filterText, args);
+                else // the index is being built
+                    selection = mModel.getSearchSelection(filterText, args);
+                mModel.setSearch(selection, args.toArray(new String[0]));
             }
-            if (!TextUtils.isEmpty(filterText)){
 
-                getDataFiltered(filterText, data, ids);
+            if (isCancelled())
+                return "";
 
-                dataToShow =  dataResult;
-                data0ColumnToShow =  dataColumnResult;
-            }
+            mModel.reload();
             return "";
         }
 
@@ -616,14 +794,9 @@ public class AttributesActivity extends NGActivity {
         protected void onPostExecute(String error)
         {
             mProgressBar.setVisibility(View.GONE);
-            final int lenght = data.length > 0 ? data[0].length : 0;
-            int rowsSize = data.length;
-            if (!TextUtils.isEmpty(filterText))
-                rowsSize =  searchedResultLenght;
-            final TableViewModel tableViewModel = new TableViewModel(lenght, rowsSize, dataToShow, data0row, data0ColumnToShow);
+            final TableViewModel tableViewModel = new TableViewModel(mModel);
             final TableViewAdapter tableViewAdapter = new TableViewAdapter(tableViewModel, data0rowAlignment);
 
-
             synchronized (syncAdapterChanges) {
                 mTableView.setAdapter(tableViewAdapter);
 
@@ -637,187 +810,13 @@ public class AttributesActivity extends NGActivity {
 
             mLoading = false;
 
-            if (nullFeatureExist){
-                nullFeatureExist = false;
-                if (mContextRef.get() != null)
-                    Toast.makeText((Activity)mContextRef.get(), R.string.error_cache, Toast.LENGTH_LONG).show();
-            }
-
-            if (data.length == 0){
+            if (mModel.getRowCount() == 0 && TextUtils.isEmpty(filterText)){
                 if (mContextRef.get() != null)
                     Toast.makeText((Activity)mContextRef.get(), R.string.no_data_in_layer, Toast.LENGTH_LONG).show();
             }
             if (firstLoadStart)
                 firstLoadStart = false;
         }
-
-        public String[] get0Row() {
-            final String[] data = new String[fields.size() + 1];
-            data[0] = FIELD_ID;
-            for (int i = 0; i < fields.size(); i++)
-                data[i + 1] = fields.get(i).getAlias();
-            return data;
-        }
-
-        public int[] get0RowAlignment() {
-            final int[] data = new int[fields.size() + 1];
-            data[0] = 0;
-            for (int i = 0; i < fields.size(); i++) {
-
-                int alignment = Gravity.END;
-                int type = fields.get(i).getType();
-                if (type == FTString)
-                    alignment = Gravity.START;
-
-                data[i + 1] = alignment;
-            }
-            return data;
-        }
-
-
-        public String[] get0Column(){
-            final String[] data0col = new String[ids.size()];
-            for (int i = 0; i < ids.size(); i++) {
-                final Feature feature = featureMap.get(ids.get(i));
-                if (feature != null)
-                    data0col[i] = feature.getId() + "";
-            }
-            return data0col;
-        }
-
-        final public String[][] getData(boolean get0row, boolean get0column, final String filterString) {
-            if (get0column){
-                final String[][] data0col = new String[ids.size()][1];
-                for (int i = 0; i < ids.size(); i++) {
-                    final Feature feature = featureMap.get(ids.get(i));
-                    if (feature != null)
-                        data0col[i][0] = feature.getId() + "";
-                }
-                return data0col;
-            }
-            int rows = ids.size();
-            for (int i = 0; i < ids.size(); i++) {
-                final Feature feature = featureMap.get(ids.get(i));
-                if (feature == null) {
-                    nullFeatureExist = true;
-                }
-            }
-            if (get0row)
-                rows = 1;
-
-            final String[][] data = new String[rows][fields.size() + 1];
-            if (rows == 0)
-                return data;
-
-            data[0][0] = FIELD_ID;
-            if (get0row){
-                for (int i = 0; i < fields.size(); i++)
-                    data[0][i + 1] = fields.get(i).getAlias();
-            }
-
-            int percents10 = ids.size() / 100;
-            boolean useProgress = percents10 >= 100;
-
-            int counter = 0;
-            int progress = 0;
-
-            if (rows > 0 && !get0row) {
-                int iRow = 0;
-                for (int i = 0; i < ids.size(); i++) {
-
-                    if (isCancelled()){
-                        break;
-                    }
-                    if (useProgress){
-                        counter ++;
-                        if (counter >= percents10){
-                            progress = progress + 1;
-                            counter = 0;
-                            publishProgress(progress);
-                        }
-                    }
-                    final Feature feature = featureMap.get(ids.get(i));
-                    if (feature != null ) {
-                        // filter part
-                        if (TextUtils.isEmpty(filterString)){
-                            data[i][0] = feature.getId() + "";
-                            // no filter
-                            for (int j = 0; j < fields.size(); j++) {
-                                data[i][j + 1] = feature.getFieldValueAsString(fields.get(j).getName());
-                            }
-                        } else {
-                            // filter
-                            final String filterStringLower = filterString.toLowerCase();
-                            boolean isProgressSearch = true;
-                            for (int j = 0; j < fields.size() && isProgressSearch; j++){
-                                final String element = feature.getFieldValueAsString(fields.get(j).getName());
-                                if (!TextUtils.isEmpty(element) && element.toLowerCase().contains(filterStringLower))
-                                    isProgressSearch = false;
-                            }
-                            if (!isProgressSearch) {
-
-                                data[iRow ][0] = feature.getId() + "";
-                                for (int j = 0; j < fields.size(); j++) {
-                                    data[iRow ][j + 1] = feature.getFieldValueAsString(fields.get(j).getName());
-                                }
-                                iRow ++;
-                            }
-                        }
-                    }
-                }
-            }
-            return data;
-        }
-
-        public void getDataFiltered(final String filterString, String [][] dataSource, List<Long> idsSource) {
-            int rows = idsSource.size();
-            idsResult = new ArrayList<>();
-
-            dataResult = new String[rows][fields.size() + 1];
-            dataColumnResult = new String[rows];
-            //clear result
-
-            int percents10 = idsSource.size() / 100;
-            boolean useProgress = percents10 >= 100;
-
-            int counter = 0;
-            int progress = 0;
-
-            if (rows > 0 ) {
-                int iRow = 0;
-                for (int i = 0; i < idsSource.size(); i++) {
-                    if (isCancelled()){
-                        break;
-                    }
-                    if (useProgress){
-                        counter ++;
-                        if (counter >= percents10){
-                            progress = progress + 1;
-                            counter = 0;
-                            publishProgress(progress);
-                        }
-                    }
-                    // filter part
-                    final String filterStringLower = filterString.toLowerCase();
-                    boolean isProgressSearch = true;
-                    for (int j = 0; j < fields.size() +1 && isProgressSearch; j++){
-                        final String element = dataSource[i][j];
-                        if (!TextUtils.isEmpty(element) && element.toLowerCase().contains(filterStringLower))
-                            isProgressSearch = false;
-                    }
-                    if (!isProgressSearch) {
-                        dataColumnResult[iRow] = data0Column[i] + "";
-                        dataResult[iRow ][0] = data0Column[i];
-                        idsResult.add(idsSource.get(i));
-                        for (int j = 0; j < fields.size(); j++) {
-                            dataResult[iRow ][j+1] = dataSource[i][j+1];
-                        }
-                        iRow ++;
-                    }
-                }
-                searchedResultLenght = iRow;
-            }
-        }
     }
 
     private Long parseLong(String string) {
@@ -85,24 +85,22 @@ import com.nextgis.maplibui.formcontrol.Tabs;
 import com.nextgis.maplibui.formcontrol.TextEdit;
 import com.nextgis.maplibui.formcontrol.TextLabel;
 import com.nextgis.maplibui.util.ControlHelper;
+import com.nextgis.maplibui.util.FormCache;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import static com.nextgis.maplib.util.Constants.JSON_TYPE_KEY;
 import static com.nextgis.maplib.util.NetworkUtil.getUserAgent;
-import static com.nextgis.maplibui.util.ConstantsUI.JSON_ALBUM_ELEMENTS_KEY;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_ATTRIBUTES_KEY;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_AVERAGING_VALUE;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_CHECKBOX_VALUE;
@@ -113,11 +111,8 @@ import static com.nextgis.maplibui.util.ConstantsUI.JSON_DATE_TIME_VALUE;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_DISTANCE_VALUE;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_DOUBLE_COMBOBOX_VALUE;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_FIELD_NAME_KEY;
-import static com.nextgis.maplibui.util.ConstantsUI.JSON_KEY_LIST_KEY;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_KEY_LIST_SAVED_KEY;
-import static com.nextgis.maplibui.util.ConstantsUI.JSON_LISTS_KEY;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_PHOTO_VALUE;
-import static com.nextgis.maplibui.util.ConstantsUI.JSON_PORTRAIT_ELEMENTS_KEY;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_RADIO_GROUP_VALUE;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_SIGN_VALUE;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_SPACE_VALUE;
@@ -125,7 +120,6 @@ import static com.nextgis.maplibui.util.ConstantsUI.JSON_SPLIT_COMBOBOX_VALUE;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_TABS_KEY;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_TEXT_EDIT_VALUE;
 import static com.nextgis.maplibui.util.ConstantsUI.JSON_TEXT_LABEL_VALUE;
-import static com.nextgis.maplibui.util.ConstantsUI.JSON_TRANSLATIONS_KEY;
 import static com.nextgis.maplibui.util.ConstantsUI.KEY_FORM_PATH;
 import static com.nextgis.maplibui.util.ConstantsUI.KEY_META_PATH;
 import static com.nextgis.maplibui.util.NGIDUtils.PREF_FIRST_NAME;
@@ -142,6 +136,7 @@ public class FormBuilderModifyAttributesActivity extends ModifyAttributesActivit
     private Map<String, Map<String, String>> mTranslations;
     private int mRow = -1;
     private File mMeta;
+    private FormCache.CompiledForm mForm;
     private String mColumn;
 
     interface OnAskRowListener {
@@ -194,145 +189,99 @@ public class FormBuilderModifyAttributesActivity extends ModifyAttributesActivit
         //TODO: add location control via fragment only defined by user space
         Bundle extras = getIntent().getExtras();
 
+        if (mForm == null) {
+            loadForm(layout, savedState, extras);
+            return;
+        }
+
         if (mTable == null) {
-            fillTable(layout, savedState, extras);
+            fillTable(layout, savedState);
             return;
         }
 
         try {
-            File form = (File) extras.getSerializable(KEY_FORM_PATH);
-
             int orientation = getResources().getConfiguration().orientation;
             boolean isLand = orientation == Configuration.ORIENTATION_LANDSCAPE;
 
-            String formString = FileUtil.readFromFile(form);
-            Object json = new JSONTokener(formString).nextValue();
-            if (json instanceof JSONArray) {
-                JSONArray elements = new JSONArray(formString);
-                if (elements.length() > 0)
-                    fillTabControls(layout, savedState, elements);
-            } else {
-                JSONObject jsonFormContents = new JSONObject(formString);
-                JSONArray tabs = jsonFormContents.getJSONArray(JSON_TABS_KEY);
-
-                for (int i = 0; i < tabs.length(); i++) {
-                    JSONObject tab = tabs.getJSONObject(i);
-                    JSONArray elements = null;
-
-                    if (isLand && !tab.isNull(JSON_ALBUM_ELEMENTS_KEY)) {
-                        elements = tab.getJSONArray(JSON_ALBUM_ELEMENTS_KEY);
-                    }
+            for (JSONArray elements : mForm.getTabs(isLand))
+                fillTabControls(layout, savedState, elements);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            Toast.makeText(this, getString(R.string.error_form_create), Toast.LENGTH_SHORT).show();
+        }
+    }
 
-                    if (null == elements) {
-                        if (!isLand && !tab.isNull(JSON_PORTRAIT_ELEMENTS_KEY)) {
-                            elements = tab.getJSONArray(JSON_PORTRAIT_ELEMENTS_KEY);
-                        }
-                    }
+    /**
+     * The form is parsed once and cached, a form opened before is usually ready in memory
+     */
+    private void loadForm(final LinearLayout layout, final Bundle savedState, Bundle extras) {
+        File form = (File) extras.getSerializable(KEY_FORM_PATH);
+        mMeta = (File) extras.getSerializable(KEY_META_PATH);
 
-                    if (null == elements) {
-                        if (!tab.isNull(JSON_ALBUM_ELEMENTS_KEY)) {
-                            elements = tab.getJSONArray(JSON_ALBUM_ELEMENTS_KEY);
-                        }
+        mForm = FormCache.peek(form, mMeta);
+        if (mForm != null) {
+            fillControls(layout, savedState);
+            return;
+        }
 
-                        if (!tab.isNull(JSON_PORTRAIT_ELEMENTS_KEY)) {
-                            elements = tab.getJSONArray(JSON_ALBUM_ELEMENTS_KEY);
-                        }
-                    }
+        FormCache.load(getApplicationContext(), form, mMeta, new FormCache.OnFormLoadListener() {
+            @Override
+            public void onFormLoaded(FormCache.CompiledForm compiled) {
+                if (isFinishing() || isDestroyed())
+                    return;
+                mForm = compiled;
+                fillControls(layout, savedState);
+            }
 
-                    if (null != elements && elements.length() > 0) {
-                        fillTabControls(layout, savedState, elements);
-                    }
-                }
+            @Override
+            public void onFormError(Exception e) {
+                e.printStackTrace();
+                if (isFinishing() || isDestroyed())
+                    return;
+                Toast.makeText(FormBuilderModifyAttributesActivity.this, R.string.error_form_create, Toast.LENGTH_SHORT).show();
+                finish();
             }
-        } catch (JSONException | IOException e) {
-            e.printStackTrace();
-            Toast.makeText(this, getString(R.string.error_form_create), Toast.LENGTH_SHORT).show();
-        }
+        });
     }
 
-    private void fillTable(final LinearLayout layout, final Bundle savedState, Bundle extras) {
-        mTable = new HashMap<>();
-        mTranslations = new HashMap<>();
-        mMeta = (File) extras.getSerializable(KEY_META_PATH);
-        if (mMeta != null && mMeta.exists()) {
-            try {
-                String metaString = FileUtil.readFromFile(mMeta);
-                final JSONObject metaJson = new JSONObject(metaString);
-                if (metaJson.has(JSON_LISTS_KEY) && !metaJson.isNull(JSON_LISTS_KEY)) {
-                    JSONObject lists = metaJson.getJSONObject(JSON_LISTS_KEY);
-                    Iterator<String> i = lists.keys();
-                    while (i.hasNext()) {
-                        String key = i.next();
-                        JSONArray list = lists.getJSONArray(key);
-                        List<String> value = new ArrayList<>();
-                        for (int j = 0; j < list.length(); j++)
-                            value.add(list.getString(j));
-                        mTable.put(key, value);
-                    }
-                }
+    private void fillTable(final LinearLayout layout, final Bundle savedState) {
+        mTable = new HashMap<>(mForm.getLists());
+        mTranslations = mForm.getTranslations();
 
-                if (metaJson.has(JSON_KEY_LIST_KEY) && !metaJson.isNull(JSON_KEY_LIST_KEY)) {
-                    mColumn = metaJson.getString(JSON_KEY_LIST_KEY);
-                    List<String> columnList = mTable.get(mColumn);
-                    if (mColumn == null || columnList == null || columnList.isEmpty()) {
-                        Toast.makeText(this, "R.string.error_invalid_column", Toast.LENGTH_SHORT).show();
-                        mColumn = null; // Сбрасываем mColumn, чтобы избежать ошибок
-                        fillControls(layout, savedState);
-                        return;
-                    }
+        mColumn = mForm.getKeyList(); // null if key_list is absent
+        if (mColumn != null) {
+            List<String> columnList = mTable.get(mColumn);
+            if (columnList == null || columnList.isEmpty()) {
+                Toast.makeText(this, "R.string.error_invalid_column", Toast.LENGTH_SHORT).show();
+                mColumn = null; // Сбрасываем mColumn, чтобы избежать ошибок
+                fillControls(layout, savedState);
+                return;
+            }
 
-                    if (metaJson.has(JSON_KEY_LIST_SAVED_KEY)) {
-                        mRow = metaJson.getInt(JSON_KEY_LIST_SAVED_KEY);
-                        if (mRow >= columnList.size() || mRow < 0) {
-                            Toast.makeText(this, "R.string.error_invalid_row", Toast.LENGTH_SHORT).show();
-                            mRow = -1;
-                        }
-                    } else {
-                        askForRow(new OnAskRowListener() {
-                            @Override
-                            public void onRowChosen() {
-                                if (mRow == -1)
-                                    finish();
-                                else {
-                                    try {
-                                        metaJson.put(JSON_KEY_LIST_SAVED_KEY, mRow);
-                                        FileUtil.writeToFile(mMeta, metaJson.toString());
-                                    } catch (JSONException | IOException ignored) {}
-                                    fillControls(layout, savedState);
-                                }
-                            }
-                        });
-                        return;
-                    }
-                } else {
-                    mColumn = null; //reset mColumn,if key_list abpsent
+            Integer savedRow = mForm.getSavedRow();
+            if (savedRow != null) {
+                mRow = savedRow;
+                if (mRow >= columnList.size() || mRow < 0) {
+                    Toast.makeText(this, "R.string.error_invalid_row", Toast.LENGTH_SHORT).show();
+                    mRow = -1;
                 }
-
-                if (metaJson.has(JSON_TRANSLATIONS_KEY) && !metaJson.isNull(JSON_TRANSLATIONS_KEY)) {
-                    JSONArray translations = metaJson.getJSONArray(JSON_TRANSLATIONS_KEY);
-                    if (translations != null) {
-                        for (int i = 0; i < translations.length(); i++) {
-                            JSONObject translation = translations.getJSONObject(i);
-                            String translationKey = null;
-                            Map<String, String> mappings = new HashMap<>();
-                            for (Iterator<String> iter = translation.keys(); iter.hasNext(); ) {
-                                String key = iter.next();
-                                String value = translation.getString(key);
-                                if (key.equals("key")) {
-                                    translationKey = value;
-                                } else {
-                                    mappings.put(key, value);
-                                }
-                            }
-                            if (translationKey != null)
-                                mTranslations.put(translationKey, mappings);
+            } else {
+                askForRow(new OnAskRowListener() {
+                    @Override
+                    public void onRowChosen() {
+                        if (mRow == -1)
+                            finish();
+                        else {
+                            try {
+                                JSONObject metaJson = new JSONObject(FileUtil.readFromFile(mMeta));
+                                metaJson.put(JSON_KEY_LIST_SAVED_KEY, mRow);
+                                FileUtil.writeToFile(mMeta, metaJson.toString());
+                            } catch (JSONException | IOException ignored) {}
+                            fillControls(layout, savedState);
                         }
                     }
-                }
-            } catch (IOException | JSONException e) {
-                e.printStackTrace();
-                Toast.makeText(this, R.string.error_form_create, Toast.LENGTH_SHORT).show();
-                finish();
+                });
+                return;
             }
         }
 
@@ -57,6 +57,7 @@ import com.nextgis.maplib.map.NGWRasterLayer;
 import com.nextgis.maplib.map.VectorLayer;
 import com.nextgis.maplib.util.GeoConstants;
 import com.nextgis.maplib.util.NGWUtil;
+import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.dialog.NGWResourcesListAdapter;
 import com.nextgis.maplibui.fragment.LayerFillProgressDialogFragment;
@@ -64,6 +65,7 @@ import com.nextgis.maplibui.mapui.NGWRasterLayerUI;
 import com.nextgis.maplibui.mapui.NGWWebMapLayerUI;
 import com.nextgis.maplibui.service.LayerFillService;
 import com.nextgis.maplibui.util.CheckState;
+import com.nextgis.maplibui.util.LayerUtil;
 import com.nextgis.maplibui.util.NGWCreateNewResourceTask;
 
 import java.lang.ref.WeakReference;
@@ -168,16 +170,22 @@ public class SelectNGWResourceActivity extends NGActivity implements View.OnClic
             mListAdapter.setCheckState(states);
         }
 
-        MapBase map = MapBase.getInstance();
-        if (null != map) {
-            ILayer layer = map.getLayerById(id);
-            if (layer instanceof LayerGroup)
-                mGroupLayer = (LayerGroup) layer;
+        final int groupId = id;
+        GISApplication.runWhenMapLoaded(new GISApplication.OnMapLoadListener() {
+            @Override
+            public void onMapLoaded(MapBase map) {
+                if (null == map)
+                    return;
 
-            layer = map.getLayerById(mPushId);
-            if (layer instanceof VectorLayer && mPushId != NOT_FOUND)
-                mLayer = (VectorLayer) layer;
-        }
+                ILayer layer = map.getLayerById(groupId);
+                if (layer instanceof LayerGroup)
+                    mGroupLayer = (LayerGroup) layer;
+
+                layer = map.getLayerById(mPushId);
+                if (layer instanceof VectorLayer && mPushId != NOT_FOUND)
+                    mLayer = (VectorLayer) layer;
+            }
+        });
 
         mListAdapter.setShowCheckboxes(mTask == TYPE_ADD);
         mListAdapter.setTypeMask(mTypeMask);
@@ -368,7 +376,9 @@ public class SelectNGWResourceActivity extends NGActivity implements View.OnClic
         final Connections connections = mListAdapter.getConnections();
         Connection connection = getConnection();
 
-        MapContentProviderHelper mapContentProviderHelper =(MapContentProviderHelper) MapBase.getInstance();
+        MapContentProviderHelper mapContentProviderHelper = LayerUtil.getMap(mGroupLayer);
+        if (null == mapContentProviderHelper)
+            return null;
 
         List<ILayer> layersToCheck = new ArrayList<>();
         for (int i = 0; i < mapContentProviderHelper.getLayerCount(); i++) {
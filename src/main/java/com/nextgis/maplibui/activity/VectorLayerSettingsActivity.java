@@ -27,14 +27,11 @@ import android.accounts.Account;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Application;
-import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.PeriodicSync;
-import android.os.Build;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -83,6 +80,7 @@ import com.nextgis.maplibui.fragment.NGWSettingsFragment;
 import com.nextgis.maplibui.service.RebuildCacheService;
 import com.nextgis.maplibui.util.ConstantsUI;
 import com.nextgis.maplibui.util.ControlHelper;
+import com.nextgis.maplibui.util.ProgressChannel;
 import com.nextgis.maplibui.util.SettingsConstantsUI;
 
 import java.io.File;
@@ -325,7 +323,7 @@ public class VectorLayerSettingsActivity
     }
 
     public static class CacheFragment extends Fragment {
-        private BroadcastReceiver mRebuildCacheReceiver;
+        private ProgressChannel.OnProgressListener mRebuildCacheListener;
         private VectorLayerSettingsActivity mActivity;
 
         public CacheFragment() {
@@ -350,11 +348,15 @@ public class VectorLayerSettingsActivity
             cancelBuildCacheButton.setOnClickListener((View.OnClickListener) getActivity());
             final View progressView = v.findViewById(R.id.rebuild_progress);
 
-            mRebuildCacheReceiver = new BroadcastReceiver() {
-                public void onReceive(Context context, Intent intent) {
-                    int max = intent.getIntExtra(RebuildCacheService.KEY_MAX, 0);
-                    int progress = intent.getIntExtra(RebuildCacheService.KEY_PROGRESS, 0);
-                    int layer = intent.getIntExtra(ConstantsUI.KEY_LAYER_ID, NOT_FOUND);
+            mRebuildCacheListener = new ProgressChannel.OnProgressListener() {
+                @Override
+                public void onProgress(ProgressChannel.Progress rebuild) {
+                    int max = rebuild.mMax;
+                    int progress = rebuild.mValue;
+                    int layer = rebuild.mId;
+                    // other layers are rebuilt at the same time
+                    if (layer != mVectorLayer.getId() && layer != NOT_FOUND)
+                        return;
 
                     if (layer == mVectorLayer.getId()) {
                         rebuildCacheProgress.setMax(max);
@@ -379,26 +381,16 @@ public class VectorLayerSettingsActivity
         @Override
         public void onResume() {
             super.onResume();
-            if (getActivity() != null) {
-                IntentFilter intentFilter = new IntentFilter(RebuildCacheService.ACTION_UPDATE);
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                    getActivity().registerReceiver(mRebuildCacheReceiver, intentFilter, Context.RECEIVER_NOT_EXPORTED);
-                } else {
-                    getActivity().registerReceiver(mRebuildCacheReceiver, intentFilter);
-                }
+            if (mRebuildCacheListener != null) {
+                RebuildCacheService.PROGRESS_CHANNEL.addListener(mRebuildCacheListener);
             }
         }
 
         @Override
         public void onPause() {
             super.onPause();
-            try {
-                if (getActivity() != null && mRebuildCacheReceiver != null) {
-                    getActivity().unregisterReceiver(mRebuildCacheReceiver);
-                    mRebuildCacheReceiver = null;
-                }
-            } catch (IllegalArgumentException ignored) {
-
+            if (mRebuildCacheListener != null) {
+                RebuildCacheService.PROGRESS_CHANNEL.removeListener(mRebuildCacheListener);
             }
         }
 
@@ -0,0 +1,140 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.adapter;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import com.nextgis.maplibui.util.LookupIndex;
+
+import java.util.List;
+
+/**
+ * Autocomplete adapter over a {@link LookupIndex}. Filtering returns the best matches from the
+ * index instead of copying and scanning all aliases.
+ */
+public class LookupAdapter
+        extends BaseAdapter
+        implements Filterable
+{
+    public static final int MAX_SUGGESTIONS = 100;
+
+    protected final LayoutInflater mInflater;
+    protected final int            mResource;
+    protected final LookupIndex    mIndex;
+    protected       List<String>   mItems;
+    protected       Filter         mFilter;
+
+
+    public LookupAdapter(
+            Context context,
+            int resource,
+            LookupIndex index)
+    {
+        mInflater = LayoutInflater.from(context);
+        mResource = resource;
+        mIndex = index;
+        mItems = index.getDistinctAliases();
+    }
+
+
+    @Override
+    public int getCount()
+    {
+        return mItems.size();
+    }
+
+
+    @Override
+    public String getItem(int position)
+    {
+        return mItems.get(position);
+    }
+
+
+    @Override
+    public long getItemId(int position)
+    {
+        return position;
+    }
+
+
+    @Override
+    public View getView(
+            int position,
+            View convertView,
+            ViewGroup parent)
+    {
+        View view = convertView;
+        if (null == view) {
+            view = mInflater.inflate(mResource, parent, false);
+        }
+        ((TextView) view).setText(getItem(position));
+        return view;
+    }
+
+
+    @Override
+    public Filter getFilter()
+    {
+        if (null == mFilter) {
+            mFilter = new Filter()
+            {
+                @Override
+                protected FilterResults performFiltering(CharSequence constraint)
+                {
+                    FilterResults results = new FilterResults();
+                    List<String> items = null == constraint || constraint.length() == 0
+                            ? mIndex.getDistinctAliases()
+                            : mIndex.search(constraint, MAX_SUGGESTIONS);
+                    results.values = items;
+                    results.count = items.size();
+                    return results;
+                }
+
+
+                @Override
+                @SuppressWarnings("unchecked")
+                protected void publishResults(
+                        CharSequence constraint,
+                        FilterResults results)
+                {
+                    mItems = (List<String>) results.values;
+                    if (results.count > 0) {
+                        notifyDataSetChanged();
+                    } else {
+                        notifyDataSetInvalidated();
+                    }
+                }
+            };
+        }
+        return mFilter;
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.adapter.attributes;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.util.Log;
+
+import com.nextgis.maplib.api.IGISApplication;
+import com.nextgis.maplib.map.MapBase;
+import com.nextgis.maplib.map.MapContentProviderHelper;
+import com.nextgis.maplib.map.VectorLayer;
+import com.nextgis.maplibui.GISApplication;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.nextgis.maplib.util.Constants.FIELD_ID;
+import static com.nextgis.maplib.util.Constants.TAG;
+
+/**
+ * Full-text index of layer attributes kept in an FTS4 table next to the layer table. Every
+ * feature is one document with its formatted attribute values, the document id is the feature
+ * id. The index is filled in batches by feature id, so an interrupted build continues where it
+ * stopped.
+ * <p>
+ * Triggers on the layer table record ids of inserted, changed and deleted features in a queue
+ * table, so edits made while no index object exists are reindexed by the next build. An open
+ * index also rebuilds when the layer reports a change.
+ * <p>
+ * Queries match word prefixes, e.g. "riv" finds "River Road".
+ */
+public class AttributeSearchIndex
+{
+    protected static final int BATCH_SIZE = 500;
+
+    protected static final String INDEX_SUFFIX = "_fts";
+    protected static final String QUEUE_SUFFIX = "_fts_queue";
+    protected static final String[] TRIGGER_EVENTS = new String[] {"INSERT", "UPDATE", "DELETE"};
+
+    protected static final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    protected final AttributeTableModel mModel;
+    protected final String              mTable;
+    protected final String              mIndexTable;
+    protected final String              mQueueTable;
+    protected final ContentResolver     mResolver;
+    protected final ContentObserver     mObserver;
+
+    protected volatile boolean mIsReady;
+
+
+    protected AttributeSearchIndex(
+            Context context,
+            VectorLayer layer)
+    {
+        mModel = new AttributeTableModel(layer);
+        mTable = layer.getPath().getName();
+        mIndexTable = mTable + INDEX_SUFFIX;
+        mQueueTable = mTable + QUEUE_SUFFIX;
+
+        mObserver = new ContentObserver(null)
+        {
+            @Override
+            public void onChange(boolean selfChange)
+            {
+                update();
+            }
+        };
+        String authority = ((IGISApplication) context.getApplicationContext()).getAuthority();
+        Uri uri = Uri.parse("content://" + authority + "/" + mTable);
+        mResolver = context.getApplicationContext().getContentResolver();
+        mResolver.registerContentObserver(uri, true, mObserver);
+    }
+
+
+    /**
+     * Open the index of the layer and update it in background. Call {@link #close()} when it is
+     * not used anymore.
+     */
+    public static AttributeSearchIndex get(
+            Context context,
+            VectorLayer layer)
+    {
+        AttributeSearchIndex index = new AttributeSearchIndex(context, layer);
+        index.update();
+        return index;
+    }
+
+
+    /**
+     * Stop following layer changes. Changes are still queued by the triggers.
+     */
+    public void close()
+    {
+        mResolver.unregisterContentObserver(mObserver);
+    }
+
+
+    /**
+     * Drop the index tables of the layer table, call it when the layer is deleted
+     *
+     * @param map of the layer, nothing is dropped if it is null
+     */
+    public static void drop(
+            MapContentProviderHelper map,
+            String table)
+    {
+        if (null == map) {
+            Log.w(TAG, "Attributes index of " + table + " is not dropped, no map");
+            return;
+        }
+
+        try {
+            SQLiteDatabase db = map.getDatabase(false);
+            for (String event : TRIGGER_EVENTS) {
+                db.execSQL("DROP TRIGGER IF EXISTS " + quote(getTriggerName(table, event)));
+            }
+            db.execSQL("DROP TABLE IF EXISTS " + quote(table + QUEUE_SUFFIX));
+            db.execSQL("DROP TABLE IF EXISTS " + quote(table + INDEX_SUFFIX));
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Attributes index drop failed: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * @return true if all features are indexed and {@link #getSelection} can be used
+     */
+    public boolean isReady()
+    {
+        return mIsReady;
+    }
+
+
+    /**
+     * Layer table selection of the features matching the text. A number also matches the
+     * feature id.
+     */
+    public String getSelection(
+            String text,
+            List<String> args)
+    {
+        String selection = FIELD_ID + " IN (SELECT docid FROM " + quote(mIndexTable) + " WHERE "
+                + quote(mIndexTable) + " MATCH ?)";
+        args.add(toMatchQuery(text));
+        if (text.trim().matches("\\d+")) {
+            selection = "(" + FIELD_ID + " = ? OR " + selection + ")";
+            args.add(0, text.trim());
+        }
+        return selection;
+    }
+
+
+    /**
+     * Every word of the text becomes a quoted prefix term, so FTS operators typed by the user
+     * are searched literally
+     */
+    protected static String toMatchQuery(String text)
+    {
+        StringBuilder query = new StringBuilder();
+        for (String word : text.trim().split("\\s+")) {
+            word = word.replace("\"", "");
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append('"').append(word).append("*\"");
+        }
+        return query.toString();
+    }
+
+
+    protected static String quote(String name)
+    {
+        return "\"" + name + "\"";
+    }
+
+
+    protected static String getTriggerName(
+            String table,
+            String event)
+    {
+        return table + INDEX_SUFFIX + "_" + event.toLowerCase();
+    }
+
+
+    /**
+     * Schedule indexing of features missing in the index and of queued changes
+     */
+    public void update()
+    {
+        mExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    build();
+                } catch (SQLiteException e) {
+                    Log.e(TAG, "Attributes index build failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+
+    /**
+     * @return the map database or null if there is no map
+     */
+    protected SQLiteDatabase getDatabase()
+    {
+        MapBase map = GISApplication.getLoadedMap();
+        if (!(map instanceof MapContentProviderHelper)) {
+            return null;
+        }
+        return ((MapContentProviderHelper) map).getDatabase(false);
+    }
+
+
+    protected void build()
+    {
+        SQLiteDatabase db = getDatabase();
+        if (null == db) {
+            return;
+        }
+        if (0 == DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[] {mTable})) {
+            // the layer was deleted
+            return;
+        }
+
+        String[] triggers = new String[TRIGGER_EVENTS.length];
+        for (int i = 0; i < triggers.length; i++) {
+            triggers[i] = getTriggerName(mTable, TRIGGER_EVENTS[i]);
+        }
+        if (triggers.length != DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'trigger' AND name IN (?, ?, ?)",
+                triggers)) {
+            createTables(db);
+        }
+
+        // first fill, changes made meanwhile are queued
+        while (!Thread.currentThread().isInterrupted()) {
+            long last = DatabaseUtils.longForQuery(db,
+                    "SELECT IFNULL(MAX(docid), -1) FROM " + quote(mIndexTable), null);
+
+            int count;
+            db.beginTransaction();
+            try {
+                count = index(db, FIELD_ID + " > " + last, BATCH_SIZE);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            if (count < BATCH_SIZE) {
+                break;
+            }
+        }
+
+        while (!Thread.currentThread().isInterrupted()) {
+            if (reindexQueued(db) < BATCH_SIZE) {
+                mIsReady = true;
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Create the index and the change queue with its triggers. Without the triggers, e.g. when
+     * the layer table was recreated, the index may be stale, so it is filled anew.
+     */
+    protected void createTables(SQLiteDatabase db)
+    {
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP TABLE IF EXISTS " + quote(mIndexTable));
+            db.execSQL("DROP TABLE IF EXISTS " + quote(mQueueTable));
+            db.execSQL("CREATE VIRTUAL TABLE " + quote(mIndexTable)
+                    + " USING fts4(attributes, tokenize=unicode61)");
+            db.execSQL("CREATE TABLE " + quote(mQueueTable) + " (id INTEGER PRIMARY KEY)");
+            for (String event : TRIGGER_EVENTS) {
+                StringBuilder sql = new StringBuilder("CREATE TRIGGER IF NOT EXISTS ")
+                        .append(quote(getTriggerName(mTable, event)))
+                        .append(" AFTER ").append(event).append(" ON ").append(quote(mTable))
+                        .append(" BEGIN ");
+                // an update may change the id
+                if (!"INSERT".equals(event)) {
+                    sql.append(getQueueInsert("OLD"));
+                }
+                if (!"DELETE".equals(event)) {
+                    sql.append(getQueueInsert("NEW"));
+                }
+                db.execSQL(sql.append("END").toString());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+
+    protected String getQueueInsert(String row)
+    {
+        return "INSERT OR IGNORE INTO " + quote(mQueueTable) + " (id) VALUES (" + row + "."
+                + FIELD_ID + "); ";
+    }
+
+
+    /**
+     * Reindex a batch of queued features and remove them from the queue
+     *
+     * @return number of queued features handled
+     */
+    protected int reindexQueued(SQLiteDatabase db)
+    {
+        StringBuilder ids = new StringBuilder();
+        int count = 0;
+        Cursor cursor = db.rawQuery(
+                "SELECT id FROM " + quote(mQueueTable) + " LIMIT " + BATCH_SIZE, null);
+        try {
+            while (cursor.moveToNext()) {
+                if (count++ > 0) {
+                    ids.append(',');
+                }
+                ids.append(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        if (0 == count) {
+            return 0;
+        }
+
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + quote(mIndexTable) + " WHERE docid IN (" + ids + ")");
+            index(db, FIELD_ID + " IN (" + ids + ")", count);
+            db.execSQL("DELETE FROM " + quote(mQueueTable) + " WHERE id IN (" + ids + ")");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return count;
+    }
+
+
+    /**
+     * Index features in id order. Must be called in a transaction.
+     *
+     * @return number of features indexed
+     */
+    protected int index(
+            SQLiteDatabase db,
+            String selection,
+            int limit)
+    {
+        Cursor cursor = db.query(quote(mTable), mModel.mColumns, selection, null, null, null,
+                FIELD_ID + " ASC", Integer.toString(limit));
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO " + quote(mIndexTable) + " (docid, attributes) VALUES (?, ?)");
+        StringBuilder attributes = new StringBuilder();
+        int count = 0;
+        try {
+            while (cursor.moveToNext()) {
+                attributes.setLength(0);
+                for (int j = 1; j < mModel.mColumns.length; j++) {
+                    String value = mModel.formatValue(cursor, j, mModel.mTypes[j]);
+                    if (null != value) {
+                        attributes.append(value).append(' ');
+                    }
+                }
+                insert.bindLong(1, cursor.getLong(0));
+                insert.bindString(2, attributes.toString());
+                insert.executeInsert();
+                count++;
+            }
+        } finally {
+            cursor.close();
+            insert.close();
+        }
+        return count;
+    }
+}
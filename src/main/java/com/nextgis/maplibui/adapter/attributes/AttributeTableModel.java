@@ -0,0 +1,766 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.adapter.attributes;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.Gravity;
+
+import com.nextgis.maplib.datasource.Field;
+import com.nextgis.maplib.map.MapContentProviderHelper;
+import com.nextgis.maplib.map.VectorLayer;
+import com.nextgis.maplibui.GISApplication;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.nextgis.maplib.util.Constants.FIELD_ID;
+import static com.nextgis.maplib.util.Constants.TAG;
+import static com.nextgis.maplib.util.GeoConstants.FTDate;
+import static com.nextgis.maplib.util.GeoConstants.FTDateTime;
+import static com.nextgis.maplib.util.GeoConstants.FTString;
+import static com.nextgis.maplib.util.GeoConstants.FTTime;
+
+/**
+ * Windowed attribute source for the attribute table. Rows are read from the layer table by
+ * pages with LIMIT/OFFSET, geometry is never read, and only the last {@link #MAX_PAGES} pages
+ * are kept in memory.
+ * <p>
+ * Pages are read on a background thread. {@link #getId(int)} and {@link #getValue(int, int)}
+ * return placeholders for rows which are not read yet and the {@link OnPageLoadListener} is told
+ * when they arrive.
+ * <p>
+ * Search, column filters and sorting are applied by the query, so a page is always read in the
+ * final order. Large layers get an index on the sorted or filtered column when it is used.
+ */
+public class AttributeTableModel
+{
+    public static final int PAGE_SIZE = 100;
+    public static final int MAX_PAGES = 8;
+    /**
+     * Column indexes are created for layers with at least this number of features
+     */
+    public static final int INDEX_MIN_ROWS = 5000;
+    /**
+     * Bounds of {@link ColumnFilter#timeRange(String, String)}
+     */
+    public static final String TIME_PATTERN = "HH:mm:ss";
+
+    protected static final String INDEX_SUFFIX = "_idx";
+
+    protected final VectorLayer mLayer;
+    protected final String      mTable;
+    protected final List<Field> mFields;
+    protected final String[]    mColumns;
+    protected final int[]       mTypes;
+
+    protected String   mSearch;
+    protected String[] mSearchArgs;
+    protected int      mSortColumn;
+    protected boolean  mSortAscending = true;
+    protected int      mRowCount;
+
+    protected final Map<Integer, ColumnFilter> mFilters = new TreeMap<>();
+    protected final Set<String>                mIndexed = new HashSet<>();
+
+    protected String   mSelection;
+    protected String[] mSelectionArgs;
+    protected String   mOrderBy = FIELD_ID + " ASC";
+
+    protected final Map<Integer, Page> mPages = new LinkedHashMap<Integer, Page>(MAX_PAGES, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest)
+        {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    protected final Set<Integer> mPending = new HashSet<>();
+
+    protected       ExecutorService    mPrefetch;
+    protected       boolean            mIsClosed;
+    protected       int                mGeneration;
+    protected       OnPageLoadListener mListener;
+
+    protected final DateFormat mDateFormat     = DateFormat.getDateInstance();
+    protected final DateFormat mTimeFormat     = DateFormat.getTimeInstance();
+    protected final DateFormat mDateTimeFormat = DateFormat.getDateTimeInstance();
+
+
+    public interface OnPageLoadListener
+    {
+        /**
+         * Called on a background thread when rows which got placeholders are read
+         */
+        void onPageLoaded(
+                int firstRow,
+                int rowCount);
+    }
+
+
+    public AttributeTableModel(VectorLayer layer)
+    {
+        mLayer = layer;
+        mTable = layer.getPath().getName();
+        mFields = layer.getFields();
+
+        mColumns = new String[mFields.size() + 1];
+        mTypes = new int[mColumns.length];
+        mColumns[0] = FIELD_ID;
+        mTypes[0] = Integer.MIN_VALUE;
+        for (int i = 0; i < mFields.size(); i++) {
+            mColumns[i + 1] = mFields.get(i).getName();
+            mTypes[i + 1] = mFields.get(i).getType();
+        }
+    }
+
+
+    public synchronized void setOnPageLoadListener(OnPageLoadListener listener)
+    {
+        mListener = listener;
+    }
+
+
+    public VectorLayer getLayer()
+    {
+        return mLayer;
+    }
+
+
+    public List<Field> getFields()
+    {
+        return mFields;
+    }
+
+
+    public int getColumnCount()
+    {
+        return mColumns.length;
+    }
+
+
+    public synchronized int getRowCount()
+    {
+        return mRowCount;
+    }
+
+
+    public String[] getColumnNames()
+    {
+        String[] names = new String[mColumns.length];
+        names[0] = FIELD_ID;
+        for (int i = 0; i < mFields.size(); i++) {
+            names[i + 1] = mFields.get(i).getAlias();
+        }
+        return names;
+    }
+
+
+    public int[] getColumnAlignment()
+    {
+        int[] alignment = new int[mColumns.length];
+        for (int i = 0; i < mFields.size(); i++) {
+            alignment[i + 1] = mFields.get(i).getType() == FTString ? Gravity.START : Gravity.END;
+        }
+        return alignment;
+    }
+
+
+    public int getColumnType(int column)
+    {
+        return mTypes[column];
+    }
+
+
+    protected SQLiteDatabase getDatabase()
+    {
+        MapContentProviderHelper map = (MapContentProviderHelper) GISApplication.getLoadedMap();
+        return map.getDatabase(true);
+    }
+
+
+    /**
+     * Set search selection, both may be null. Call {@link #reload()} to apply.
+     */
+    public synchronized void setSearch(
+            String selection,
+            String[] selectionArgs)
+    {
+        mSearch = selection;
+        mSearchArgs = selectionArgs;
+    }
+
+
+    /**
+     * Order rows by the column, column 0 is the feature id. Call {@link #reload()} to apply.
+     */
+    public synchronized void setSort(
+            int column,
+            boolean ascending)
+    {
+        mSortColumn = column;
+        mSortAscending = ascending;
+    }
+
+
+    public synchronized int getSortColumn()
+    {
+        return mSortColumn;
+    }
+
+
+    public synchronized boolean isSortAscending()
+    {
+        return mSortAscending;
+    }
+
+
+    /**
+     * Set the column filter, null removes it. Call {@link #reload()} to apply.
+     */
+    public synchronized void setFilter(
+            int column,
+            ColumnFilter filter)
+    {
+        if (null == filter) {
+            mFilters.remove(column);
+        } else {
+            mFilters.put(column, filter);
+        }
+    }
+
+
+    public synchronized ColumnFilter getFilter(int column)
+    {
+        return mFilters.get(column);
+    }
+
+
+    public synchronized void clearFilters()
+    {
+        mFilters.clear();
+    }
+
+
+    /**
+     * Must be called with the lock held
+     */
+    protected void buildQuery()
+    {
+        StringBuilder selection = new StringBuilder();
+        List<String> args = new ArrayList<>();
+        if (!TextUtils.isEmpty(mSearch)) {
+            selection.append("(").append(mSearch).append(")");
+            if (null != mSearchArgs) {
+                for (String arg : mSearchArgs) {
+                    args.add(arg);
+                }
+            }
+        }
+        for (Map.Entry<Integer, ColumnFilter> entry : mFilters.entrySet()) {
+            if (selection.length() > 0) {
+                selection.append(" AND ");
+            }
+            selection.append(entry.getValue().getSelection(quote(mColumns[entry.getKey()]), args));
+        }
+
+        mSelection = selection.length() > 0 ? selection.toString() : null;
+        mSelectionArgs = args.isEmpty() ? null : args.toArray(new String[0]);
+        mOrderBy = quote(mColumns[mSortColumn]) + (mSortAscending ? " ASC" : " DESC");
+        if (mSortColumn != 0) {
+            // rows with equal values keep a stable order between pages
+            mOrderBy += ", " + FIELD_ID + " ASC";
+        }
+    }
+
+
+    protected static String quote(String column)
+    {
+        return "\"" + column + "\"";
+    }
+
+
+    /**
+     * Count rows and drop cached pages. Run off the UI thread.
+     */
+    public void reload()
+    {
+        String selection;
+        String[] args;
+        List<Integer> columns = new ArrayList<>();
+        synchronized (this) {
+            mPages.clear();
+            mPending.clear();
+            mGeneration++;
+            buildQuery();
+            selection = mSelection;
+            args = mSelectionArgs;
+            if (mSortColumn != 0) {
+                columns.add(mSortColumn);
+            }
+            for (Map.Entry<Integer, ColumnFilter> entry : mFilters.entrySet()) {
+                // the time of day is computed, an index does not help
+                if (!entry.getValue().isTime()) {
+                    columns.add(entry.getKey());
+                }
+            }
+        }
+
+        createIndexes(columns);
+
+        int count;
+        try {
+            count = (int) DatabaseUtils.queryNumEntries(getDatabase(), mTable, selection, args);
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Attributes count failed: " + e.getMessage());
+            count = 0;
+        }
+
+        synchronized (this) {
+            mRowCount = count;
+        }
+        if (count > 0 && null != loadPage(0)) {
+            prefetch(1);
+        }
+    }
+
+
+    /**
+     * Index the columns of a large layer, so sorting and range filters do not scan and sort the
+     * whole table for every page
+     */
+    protected void createIndexes(List<Integer> columns)
+    {
+        List<String> missing = new ArrayList<>();
+        synchronized (this) {
+            for (int column : columns) {
+                if (column != 0 && !mIndexed.contains(mColumns[column])) {
+                    missing.add(mColumns[column]);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        try {
+            MapContentProviderHelper map = (MapContentProviderHelper) GISApplication.getLoadedMap();
+            SQLiteDatabase db = map.getDatabase(false);
+            boolean isLarge = DatabaseUtils.queryNumEntries(db, mTable) >= INDEX_MIN_ROWS;
+            for (String column : missing) {
+                if (isLarge) {
+                    db.execSQL("CREATE INDEX IF NOT EXISTS " + quote(mTable + "_" + column + INDEX_SUFFIX)
+                            + " ON " + quote(mTable) + " (" + quote(column) + ")");
+                }
+                synchronized (this) {
+                    mIndexed.add(column);
+                }
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Attributes index creation failed: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Drop column indexes created for the layer table, call it when the layer is deleted
+     *
+     * @param map of the layer, nothing is dropped if it is null
+     */
+    public static void dropIndexes(
+            MapContentProviderHelper map,
+            String table)
+    {
+        if (null == map) {
+            Log.w(TAG, "Attributes indexes of " + table + " are not dropped, no map");
+            return;
+        }
+
+        try {
+            SQLiteDatabase db = map.getDatabase(false);
+            List<String> indexes = new ArrayList<>();
+            Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = ?",
+                    new String[] {table});
+            try {
+                while (cursor.moveToNext()) {
+                    String name = cursor.getString(0);
+                    if (name.startsWith(table + "_") && name.endsWith(INDEX_SUFFIX)) {
+                        indexes.add(name);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            for (String index : indexes) {
+                db.execSQL("DROP INDEX IF EXISTS " + quote(index));
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Attributes index drop failed: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Drop cached values of the feature, e.g. after it was edited
+     */
+    public synchronized void invalidate(long featureId)
+    {
+        for (Page page : mPages.values()) {
+            for (long id : page.mIds) {
+                if (id == featureId) {
+                    mPages.clear();
+                    mPending.clear();
+                    mGeneration++;
+                    return;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return the feature id or -1 if the row is not read yet
+     */
+    public long getId(int row)
+    {
+        Page page = getPage(row / PAGE_SIZE);
+        int index = row % PAGE_SIZE;
+        return null == page || index >= page.mIds.length ? -1 : page.mIds[index];
+    }
+
+
+    /**
+     * @return the formatted value, null if it is empty or the row is not read yet
+     */
+    public String getValue(
+            int row,
+            int column)
+    {
+        Page page = getPage(row / PAGE_SIZE);
+        int index = row % PAGE_SIZE;
+        return null == page || index >= page.mIds.length ? null : page.mValues[index][column];
+    }
+
+
+    /**
+     * Return the cached page or null, which is read in background then. Neighbouring pages are
+     * prefetched, so scrolling mostly finds them cached.
+     */
+    protected Page getPage(int number)
+    {
+        Page page;
+        synchronized (this) {
+            page = mPages.get(number);
+        }
+
+        prefetch(number);
+        prefetch(number + 1);
+        prefetch(number - 1);
+        return page;
+    }
+
+
+    protected void prefetch(final int number)
+    {
+        final int generation;
+        synchronized (this) {
+            if (number < 0 || number * PAGE_SIZE >= mRowCount || mIsClosed
+                    || mPages.containsKey(number) || !mPending.add(number)) {
+                return;
+            }
+            if (null == mPrefetch) {
+                mPrefetch = Executors.newSingleThreadExecutor();
+            }
+            generation = mGeneration;
+        }
+
+        mPrefetch.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (AttributeTableModel.this) {
+                    // pending pages of an old query are dropped with the query
+                    if (generation != mGeneration) {
+                        return;
+                    }
+                    if (mPages.containsKey(number)) {
+                        mPending.remove(number);
+                        return;
+                    }
+                }
+
+                Page page = loadPage(number);
+                OnPageLoadListener listener;
+                synchronized (AttributeTableModel.this) {
+                    if (generation != mGeneration) {
+                        return;
+                    }
+                    mPending.remove(number);
+                    listener = mListener;
+                }
+                if (null != page && null != listener) {
+                    listener.onPageLoaded(number * PAGE_SIZE, page.mIds.length);
+                }
+            }
+        });
+    }
+
+
+    protected Page loadPage(int number)
+    {
+        String selection, orderBy;
+        String[] args;
+        int generation;
+        synchronized (this) {
+            selection = mSelection;
+            args = mSelectionArgs;
+            orderBy = mOrderBy;
+            generation = mGeneration;
+        }
+
+        String limit = number * PAGE_SIZE + "," + PAGE_SIZE;
+        Cursor cursor;
+        try {
+            cursor = getDatabase().query(mTable, mColumns, selection, args, null, null, orderBy, limit);
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Attributes page query failed: " + e.getMessage());
+            return null;
+        }
+
+        Page page;
+        try {
+            int count = cursor.getCount();
+            page = new Page(count, mColumns.length);
+            for (int i = 0; i < count && cursor.moveToPosition(i); i++) {
+                page.mIds[i] = cursor.getLong(0);
+                page.mValues[i][0] = Long.toString(page.mIds[i]);
+                for (int j = 1; j < mColumns.length; j++) {
+                    page.mValues[i][j] = formatValue(cursor, j, mTypes[j]);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (this) {
+            // the query was changed while the page was read
+            if (generation == mGeneration) {
+                mPages.put(number, page);
+            }
+        }
+        return page;
+    }
+
+
+    protected String formatValue(
+            Cursor cursor,
+            int column,
+            int type)
+    {
+        if (cursor.isNull(column)) {
+            return null;
+        }
+
+        switch (type) {
+            case FTDate:
+                return mDateFormat.format(new Date(cursor.getLong(column)));
+            case FTTime:
+                return mTimeFormat.format(new Date(cursor.getLong(column)));
+            case FTDateTime:
+                return mDateTimeFormat.format(new Date(cursor.getLong(column)));
+            default:
+                return cursor.getString(column);
+        }
+    }
+
+
+    /**
+     * Selection matching the text in any column. Date columns are matched by the stored value.
+     */
+    public String getSearchSelection(
+            String text,
+            List<String> args)
+    {
+        String escaped = text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        StringBuilder selection = new StringBuilder("(");
+        for (int i = 0; i < mColumns.length; i++) {
+            if (i > 0) {
+                selection.append(" OR ");
+            }
+            selection.append(quote(mColumns[i])).append(" LIKE ? ESCAPE '\\'");
+            args.add("%" + escaped + "%");
+        }
+        return selection.append(")").toString();
+    }
+
+
+    public synchronized void close()
+    {
+        mIsClosed = true;
+        mListener = null;
+        if (null != mPrefetch) {
+            mPrefetch.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Condition on one column. Values are bound as query arguments and converted by the column
+     * affinity, so numbers and date milliseconds may be passed as strings.
+     */
+    public static class ColumnFilter
+    {
+        protected final String  mValue;
+        protected final String  mFrom;
+        protected final String  mTo;
+        protected final boolean mIsTime;
+
+
+        protected ColumnFilter(
+                String value,
+                String from,
+                String to,
+                boolean isTime)
+        {
+            mValue = value;
+            mFrom = from;
+            mTo = to;
+            mIsTime = isTime;
+        }
+
+
+        /**
+         * Case insensitive equality
+         */
+        public static ColumnFilter equalTo(String value)
+        {
+            return new ColumnFilter(value, null, null, false);
+        }
+
+
+        /**
+         * Inclusive range, one of the bounds may be null
+         */
+        public static ColumnFilter range(
+                String from,
+                String to)
+        {
+            return new ColumnFilter(null, from, to, false);
+        }
+
+
+        /**
+         * Inclusive range of the local time of day, bounds are in {@link #TIME_PATTERN} format.
+         * The date part of time values is ignored.
+         */
+        public static ColumnFilter timeRange(
+                String from,
+                String to)
+        {
+            return new ColumnFilter(null, from, to, true);
+        }
+
+
+        public String getValue()
+        {
+            return mValue;
+        }
+
+
+        public String getFrom()
+        {
+            return mFrom;
+        }
+
+
+        public String getTo()
+        {
+            return mTo;
+        }
+
+
+        public boolean isTime()
+        {
+            return mIsTime;
+        }
+
+
+        protected String getSelection(
+                String column,
+                List<String> args)
+        {
+            if (null != mValue) {
+                args.add(mValue);
+                return column + " = ? COLLATE NOCASE";
+            }
+            if (mIsTime) {
+                column = "strftime('%H:%M:%S', " + column + " / 1000, 'unixepoch', 'localtime')";
+            }
+            if (null != mFrom && null != mTo) {
+                args.add(mFrom);
+                args.add(mTo);
+                return column + " BETWEEN ? AND ?";
+            }
+            if (null != mFrom) {
+                args.add(mFrom);
+                return column + " >= ?";
+            }
+            if (null != mTo) {
+                args.add(mTo);
+                return column + " <= ?";
+            }
+            return "1";
+        }
+    }
+
+
+    protected static class Page
+    {
+        final long[]     mIds;
+        final String[][] mValues;
+
+
+        Page(
+                int rows,
+                int columns)
+        {
+            mIds = new long[rows];
+            mValues = new String[rows][columns];
+        }
+    }
+
+}
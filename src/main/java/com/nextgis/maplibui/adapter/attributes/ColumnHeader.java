@@ -27,9 +27,35 @@ package com.nextgis.maplibui.adapter.attributes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.evrencoskun.tableview.sort.SortState;
+
 
 public class ColumnHeader extends Cell {
+    @NonNull
+    private SortState mSortState = SortState.UNSORTED;
+    private boolean mFiltered;
+
     public ColumnHeader(@NonNull String id, @Nullable String data) {
         super(id, data);
     }
+
+    /**
+     * Sort state of the query, the table view itself does not sort paged rows
+     */
+    @NonNull
+    public SortState getSortState() {
+        return mSortState;
+    }
+
+    public void setSortState(@NonNull SortState sortState) {
+        mSortState = sortState;
+    }
+
+    public boolean isFiltered() {
+        return mFiltered;
+    }
+
+    public void setFiltered(boolean filtered) {
+        mFiltered = filtered;
+    }
 }
@@ -26,6 +26,7 @@ import android.content.Context;
 import android.view.View;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 import com.evrencoskun.tableview.TableView;
 import com.evrencoskun.tableview.listener.ITableViewListener;
@@ -43,16 +44,34 @@ public class TableViewListener implements ITableViewListener {
 
     final ICellCLickListener onCellClickListener;
     final ICellCLickListener onColumnHeadClickListener;
+    @Nullable
+    final IColumnQueryListener onColumnQueryListener;
 
 
     public TableViewListener(@NonNull final TableView tableView,
                              final ICellCLickListener onClickListener,
                              final ICellCLickListener onColumnHeadClickListener ){
+        this(tableView, onClickListener, onColumnHeadClickListener, null);
+    }
+
+    /**
+     * @param onColumnQueryListener : Sorts and filters columns instead of the TableView, which
+     *                              sorts loaded rows only.
+     */
+    public TableViewListener(@NonNull final TableView tableView,
+                             final ICellCLickListener onClickListener,
+                             final ICellCLickListener onColumnHeadClickListener,
+                             @Nullable final IColumnQueryListener onColumnQueryListener){
         this.mContext = tableView.getContext();
         this.mTableView = tableView;
         this.onCellClickListener = onClickListener;
         this.onColumnHeadClickListener = onColumnHeadClickListener;
+        this.onColumnQueryListener = onColumnQueryListener;
+    }
 
+    @Nullable
+    public IColumnQueryListener getColumnQueryListener() {
+        return onColumnQueryListener;
     }
 
     /**
@@ -132,7 +151,7 @@ public class TableViewListener implements ITableViewListener {
             column) {
         if (columnHeaderView instanceof ColumnHeaderViewHolder) {
             ColumnHeaderLongPressPopup popup = new ColumnHeaderLongPressPopup(
-                    (ColumnHeaderViewHolder) columnHeaderView, mTableView);
+                    (ColumnHeaderViewHolder) columnHeaderView, mTableView, onColumnQueryListener);
             popup.show();
         }
     }
@@ -28,8 +28,10 @@ import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 
 
+import com.evrencoskun.tableview.sort.SortState;
 import com.nextgis.maplibui.R;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -43,6 +45,8 @@ public class TableViewModel {
     private final String [] data0row;
     private final  String [] data0col;
 
+    private final AttributeTableModel mModel;
+
 
     // Drawables
     @DrawableRes
@@ -58,10 +62,91 @@ public class TableViewModel {
         this.data = data;
         this.data0row = data0row;
         this.data0col = data0col;
+        mModel = null;
+
+        mBallDrawable = R.drawable.ball;
+    }
+
+    /**
+     * Model which reads cells from the attribute source when they are bound, so only visible
+     * rows are loaded.
+     */
+    public TableViewModel(@NonNull final AttributeTableModel model) {
+        COLUMN_SIZE = model.getColumnCount();
+        ROW_SIZE = model.getRowCount();
+        this.data = null;
+        this.data0row = model.getColumnNames();
+        this.data0col = null;
+        mModel = model;
 
         mBallDrawable = R.drawable.ball;
     }
 
+    @NonNull
+    private List<RowHeader> getPagedRowHeaderList() {
+        return new AbstractList<RowHeader>() {
+            @Override
+            public RowHeader get(final int row) {
+                return new RowHeader(String.valueOf(row), "") {
+                    @NonNull
+                    @Override
+                    public String getId() {
+                        return String.valueOf(row);
+                    }
+
+                    @Override
+                    public String getData() {
+                        return getRowId(row);
+                    }
+
+                    @Override
+                    public Object getContent() {
+                        return getData();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ROW_SIZE;
+            }
+        };
+    }
+
+    @NonNull
+    private List<List<Cell>> getPagedCellList() {
+        return new AbstractList<List<Cell>>() {
+            @Override
+            public List<Cell> get(final int row) {
+                return new AbstractList<Cell>() {
+                    @Override
+                    public Cell get(int column) {
+                        return new Cell(getRowId(row), mModel.getValue(row, column));
+                    }
+
+                    @Override
+                    public int size() {
+                        return COLUMN_SIZE;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ROW_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Feature id of the row or an empty placeholder until the row is read
+     */
+    @NonNull
+    private String getRowId(int row) {
+        long id = mModel.getId(row);
+        return id < 0 ? "" : String.valueOf(id);
+    }
+
     @NonNull
     private List<RowHeader> getSimpleRowHeaderList() {
         List<RowHeader> list = new ArrayList<>();
@@ -82,6 +167,11 @@ public class TableViewModel {
 
         for (int i = 0; i < COLUMN_SIZE; i++) {
             ColumnHeader header = new ColumnHeader(String.valueOf(i), data0row[i]);
+            if (mModel != null) {
+                if (mModel.getSortColumn() == i)
+                    header.setSortState(mModel.isSortAscending() ? SortState.ASCENDING : SortState.DESCENDING);
+                header.setFiltered(mModel.getFilter(i) != null);
+            }
             list.add(header);
         }
         return list;
@@ -113,11 +203,15 @@ public class TableViewModel {
 
     @NonNull
     final public List<List<Cell>> getCellList() {
+        if (mModel != null)
+            return getPagedCellList();
         return getCellListForSortingTest();
     }
 
     @NonNull
     public List<RowHeader> getRowHeaderList() {
+        if (mModel != null)
+            return getPagedRowHeaderList();
         return getSimpleRowHeaderList();
     }
 
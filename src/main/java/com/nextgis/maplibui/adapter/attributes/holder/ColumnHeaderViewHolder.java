@@ -24,6 +24,7 @@
 
 package com.nextgis.maplibui.adapter.attributes.holder;
 
+import android.graphics.Typeface;
 import android.util.Log;
 import android.view.View;
 import android.widget.ImageButton;
@@ -38,6 +39,8 @@ import com.evrencoskun.tableview.adapter.recyclerview.holder.AbstractSorterViewH
 import com.evrencoskun.tableview.sort.SortState;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.adapter.attributes.ColumnHeader;
+import com.nextgis.maplibui.adapter.attributes.IColumnQueryListener;
+import com.nextgis.maplibui.adapter.attributes.TableViewListener;
 
 
 public class ColumnHeaderViewHolder extends AbstractSorterViewHolder {
@@ -52,6 +55,8 @@ public class ColumnHeaderViewHolder extends AbstractSorterViewHolder {
     private final ImageButton column_header_sortButton;
     @Nullable
     private final ITableView tableView;
+    @Nullable
+    private ColumnHeader mColumnHeader;
 
     public ColumnHeaderViewHolder(@NonNull View itemView, @Nullable ITableView tableView) {
         super(itemView);
@@ -68,7 +73,11 @@ public class ColumnHeaderViewHolder extends AbstractSorterViewHolder {
      * This method is calling from onBindColumnHeaderHolder on TableViewAdapter
      */
     public void setColumnHeader(@Nullable ColumnHeader columnHeader) {
+        mColumnHeader = columnHeader;
         column_header_textview.setText(columnHeader.getData());
+        column_header_textview.setTypeface(null, columnHeader.isFiltered() ? Typeface.BOLD : Typeface.NORMAL);
+        if (getQueryListener() != null)
+            controlSortState(columnHeader.getSortState());
 
         // If your TableView should have auto resize for cells & columns.
         // Then you should consider the below lines. Otherwise, you can remove them.
@@ -82,6 +91,13 @@ public class ColumnHeaderViewHolder extends AbstractSorterViewHolder {
     private final View.OnClickListener mSortButtonClickListener = new View.OnClickListener() {
         @Override
         public void onClick(View view) {
+            IColumnQueryListener queryListener = getQueryListener();
+            if (queryListener != null) {
+                queryListener.onSortColumn(getAdapterPosition(),
+                        getQuerySortState() == SortState.ASCENDING ? SortState.DESCENDING : SortState.ASCENDING);
+                return;
+            }
+
             if (getSortState() == SortState.ASCENDING) {
                 tableView.sortColumn(getAdapterPosition(), SortState.DESCENDING);
             } else if (getSortState() == SortState.DESCENDING) {
@@ -94,6 +110,25 @@ public class ColumnHeaderViewHolder extends AbstractSorterViewHolder {
         }
     };
 
+    /**
+     * Sort state of the attribute query, if columns are sorted by it
+     */
+    @NonNull
+    public SortState getQuerySortState() {
+        return mColumnHeader != null ? mColumnHeader.getSortState() : SortState.UNSORTED;
+    }
+
+    public boolean isFiltered() {
+        return mColumnHeader != null && mColumnHeader.isFiltered();
+    }
+
+    @Nullable
+    private IColumnQueryListener getQueryListener() {
+        if (tableView != null && tableView.getTableViewListener() instanceof TableViewListener)
+            return ((TableViewListener) tableView.getTableViewListener()).getColumnQueryListener();
+        return null;
+    }
+
     @Override
     public void onSortingStatusChanged(@NonNull SortState sortState) {
 //        Log.e(LOG_TAG, " + onSortingStatusChanged : x:  " + getAdapterPosition() + " old state "
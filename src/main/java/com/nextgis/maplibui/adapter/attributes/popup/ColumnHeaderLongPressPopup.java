@@ -30,10 +30,12 @@ import android.view.MenuItem;
 import android.widget.PopupMenu;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.evrencoskun.tableview.TableView;
 import com.evrencoskun.tableview.sort.SortState;
 import com.nextgis.maplibui.R;
+import com.nextgis.maplibui.adapter.attributes.IColumnQueryListener;
 import com.nextgis.maplibui.adapter.attributes.holder.ColumnHeaderViewHolder;
 
 public class ColumnHeaderLongPressPopup extends PopupMenu implements PopupMenu
@@ -41,6 +43,8 @@ public class ColumnHeaderLongPressPopup extends PopupMenu implements PopupMenu
     // Menu Item constants
     private static final int ASCENDING = 1;
     private static final int DESCENDING = 2;
+    private static final int FILTER = 3;
+    private static final int CLEAR_FILTER = 4;
 //    private static final int UNSORTED = 3;
 //    private static final int HIDE_ROW = 3;
 //    private static final int SHOW_ROW = 4;
@@ -48,11 +52,22 @@ public class ColumnHeaderLongPressPopup extends PopupMenu implements PopupMenu
 
     @NonNull
     private final TableView mTableView;
+    @NonNull
+    private final ColumnHeaderViewHolder mViewHolder;
+    @Nullable
+    private final IColumnQueryListener mQueryListener;
     private final int mXPosition;
 
     public ColumnHeaderLongPressPopup(@NonNull ColumnHeaderViewHolder viewHolder, @NonNull TableView tableView) {
+        this(viewHolder, tableView, null);
+    }
+
+    public ColumnHeaderLongPressPopup(@NonNull ColumnHeaderViewHolder viewHolder, @NonNull TableView tableView,
+                                      @Nullable IColumnQueryListener queryListener) {
         super(viewHolder.itemView.getContext(), viewHolder.itemView);
         this.mTableView = tableView;
+        this.mViewHolder = viewHolder;
+        this.mQueryListener = queryListener;
         this.mXPosition = viewHolder.getAdapterPosition();
 
         initialize();
@@ -69,6 +84,10 @@ public class ColumnHeaderLongPressPopup extends PopupMenu implements PopupMenu
         Context context = mTableView.getContext();
         this.getMenu().add(Menu.NONE, ASCENDING, 0, context.getString(R.string.sort_ascending));
         this.getMenu().add(Menu.NONE, DESCENDING, 1, context.getString(R.string.sort_descending));
+        if (mQueryListener != null) {
+            this.getMenu().add(Menu.NONE, FILTER, 2, context.getString(R.string.filter_column));
+            this.getMenu().add(Menu.NONE, CLEAR_FILTER, 3, context.getString(R.string.filter_clear));
+        }
 //        this.getMenu().add(Menu.NONE, UNSORTED, 2, context.getString(R.string.sort_unsorted));
 //        this.getMenu().add(Menu.NONE, HIDE_ROW, 2, context.getString(R.string.hiding_row_sample));
 //        this.getMenu().add(Menu.NONE, SHOW_ROW, 3, context.getString(R.string.showing_row_sample));
@@ -80,7 +99,8 @@ public class ColumnHeaderLongPressPopup extends PopupMenu implements PopupMenu
 
     private void changeMenuItemVisibility() {
         // Determine which one shouldn't be visible
-        SortState sortState = mTableView.getSortingStatus(mXPosition);
+        SortState sortState = mQueryListener != null ? mViewHolder.getQuerySortState()
+                : mTableView.getSortingStatus(mXPosition);
         if (sortState == SortState.UNSORTED) {
             getMenu().getItem(1).setVisible(true);
             getMenu().getItem(0).setVisible(true);
@@ -93,6 +113,10 @@ public class ColumnHeaderLongPressPopup extends PopupMenu implements PopupMenu
             // Hide ASCENDING menu item
             getMenu().getItem(0).setVisible(false);
         }
+
+        MenuItem clearFilter = getMenu().findItem(CLEAR_FILTER);
+        if (clearFilter != null)
+            clearFilter.setVisible(mViewHolder.isFiltered());
     }
 
     @Override
@@ -101,11 +125,23 @@ public class ColumnHeaderLongPressPopup extends PopupMenu implements PopupMenu
 
         switch (menuItem.getItemId()) {
             case ASCENDING:
-                mTableView.sortColumn(mXPosition, SortState.ASCENDING);
+                if (mQueryListener != null)
+                    mQueryListener.onSortColumn(mXPosition, SortState.ASCENDING);
+                else
+                    mTableView.sortColumn(mXPosition, SortState.ASCENDING);
 
                 break;
             case DESCENDING:
-                mTableView.sortColumn(mXPosition, SortState.DESCENDING);
+                if (mQueryListener != null)
+                    mQueryListener.onSortColumn(mXPosition, SortState.DESCENDING);
+                else
+                    mTableView.sortColumn(mXPosition, SortState.DESCENDING);
+                break;
+            case FILTER:
+                mQueryListener.onFilterColumn(mXPosition);
+                break;
+            case CLEAR_FILTER:
+                mQueryListener.onClearFilter(mXPosition);
                 break;
 //            case UNSORTED:
 //                mTableView.sortColumn(mXPosition, SortState.UNSORTED);
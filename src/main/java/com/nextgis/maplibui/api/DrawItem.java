@@ -24,17 +24,18 @@ package com.nextgis.maplibui.api;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PointF;
 
 import com.nextgis.maplib.datasource.GeoEnvelope;
-import com.nextgis.maplib.datasource.GeoPoint;
 import com.nextgis.maplib.map.VectorLayer;
 import com.nextgis.maplib.util.Constants;
 import com.nextgis.maplib.util.GeoConstants;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 public class DrawItem {
@@ -55,17 +56,40 @@ public class DrawItem {
     private static VertexStyle mEdgeStyle, mVertexStyle;
     private static EditStyle mLineStyle, mPolygonStyle;
 
+    // reused for every item drawn through a pan or zoom matrix
+    protected static Path mTransformedPath;
+    protected static float[] mTransformedPoints;
+    protected static float[] mTransformedPoint;
+
     protected List<float[]> mDrawItemsVertex;
     protected List<float[]> mDrawItemsEdge;
     protected int mSelectedRing = 0, mSelectedPoint = 0;
 
+    // ring paths are kept between frames and rebuilt only for changed rings
+    protected List<Path> mPaths;
+    protected Path mPathFill;
+    protected BitSet mDirtyPaths, mDirtyEdges;
+    protected boolean mPathsClosed, mEdgesClosed, mHasEdges;
+
+    // hit tests, rebuilt on the next tap after points are changed
+    protected VertexIndex mVertexIndex, mEdgeIndex;
+
     public DrawItem() {
         mDrawItemsVertex = new ArrayList<>();
         mDrawItemsEdge = new ArrayList<>();
+        mPaths = new ArrayList<>();
+        mPathFill = new Path();
+        mDirtyPaths = new BitSet();
+        mDirtyEdges = new BitSet();
+        mVertexIndex = new VertexIndex();
+        mEdgeIndex = new VertexIndex();
 
         if (mPaint == null) {
             mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
             mPaint.setStrokeCap(Paint.Cap.ROUND);
+            mTransformedPath = new Path();
+            mTransformedPoints = new float[0];
+            mTransformedPoint = new float[2];
         }
     }
 
@@ -105,6 +129,25 @@ public class DrawItem {
         }
     }
 
+    /**
+     * Set the matrix to draw items as if they were panned by the offset
+     */
+    public static void setPanMatrix(Matrix matrix, PointF offset) {
+        matrix.setTranslate(-offset.x, -offset.y);
+    }
+
+    /**
+     * Set the matrix to draw items as if they were zoomed by the scale around the location
+     */
+    public static void setZoomMatrix(Matrix matrix, PointF location, float scale) {
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((scale - 1) * location.x, (scale - 1) * location.y);
+    }
+
+    /**
+     * Copies all vertices, use {@link #drawLines(Canvas, Matrix, boolean, boolean, boolean, boolean)}
+     * with {@link #setZoomMatrix(Matrix, PointF, float)} to draw while zooming
+     */
     public DrawItem zoom(PointF location, float scale) {
         DrawItem drawItem = new DrawItem();
         drawItem.setSelectedRing(mSelectedRing);
@@ -131,6 +174,10 @@ public class DrawItem {
         return drawItem;
     }
 
+    /**
+     * Copies all vertices, use {@link #drawLines(Canvas, Matrix, boolean, boolean, boolean, boolean)}
+     * with {@link #setPanMatrix(Matrix, PointF)} to draw while panning
+     */
     public DrawItem pan(PointF offset) {
         DrawItem drawItem = new DrawItem();
         drawItem.setSelectedRing(mSelectedRing);
@@ -158,12 +205,15 @@ public class DrawItem {
     }
 
     public void addVertices(float[] points) {
-        if (points != null)
+        if (points != null) {
             mDrawItemsVertex.add(points);
+            invalidateRing(mDrawItemsVertex.size() - 1);
+        }
     }
 
     public void addEdges(float[] points) {
         mDrawItemsEdge.add(points);
+        mEdgeIndex.invalidate();
     }
 
     public List<float[]> getEdges() {
@@ -216,6 +266,7 @@ public class DrawItem {
 
             points[mSelectedPoint] = x;
             points[mSelectedPoint + 1] = y;
+            invalidateRing(mSelectedRing);
         }
 
     }
@@ -238,7 +289,7 @@ public class DrawItem {
             return;
 
         if (points.length <= getMinPointCount(layer.getGeometryType()) * 2) {
-            mDrawItemsVertex.remove(mSelectedRing);
+            removeRing(mSelectedRing);
             mSelectedRing = mDrawItemsVertex.size() > 0 ? 0 : Constants.NOT_FOUND;
             mSelectedPoint = Constants.NOT_FOUND;
             return;
@@ -269,8 +320,10 @@ public class DrawItem {
     }
 
     public void setRing(int ring, float[] points) {
-        if (ring >= 0 && ring < mDrawItemsVertex.size())
+        if (ring >= 0 && ring < mDrawItemsVertex.size()) {
             mDrawItemsVertex.set(ring, points);
+            invalidateRing(ring);
+        }
     }
 
     public void setSelectedRing(int selectedRing) {
@@ -297,53 +350,152 @@ public class DrawItem {
     }
 
     public void deleteSelectedRing() {
-        mDrawItemsVertex.remove(mSelectedRing);
+        removeRing(mSelectedRing);
         mSelectedRing = mSelectedPoint = mDrawItemsVertex.size() > 0 ? 0 : Constants.NOT_FOUND;
     }
 
-    public boolean isTapNearSelectedPoint(GeoEnvelope screenEnv) {
-        float[] points = getSelectedRing();
-        if (null != points && mSelectedPoint >= 0 && points.length > mSelectedPoint + 1) {
-            if (screenEnv.contains(new GeoPoint(points[mSelectedPoint], points[mSelectedPoint + 1]))) {
-                return true;
+    protected void removeRing(int ring) {
+        mDrawItemsVertex.remove(ring);
+        if (ring < mDrawItemsEdge.size())
+            mDrawItemsEdge.remove(ring);
+
+        // indices of the next rings are shifted, the fill path is rebuilt from the rest
+        mDirtyPaths.set(ring, Math.max(ring, mDrawItemsVertex.size()));
+        mDirtyEdges.set(ring, Math.max(ring, mDrawItemsVertex.size()));
+        mVertexIndex.invalidate();
+        mEdgeIndex.invalidate();
+        mPathFill.rewind();
+        for (int i = 0; i < mDrawItemsVertex.size() && i < mPaths.size(); i++)
+            mPathFill.addPath(mPaths.get(i));
+    }
+
+    protected void invalidateRing(int ring) {
+        mDirtyPaths.set(ring);
+        mDirtyEdges.set(ring);
+        mVertexIndex.invalidate();
+    }
+
+    /**
+     * Recalculate edge middle points of changed rings
+     *
+     * @param closed true if rings have an edge between the last and the first vertex
+     */
+    public void updateEdges(boolean closed) {
+        if (closed != mEdgesClosed) {
+            mDirtyEdges.set(0, mDrawItemsVertex.size());
+            mEdgesClosed = closed;
+        }
+        mHasEdges = true;
+
+        for (int ring = mDirtyEdges.nextSetBit(0); ring >= 0 && ring < mDrawItemsVertex.size();
+                ring = mDirtyEdges.nextSetBit(ring + 1)) {
+            float[] points = mDrawItemsVertex.get(ring);
+            int count = closed ? points.length : Math.max(points.length - 2, 0);
+            float[] edges = ring < mDrawItemsEdge.size() ? mDrawItemsEdge.get(ring) : null;
+            if (edges == null || edges.length != count)
+                edges = new float[count];
+
+            for (int i = 0; i < points.length - 2; i++)
+                edges[i] = (points[i] + points[i + 2]) * .5f;
+
+            if (closed && count >= 2) {
+                edges[count - 2] = (points[0] + points[points.length - 2]) * .5f;
+                edges[count - 1] = (points[1] + points[points.length - 1]) * .5f;
             }
+
+            while (mDrawItemsEdge.size() <= ring)
+                mDrawItemsEdge.add(null);
+            mDrawItemsEdge.set(ring, edges);
+            mEdgeIndex.invalidate();
         }
-        return false;
+
+        mDirtyEdges.clear();
     }
 
-    public boolean intersectsVertices(GeoEnvelope screenEnv) {
-        int point;
-        for (int ring = 0; ring < mDrawItemsVertex.size(); ring++) {
-            point = 0;
-            float[] items = mDrawItemsVertex.get(ring);
-            for (int i = 0; i < items.length - 1; i += 2) {
-                if (screenEnv.contains(new GeoPoint(items[i], items[i + 1]))) {
-                    mSelectedRing = ring;
-                    mSelectedPoint = point;
-                    return true;
-                }
-                point += 2;
+    protected void updatePaths(boolean closed) {
+        int count = mDrawItemsVertex.size();
+        if (closed != mPathsClosed) {
+            mDirtyPaths.set(0, count);
+            mPathsClosed = closed;
+        }
+
+        int ring = mDirtyPaths.nextSetBit(0);
+        if (ring < 0 || ring >= count)
+            return;
+
+        for (; ring >= 0 && ring < count; ring = mDirtyPaths.nextSetBit(ring + 1)) {
+            while (mPaths.size() <= ring)
+                mPaths.add(new Path());
+
+            Path path = mPaths.get(ring);
+            path.rewind();
+
+            float[] itemsVertex = mDrawItemsVertex.get(ring);
+            if (itemsVertex.length >= 2) {
+                path.moveTo(itemsVertex[0], itemsVertex[1]);
+                for (int i = 2; i < itemsVertex.length - 1; i += 2)
+                    path.lineTo(itemsVertex[i], itemsVertex[i + 1]);
+
+                if (closed)
+                    path.lineTo(itemsVertex[0], itemsVertex[1]);
             }
         }
+        mDirtyPaths.clear();
+
+        mPathFill.rewind();
+        for (int i = 0; i < count; i++)
+            mPathFill.addPath(mPaths.get(i));
+    }
 
+    public boolean isTapNearSelectedPoint(GeoEnvelope screenEnv) {
+        float[] points = mSelectedRing >= 0 && mSelectedRing < mDrawItemsVertex.size() ?
+                mDrawItemsVertex.get(mSelectedRing) : null;
+        if (null != points && mSelectedPoint >= 0 && points.length > mSelectedPoint + 1) {
+            float x = points[mSelectedPoint], y = points[mSelectedPoint + 1];
+            return x >= screenEnv.getMinX() && x <= screenEnv.getMaxX() &&
+                    y >= screenEnv.getMinY() && y <= screenEnv.getMaxY();
+        }
         return false;
     }
 
+    /**
+     * Select the vertex nearest to the envelope center
+     */
+    public boolean intersectsVertices(GeoEnvelope screenEnv) {
+        if (mVertexIndex.isDirty())
+            mVertexIndex.build(mDrawItemsVertex);
+
+        if (!mVertexIndex.find(mDrawItemsVertex, screenEnv.getMinX(), screenEnv.getMinY(),
+                screenEnv.getMaxX(), screenEnv.getMaxY()))
+            return false;
+
+        mSelectedRing = mVertexIndex.getFoundRing();
+        mSelectedPoint = mVertexIndex.getFoundPoint();
+        return true;
+    }
+
+    /**
+     * Insert a new vertex at the edge middle point nearest to the envelope center
+     */
     public boolean intersectsEdges(GeoEnvelope screenEnv) {
-        for (int ring = 0; ring < mDrawItemsEdge.size(); ring++) {
-            float[] items = mDrawItemsEdge.get(ring);
-            for (int i = 0; i < items.length - 1; i += 2) {
-                if (screenEnv.contains(new GeoPoint(items[i], items[i + 1]))) {
-                    mSelectedPoint = i + 2;
-                    mSelectedRing = ring;
-                    insertNewPoint(mSelectedPoint, items[i], items[i + 1]);
+        if (mHasEdges)
+            updateEdges(mEdgesClosed);
 
-                    return true;
-                }
-            }
-        }
+        if (mEdgeIndex.isDirty())
+            mEdgeIndex.build(mDrawItemsEdge);
 
-        return false;
+        if (!mEdgeIndex.find(mDrawItemsEdge, screenEnv.getMinX(), screenEnv.getMinY(),
+                screenEnv.getMaxX(), screenEnv.getMaxY()))
+            return false;
+
+        int ring = mEdgeIndex.getFoundRing();
+        int i = mEdgeIndex.getFoundPoint();
+        float[] items = mDrawItemsEdge.get(ring);
+        mSelectedPoint = i + 2;
+        mSelectedRing = ring;
+        insertNewPoint(mSelectedPoint, items[i], items[i + 1]);
+
+        return true;
     }
 
     public static int getMinPointCount(int type) {
@@ -363,77 +515,75 @@ public class DrawItem {
     }
 
     public void drawPoints(Canvas canvas, boolean isSelected) {
+        drawPoints(canvas, null, isSelected);
+    }
+
+    /**
+     * @param matrix to transform the screen coordinates while panning or zooming, may be null
+     */
+    public void drawPoints(Canvas canvas, Matrix matrix, boolean isSelected) {
         if (mVertexStyle == null)
             return;
 
         mPaint.setStyle(Paint.Style.STROKE);
         mPaint.setAlpha(mVertexStyle.getAlpha());
-        for (int i = 0; i < getRingCount(); i++) {
-            float[] items = getRing(i);
+        for (int i = 0; i < mDrawItemsVertex.size(); i++) {
+            float[] items = mDrawItemsVertex.get(i);
             if (items == null)
                 continue;
 
+            float[] points = transform(items, matrix);
             mPaint.setColor(mVertexStyle.getOutColor());
             mPaint.setStrokeWidth(mVertexStyle.getOutWidth());
-            drawPoints(canvas, items, mVertexStyle.getOutRadius());
+            drawPoints(canvas, points, items.length, mVertexStyle.getOutRadius());
 
             mPaint.setColor(mVertexStyle.getColor());
             mPaint.setStrokeWidth(mVertexStyle.getWidth());
-            drawPoints(canvas, items, mVertexStyle.getRadius());
+            drawPoints(canvas, points, items.length, mVertexStyle.getRadius());
         }
 
         //draw selected point
         if (isSelected && getSelectedRingId() != Constants.NOT_FOUND && getSelectedPointId() != Constants.NOT_FOUND) {
-            float[] items = getSelectedRing();
-            if (null != items && items.length > 0) {
+            float[] items = mSelectedRing < mDrawItemsVertex.size() ? mDrawItemsVertex.get(mSelectedRing) : null;
+            if (null != items && items.length > mSelectedPoint + 1) {
+                mTransformedPoint[0] = items[mSelectedPoint];
+                mTransformedPoint[1] = items[mSelectedPoint + 1];
+                if (matrix != null)
+                    matrix.mapPoints(mTransformedPoint);
+
                 mPaint.setColor(mVertexStyle.getSelectedColor());
                 mPaint.setStrokeWidth(mVertexStyle.getSelectedWidth());
-                float[] point = new float[]{items[getSelectedPointId()], items[getSelectedPointId() + 1]};
-                drawPoints(canvas, point, mVertexStyle.getSelectedRadius());
-                drawAnchor(canvas, items);
+                drawPoints(canvas, mTransformedPoint, 2, mVertexStyle.getSelectedRadius());
+                drawAnchor(canvas, mTransformedPoint[0], mTransformedPoint[1]);
             }
         }
     }
 
     public void drawLines(Canvas canvas, boolean isSelected, boolean drawPoints, boolean drawEdges, boolean closed) {
-        Path[] paths = new Path[getRingCount()];
-        Path pathFill = new Path();
-
-        // fill paths
-        for (int j = 0; j < getRingCount(); j++) {
-            float[] itemsVertex = getRing(j);
-            if (itemsVertex == null)
-                continue;
-
-            if (itemsVertex.length >= 2) {
-                Path path = new Path();
-                path.moveTo(itemsVertex[0], itemsVertex[1]);
-                for (int i = 2; i < itemsVertex.length - 1; i += 2)
-                    path.lineTo(itemsVertex[i], itemsVertex[i + 1]);
-
-                if (closed)
-                    path.lineTo(itemsVertex[0], itemsVertex[1]);
+        drawLines(canvas, null, isSelected, drawPoints, drawEdges, closed);
+    }
 
-                paths[j] = path;
-                pathFill.addPath(path);
-            }
-        }
+    /**
+     * @param matrix to transform the screen coordinates while panning or zooming, may be null
+     */
+    public void drawLines(Canvas canvas, Matrix matrix, boolean isSelected, boolean drawPoints, boolean drawEdges, boolean closed) {
+        updatePaths(closed);
 
         // draw filled polygon
         if (closed && mPolygonStyle != null) {
-            pathFill.setFillType(Path.FillType.EVEN_ODD);
+            mPathFill.setFillType(Path.FillType.EVEN_ODD);
             mPaint.setColor(isSelected ? mPolygonStyle.getSelectedColor() : mPolygonStyle.getColor());
             mPaint.setStyle(Paint.Style.FILL);
             mPaint.setAlpha(mPolygonStyle.getAlpha());
-            canvas.drawPath(pathFill, mPaint);
+            canvas.drawPath(transform(mPathFill, matrix), mPaint);
         }
 
         if (mLineStyle != null) {
             mPaint.setStyle(Paint.Style.STROKE);
             mPaint.setAlpha(mLineStyle.getAlpha());
-            for (int i = 0; i < paths.length; i++) {
-                Path path = paths[i];
-                if (path == null)
+            for (int i = 0; i < mDrawItemsVertex.size(); i++) {
+                Path path = mPaths.get(i);
+                if (path.isEmpty())
                     continue;
 
                 if (isSelected && getSelectedRingId() == i) {
@@ -444,38 +594,69 @@ public class DrawItem {
                     mPaint.setStrokeWidth(mLineStyle.getWidth());
                 }
 
-                canvas.drawPath(path, mPaint);
+                canvas.drawPath(transform(path, matrix), mPaint);
             }
         }
 
         if (drawEdges && mEdgeStyle != null) {
+            if (mHasEdges)
+                updateEdges(mEdgesClosed);
+
             mPaint.setStyle(Paint.Style.STROKE);
             mPaint.setAlpha(mEdgeStyle.getAlpha());
             for (float[] items : getEdges()) {
+                if (items == null)
+                    continue;
+
+                float[] points = transform(items, matrix);
                 mPaint.setColor(mEdgeStyle.getOutColor());
                 mPaint.setStrokeWidth(mEdgeStyle.getOutWidth());
-                drawPoints(canvas, items, mEdgeStyle.getOutRadius());
+                drawPoints(canvas, points, items.length, mEdgeStyle.getOutRadius());
 
                 mPaint.setColor(mEdgeStyle.getColor());
                 mPaint.setStrokeWidth(mEdgeStyle.getWidth());
-                drawPoints(canvas, items, mEdgeStyle.getRadius());
+                drawPoints(canvas, points, items.length, mEdgeStyle.getRadius());
             }
         }
 
         if (drawPoints)
-            drawPoints(canvas, isSelected);
+            drawPoints(canvas, matrix, isSelected);
+    }
+
+    protected Path transform(Path path, Matrix matrix) {
+        if (matrix == null)
+            return path;
+
+        path.transform(matrix, mTransformedPath);
+        return mTransformedPath;
+    }
+
+    protected float[] transform(float[] items, Matrix matrix) {
+        if (matrix == null)
+            return items;
+
+        if (mTransformedPoints.length < items.length)
+            mTransformedPoints = new float[items.length];
+
+        matrix.mapPoints(mTransformedPoints, 0, items, 0, items.length / 2);
+        return mTransformedPoints;
     }
 
     protected void drawAnchor(Canvas canvas, float[] items) {
-        if (mAnchor != null) {
-            float anchorX = items[getSelectedPointId()] + mAnchorRectOffsetX;
-            float anchorY = items[getSelectedPointId() + 1] + mAnchorRectOffsetY;
-            canvas.drawBitmap(mAnchor, anchorX, anchorY, null);
-        }
+        drawAnchor(canvas, items[getSelectedPointId()], items[getSelectedPointId() + 1]);
+    }
+
+    protected void drawAnchor(Canvas canvas, float x, float y) {
+        if (mAnchor != null)
+            canvas.drawBitmap(mAnchor, x + mAnchorRectOffsetX, y + mAnchorRectOffsetY, null);
     }
 
     protected void drawPoints(Canvas canvas, float[] items, float radius) {
-        for (int i = 0; i < items.length - 1; i += 2)
+        drawPoints(canvas, items, items.length, radius);
+    }
+
+    protected void drawPoints(Canvas canvas, float[] items, int count, float radius) {
+        for (int i = 0; i < count - 1; i += 2)
             canvas.drawCircle(items[i], items[i + 1], radius, mPaint);
     }
 }
@@ -0,0 +1,212 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.api;
+
+import java.util.List;
+
+/**
+ * A screen space grid over the points of draw item rings. It is built on the first search after
+ * the points are changed, arrays are reused between builds and the search allocates nothing.
+ */
+public class VertexIndex {
+    protected static final float MIN_CELL_SIZE = 16; // px
+    protected static final int POINTS_PER_CELL = 2;
+
+    protected float mMinX, mMinY, mMaxX, mMaxY, mCellSize;
+    protected int mColumns, mRows, mCount;
+    protected int[] mCellStart = new int[0];
+    protected int[] mCursor = new int[0];
+    protected int[] mRings = new int[0];
+    protected int[] mPoints = new int[0];
+    protected boolean mDirty = true;
+
+    protected int mFoundRing, mFoundPoint;
+
+    public void invalidate() {
+        mDirty = true;
+    }
+
+    public boolean isDirty() {
+        return mDirty;
+    }
+
+    /**
+     * @param rings x, y pairs of each ring in screen coordinates, null rings are skipped
+     */
+    public void build(List<float[]> rings) {
+        mDirty = false;
+
+        int count = 0;
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int ring = 0; ring < rings.size(); ring++) {
+            float[] points = rings.get(ring);
+            if (points == null)
+                continue;
+
+            for (int i = 0; i < points.length - 1; i += 2) {
+                minX = Math.min(minX, points[i]);
+                maxX = Math.max(maxX, points[i]);
+                minY = Math.min(minY, points[i + 1]);
+                maxY = Math.max(maxY, points[i + 1]);
+                count++;
+            }
+        }
+
+        mCount = count;
+        if (count == 0)
+            return;
+
+        float width = Math.max(maxX - minX, 1);
+        float height = Math.max(maxY - minY, 1);
+        int targetCells = Math.max(1, count / POINTS_PER_CELL);
+        mCellSize = Math.max(MIN_CELL_SIZE, (float) Math.sqrt(width * height / targetCells));
+        mMinX = minX;
+        mMinY = minY;
+        mMaxX = maxX;
+        mMaxY = maxY;
+
+        // long thin rings may still need too many cells
+        long cells;
+        do {
+            mColumns = (int) (width / mCellSize) + 1;
+            mRows = (int) (height / mCellSize) + 1;
+            cells = (long) mColumns * mRows;
+            if (cells > targetCells * 4L + 16)
+                mCellSize *= 2;
+            else
+                break;
+        } while (true);
+
+        int cellCount = (int) cells;
+        if (mCellStart.length < cellCount + 1) {
+            mCellStart = new int[cellCount + 1];
+            mCursor = new int[cellCount];
+        } else {
+            for (int i = 0; i <= cellCount; i++)
+                mCellStart[i] = 0;
+        }
+
+        if (mRings.length < count) {
+            mRings = new int[count];
+            mPoints = new int[count];
+        }
+
+        // counting sort of points by cell
+        for (int ring = 0; ring < rings.size(); ring++) {
+            float[] points = rings.get(ring);
+            if (points == null)
+                continue;
+
+            for (int i = 0; i < points.length - 1; i += 2)
+                mCellStart[getCell(points[i], points[i + 1]) + 1]++;
+        }
+
+        for (int i = 0; i < cellCount; i++) {
+            mCellStart[i + 1] += mCellStart[i];
+            mCursor[i] = mCellStart[i];
+        }
+
+        for (int ring = 0; ring < rings.size(); ring++) {
+            float[] points = rings.get(ring);
+            if (points == null)
+                continue;
+
+            for (int i = 0; i < points.length - 1; i += 2) {
+                int position = mCursor[getCell(points[i], points[i + 1])]++;
+                mRings[position] = ring;
+                mPoints[position] = i;
+            }
+        }
+    }
+
+    /**
+     * Find the point nearest to the center of the envelope among points inside it. Use
+     * {@link #getFoundRing()} and {@link #getFoundPoint()} to get the found one.
+     *
+     * @param rings the same rings the index was built from
+     * @return true if a point is found
+     */
+    public boolean find(List<float[]> rings, double minX, double minY, double maxX, double maxY) {
+        mFoundRing = mFoundPoint = -1;
+        if (mCount == 0 || maxX < mMinX || minX > mMaxX || maxY < mMinY || minY > mMaxY)
+            return false;
+
+        int minColumn = getColumn(minX), maxColumn = getColumn(maxX);
+        int minRow = getRow(minY), maxRow = getRow(maxY);
+
+        double centerX = (minX + maxX) / 2, centerY = (minY + maxY) / 2;
+        double nearest = Double.MAX_VALUE;
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int cell = row * mColumns + column;
+                for (int i = mCellStart[cell]; i < mCellStart[cell + 1]; i++) {
+                    float[] points = rings.get(mRings[i]);
+                    float x = points[mPoints[i]], y = points[mPoints[i] + 1];
+                    if (x < minX || x > maxX || y < minY || y > maxY)
+                        continue;
+
+                    double distance = (x - centerX) * (x - centerX) + (y - centerY) * (y - centerY);
+                    if (distance < nearest || distance == nearest && isBefore(mRings[i], mPoints[i])) {
+                        nearest = distance;
+                        mFoundRing = mRings[i];
+                        mFoundPoint = mPoints[i];
+                    }
+                }
+            }
+        }
+
+        return mFoundRing != -1;
+    }
+
+    public int getFoundRing() {
+        return mFoundRing;
+    }
+
+    /**
+     * @return index of the found point x in its ring array
+     */
+    public int getFoundPoint() {
+        return mFoundPoint;
+    }
+
+    protected boolean isBefore(int ring, int point) {
+        return ring < mFoundRing || ring == mFoundRing && point < mFoundPoint;
+    }
+
+    protected int getCell(float x, float y) {
+        return getRow(y) * mColumns + getColumn(x);
+    }
+
+    protected int getColumn(double x) {
+        int column = (int) ((x - mMinX) / mCellSize);
+        return Math.max(0, Math.min(column, mColumns - 1));
+    }
+
+    protected int getRow(double y) {
+        int row = (int) ((y - mMinY) / mCellSize);
+        return Math.max(0, Math.min(row, mRows - 1));
+    }
+}
@@ -60,6 +60,7 @@ import com.nextgis.maplib.util.GeoConstants;
 import com.nextgis.maplib.util.HttpResponse;
 import com.nextgis.maplib.util.MapUtil;
 import com.nextgis.maplib.util.NetworkUtil;
+import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.activity.NGActivity;
 import com.nextgis.maplibui.mapui.RemoteTMSLayerUI;
@@ -138,14 +139,18 @@ public class CreateFromQMSLayerDialog extends NGDialog {
         mQMSIconsDir = MapUtil.prepareTempDir(mContextWeakRef.get(), "qms_icons", false);
 
         if (null != savedInstanceState) {
-            int id = savedInstanceState.getInt(KEY_ID);
-            MapBase map = MapBase.getInstance();
-            if (null != map) {
-                ILayer iLayer = map.getLayerById(id);
-                if (iLayer instanceof LayerGroup) {
-                    mGroupLayer = (LayerGroup) iLayer;
+            final int id = savedInstanceState.getInt(KEY_ID);
+            GISApplication.runWhenMapLoaded(new GISApplication.OnMapLoadListener() {
+                @Override
+                public void onMapLoaded(MapBase map) {
+                    if (null != map) {
+                        ILayer iLayer = map.getLayerById(id);
+                        if (iLayer instanceof LayerGroup) {
+                            mGroupLayer = (LayerGroup) iLayer;
+                        }
+                    }
                 }
-            }
+            });
         }
 
         AlertDialog.Builder builder = new AlertDialog.Builder(mContextWeakRef.get());
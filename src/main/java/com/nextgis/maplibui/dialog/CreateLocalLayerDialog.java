@@ -38,6 +38,7 @@ import android.widget.Spinner;
 import com.nextgis.maplib.api.ILayer;
 import com.nextgis.maplib.map.LayerGroup;
 import com.nextgis.maplib.map.MapBase;
+import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.fragment.LayerFillProgressDialogFragment;
 import com.nextgis.maplibui.service.LayerFillService;
@@ -108,16 +109,22 @@ public class CreateLocalLayerDialog
         if (null != savedInstanceState) {
             mLayerName = savedInstanceState.getString(LayerFillService.KEY_NAME);
             mUri = savedInstanceState.getParcelable(KEY_URI);
-            int id = savedInstanceState.getInt(KEY_ID);
+            final int id = savedInstanceState.getInt(KEY_ID);
             mLayerType = savedInstanceState.getInt(KEY_LAYER_TYPE);
 
-            MapBase map = MapBase.getInstance();
-            if (null != map && mGroupLayer == null) {
-                ILayer iLayer = map.getLayerById(id);
-                if (iLayer instanceof LayerGroup) {
-                    mGroupLayer = (LayerGroup) iLayer;
+            GISApplication.runWhenMapLoaded(new GISApplication.OnMapLoadListener()
+            {
+                @Override
+                public void onMapLoaded(MapBase map)
+                {
+                    if (null != map && mGroupLayer == null) {
+                        ILayer iLayer = map.getLayerById(id);
+                        if (iLayer instanceof LayerGroup) {
+                            mGroupLayer = (LayerGroup) iLayer;
+                        }
+                    }
                 }
-            }
+            });
         }
 
         View view;
@@ -40,6 +40,7 @@ import com.nextgis.maplib.api.ILayer;
 import com.nextgis.maplib.map.LayerGroup;
 import com.nextgis.maplib.map.MapBase;
 import com.nextgis.maplib.util.GeoConstants;
+import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.activity.NGActivity;
 import com.nextgis.maplibui.mapui.RemoteTMSLayerUI;
@@ -111,14 +112,20 @@ public class CreateRemoteTMSLayerDialog
             mPassword.setText(savedInstanceState.getString(KEY_PASSWORD));
             mSpinner.setSelection(savedInstanceState.getInt(KEY_POSITION));
             mCache.setSelection(savedInstanceState.getInt(KEY_CACHE));
-            int id = savedInstanceState.getInt(KEY_ID);
-            MapBase map = MapBase.getInstance();
-            if (null != map) {
-                ILayer iLayer = map.getLayerById(id);
-                if (iLayer instanceof LayerGroup) {
-                    mGroupLayer = (LayerGroup) iLayer;
+            final int id = savedInstanceState.getInt(KEY_ID);
+            GISApplication.runWhenMapLoaded(new GISApplication.OnMapLoadListener()
+            {
+                @Override
+                public void onMapLoaded(MapBase map)
+                {
+                    if (null != map) {
+                        ILayer iLayer = map.getLayerById(id);
+                        if (iLayer instanceof LayerGroup) {
+                            mGroupLayer = (LayerGroup) iLayer;
+                        }
+                    }
                 }
-            }
+            });
         }
 
 //        AlertDialog.Builder builder = new AlertDialog.Builder(mContext, mDialogTheme);
@@ -51,6 +51,7 @@ import com.nextgis.maplib.map.LayerGroup;
 import com.nextgis.maplib.map.MapBase;
 import com.nextgis.maplib.map.NGWRasterLayer;
 import com.nextgis.maplib.util.GeoConstants;
+import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.activity.NGWLoginActivity;
 import com.nextgis.maplibui.fragment.LayerFillProgressDialogFragment;
@@ -124,14 +125,18 @@ public class SelectNGWResourceDialog
             mListAdapter.setCheckState(new ArrayList<CheckState>());
         } else {
             mTypeMask = savedInstanceState.getInt(KEY_MASK);
-            int id = savedInstanceState.getInt(KEY_ID);
-            MapBase map = MapBase.getInstance();
-            if (null != map) {
-                ILayer iLayer = map.getLayerById(id);
-                if (iLayer instanceof LayerGroup) {
-                    mGroupLayer = (LayerGroup) iLayer;
+            final int id = savedInstanceState.getInt(KEY_ID);
+            GISApplication.runWhenMapLoaded(new GISApplication.OnMapLoadListener() {
+                @Override
+                public void onMapLoaded(MapBase map) {
+                    if (null != map) {
+                        ILayer iLayer = map.getLayerById(id);
+                        if (iLayer instanceof LayerGroup) {
+                            mGroupLayer = (LayerGroup) iLayer;
+                        }
+                    }
                 }
-            }
+            });
 
             mListAdapter.setConnections((Connections) savedInstanceState.getParcelable(KEY_CONNECTIONS), skipSubLoad);
             mListAdapter.setCurrentResourceId(savedInstanceState.getInt(KEY_RESOURCE_ID));
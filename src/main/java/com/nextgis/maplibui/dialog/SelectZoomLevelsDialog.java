@@ -33,6 +33,8 @@ import android.content.Intent;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.text.format.DateUtils;
+import android.text.format.Formatter;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.DialogFragment;
 import androidx.core.content.ContextCompat;
@@ -46,17 +48,17 @@ import com.nextgis.maplib.api.IGISApplication;
 import com.nextgis.maplib.api.ILayer;
 import com.nextgis.maplib.datasource.GeoEnvelope;
 import com.nextgis.maplib.map.LayerGroup;
-import com.nextgis.maplib.map.MapBase;
 import com.nextgis.maplib.map.MapDrawable;
 import com.nextgis.maplib.map.RemoteTMSLayer;
-import com.nextgis.maplib.map.TMSLayer;
+import com.nextgis.maplib.util.Constants;
 import com.nextgis.maplib.util.GeoConstants;
-import com.nextgis.maplib.util.MapUtil;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.mapui.RemoteTMSLayerUI;
 import com.nextgis.maplibui.service.TileDownloadService;
 import com.nextgis.maplibui.util.ConstantsUI;
 import com.nextgis.maplibui.util.ControlHelper;
+import com.nextgis.maplibui.util.TileDownloadEstimator;
+import com.nextgis.maplibui.util.TileEnumerator;
 
 import java.util.Locale;
 
@@ -65,11 +67,13 @@ import java.util.Locale;
  */
 public class SelectZoomLevelsDialog extends DialogFragment {
     final static String TILDA = "~";
+    final static int SAMPLE_TILES = 4;
 
     private TextView mTilesCount;
     private GeoEnvelope mEnvelope;
     private int mLayerId;
     private CountTilesTask mCountTask;
+    private TileDownloadEstimator mEstimator;
 
     public GeoEnvelope getEnvelope() {
         return mEnvelope;
@@ -105,6 +109,11 @@ public class SelectZoomLevelsDialog extends DialogFragment {
         View view = View.inflate(context, R.layout.dialog_select_zoom_levels, null);
         IGISApplication app = (IGISApplication) getActivity().getApplication();
         final MapDrawable map = (MapDrawable) app.getMap();
+        ILayer estimateLayer = map.getLayerById(mLayerId);
+        if (estimateLayer instanceof RemoteTMSLayer) {
+            mEstimator = new TileDownloadEstimator((RemoteTMSLayer) estimateLayer, mEnvelope,
+                    Constants.DRAWING_SEPARATE_THREADS);
+        }
         int left = (int) map.getZoomLevel() - 1;
         int right = (int) map.getZoomLevel() + 1;
         final int maxZoom = GeoConstants.DEFAULT_MAX_ZOOM;
@@ -133,7 +142,7 @@ public class SelectZoomLevelsDialog extends DialogFragment {
                     mCountTask.cancel(true);
 
                 mTilesCount.setText(getString(R.string.counting).toLowerCase());
-                mCountTask = new CountTilesTask(map, leftPinIndex, rightPinIndex);
+                mCountTask = new CountTilesTask(leftPinIndex, rightPinIndex);
                 mCountTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
             }
 
@@ -227,21 +236,6 @@ public class SelectZoomLevelsDialog extends DialogFragment {
         return dialog;
     }
 
-    private long getTilesCount(AsyncTask task, MapBase map, int leftThumbIndex, int rightThumbIndex) {
-        TMSLayer layer = (TMSLayer) map.getLayerById(getLayerId());
-        GeoEnvelope envelope = getEnvelope();
-        long total = 0;
-        for (int zoom = leftThumbIndex; zoom <= rightThumbIndex; zoom++) {
-            if (task != null && task.isCancelled())
-                return total;
-
-            //total += MapUtil.getTileCount(task, envelope, zoom, layer.getTMSType());
-            total += MapUtil.getTileCount(envelope, zoom);
-        }
-
-        return total;
-    }
-
     @Override
     public void onSaveInstanceState(Bundle outState) {
         outState.putInt(ConstantsUI.KEY_LAYER_ID, mLayerId);
@@ -252,33 +246,69 @@ public class SelectZoomLevelsDialog extends DialogFragment {
         super.onSaveInstanceState(outState);
     }
 
-    private class CountTilesTask extends AsyncTask<Void, Void, String> {
+    private long getTilesCount(int leftThumbIndex, int rightThumbIndex) {
+        long total = 0;
+        for (int zoom = leftThumbIndex; zoom <= rightThumbIndex; zoom++)
+            total += TileEnumerator.getTileCount(mEnvelope, zoom);
+
+        return total;
+    }
+
+    private String formatCount(long total) {
+        String value = total + "";
+        if (total >= 1000000000)
+            value = String.format(Locale.getDefault(), "%s%.1f%s", TILDA, total / 1000000000f, getString(com.nextgis.maplib.R.string.unit_billion));
+        else if (total >= 1000000)
+            value = String.format(Locale.getDefault(), "%s%.1f%s", TILDA, total / 1000000f, getString(com.nextgis.maplib.R.string.unit_million));
+        else if (total >= 100000)
+            value = String.format(Locale.getDefault(), "%s%.1f%s", TILDA, total / 1000f, getString(com.nextgis.maplib.R.string.unit_thousand));
+
+        return value;
+    }
+
+    /**
+     * Counts tiles analytically and samples a few tiles once per dialog to estimate disk usage
+     * and download time.
+     */
+    private class CountTilesTask extends AsyncTask<Void, String, String> {
         private int mFrom, mTo;
-        private MapBase mMap;
 
-        CountTilesTask(MapBase map, int from, int to) {
-            mMap = map;
+        CountTilesTask(int from, int to) {
             mFrom = from;
             mTo = to;
         }
 
         @Override
         protected String doInBackground(Void... params) {
-            long total = getTilesCount(this, mMap, mFrom, mTo);
-            String value = total + "";
-            if (total >= 1000000000)
-                value = String.format(Locale.getDefault(), "%s%.1f%s", TILDA, total / 1000000000f, getString(com.nextgis.maplib.R.string.unit_billion));
-            else if (total >= 1000000)
-                value = String.format(Locale.getDefault(), "%s%.1f%s", TILDA, total / 1000000f, getString(com.nextgis.maplib.R.string.unit_million));
-            else if (total >= 100000)
-                value = String.format(Locale.getDefault(), "%s%.1f%s", TILDA, total / 1000f, getString(com.nextgis.maplib.R.string.unit_thousand));
-
-            return value;
+            long total = getTilesCount(mFrom, mTo);
+            String count = String.format(getString(R.string.tiles_count), formatCount(total));
+            if (mEstimator == null || isCancelled())
+                return count;
+
+            if (!mEstimator.isSampled()) {
+                publishProgress(count);
+                // tiles are sampled by the first task only, the next ones wait for it
+                if (!mEstimator.sample(mTo, SAMPLE_TILES) || isCancelled())
+                    return count;
+            }
+
+            Context context = getActivity();
+            if (context == null)
+                return count;
+
+            String size = Formatter.formatShortFileSize(context, mEstimator.getBytes(total));
+            String time = DateUtils.formatElapsedTime(mEstimator.getSeconds(total));
+            return String.format(getString(R.string.tiles_estimate), count, TILDA + size, TILDA + time);
+        }
+
+        @Override
+        protected void onProgressUpdate(String... values) {
+            mTilesCount.setText(values[0]);
         }
 
         @Override
         protected void onPostExecute(String res) {
-            mTilesCount.setText(String.format(getString(R.string.tiles_count), res));
+            mTilesCount.setText(res);
         }
     }
 }
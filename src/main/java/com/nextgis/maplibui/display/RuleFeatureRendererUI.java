@@ -49,7 +49,6 @@ import com.nextgis.maplib.datasource.Field;
 import com.nextgis.maplib.display.FieldStyleRule;
 import com.nextgis.maplib.display.RuleFeatureRenderer;
 import com.nextgis.maplib.display.Style;
-import com.nextgis.maplib.map.MapBase;
 import com.nextgis.maplib.map.MapContentProviderHelper;
 import com.nextgis.maplib.map.VectorLayer;
 import com.nextgis.maplib.util.Constants;
@@ -57,6 +56,7 @@ import com.nextgis.maplib.util.GeoConstants;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.dialog.StyledDialogFragment;
 import com.nextgis.maplibui.fragment.StyleFragment;
+import com.nextgis.maplibui.util.LayerUtil;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -210,6 +210,9 @@ public class RuleFeatureRendererUI extends RendererUI {
             newRule.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
+                    if (null == mData)
+                        return;
+
                     AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
                     builder.setTitle(R.string.value).setSingleChoiceItems(mData, -1, mSelectedField, new DialogInterface.OnClickListener() {
                                 @Override
@@ -250,7 +253,10 @@ public class RuleFeatureRendererUI extends RendererUI {
             String[] from = new String[]{mSelectedField};
             int[] to = new int[]{android.R.id.text1};
 
-            MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
+            MapContentProviderHelper map = LayerUtil.getMap(mLayer);
+            if (null == map)
+                return;
+
             SQLiteDatabase db = map.getDatabase(true);
             mData = db.query(true, mLayer.getPath().getName(), column, null, null, column[1], null, null, null);
             mValueAdapter = new SimpleCursorAdapter(getContext(), android.R.layout.simple_spinner_item, mData, from, to, 0);
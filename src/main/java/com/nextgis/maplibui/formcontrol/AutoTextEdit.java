@@ -38,25 +38,23 @@ import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.Toast;
 
 import com.nextgis.maplib.datasource.Field;
-import com.nextgis.maplib.map.MapBase;
-import com.nextgis.maplib.map.MapContentProviderHelper;
-import com.nextgis.maplib.map.NGWLookupTable;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.activity.ModifyAttributesActivity;
+import com.nextgis.maplibui.adapter.LookupAdapter;
 import com.nextgis.maplibui.api.IFormControl;
 import com.nextgis.maplibui.util.ConstantsUI;
 import com.nextgis.maplibui.util.ControlHelper;
+import com.nextgis.maplibui.util.LookupIndex;
+import com.nextgis.maplibui.util.LookupTableProvider;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -77,7 +75,7 @@ public class AutoTextEdit extends AppCompatAutoCompleteTextView implements IForm
     protected boolean           mIsShowLast;
     protected boolean           mAllowSaveNewValue;
     protected Map<String, String>   mAliasValueMap;
-    protected ArrayAdapter<String>  mAdapter;
+    protected LookupAdapter         mAdapter;
 
     boolean useDisabledClick = false;
 
@@ -126,47 +124,38 @@ public class AutoTextEdit extends AppCompatAutoCompleteTextView implements IForm
         } else if (mIsShowLast)
             lastValue = preferences.getString(mFieldName, null);
 
-        mAliasValueMap = new LinkedHashMap<>();
+        LookupIndex index = null;
         if (attributes.has(ConstantsUI.JSON_NGW_ID_KEY) && attributes.getLong(ConstantsUI.JSON_NGW_ID_KEY) != -1) {
-            MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
-            if (null == map)
-                throw new IllegalArgumentException("The map should extends MapContentProviderHelper or inherited");
-
             String account = element.optString(SyncStateContract.Columns.ACCOUNT_NAME);
             long id = attributes.optLong(JSON_NGW_ID_KEY, -1);
-            for (int i = 0; i < map.getLayerCount(); i++) {
-                if (map.getLayer(i) instanceof NGWLookupTable) {
-                    NGWLookupTable table = (NGWLookupTable) map.getLayer(i);
-                    if (table.getRemoteId() != id || !table.getAccountName().equals(account))
-                        continue;
-
-                    for (Map.Entry<String, String> entry : table.getData().entrySet()) {
-                        mAliasValueMap.put(entry.getValue(), entry.getKey());
-                        if (entry.getKey().equals(lastValue))
-                            lastValue = entry.getValue();
-                    }
-
-                    break;
-                }
-            }
+            index = LookupTableProvider.getIndex(account, id);
+            if (null != index && index.getAlias(lastValue) != null)
+                lastValue = index.getAlias(lastValue);
         } else {
             JSONArray values = attributes.optJSONArray(JSON_VALUES_KEY);
             if (values != null) {
+                List<String> aliases = new ArrayList<>(values.length());
+                List<String> names = new ArrayList<>(values.length());
                 for (int j = 0; j < values.length(); j++) {
                     JSONObject keyValue = values.getJSONObject(j);
                     String value = keyValue.getString(JSON_VALUE_NAME_KEY);
                     String alias = keyValue.getString(JSON_VALUE_ALIAS_KEY);
-                    mAliasValueMap.put(alias, value);
+                    aliases.add(alias);
+                    names.add(value);
                     if (value.equals(lastValue))
                         lastValue = alias;
                     if (keyValue.optBoolean(JSON_DEFAULT_KEY))
                         def = alias;
                 }
+                index = new LookupIndex(aliases, names);
             }
         }
+        if (null == index)
+            index = new LookupIndex(new ArrayList<String>(), new ArrayList<String>());
 
+        mAliasValueMap = index.getAliasValueMap();
         setText(lastValue != null ? lastValue : def);
-        mAdapter = new ArrayAdapter<>(getContext(), android.R.layout.simple_spinner_dropdown_item, new ArrayList<>(mAliasValueMap.keySet()));
+        mAdapter = new LookupAdapter(getContext(), android.R.layout.simple_spinner_dropdown_item, index);
         setAdapter(mAdapter);
 
         setOnFocusChangeListener(new OnFocusChangeListener() {
@@ -44,14 +44,13 @@ import android.widget.ArrayAdapter;
 import android.widget.Toast;
 
 import com.nextgis.maplib.datasource.Field;
-import com.nextgis.maplib.map.MapBase;
-import com.nextgis.maplib.map.MapContentProviderHelper;
-import com.nextgis.maplib.map.NGWLookupTable;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.activity.ModifyAttributesActivity;
 import com.nextgis.maplibui.api.IFormControl;
 import com.nextgis.maplibui.util.ConstantsUI;
 import com.nextgis.maplibui.util.ControlHelper;
+import com.nextgis.maplibui.util.LookupIndex;
+import com.nextgis.maplibui.util.LookupTableProvider;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -126,31 +125,15 @@ public class Combobox extends AppCompatSpinner implements IFormControl
         setAdapter(spinnerArrayAdapter);
 
         if (attributes.has(ConstantsUI.JSON_NGW_ID_KEY) && attributes.getLong(ConstantsUI.JSON_NGW_ID_KEY) != -1) {
-            MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
-            if (null == map)
-                throw new IllegalArgumentException("The map should extends MapContentProviderHelper or inherited");
-
             String account = element.optString(SyncStateContract.Columns.ACCOUNT_NAME);
             long id = attributes.optLong(JSON_NGW_ID_KEY, -1);
-            for (int i = 0; i < map.getLayerCount(); i++) {
-                if (map.getLayer(i) instanceof NGWLookupTable) {
-                    NGWLookupTable table = (NGWLookupTable) map.getLayer(i);
-                    if (table.getRemoteId() != id || !table.getAccountName().equals(account))
-                        continue;
-
-                    int j = 0;
-                    for (Map.Entry<String, String> entry : table.getData().entrySet()) {
-                        mAliasValueMap.put(entry.getValue(), entry.getKey());
-
-                        if (null != lastValue && lastValue.equals(entry.getKey()))
-                            lastValuePosition = j;
-
-                        spinnerArrayAdapter.add(entry.getValue());
-                        j++;
-                    }
-
-                    break;
-                }
+            LookupIndex index = LookupTableProvider.getIndex(account, id);
+            if (null != index) {
+                // the cached aliases are shared, not copied
+                spinnerArrayAdapter = new ArrayAdapter<>(getContext(), R.layout.formtemplate_spinner, index.getAliases());
+                setAdapter(spinnerArrayAdapter);
+                mAliasValueMap = index.getAliasValueMap();
+                lastValuePosition = index.getPosition(lastValue);
             }
         } else {
             JSONArray values = attributes.optJSONArray(JSON_VALUES_KEY);
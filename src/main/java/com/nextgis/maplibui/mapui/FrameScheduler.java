@@ -0,0 +1,240 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.mapui;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs map redraws on vsync. Requests from any thread made before a frame are merged into one
+ * call of the listener, and the settle runnable is debounced on the main thread handler. The view
+ * reports its draws with {@link #onFrameDrawn(long, long)}, frame counters are updated and should
+ * be read on the main thread.
+ */
+public class FrameScheduler
+        implements Choreographer.FrameCallback
+{
+    public static final int REQUEST_INVALIDATE = 1;
+    public static final int REQUEST_BUFFER     = 1 << 1;
+
+    protected static final float DEFAULT_REFRESH_RATE = 60; // Hz
+
+    protected final OnFrameListener mListener;
+    protected final Runnable        mSettle;
+    protected final Handler         mHandler      = new Handler(Looper.getMainLooper());
+    protected final AtomicInteger   mRequests     = new AtomicInteger();
+    // time of the first request since the last frame, zero if not known
+    protected final AtomicLong      mRequestNanos = new AtomicLong();
+    protected final long            mFrameIntervalNanos;
+
+    protected boolean mFramePending;
+    protected long    mTargetVsyncNanos, mListenerTimeNanos;
+    protected long mFrameCount, mDroppedFrameCount;
+    protected long mTotalFrameTimeNanos, mMaxFrameTimeNanos;
+
+    protected final Runnable mPostFrame = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            Choreographer.getInstance().postFrameCallback(FrameScheduler.this);
+        }
+    };
+
+
+    public interface OnFrameListener
+    {
+        /**
+         * @param buffer true if the map buffer should be updated before the redraw
+         */
+        void onFrame(boolean buffer);
+    }
+
+
+    /**
+     * @param settle is run on the main thread after {@link #settle(long)} calls stop
+     */
+    public FrameScheduler(
+            Context context,
+            OnFrameListener listener,
+            Runnable settle)
+    {
+        mListener = listener;
+        mSettle = settle;
+
+        float refreshRate = DEFAULT_REFRESH_RATE;
+        WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        if (null != manager && manager.getDefaultDisplay().getRefreshRate() > 1) {
+            refreshRate = manager.getDefaultDisplay().getRefreshRate();
+        }
+        mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+    }
+
+
+    /**
+     * Ask for the listener call on the next frame, may be called from any thread
+     *
+     * @param request {@link #REQUEST_INVALIDATE} or {@link #REQUEST_BUFFER}
+     */
+    public void request(int request)
+    {
+        mRequestNanos.compareAndSet(0, System.nanoTime());
+        int requests;
+        do {
+            requests = mRequests.get();
+        } while (!mRequests.compareAndSet(requests, requests | request));
+
+        if (0 != requests) {
+            // the frame is already scheduled
+            return;
+        }
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mPostFrame.run();
+        } else {
+            mHandler.post(mPostFrame);
+        }
+    }
+
+
+    /**
+     * Run the settle runnable after the delay, a previous pending run is dropped
+     */
+    public void settle(long delay)
+    {
+        mHandler.removeCallbacks(mSettle);
+        mHandler.postDelayed(mSettle, delay);
+    }
+
+
+    /**
+     * Drop pending frames and the settle run, call it on the main thread
+     */
+    public void cancel()
+    {
+        mRequests.set(0);
+        mRequestNanos.set(0);
+        mHandler.removeCallbacks(mPostFrame);
+        mHandler.removeCallbacks(mSettle);
+        Choreographer.getInstance().removeFrameCallback(this);
+        mFramePending = false;
+    }
+
+
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        int requests = mRequests.getAndSet(0);
+        long requestNanos = mRequestNanos.getAndSet(0);
+        if (0 == requests) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        mListener.onFrame(0 != (requests & REQUEST_BUFFER));
+        mListenerTimeNanos = System.nanoTime() - start;
+
+        // the frame is for the first vsync after the request, a busy main thread delays it
+        long late = 0 == requestNanos ? 0 : Math.max(0, frameTimeNanos - requestNanos);
+        mTargetVsyncNanos = frameTimeNanos - late / mFrameIntervalNanos * mFrameIntervalNanos;
+        mFramePending = true;
+    }
+
+
+    /**
+     * Call it from the view draw, draws not requested with {@link #request(int)} are not counted
+     *
+     * @param startNanos the draw start, {@link System#nanoTime()}
+     * @param endNanos   the draw end
+     */
+    public void onFrameDrawn(
+            long startNanos,
+            long endNanos)
+    {
+        if (!mFramePending) {
+            return;
+        }
+        mFramePending = false;
+
+        long time = mListenerTimeNanos + endNanos - startNanos;
+        mFrameCount++;
+        mTotalFrameTimeNanos += time;
+        mMaxFrameTimeNanos = Math.max(mMaxFrameTimeNanos, time);
+
+        // the frame drawn later than an interval after its target vsync is shown a vsync late,
+        // vsyncs without requests are not drops on displays faster than the input
+        long dropped = (endNanos - mTargetVsyncNanos) / mFrameIntervalNanos;
+        if (dropped > 0) {
+            mDroppedFrameCount += dropped;
+        }
+    }
+
+
+    public long getFrameCount()
+    {
+        return mFrameCount;
+    }
+
+
+    /**
+     * @return vsyncs missed by requested frames, from the request to the draw end
+     */
+    public long getDroppedFrameCount()
+    {
+        return mDroppedFrameCount;
+    }
+
+
+    /**
+     * @return average time of the listener call and the view draw, ms
+     */
+    public float getAverageFrameTime()
+    {
+        return 0 == mFrameCount ? 0 : mTotalFrameTimeNanos / 1000000f / mFrameCount;
+    }
+
+
+    /**
+     * @return the longest listener call and view draw, ms
+     */
+    public float getMaxFrameTime()
+    {
+        return mMaxFrameTimeNanos / 1000000f;
+    }
+
+
+    public void resetCounters()
+    {
+        mFrameCount = 0;
+        mDroppedFrameCount = 0;
+        mTotalFrameTimeNanos = 0;
+        mMaxFrameTimeNanos = 0;
+    }
+}
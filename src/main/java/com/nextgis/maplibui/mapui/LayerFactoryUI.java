@@ -27,6 +27,7 @@ import android.accounts.AccountManager;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.util.JsonReader;
 import android.util.Log;
 
 import com.nextgis.maplib.api.ILayer;
@@ -49,10 +50,9 @@ import com.nextgis.maplibui.dialog.SelectNGWResourceDialog;
 import com.nextgis.maplibui.fragment.LayerFillProgressDialogFragment;
 import com.nextgis.maplibui.service.LayerFillService;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -266,9 +266,7 @@ public class LayerFactoryUI
         ILayer layer = null;
 
         try {
-            String sData = FileUtil.readFromFile(config_file);
-            JSONObject rootObject = new JSONObject(sData);
-            int nType = rootObject.getInt(JSON_TYPE_KEY);
+            int nType = readLayerType(config_file);
 
             switch (nType) {
                 case LAYERTYPE_REMOTE_TMS:
@@ -299,13 +297,35 @@ public class LayerFactoryUI
                     layer = new NGWLookupTable(context, path); // TODO: 26.07.15 Do we need UI for this?
                     break;
             }
-        } catch (IOException | JSONException e) {
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
             Log.d(TAG, e.getLocalizedMessage());
         }
 
         return layer;
     }
 
+
+    /**
+     * Read the layer type without parsing the whole config. The layer reads its config again on
+     * load, so there is no need to build the JSON tree here.
+     *
+     * @return the layer type or -1 if the config has no type
+     */
+    public static int readLayerType(File configFile)
+            throws IOException
+    {
+        try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(configFile)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (JSON_TYPE_KEY.equals(reader.nextName())) {
+                    return reader.nextInt();
+                }
+                reader.skipValue();
+            }
+        }
+        return -1;
+    }
+
     @Override
     public String getLayerTypeString(
             Context context,
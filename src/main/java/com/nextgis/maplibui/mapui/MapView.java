@@ -26,7 +26,7 @@ package com.nextgis.maplibui.mapui;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.PointF;
-import android.os.Handler;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import android.util.Log;
 import android.view.GestureDetector;
@@ -44,9 +44,6 @@ import com.nextgis.maplib.util.Constants;
 import com.nextgis.maplib.util.MapUtil;
 import com.nextgis.maplibui.api.MapViewEventListener;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 import static com.nextgis.maplib.util.Constants.DRAW_FINISH_ID;
 import static com.nextgis.maplib.util.Constants.TAG;
 import static com.nextgis.maplibui.util.ConstantsUI.DRAW_STATE_drawing;
@@ -54,6 +51,8 @@ import static com.nextgis.maplibui.util.ConstantsUI.DRAW_STATE_drawing_noclearbk
 import static com.nextgis.maplibui.util.ConstantsUI.DRAW_STATE_panning;
 import static com.nextgis.maplibui.util.ConstantsUI.DRAW_STATE_panning_fling;
 import static com.nextgis.maplibui.util.ConstantsUI.DRAW_STATE_zooming;
+import static com.nextgis.maplibui.mapui.FrameScheduler.REQUEST_BUFFER;
+import static com.nextgis.maplibui.mapui.FrameScheduler.REQUEST_INVALIDATE;
 
 
 public class MapView
@@ -70,36 +69,14 @@ public class MapView
     protected       double               mScaleFactor;
     protected       double               mCurrentSpan;
     protected       Scroller             mScroller;
-    protected       long                 mStartDrawTime;
-    private Timer mTimer;
-    private InvalidateTask mInvalidateTask;
-    final Handler uiHandler = new Handler();
+    protected volatile long              mStartDrawTime;
+    protected final FrameScheduler       mFrameScheduler;
 
     //display redraw timeout ms
     public static final int DISPLAY_REDRAW_TIMEOUT = 750;
 
-    class InvalidateTask extends TimerTask {
-
-        @Override
-        public void run() {
-            uiHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    mDrawingState = DRAW_STATE_drawing;
-                    setZoomAndCenter(mMap.zoomSaved, mMap.centerSaved);
-                }
-            });
-        }
-    }
-
     public void scheduleInvalidate() {
-        if (mTimer != null) {
-            mTimer.cancel();
-        }
-
-        mTimer = new Timer();
-        mInvalidateTask = new InvalidateTask();
-        mTimer.schedule(mInvalidateTask, DISPLAY_REDRAW_TIMEOUT);
+        mFrameScheduler.settle(DISPLAY_REDRAW_TIMEOUT);
     }
 
     public MapView(
@@ -122,6 +99,35 @@ public class MapView
         mCurrentFocusLocation = new PointF();
 
         mDrawingState = DRAW_STATE_drawing_noclearbk;
+
+        mFrameScheduler = new FrameScheduler(context, new FrameScheduler.OnFrameListener()
+        {
+            @Override
+            public void onFrame(boolean buffer)
+            {
+                if (buffer && mMap != null) {
+                    mMap.buffer(0, 0, 1);
+                }
+                invalidate();
+            }
+        }, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mDrawingState = DRAW_STATE_drawing;
+                setZoomAndCenter(mMap.zoomSaved, mMap.centerSaved);
+            }
+        });
+    }
+
+
+    /**
+     * @return the scheduler of redraws with frame time counters
+     */
+    public FrameScheduler getFrameScheduler()
+    {
+        return mFrameScheduler;
     }
 
     @Override
@@ -155,6 +161,18 @@ public class MapView
         if (mMap != null) {
             mMap.removeListener(this);
         }
+
+        mFrameScheduler.cancel();
+    }
+
+
+    @Override
+    public void draw(Canvas canvas)
+    {
+        // subclasses draw in onDraw without the super call, the whole draw is timed here
+        long start = System.nanoTime();
+        super.draw(canvas);
+        mFrameScheduler.onFrameDrawn(start, System.nanoTime());
     }
 
 
@@ -212,7 +230,7 @@ public class MapView
                 -scaleGestureDetector.getFocusX(), -scaleGestureDetector.getFocusY());
         mScaleFactor = 1.f;
 
-        mMap.buffer(0, 0, 1);
+        mFrameScheduler.request(REQUEST_BUFFER);
     }
 
 
@@ -233,8 +251,7 @@ public class MapView
             }
 
             mScaleFactor = scaleFactor;
-            mMap.buffer(0, 0, 1);
-            invalidate();
+            mFrameScheduler.request(REQUEST_BUFFER);
         }
     }
 
@@ -285,7 +302,7 @@ public class MapView
         mStartMouseLocation.set(e.getX(), e.getY());
         mCurrentMouseOffset.set(0, 0);
 
-        mMap.buffer(0, 0, 1);
+        mFrameScheduler.request(REQUEST_BUFFER);
     }
 
 
@@ -323,8 +340,7 @@ public class MapView
             }
 
             mCurrentMouseOffset.set(x, y);
-            mMap.buffer(0, 0, 1);
-            invalidate();
+            mFrameScheduler.request(REQUEST_BUFFER);
         }
     }
 
@@ -432,7 +448,7 @@ public class MapView
 
         //Log.d(Constants.TAG, "Fling");
 
-        postInvalidate();
+        mFrameScheduler.request(REQUEST_INVALIDATE);
 
         return true;
     }
@@ -468,7 +484,7 @@ public class MapView
 
                     mCurrentMouseOffset.set(x, y);
 
-                    postInvalidate();
+                    mFrameScheduler.request(REQUEST_INVALIDATE);
                 }
             } else if (mScroller.isFinished()) {
                 mDrawingState = DRAW_STATE_panning;
@@ -551,7 +567,7 @@ public class MapView
         mMap.buffer(0, 0, 1);
         setZoomAndCenter((float) Math.ceil(getZoomLevel() + 0.5), newCenterPtMap);
 
-        postInvalidate();
+        mFrameScheduler.request(REQUEST_INVALIDATE);
 
         return true;
     }
@@ -591,7 +607,7 @@ public class MapView
 
         super.zoomIn();
 
-        postInvalidate();
+        mFrameScheduler.request(REQUEST_INVALIDATE);
     }
 
 
@@ -608,7 +624,7 @@ public class MapView
 
         super.zoomOut();
 
-        postInvalidate();
+        mFrameScheduler.request(REQUEST_INVALIDATE);
     }
 
 
@@ -685,14 +701,14 @@ public class MapView
     {
         if (mMap != null) {
             mDrawingState = DRAW_STATE_drawing;
-            mStartDrawTime = System.currentTimeMillis();
+            mStartDrawTime = SystemClock.uptimeMillis();
             mMap.runDraw(null);
         }
     }
 
 
     @Override
-    public synchronized void onLayerDrawFinished(int id, float percent)
+    public void onLayerDrawFinished(int id, float percent)
     {
         if(Constants.DEBUG_MODE) {
             //Log.d(TAG, "onLayerDrawFinished: " + id + " percent " + percent + " | draw state: " + mDrawingState);
@@ -702,16 +718,16 @@ public class MapView
             return;
         }
 
-        if (System.currentTimeMillis() - mStartDrawTime > DISPLAY_REDRAW_TIMEOUT) {
-            mStartDrawTime = System.currentTimeMillis();
-            mMap.buffer(0, 0, 1);
-            postInvalidate();
+        // layers finished at once are buffered on one frame
+        long now = SystemClock.uptimeMillis();
+        if (now - mStartDrawTime > DISPLAY_REDRAW_TIMEOUT) {
+            mStartDrawTime = now;
+            mFrameScheduler.request(REQUEST_BUFFER);
 
         } else if (id == DRAW_FINISH_ID && percent >= 1.0) {
             //Log.d(TAG, "LayerDrawFinished: id - " + id + ", percent - " + percent);
 
-            mMap.buffer(0, 0, 1);
-            postInvalidate();
+            mFrameScheduler.request(REQUEST_BUFFER);
         }
     }
 
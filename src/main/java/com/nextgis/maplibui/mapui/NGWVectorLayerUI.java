@@ -30,18 +30,21 @@ import android.graphics.drawable.Drawable;
 
 import com.nextgis.maplib.datasource.GeoGeometry;
 import com.nextgis.maplib.display.SimpleFeatureRenderer;
-import com.nextgis.maplib.map.MapBase;
 import com.nextgis.maplib.map.MapContentProviderHelper;
 import com.nextgis.maplib.map.NGWLookupTable;
 import com.nextgis.maplib.map.NGWVectorLayer;
 import com.nextgis.maplib.util.Constants;
+import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.activity.AttributesActivity;
 import com.nextgis.maplibui.activity.VectorLayerSettingsActivity;
+import com.nextgis.maplibui.adapter.attributes.AttributeSearchIndex;
+import com.nextgis.maplibui.adapter.attributes.AttributeTableModel;
 import com.nextgis.maplibui.api.IVectorLayerUI;
 import com.nextgis.maplibui.util.ConstantsUI;
 import com.nextgis.maplibui.util.ControlHelper;
 import com.nextgis.maplibui.util.LayerUtil;
+import com.nextgis.maplibui.util.LookupTableProvider;
 
 import org.json.JSONException;
 
@@ -62,6 +65,15 @@ public class NGWVectorLayerUI
     }
 
 
+    @Override
+    public boolean load()
+    {
+        boolean result = super.load();
+        GISApplication.onLayerLoaded(this);
+        return result;
+    }
+
+
     @Override
     public Drawable getIcon(Context context)
     {
@@ -99,13 +111,12 @@ public class NGWVectorLayerUI
 
     @Override
     public boolean delete(boolean keepTrack) {
+        // the map is taken before the layer is deleted and removed from it
+        MapContentProviderHelper map = LayerUtil.getMap(this);
         File form = new File(mPath, ConstantsUI.FILE_FORM);
-        if (form.exists()) {
+        if (form.exists() && null != map) {
             try {
                 ArrayList<String> lookupTableIds = LayerUtil.fillLookupTableIds(form);
-                MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
-                if (null == map)
-                    throw new IllegalArgumentException("The map should extends MapContentProviderHelper or inherited");
 
                 for (int i = 0; i < map.getLayerCount(); i++) {
                     if (map.getLayer(i) instanceof NGWVectorLayer) {
@@ -128,12 +139,16 @@ public class NGWVectorLayerUI
                             }
                         }
                     }
+                LookupTableProvider.invalidate();
             } catch (IOException | JSONException e) {
                 e.printStackTrace();
             }
         }
 
-        return super.delete(keepTrack);
+        AttributeTableModel.dropIndexes(map, getPath().getName());
+        boolean result = super.delete(keepTrack);
+        AttributeSearchIndex.drop(map, getPath().getName());
+        return result;
     }
 
     @Override
@@ -33,12 +33,16 @@ import com.nextgis.maplib.datasource.GeoGeometry;
 import com.nextgis.maplib.datasource.ngw.Connection;
 import com.nextgis.maplib.datasource.ngw.Connections;
 import com.nextgis.maplib.display.SimpleFeatureRenderer;
+import com.nextgis.maplib.map.MapContentProviderHelper;
 import com.nextgis.maplib.map.VectorLayer;
+import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.activity.AttributesActivity;
 import com.nextgis.maplibui.activity.NGActivity;
 import com.nextgis.maplibui.activity.SelectNGWResourceActivity;
 import com.nextgis.maplibui.activity.VectorLayerSettingsActivity;
+import com.nextgis.maplibui.adapter.attributes.AttributeSearchIndex;
+import com.nextgis.maplibui.adapter.attributes.AttributeTableModel;
 import com.nextgis.maplibui.api.IVectorLayerUI;
 import com.nextgis.maplibui.dialog.NGWResourcesListAdapter;
 import com.nextgis.maplibui.dialog.SelectNGWResourceDialog;
@@ -65,6 +69,15 @@ public class VectorLayerUI
     }
 
 
+    @Override
+    public boolean load()
+    {
+        boolean result = super.load();
+        GISApplication.onLayerLoaded(this);
+        return result;
+    }
+
+
     @Override
     public Drawable getIcon(Context context)
     {
@@ -100,7 +113,12 @@ public class VectorLayerUI
             preference.delete();
         }
 
-        return super.delete(keepTrack);
+        // the map is taken before the layer is deleted and removed from it
+        MapContentProviderHelper map = LayerUtil.getMap(this);
+        AttributeTableModel.dropIndexes(map, getPath().getName());
+        boolean result = super.delete(keepTrack);
+        AttributeSearchIndex.drop(map, getPath().getName());
+        return result;
     }
 
     @Override
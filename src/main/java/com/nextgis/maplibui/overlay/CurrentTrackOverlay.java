@@ -5,7 +5,7 @@
  * Author:   NikitaFeodonit, nfeodonit@yandex.com
  * Author:   Stanislav Petriakov, becomeglory@gmail.com
  * *****************************************************************************
- * Copyright (c) 2015-2016, 2019 NextGIS, info@nextgis.com
+ * Copyright (c) 2015-2016, 2019, 2026 NextGIS, info@nextgis.com
  *
  * This program is free software: you can redistribute it and/or modify
  * it under the terms of the GNU Lesser Public License as published by
@@ -24,41 +24,73 @@
 package com.nextgis.maplibui.overlay;
 
 import android.app.Activity;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PointF;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
 import com.nextgis.maplib.api.IGISApplication;
 import com.nextgis.maplib.datasource.GeoPoint;
 import com.nextgis.maplib.map.MapDrawable;
 import com.nextgis.maplib.map.TrackLayer;
 import com.nextgis.maplib.util.GeoConstants;
-import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.api.Overlay;
 import com.nextgis.maplibui.mapui.MapViewOverlays;
 import com.nextgis.maplibui.util.ControlHelper;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
+/**
+ * Draws the track being recorded. Web Mercator coordinates of the track are kept in a primitive
+ * array which is appended with new points only, the screen polyline is rebuilt when the viewport
+ * changes and thins out vertices closer than {@link #TOLERANCE} pixels.
+ */
 public class CurrentTrackOverlay
         extends Overlay
 {
-    private       Cursor         mCursor;
+    protected static final float  TOLERANCE      = 1.5f;
+    protected static final double TRANSFORM_STEP = 1000000;
+
     private final Uri            mContentUriTracks;
+    private final Uri            mContentUriTrackPoints;
     private       Paint          mPaint;
-    private       List<GeoPoint> mTrackpoints;
+    private final ContentResolver mResolver;
+    private       ContentObserver mObserver;
+    private       ExecutorService mLoader;
 
     String[] mProjection = new String[] {TrackLayer.FIELD_ID};
     String   mSelection  = TrackLayer.FIELD_VISIBLE + " = 1 AND (" + TrackLayer.FIELD_END +
                            " IS NULL OR " + TrackLayer.FIELD_END +
                            " = '')";
 
+    // track in Web Mercator, x and y interleaved, guarded by mLock
+    private final Object   mLock        = new Object();
+    private       double[] mCoordinates = new double[1024];
+    private       int      mCount;
+    private       String   mTrackId;
+    private       long     mLastTimestamp;
+
+    // screen polyline as drawLines() segments, valid for the transform below
+    private float[] mLines = new float[1024];
+    private float[] mZoomed = new float[0];
+    private int     mLinesLength;
+    private int     mProjected;
+    private float   mLastX, mLastY, mTailX, mTailY;
+    private boolean mHasTail;
+    private double  mOriginX, mOriginY, mScaleX, mScaleY;
+    private final Matrix mMatrix = new Matrix();
+
 
     public CurrentTrackOverlay(
             Context context,
@@ -74,21 +106,70 @@ public class CurrentTrackOverlay
         mPaint.setColor(ControlHelper.getColor(mContext.get(), android.R.attr.colorAccent));
         mPaint.setStrokeWidth(4);
 
-        mTrackpoints = new ArrayList<>();
         IGISApplication app = (IGISApplication) parent.getApplication();
         String authority = app.getAuthority();
         mContentUriTracks = Uri.parse("content://" + authority + "/" + TrackLayer.TABLE_TRACKS);
+        mContentUriTrackPoints = Uri.parse("content://" + authority + "/" + TrackLayer.TABLE_TRACKPOINTS);
+
+        mResolver = parent.getApplicationContext().getContentResolver();
+
+        // track changes are listened while the map view is attached, so the observer does not
+        // keep the activity after it is destroyed
+        mapViewOverlays.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener()
+        {
+            @Override
+            public void onViewAttachedToWindow(View view)
+            {
+                start();
+            }
+
+
+            @Override
+            public void onViewDetachedFromWindow(View view)
+            {
+                release();
+            }
+        });
+        if (mapViewOverlays.isAttachedToWindow()) {
+            start();
+        }
+    }
+
+
+    /**
+     * Listen to the track changes and load the current track. Called when the map view is
+     * attached.
+     */
+    public void start()
+    {
+        if (null != mObserver) {
+            return;
+        }
 
-//        mCursor = mContext.get().getContentResolver()
-//                .query(mContentUriTracks, mProjection, mSelection, null, null);
-//
-//        if (mCursor == null)
-//            return;
-//        mCursor.setNotificationUri(mContext.get().getContentResolver(), mContentUriTracks);
-//        ContentObserver test = new TrackObserver(new Handler());
-//        mCursor.registerContentObserver(test);
+        mLoader = Executors.newSingleThreadExecutor();
+        mObserver = new TrackObserver(new Handler(Looper.getMainLooper()));
+        mResolver.registerContentObserver(mContentUriTracks, true, mObserver);
+        mResolver.registerContentObserver(mContentUriTrackPoints, true, mObserver);
+        requestUpdate();
     }
 
+
+    /**
+     * Stop listening to the track changes. Called when the map view is detached.
+     */
+    public void release()
+    {
+        if (null != mObserver) {
+            mResolver.unregisterContentObserver(mObserver);
+        }
+        mObserver = null;
+        if (null != mLoader) {
+            mLoader.shutdownNow();
+            mLoader = null;
+        }
+    }
+
+
     @Override
     public void drawOnPanning(
             Canvas canvas,
@@ -98,19 +179,14 @@ public class CurrentTrackOverlay
             return;
         }
 
-        if (mTrackpoints.size() < 2) {
+        if (mLinesLength == 0 && !mHasTail) {
             return;
         }
 
-        float x0, y0, x1, y1;
-
-        for (int i = 1; i < mTrackpoints.size(); i++) {
-            x0 = (float) mTrackpoints.get(i - 1).getX() - currentMouseOffset.x;
-            y0 = (float) mTrackpoints.get(i - 1).getY() - currentMouseOffset.y;
-            x1 = (float) mTrackpoints.get(i).getX() - currentMouseOffset.x;
-            y1 = (float) mTrackpoints.get(i).getY() - currentMouseOffset.y;
-            canvas.drawLine(x0, y0, x1, y1, mPaint);
-        }
+        canvas.save();
+        canvas.translate(-currentMouseOffset.x, -currentMouseOffset.y);
+        drawLines(canvas);
+        canvas.restore();
     }
 
 
@@ -124,28 +200,28 @@ public class CurrentTrackOverlay
             return;
         }
 
-        float x0, y0, x1, y1;
-        double dx, dy;
-
-        if (mTrackpoints.size() < 2) {
+        if (mLinesLength == 0 && !mHasTail) {
             return;
-        } else {
-            dx = mTrackpoints.get(0).getX() + currentFocusLocation.x;
-            dy = mTrackpoints.get(0).getY() + currentFocusLocation.y;
-            x0 = (float) (mTrackpoints.get(0).getX() - (1 - scale) * dx);
-            y0 = (float) (mTrackpoints.get(0).getY() - (1 - scale) * dy);
         }
 
-        for (int i = 1; i < mTrackpoints.size(); i++) {
-            dx = mTrackpoints.get(i).getX() + currentFocusLocation.x;
-            dy = mTrackpoints.get(i).getY() + currentFocusLocation.y;
-            x1 = (float) (mTrackpoints.get(i).getX() - (1 - scale) * dx);
-            y1 = (float) (mTrackpoints.get(i).getY() - (1 - scale) * dy);
+        // x' = x - (1 - scale) * (x + focus), the stroke width is not scaled
+        mMatrix.setScale(scale, scale);
+        mMatrix.postTranslate(-(1 - scale) * currentFocusLocation.x,
+                -(1 - scale) * currentFocusLocation.y);
 
-            canvas.drawLine(x0, y0, x1, y1, mPaint);
-            x0 = x1;
-            y0 = y1;
+        int length = mLinesLength + (mHasTail ? 4 : 0);
+        if (mZoomed.length < length) {
+            mZoomed = new float[mLines.length + 4];
+        }
+        mMatrix.mapPoints(mZoomed, 0, mLines, 0, mLinesLength / 2);
+        if (mHasTail) {
+            mZoomed[mLinesLength] = mLastX;
+            mZoomed[mLinesLength + 1] = mLastY;
+            mZoomed[mLinesLength + 2] = mTailX;
+            mZoomed[mLinesLength + 3] = mTailY;
+            mMatrix.mapPoints(mZoomed, mLinesLength, mZoomed, mLinesLength, 2);
         }
+        canvas.drawLines(mZoomed, 0, length, mPaint);
     }
 
 
@@ -154,61 +230,196 @@ public class CurrentTrackOverlay
             Canvas canvas,
             MapDrawable mapDrawable)
     {
-        mTrackpoints.clear();
+        GeoPoint origin = new GeoPoint(0, 0);
+        origin.setCRS(GeoConstants.CRS_WEB_MERCATOR);
+        GeoPoint step = new GeoPoint(TRANSFORM_STEP, TRANSFORM_STEP);
+        step.setCRS(GeoConstants.CRS_WEB_MERCATOR);
+        origin = mapDrawable.mapToScreen(origin);
+        step = mapDrawable.mapToScreen(step);
+        double scaleX = (step.getX() - origin.getX()) / TRANSFORM_STEP;
+        double scaleY = (step.getY() - origin.getY()) / TRANSFORM_STEP;
+
+        synchronized (mLock) {
+            if (origin.getX() != mOriginX || origin.getY() != mOriginY || scaleX != mScaleX
+                    || scaleY != mScaleY || mProjected > mCount) {
+                mOriginX = origin.getX();
+                mOriginY = origin.getY();
+                mScaleX = scaleX;
+                mScaleY = scaleY;
+                mLinesLength = 0;
+                mProjected = 0;
+            }
+            project();
+        }
+
+        drawLines(canvas);
+    }
 
-        if (mCursor == null || mCursor.getCount() == 0 || !mCursor.moveToFirst()) {
+
+    /**
+     * Project vertices added since the last call and append segments longer than the tolerance.
+     * The last vertex is kept as a tail until a later vertex moves far enough from the polyline.
+     */
+    private void project()
+    {
+        mHasTail = false;
+        if (mCount < 2) {
+            mProjected = mCount;
             return;
         }
 
-        String id = mCursor.getString(0);
-        String[] proj = new String[] {TrackLayer.FIELD_LON, TrackLayer.FIELD_LAT};
+        float tolerance = TOLERANCE * TOLERANCE;
+        for (int i = mProjected; i < mCount; i++) {
+            float x = (float) (mOriginX + mCoordinates[2 * i] * mScaleX);
+            float y = (float) (mOriginY + mCoordinates[2 * i + 1] * mScaleY);
 
-        try {
-            Cursor track = mContext.get().getContentResolver().query(Uri.withAppendedPath(mContentUriTracks, id), proj, null, null, null);
+            if (i == 0) {
+                mLastX = x;
+                mLastY = y;
+                continue;
+            }
 
-            if (track == null) {
-                return;
+            float dx = x - mLastX, dy = y - mLastY;
+            if (dx * dx + dy * dy < tolerance) {
+                continue;
             }
 
-            drawTrack(track, mapDrawable, canvas);
+            if (mLines.length < mLinesLength + 4) {
+                mLines = Arrays.copyOf(mLines, mLines.length * 2);
+            }
+            mLines[mLinesLength++] = mLastX;
+            mLines[mLinesLength++] = mLastY;
+            mLines[mLinesLength++] = x;
+            mLines[mLinesLength++] = y;
+            mLastX = x;
+            mLastY = y;
+        }
+        mProjected = mCount;
+
+        float x = (float) (mOriginX + mCoordinates[2 * mCount - 2] * mScaleX);
+        float y = (float) (mOriginY + mCoordinates[2 * mCount - 1] * mScaleY);
+        if (x != mLastX || y != mLastY) {
+            mTailX = x;
+            mTailY = y;
+            mHasTail = true;
+        }
+    }
 
-            track.close();
-        } catch (Exception e) {
 
+    private void drawLines(Canvas canvas)
+    {
+        if (mLinesLength > 0) {
+            canvas.drawLines(mLines, 0, mLinesLength, mPaint);
+        }
+        if (mHasTail) {
+            canvas.drawLine(mLastX, mLastY, mTailX, mTailY, mPaint);
         }
     }
 
 
-    private void drawTrack(Cursor track, MapDrawable mapDrawable, Canvas canvas) {
-        if (track.moveToFirst()) {
-            float x0 = track.getFloat(track.getColumnIndex(TrackLayer.FIELD_LON)),
-                    y0 = track.getFloat(track.getColumnIndex(TrackLayer.FIELD_LAT)), x1, y1;
-            GeoPoint point;
-            point = new GeoPoint(x0, y0);
-            point.setCRS(GeoConstants.CRS_WEB_MERCATOR);
-
-            GeoPoint mts = mapDrawable.mapToScreen(point);
-            x0 = (float) (mts.getX());
-            y0 = (float) (mts.getY());
+    private void requestUpdate()
+    {
+        if (null == mLoader || mLoader.isShutdown()) {
+            return;
+        }
 
-            while (track.moveToNext()) {
-                x1 = track.getFloat(track.getColumnIndex(TrackLayer.FIELD_LON));
-                y1 = track.getFloat(track.getColumnIndex(TrackLayer.FIELD_LAT));
+        mLoader.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (loadNewPoints()) {
+                    mMapViewOverlays.postInvalidate();
+                }
+            }
+        });
+    }
 
-                point = new GeoPoint(x1, y1);
-                point.setCRS(GeoConstants.CRS_WEB_MERCATOR);
 
-                mts = mapDrawable.mapToScreen(point);
+    /**
+     * Append points recorded after the last loaded one to the buffer.
+     *
+     * @return true if the buffer changed
+     */
+    private boolean loadNewPoints()
+    {
+        Context context = mContext.get();
+        if (null == context) {
+            return false;
+        }
 
-                canvas.drawLine(x0, y0, (float) mts.getX(), (float) mts.getY(), mPaint);
+        ContentResolver resolver = context.getContentResolver();
+        String id = null;
+        try {
+            Cursor track = resolver.query(mContentUriTracks, mProjection, mSelection, null, null);
+            if (null != track) {
+                if (track.moveToFirst()) {
+                    id = track.getString(0);
+                }
+                track.close();
+            }
+        } catch (Exception ignored) {
+            return false;
+        }
 
-                mTrackpoints.add(new GeoPoint(x0, y0));
-                x0 = (float) (mts.getX());
-                y0 = (float) (mts.getY());
+        boolean changed = false;
+        synchronized (mLock) {
+            if (null == id ? null != mTrackId : !id.equals(mTrackId)) {
+                mTrackId = id;
+                mLastTimestamp = Long.MIN_VALUE;
+                mCount = 0;
+                // forces the screen polyline to be rebuilt
+                mProjected = Integer.MAX_VALUE;
+                changed = true;
             }
+        }
+
+        if (null == id) {
+            return changed;
+        }
 
-            mTrackpoints.add(new GeoPoint(x0, y0));
+        String[] proj = new String[] {TrackLayer.FIELD_LON, TrackLayer.FIELD_LAT, TrackLayer.FIELD_TIMESTAMP};
+        String selection = TrackLayer.FIELD_SESSION + " = ? AND " + TrackLayer.FIELD_TIMESTAMP + " > ?";
+        String[] args = new String[] {id, Long.toString(mLastTimestamp)};
+        Cursor points;
+        try {
+            points = resolver.query(mContentUriTrackPoints, proj, selection, args,
+                    TrackLayer.FIELD_TIMESTAMP + " ASC");
+        } catch (Exception ignored) {
+            return changed;
         }
+
+        if (null == points) {
+            return changed;
+        }
+
+        try {
+            if (points.moveToFirst()) {
+                synchronized (mLock) {
+                    if (!id.equals(mTrackId)) {
+                        return changed;
+                    }
+
+                    int required = 2 * (mCount + points.getCount());
+                    if (mCoordinates.length < required) {
+                        mCoordinates = Arrays.copyOf(mCoordinates,
+                                Math.max(required, mCoordinates.length * 2));
+                    }
+
+                    do {
+                        mCoordinates[2 * mCount] = points.getDouble(0);
+                        mCoordinates[2 * mCount + 1] = points.getDouble(1);
+                        mCount++;
+                        mLastTimestamp = points.getLong(2);
+                    } while (points.moveToNext());
+                }
+                changed = true;
+            }
+        } finally {
+            points.close();
+        }
+
+        return changed;
     }
 
 
@@ -238,9 +449,7 @@ public class CurrentTrackOverlay
         public void onChange(boolean selfChange)
         {
             super.onChange(selfChange);
-
-            mCursor.requery();
-            mMapViewOverlays.postInvalidate();
+            requestUpdate();
         }
 
     }
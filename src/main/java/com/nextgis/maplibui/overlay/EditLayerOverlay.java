@@ -32,6 +32,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PointF;
 import android.graphics.RectF;
@@ -80,9 +81,11 @@ import com.nextgis.maplibui.api.OverlayItem;
 import com.nextgis.maplibui.api.VertexStyle;
 import com.nextgis.maplibui.fragment.BottomToolbar;
 import com.nextgis.maplibui.mapui.MapViewOverlays;
+import com.nextgis.maplibui.service.WalkEditJournal;
 import com.nextgis.maplibui.service.WalkEditService;
 import com.nextgis.maplibui.util.ConstantsUI;
 import com.nextgis.maplibui.util.ControlHelper;
+import com.nextgis.maplibui.util.FeaturePicker;
 import com.nextgis.maplibui.util.SettingsConstantsUI;
 
 import java.util.ArrayList;
@@ -137,6 +140,14 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
     protected List<DrawItem> mDrawItems;
     protected DrawItem mSelectedItem;
 
+    // draw items are projected again only if the geometry or the map extent is changed
+    protected GeoGeometry mDrawnGeometry;
+    protected GeoEnvelope mDrawnBounds;
+    protected Matrix mDrawMatrix;
+
+    protected FeaturePicker mPicker;
+    protected List<FeaturePicker.Hit> mPickedFeatures;
+
     protected int mMode;
     protected boolean mHasEdits;
 
@@ -145,6 +156,7 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
 
     protected List<EditEventListener> mListeners;
     protected WalkEditReceiver mReceiver;
+    protected GeoLineString mWalkGeometry;
     protected GpsEventSource mGpsEventSource;
 
     public EditLayerOverlay(
@@ -165,6 +177,9 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
 
         mDrawItems = new ArrayList<>();
         mListeners = new ArrayList<>();
+        mDrawMatrix = new Matrix();
+        mPicker = new FeaturePicker();
+        mPickedFeatures = new ArrayList<>();
 
         mMap = mMapViewOverlays.getMap();
         mMapViewOverlays.addListener(this);
@@ -269,6 +284,7 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
     protected void clearDrawItems() {
         mDrawItems.clear();
         mSelectedItem = null;
+        mDrawnGeometry = null;
     }
 
 
@@ -770,6 +786,7 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(WalkEditService.WALKEDIT_CHANGE);
         mReceiver = new WalkEditReceiver();
+        mWalkGeometry = null;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
             mContext.get().registerReceiver(mReceiver, intentFilter, Context.RECEIVER_NOT_EXPORTED);
         } else {
@@ -825,6 +842,7 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
             mContext.get().unregisterReceiver(mReceiver);
             mReceiver = null;
         }
+        mWalkGeometry = null;
     }
 
 
@@ -872,6 +890,17 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
         }
 
         mFeature.setGeometry(geometry);
+
+        // lines and polygons are built from the draw items, so the items need no new projection,
+        // only edges of the changed rings
+        int type = mLayer.getGeometryType();
+        if (type != GeoConstants.GTPoint && type != GeoConstants.GTMultiPoint) {
+            boolean closed = type == GeoConstants.GTPolygon || type == GeoConstants.GTMultiPolygon;
+            for (DrawItem drawItem : mDrawItems)
+                drawItem.updateEdges(closed);
+
+            mDrawnGeometry = geometry;
+        }
     }
 
 
@@ -943,17 +972,40 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
         if (mMode == MODE_CHANGE || mFeature == null)
             return;
 
-        fillDrawItems(mFeature.getGeometry());
+        GeoGeometry geometry = mFeature.getGeometry();
+        boolean extentChanged = updateDrawnBounds(mapDrawable);
+        if (extentChanged || geometry != mDrawnGeometry || mDrawItems.isEmpty()) {
+            fillDrawItems(geometry);
+            mDrawnGeometry = geometry;
+        }
 
         for (DrawItem drawItem : mDrawItems) {
             boolean isSelected = mSelectedItem == drawItem;
-            drawItem(drawItem, canvas, isSelected);
+            drawItem(drawItem, canvas, null, isSelected);
         }
 
         drawCross(canvas);
     }
 
 
+    /**
+     * @return true if the map extent is changed since the draw items were projected
+     */
+    protected boolean updateDrawnBounds(MapDrawable mapDrawable) {
+        GeoEnvelope bounds = mapDrawable.getFullScreenBounds();
+        if (null == bounds)
+            return true;
+
+        if (null != mDrawnBounds && mDrawnBounds.getMinX() == bounds.getMinX() &&
+                mDrawnBounds.getMaxX() == bounds.getMaxX() && mDrawnBounds.getMinY() == bounds.getMinY() &&
+                mDrawnBounds.getMaxY() == bounds.getMaxY())
+            return false;
+
+        mDrawnBounds = new GeoEnvelope(bounds.getMinX(), bounds.getMaxX(), bounds.getMinY(), bounds.getMaxY());
+        return true;
+    }
+
+
     @Override
     public void drawOnPanning(
             Canvas canvas,
@@ -961,20 +1013,16 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
         if (mOverlayPoint.isVisible())
             drawOnPanning(canvas, currentMouseOffset, mOverlayPoint);
 
+        Matrix matrix = null;
+        if (mMode != MODE_CHANGE && mMode != MODE_EDIT_BY_TOUCH) {
+            DrawItem.setPanMatrix(mDrawMatrix, currentMouseOffset);
+            matrix = mDrawMatrix;
+        }
+
         List<DrawItem> drawItems = mDrawItems;
         for (DrawItem drawItem : drawItems) {
             boolean isSelected = mSelectedItem == drawItem;
-
-            if (mMode != MODE_CHANGE && mMode != MODE_EDIT_BY_TOUCH) {
-                drawItem = drawItem.pan(currentMouseOffset);
-
-                if (isSelected) {
-                    drawItem.setSelectedRing(mSelectedItem.getSelectedRingId());
-                    drawItem.setSelectedPoint(mSelectedItem.getSelectedPointId());
-                }
-            }
-
-            drawItem(drawItem, canvas, isSelected);
+            drawItem(drawItem, canvas, matrix, isSelected);
             if (mLayer != null) {
                 int type = mLayer.getGeometryType();
                 if (type == GeoConstants.GTPoint || type == GeoConstants.GTMultiPoint) {
@@ -997,17 +1045,11 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
         if (mOverlayPoint.isVisible())
             drawOnZooming(canvas, currentFocusLocation, scale, mOverlayPoint, false);
 
+        DrawItem.setZoomMatrix(mDrawMatrix, currentFocusLocation, scale);
         List<DrawItem> drawItems = mDrawItems;
         for (DrawItem drawItem : drawItems) {
             boolean isSelected = mSelectedItem == drawItem;
-            drawItem = drawItem.zoom(currentFocusLocation, scale);
-
-            if (isSelected) {
-                drawItem.setSelectedRing(mSelectedItem.getSelectedRingId());
-                drawItem.setSelectedPoint(mSelectedItem.getSelectedPointId());
-            }
-
-            drawItem(drawItem, canvas, isSelected);
+            drawItem(drawItem, canvas, mDrawMatrix, isSelected);
         }
 
         drawCross(canvas);
@@ -1108,11 +1150,7 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
         if (points.length < 2)
             return;
 
-        float[] edgePoints = new float[points.length - 2];
-        for (int i = 0; i < points.length - 2; i++)
-            edgePoints[i] = (points[i] + points[i + 2]) * .5f;
-
-        mSelectedItem.addEdges(edgePoints);
+        mSelectedItem.updateEdges(false);
     }
 
 
@@ -1120,19 +1158,12 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
         GeoPoint[] geoPoints =
                 geoLinearRing.getPoints().toArray(new GeoPoint[geoLinearRing.getPointCount()]);
         float[] points = mapToScreen(geoPoints);
-        float[] edgePoints = new float[points.length];
 
-        if (points.length == 0 || edgePoints.length < 2)
+        if (points.length < 2)
             return;
 
-        for (int i = 0; i < points.length - 2; i++)
-            edgePoints[i] = (points[i] + points[i + 2]) * .5f;
-
-        edgePoints[edgePoints.length - 2] = (points[0] + points[points.length - 2]) * .5f;
-        edgePoints[edgePoints.length - 1] = (points[1] + points[points.length - 1]) * .5f;
-
         mSelectedItem.addVertices(points);
-        mSelectedItem.addEdges(edgePoints);
+        mSelectedItem.updateEdges(true);
     }
 
 
@@ -1153,18 +1184,23 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
 
 
     protected void drawItem(DrawItem drawItem, Canvas canvas, boolean isSelected) {
+        drawItem(drawItem, canvas, null, isSelected);
+    }
+
+
+    protected void drawItem(DrawItem drawItem, Canvas canvas, Matrix matrix, boolean isSelected) {
         isSelected = isSelected && mMode == MODE_EDIT;
         switch (mFeature.getGeometry().getType()) {
             case GeoConstants.GTPoint:
             case GeoConstants.GTMultiPoint:
-                drawItem.drawPoints(canvas, isSelected);
+                drawItem.drawPoints(canvas, matrix, isSelected);
                 break;
             case GeoConstants.GTLineString:
             case GeoConstants.GTMultiLineString:
             case GeoConstants.GTPolygon:
             case GeoConstants.GTMultiPolygon:
                 boolean closed = mFeature.getGeometry().getType() == GeoConstants.GTPolygon || mFeature.getGeometry().getType() == GeoConstants.GTMultiPolygon;
-                drawItem.drawLines(canvas, isSelected, mMode == MODE_EDIT || mMode == MODE_CHANGE, mMode == MODE_EDIT, closed);
+                drawItem.drawLines(canvas, matrix, isSelected, mMode == MODE_EDIT || mMode == MODE_CHANGE, mMode == MODE_EDIT, closed);
                 break;
             default:
                 break;
@@ -1259,30 +1295,24 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
         if (null == mapEnv)
             return false;
 
-        List<Long> items = mLayer.query(mapEnv);
-        if (items.isEmpty())
+        mPickedFeatures = mPicker.pick(mLayer, mapEnv, mMap.getZoomLevel(), mTolerancePX);
+        if (mPickedFeatures.isEmpty())
             return false;
 
         long previousFeatureId = Constants.NOT_FOUND;
         if (null != mFeature)
             previousFeatureId = mFeature.getId();
 
-        GeoEnvelope exactEnv = new GeoEnvelope(x, x, y, y);
-        exactEnv = mMap.screenToMap(exactEnv);
-        if (null == exactEnv)
-            return false;
-        GeoPoint point = new GeoPoint(exactEnv.getMaxX(), exactEnv.getMinY());
-        point.setCRS(GeoConstants.CRS_WEB_MERCATOR);
-
-        for (int i = 0; i < items.size(); i++) {    // FIXME hack for bad RTree cache
-            long featureId = items.get(i);
-            GeoGeometry geometry = mLayer.getGeometryForId(featureId);
-            if (notContains(geometry, point))
+        // the nearest feature other than the selected one, so taps go through overlapped features
+        for (FeaturePicker.Hit hit : mPickedFeatures) {
+            if (hit.mFeatureId == previousFeatureId)
                 continue;
 
-            if (geometry != null && previousFeatureId != featureId) {
-                mFeature = new Feature(featureId, mLayer.getFields());
-                mFeature.setGeometry(mLayer.getGeometryForId(featureId));
+            GeoGeometry geometry = hit.getGeometry(mLayer);
+            if (geometry != null) {
+                mFeature = new Feature(hit.mFeatureId, mLayer.getFields());
+                mFeature.setGeometry(geometry);
+                break;
             }
         }
 
@@ -1304,6 +1334,15 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
     }
 
 
+    /**
+     * @return features found by the last {@link #selectGeometryInScreenCoordinates(float, float)},
+     * the nearest first, to let the user choose one of overlapped features
+     */
+    public List<FeaturePicker.Hit> getPickedFeatures() {
+        return mPickedFeatures;
+    }
+
+
     static public boolean notContains(GeoGeometry geometry, GeoPoint point) {
         if (geometry instanceof GeoPolygon) {
             GeoPolygon polygon = (GeoPolygon) geometry;
@@ -1386,6 +1425,7 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
 
     @Override
     public void onLayerDeleted(int id) { // TODO do we need this?
+        mPicker.invalidate(id);
         //if delete edited layer cancel edit session
         if (null != mLayer && mLayer.getId() == id) {
             setHasEdits(false);
@@ -1396,7 +1436,7 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
 
     @Override
     public void onLayerChanged(int id) {
-
+        mPicker.invalidate(id);
     }
 
     @Override
@@ -1406,6 +1446,7 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
 
     @Override
     public void onLayerChangedFeatureId(long oldFeatureId, long newFeatureId, int layerId) {
+        mPicker.invalidate(layerId);
     }
 
 
@@ -1510,9 +1551,24 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
     public class WalkEditReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
-            GeoGeometry geometry = (GeoGeometry) intent.getSerializableExtra(ConstantsUI.KEY_GEOMETRY);
             try {
-                setGeometryFromWalkEdit(geometry);
+                int count = intent.getIntExtra(WalkEditService.KEY_VERTEX_COUNT, 0);
+                if (mWalkGeometry != null && mWalkGeometry.getPointCount() + 1 == count
+                        && intent.hasExtra(WalkEditService.KEY_VERTEX_X)) {
+                    // the next vertex
+                    GeoPoint point = new GeoPoint(intent.getDoubleExtra(WalkEditService.KEY_VERTEX_X, 0),
+                            intent.getDoubleExtra(WalkEditService.KEY_VERTEX_Y, 0));
+                    point.setCRS(GeoConstants.CRS_WEB_MERCATOR);
+                    mWalkGeometry.add(point);
+                } else {
+                    // first broadcast or missed ones, rebuild from the journal
+                    int type = mLayer.getGeometryType();
+                    boolean isRing = type == GeoConstants.GTPolygon || type == GeoConstants.GTMultiPolygon;
+                    GeoLineString geometry = isRing ? new GeoLinearRing() : new GeoLineString();
+                    WalkEditJournal.read(context, geometry);
+                    mWalkGeometry = geometry;
+                }
+                setGeometryFromWalkEdit(mWalkGeometry);
             } catch (Exception ex){
                 Log.e("tag", ex.getMessage());
             }
@@ -1523,6 +1579,8 @@ public class EditLayerOverlay extends Overlay implements MapViewEventListener, G
     public void setGeometryFromWalkEdit(GeoGeometry geometry) {
         if (mDrawItems == null || mSelectedItem == null)
             return;
+        // the geometry may be changed in place
+        mDrawnGeometry = null;
         int selectedGeometry = mDrawItems.indexOf(mSelectedItem);
         int selectedRing = mSelectedItem.getSelectedRingId();
 
@@ -24,6 +24,7 @@ package com.nextgis.maplibui.overlay;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.DashPathEffect;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PointF;
@@ -55,6 +56,8 @@ public class RulerOverlay extends Overlay implements MapViewEventListener {
     protected boolean mMeasuring, mIsMoving;
     protected Paint mPaint;
     protected DrawItem mRulerItem;
+    protected Matrix mDrawMatrix;
+    protected Path mClosingLine;
     protected GeoLineString mRulerString;
     protected GeoPolygon mRulerPolygon;
     protected OnRulerChanged mListener;
@@ -75,6 +78,8 @@ public class RulerOverlay extends Overlay implements MapViewEventListener {
         mPaint.setAlpha(64);
 
         mTolerancePX = context.getResources().getDisplayMetrics().density * ConstantsUI.TOLERANCE_DP;
+        mDrawMatrix = new Matrix();
+        mClosingLine = new Path();
     }
 
     public void startMeasuring(OnRulerChanged listener, GeoPoint currentCenter) {
@@ -167,39 +172,43 @@ public class RulerOverlay extends Overlay implements MapViewEventListener {
         if (isMeasuring()) {
             fillDrawItem();
             mRulerItem.drawLines(canvas, true, true, false, false);
-            drawClosingLine(canvas, mRulerItem);
+            drawClosingLine(canvas, null);
         }
     }
 
     @Override
     public void drawOnPanning(Canvas canvas, PointF currentMouseOffset) {
         if (isMeasuring()) {
-            DrawItem draw = mRulerItem;
-
-            if (!mIsMoving)
-                draw = mRulerItem.pan(currentMouseOffset);
+            Matrix matrix = null;
+            if (!mIsMoving) {
+                DrawItem.setPanMatrix(mDrawMatrix, currentMouseOffset);
+                matrix = mDrawMatrix;
+            }
 
-            draw.drawLines(canvas, true, true, false, false);
-            drawClosingLine(canvas, draw);
+            mRulerItem.drawLines(canvas, matrix, true, true, false, false);
+            drawClosingLine(canvas, matrix);
         }
     }
 
     @Override
     public void drawOnZooming(Canvas canvas, PointF currentFocusLocation, float scale) {
         if (isMeasuring()) {
-            DrawItem drawItem = mRulerItem.zoom(currentFocusLocation, scale);
-            drawItem.drawLines(canvas, true, true, false, false);
-            drawClosingLine(canvas, drawItem);
+            DrawItem.setZoomMatrix(mDrawMatrix, currentFocusLocation, scale);
+            mRulerItem.drawLines(canvas, mDrawMatrix, true, true, false, false);
+            drawClosingLine(canvas, mDrawMatrix);
         }
     }
 
-    protected void drawClosingLine(Canvas canvas, DrawItem drawItem) {
-        float[] points = drawItem.getSelectedRing();
+    protected void drawClosingLine(Canvas canvas, Matrix matrix) {
+        float[] points = mRulerItem.getSelectedRing();
         if (points != null && points.length >= 6) {
-            Path path = new Path();
-            path.moveTo(points[0], points[1]);
-            path.lineTo(points[points.length - 2], points[points.length - 1]);
-            canvas.drawPath(path, mPaint);
+            mClosingLine.rewind();
+            mClosingLine.moveTo(points[0], points[1]);
+            mClosingLine.lineTo(points[points.length - 2], points[points.length - 1]);
+            if (matrix != null)
+                mClosingLine.transform(matrix);
+
+            canvas.drawPath(mClosingLine, mPaint);
         }
     }
 
@@ -30,31 +30,31 @@ import android.view.MenuItem;
 
 import com.nextgis.maplib.datasource.Feature;
 import com.nextgis.maplib.datasource.GeoGeometry;
-import com.nextgis.maplib.datasource.GeoGeometryFactory;
 import com.nextgis.maplib.map.MapDrawable;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.api.Overlay;
 import com.nextgis.maplibui.mapui.MapViewOverlays;
 import com.nextgis.maplibui.util.ControlHelper;
+import com.nextgis.maplibui.util.EditHistory;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.LinkedList;
 
 public class UndoRedoOverlay extends Overlay {
-    private static final String BUNDLE_KEY_HISTORY = "history_";
-    private static final String BUNDLE_KEY_HISTORY_SIZE = "history_size";
-    private static final String BUNDLE_KEY_HISTORY_STATE = "history_state";
+    private static final String BUNDLE_KEY_HISTORY_FILE = "history_file";
 
-    private final static int MAX_UNDO = 10;
+    private static final String HISTORY_JOURNAL = "edit_history.journal";
+    private static final String HISTORY_STATE = "edit_history.state";
 
     private Toolbar mTopToolbar;
-    private int mHistoryState;
-    private LinkedList<GeoGeometry> mHistory;
+    private EditHistory mHistory;
+    private File mHistoryDir;
     private Feature mFeature;
 
     public UndoRedoOverlay(Context context, MapViewOverlays mapViewOverlays) {
         super(context, mapViewOverlays);
-        mHistory = new LinkedList<>();
+        mHistoryDir = context.getCacheDir();
+        mHistory = new EditHistory(new File(mHistoryDir, HISTORY_JOURNAL));
         mFeature = new Feature();
     }
 
@@ -77,27 +77,23 @@ public class UndoRedoOverlay extends Overlay {
     public Bundle onSaveState() {
         Bundle bundle = super.onSaveState();
 
-        bundle.putInt(BUNDLE_KEY_HISTORY_STATE, mHistoryState);
-        bundle.putInt(BUNDLE_KEY_HISTORY_SIZE, mHistory.size());
-        for (int i = 0; i < mHistory.size(); i++)
-            try {
-                bundle.putByteArray(BUNDLE_KEY_HISTORY + i, mHistory.get(i).toBlob());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        // the history may be large for the instance state, keep it in a file
+        File state = new File(mHistoryDir, HISTORY_STATE);
+        try {
+            mHistory.save(state);
+            bundle.putString(BUNDLE_KEY_HISTORY_FILE, state.getPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
         return bundle;
     }
 
     @Override
     public void onRestoreState(Bundle bundle) {
-        mHistoryState = bundle.getInt(BUNDLE_KEY_HISTORY_STATE, mHistoryState);
-        for (int i = 0; i < bundle.getInt(BUNDLE_KEY_HISTORY_SIZE, mHistory.size()); i++)
-            try {
-                mHistory.add(GeoGeometryFactory.fromBlob(bundle.getByteArray(BUNDLE_KEY_HISTORY + i)));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        String state = bundle.getString(BUNDLE_KEY_HISTORY_FILE);
+        if (state != null)
+            mHistory.restore(new File(state));
 
         super.onRestoreState(bundle);
     }
@@ -105,9 +101,9 @@ public class UndoRedoOverlay extends Overlay {
 
     public boolean onOptionsItemSelected(int id) {
         if (id == R.id.menu_edit_undo) {
-            return restoreFromHistory(--mHistoryState);
+            return restoreFromHistory(mHistory.undo());
         } else if (id == R.id.menu_edit_redo) {
-            return restoreFromHistory(++mHistoryState);
+            return restoreFromHistory(mHistory.redo());
         }
 
         return false;
@@ -121,24 +117,17 @@ public class UndoRedoOverlay extends Overlay {
         if (null == feature || null == feature.getGeometry())
             return;
 
-        for (int i = mHistory.size() - 1; i > mHistoryState; i--)
-            mHistory.remove(i);
-
-        if (mHistory.size() >= MAX_UNDO + 1)
-            mHistory.removeFirst();
-
-        mHistoryState++;
-        mHistory.add(feature.getGeometry().copy());
-        mFeature.setGeometry(mHistory.getLast());
+        mHistory.add(feature.getGeometry());
+        mFeature.setGeometry(feature.getGeometry().copy());
         defineUndoRedo();
     }
 
 
-    private boolean restoreFromHistory(int id) {
-        if (id < 0 || id >= mHistory.size())
+    private boolean restoreFromHistory(GeoGeometry geometry) {
+        if (geometry == null)
             return false;
 
-        mFeature.setGeometry(mHistory.get(id).copy());
+        mFeature.setGeometry(geometry);
         defineUndoRedo();
 
         return true;
@@ -147,18 +136,17 @@ public class UndoRedoOverlay extends Overlay {
 
     public void clearHistory() {
         mHistory.clear();
-        mHistoryState = -1;
     }
 
 
     public void defineUndoRedo() {
         MenuItem item = mTopToolbar.getMenu().findItem(R.id.menu_edit_undo);
         if (item != null)
-            ControlHelper.setEnabled(item, 0 < mHistoryState);
+            ControlHelper.setEnabled(item, mHistory.canUndo());
 
         item = mTopToolbar.getMenu().findItem(R.id.menu_edit_redo);
         if (item != null)
-            ControlHelper.setEnabled(item, mHistoryState + 1 < mHistory.size());
+            ControlHelper.setEnabled(item, mHistory.canRedo());
     }
 
     public Feature getFeature() {
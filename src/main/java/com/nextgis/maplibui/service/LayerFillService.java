@@ -30,6 +30,7 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
+import android.content.res.AssetFileDescriptor;
 import android.database.sqlite.SQLiteException;
 import android.graphics.Bitmap;
 import android.net.Uri;
@@ -65,18 +66,23 @@ import com.nextgis.maplib.util.GeoJSONUtil;
 import com.nextgis.maplib.util.NGException;
 import com.nextgis.maplib.util.NGWUtil;
 import com.nextgis.maplib.util.NetworkUtil;
+import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.mapui.LocalTMSLayerUI;
 import com.nextgis.maplibui.mapui.NGWVectorLayerUI;
 import com.nextgis.maplibui.mapui.VectorLayerUI;
 import com.nextgis.maplibui.util.ConstantsUI;
+import com.nextgis.maplibui.util.GeoJSONStreamImporter;
 import com.nextgis.maplibui.util.LayerUtil;
+import com.nextgis.maplibui.util.LookupTableProvider;
 import com.nextgis.maplibui.util.NotificationHelper;
+import com.nextgis.maplibui.util.ProgressChannel;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
@@ -87,6 +93,11 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -121,6 +132,10 @@ public class LayerFillService extends Service implements IProgressor {
     public static final String ACTION_ADD_TASK = "com.nextgis.maplibui.ADD_FILL_LAYER_TASK";
     public static final String ACTION_SHOW = "com.nextgis.maplibui.SHOW_PROGRESS_DIALOG";
     public static final String ACTION_UPDATE = "com.nextgis.maplibui.UPDATE_FILL_LAYER_PROGRESS";
+    /**
+     * Progress of the current task, coalesced to a frame rate
+     */
+    public static final ProgressChannel PROGRESS_CHANNEL = new ProgressChannel();
     public static final String KEY_STATUS = "status";
     public static final String KEY_PROGRESS = "progress";
     public static final String KEY_TOTAL = "count";
@@ -155,6 +170,7 @@ public class LayerFillService extends Service implements IProgressor {
     public static final String NGFP_META = "ngfp_meta.json";
     protected final static String NGFP_FILE_META = "meta.json";
     protected final static String NGFP_FILE_DATA = "data.geojson";
+    protected final static int LOOKUP_THREADS = 3;
 
 
     public static final short STATUS_START = 0;
@@ -206,6 +222,7 @@ public class LayerFillService extends Service implements IProgressor {
         Bitmap largeIcon = NotificationHelper.getLargeIcon(icon, getResources());
 
         mProgressIntent = new Intent(ACTION_UPDATE);
+        PROGRESS_CHANNEL.addListener(mProgressListener);
         Intent intent = new Intent(this, LayerFillService.class);
         intent.setAction(ACTION_STOP);
         int flag = PendingIntent.FLAG_UPDATE_CURRENT | FLAG_IMMUTABLE;
@@ -258,47 +275,14 @@ public class LayerFillService extends Service implements IProgressor {
             if (action != null && !TextUtils.isEmpty(action)) {
                 switch (action) {
                     case ACTION_ADD_TASK:
-                        int layerGroupId = intent.getIntExtra(KEY_LAYER_GROUP_ID, Constants.NOT_FOUND);
-                        mLayerGroup = (LayerGroup) MapBase.getInstance().getLayerById(layerGroupId);
-
-                        int layerType = intent.getIntExtra(KEY_INPUT_TYPE, Constants.NOT_FOUND);
-                        Bundle extra = intent.getExtras();
-
-                        switch (layerType) {
-                            case VECTOR_LAYER:
-                                mQueue.add(new VectorLayerFillTask(extra));
-                                break;
-                            case VECTOR_LAYER_WITH_FORM:
-                                try {
-                                    mQueue.add(new UnzipForm(extra));
-
-                                } catch (Exception ex){
-                                    ex.printStackTrace();
-                                    //notifyError("Error on start fill form");
-
-                                    Intent msg = new Intent(MESSAGE_ALERT_INTENT);
-                                    msg.putExtra(MESSAGE_EXTRA, getString(R.string.error_load_parent));
-                                    msg.putExtra(MESSAGE_EXTRA_IS_PARENTFILL, true);
-
-                                    //msg.putExtra(MESSAGE_TITLE_EXTRA, getResources().getString(R.string.map_load_exception_title));
-                                    msg.putExtra(MESSAGE_TITLE_EXTRA, getResources().getString(R.string.error));
-                                    msg.setPackage(getPackageName());
-                                    sendBroadcast(msg);
-
-                                    return START_NOT_STICKY;
-                                }
-                                break;
-                            case TMS_LAYER:
-                                mQueue.add(new LocalTMSFillTask(extra));
-                                break;
-                            case NGW_LAYER:
-                                mQueue.add(new NGWVectorLayerFillTask(extra));
-                                break;
-                        }
-
-                        if(!mIsRunning){
-                            startNextTask();
-                        }
+                        // the main thread does not wait for the map, the task is added once it is loaded
+                        final Intent task = intent;
+                        GISApplication.runWhenMapLoaded(new GISApplication.OnMapLoadListener() {
+                            @Override
+                            public void onMapLoaded(MapBase map) {
+                                addTask(map, task);
+                            }
+                        });
 
                         return START_STICKY;
                     case ACTION_STOP:
@@ -320,6 +304,57 @@ public class LayerFillService extends Service implements IProgressor {
         return START_STICKY;
     }
 
+    protected void addTask(MapBase map, Intent intent) {
+        int layerGroupId = intent.getIntExtra(KEY_LAYER_GROUP_ID, Constants.NOT_FOUND);
+        ILayer group = null != map ? map.getLayerById(layerGroupId) : null;
+        if (!(group instanceof LayerGroup)) {
+            if (!mIsRunning) {
+                startNextTask();
+            }
+            return;
+        }
+        mLayerGroup = (LayerGroup) group;
+
+        int layerType = intent.getIntExtra(KEY_INPUT_TYPE, Constants.NOT_FOUND);
+        Bundle extra = intent.getExtras();
+
+        switch (layerType) {
+            case VECTOR_LAYER:
+                mQueue.add(new VectorLayerFillTask(extra));
+                break;
+            case VECTOR_LAYER_WITH_FORM:
+                try {
+                    mQueue.add(new UnzipForm(extra));
+
+                } catch (Exception ex){
+                    ex.printStackTrace();
+                    //notifyError("Error on start fill form");
+
+                    Intent msg = new Intent(MESSAGE_ALERT_INTENT);
+                    msg.putExtra(MESSAGE_EXTRA, getString(R.string.error_load_parent));
+                    msg.putExtra(MESSAGE_EXTRA_IS_PARENTFILL, true);
+
+                    //msg.putExtra(MESSAGE_TITLE_EXTRA, getResources().getString(R.string.map_load_exception_title));
+                    msg.putExtra(MESSAGE_TITLE_EXTRA, getResources().getString(R.string.error));
+                    msg.setPackage(getPackageName());
+                    sendBroadcast(msg);
+
+                    return;
+                }
+                break;
+            case TMS_LAYER:
+                mQueue.add(new LocalTMSFillTask(extra));
+                break;
+            case NGW_LAYER:
+                mQueue.add(new NGWVectorLayerFillTask(extra));
+                break;
+        }
+
+        if(!mIsRunning){
+            startNextTask();
+        }
+    }
+
     protected void startNextTask(){
         if (mQueue.isEmpty()){
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
@@ -362,6 +397,8 @@ public class LayerFillService extends Service implements IProgressor {
                 progressor.setValue(0);
                 boolean result = task.execute(progressor);
 
+                // the task is done, its pending progress should not come after the stop status
+                PROGRESS_CHANNEL.clear();
                 if ( (!(task instanceof UnzipForm) ) || task.subTaskWasRunned == false)
                     mProgressIntent.putExtra(KEY_MESSAGE, mProgressMessage);
 
@@ -395,6 +432,12 @@ public class LayerFillService extends Service implements IProgressor {
     }
 
 
+    @Override
+    public void onDestroy() {
+        PROGRESS_CHANNEL.removeListener(mProgressListener);
+        super.onDestroy();
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -430,34 +473,35 @@ public class LayerFillService extends Service implements IProgressor {
     }
 
     protected void updateNotify(){
-        if (mLastUpdate + ConstantsUI.NOTIFICATION_DELAY < System.currentTimeMillis()) {
-            mLastUpdate = System.currentTimeMillis();
-            mBuilder.setProgress(mProgressMax, mProgressValue, mIndeterminate)
-                    .setContentText(mProgressMessage);
-            // Displays the progress bar for the first time.
-            mNotifyManager.notify(FILL_NOTIFICATION_ID, mBuilder.build());
-        }
+        PROGRESS_CHANNEL.publish(Constants.NOT_FOUND, mProgressValue, mProgressMax, mProgressMessage, mIndeterminate);
+    }
 
-        if (mProgressIntent.getExtras() != null)
-            mProgressIntent.getExtras().clear();
-        if (mProgressMessage != null)
-            mProgressIntent.putExtra(KEY_MESSAGE, mProgressMessage);
-        else
-            mProgressIntent.removeExtra(KEY_MESSAGE);
+    protected final ProgressChannel.OnProgressListener mProgressListener = new ProgressChannel.OnProgressListener() {
+        @Override
+        public void onProgress(ProgressChannel.Progress progress) {
+            if (mLastUpdate + ConstantsUI.NOTIFICATION_DELAY < System.currentTimeMillis()) {
+                mLastUpdate = System.currentTimeMillis();
+                mBuilder.setProgress(progress.mMax, progress.mValue, progress.mIndeterminate)
+                        .setContentText(progress.mMessage);
+                // Displays the progress bar for the first time.
+                mNotifyManager.notify(FILL_NOTIFICATION_ID, mBuilder.build());
+            }
 
-        mProgressIntent.putExtra(KEY_STATUS, STATUS_UPDATE).putExtra(KEY_TOTAL, mProgressMax)
-                .putExtra(KEY_PROGRESS, mProgressValue);
+            // start and stop statuses are sent from the worker thread with mProgressIntent
+            Intent update = new Intent(ACTION_UPDATE);
+            if (progress.mMessage != null)
+                update.putExtra(KEY_MESSAGE, progress.mMessage);
 
-        if (isPointz)
-            mProgressIntent.putExtra(IS_POINTS, true);
+            update.putExtra(KEY_STATUS, STATUS_UPDATE).putExtra(KEY_TOTAL, progress.mMax)
+                    .putExtra(KEY_PROGRESS, progress.mValue).putExtra(KEY_TITLE, mNotifyTitle);
 
-        mProgressIntent.setPackage(getPackageName());
-        sendBroadcast(mProgressIntent);
-//        Log.e("FFRRMM", "updateNotify send broadcast with mProgressMessage " + mProgressMessage);
-//
-//        Log.e("FFRRMM", "updateNotify send broadcast 1 " + mProgressIntent.toString());
+            if (isPointz)
+                update.putExtra(IS_POINTS, true);
 
-    }
+            update.setPackage(getPackageName());
+            sendBroadcast(update);
+        }
+    };
 
     private void notifyError(String error) {
         Bundle bundle = new Bundle();
@@ -561,7 +605,10 @@ public class LayerFillService extends Service implements IProgressor {
                 if(null == vectorLayer)
                     return false;
 
-                vectorLayer.createFromGeoJson(mUri, progressor);
+                if (importStream(vectorLayer, progressor) == Constants.NOT_FOUND)
+                    vectorLayer.createFromGeoJson(mUri, progressor); // not a feature collection
+                if (progressor.isCanceled())
+                    return false;
             } catch (IOException | JSONException | SQLiteException | NGException | ClassCastException e) {
                 e.printStackTrace();
                 setError(e.getLocalizedMessage(), progressor);
@@ -571,6 +618,22 @@ public class LayerFillService extends Service implements IProgressor {
 
             return true;
         }
+
+        int importStream(VectorLayer vectorLayer, IProgressor progressor) throws IOException, JSONException {
+            long length = AssetFileDescriptor.UNKNOWN_LENGTH;
+            try (AssetFileDescriptor descriptor = getContentResolver().openAssetFileDescriptor(mUri, "r")) {
+                if (descriptor != null)
+                    length = descriptor.getLength();
+            }
+
+            InputStream inputStream = getContentResolver().openInputStream(mUri);
+            if (inputStream == null)
+                throw new IOException("Failed to open " + mUri);
+
+            GeoJSONStreamImporter importer = new GeoJSONStreamImporter(LayerFillService.this, vectorLayer,
+                    GeoJSONStreamImporter.DEFAULT_WORKERS, progressor);
+            return importer.importFrom(inputStream, length);
+        }
     }
 
     private class UnzipForm extends LayerFillTask {
@@ -637,7 +700,9 @@ public class LayerFillService extends Service implements IProgressor {
                         if (isCanceled())
                             return false;
 
-                        FileUtil.unzipEntry(zis, ze, buffer, mLayerPath);
+                        // features of a remote layer are loaded from the server, data.geojson is skipped
+                        if (mRemoteId < 0 || !NGFP_FILE_DATA.equals(ze.getName()))
+                            FileUtil.unzipEntry(zis, ze, buffer, mLayerPath);
                         nIncrement += ze.getSize();
                         zis.closeEntry();
                         progressor.setValue( nIncrement >  nSize? 0:  nIncrement);
@@ -819,7 +884,12 @@ public class LayerFillService extends Service implements IProgressor {
                         //read SRS -- not need as we will be fill layer with 3857
                         JSONObject srs = metaJson.getJSONObject(NGWUtil.NGWKEY_SRS);
                         int nSRS = srs.getInt(NGWUtil.NGWKEY_ID);
-                        vectorLayer.fillFromGeoJson(mPath, nSRS, progressor);
+                        int crs = nSRS == GeoConstants.CRS_WEB_MERCATOR ? GeoConstants.CRS_WEB_MERCATOR : GeoConstants.CRS_WGS84;
+                        GeoJSONStreamImporter importer = new GeoJSONStreamImporter(LayerFillService.this, vectorLayer,
+                                GeoJSONStreamImporter.DEFAULT_WORKERS, progressor);
+                        importer.fillFrom(new FileInputStream(mPath), mPath.length(), crs);
+                        if (progressor.isCanceled())
+                            return false;
                     }
                 } else
                     vectorLayer.createFromGeoJson(mPath, progressor); // should never get there
@@ -932,17 +1002,25 @@ public class LayerFillService extends Service implements IProgressor {
                 if (null == ngwVectorLayer)
                     return false;
 
-                for (String id : mLookupIds) {
-                    NGWLookupTable table = new NGWLookupTable(mLayer.getContext(), mLayerGroup.createLayerStorage());
-                    table.setAccountName(((NGWVectorLayer) mLayer).getAccountName());
-                    table.setRemoteId(Long.parseLong(id));
-                    table.setSyncType(Constants.SYNC_ALL);
-                    table.setName(getText(R.string.layer_lookuptable) + " #" + id);
-                    table.fillFromNGW(null);
-                    mLayerGroup.addLayer(table);
+                // lookup tables are downloaded while the layer is created
+                List<Future<NGWLookupTable>> lookupTables = startLookupTables();
+                Exception lookupError;
+                try {
+                    ngwVectorLayer.createFromNGW(progressor);
+                } finally {
+                    lookupError = addLookupTables(lookupTables);
                 }
 
-                ngwVectorLayer.createFromNGW(progressor);
+                if (lookupError instanceof JSONException)
+                    throw (JSONException) lookupError;
+                if (lookupError instanceof IOException)
+                    throw (IOException) lookupError;
+                if (lookupError instanceof NGException)
+                    throw (NGException) lookupError;
+                if (lookupError instanceof RuntimeException)
+                    throw (RuntimeException) lookupError;
+                if (lookupError != null)
+                    throw new IOException(lookupError);
             } catch (JSONException | IOException | SQLiteException | NGException |
                      ClassCastException e) {
                 String error = e.getLocalizedMessage();
@@ -968,6 +1046,54 @@ public class LayerFillService extends Service implements IProgressor {
             return true;
         }
 
+        List<Future<NGWLookupTable>> startLookupTables() {
+            List<Future<NGWLookupTable>> tables = new ArrayList<>();
+            if (mLookupIds.isEmpty())
+                return tables;
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(LOOKUP_THREADS, mLookupIds.size()));
+            for (String id : mLookupIds) {
+                final NGWLookupTable table = new NGWLookupTable(mLayer.getContext(), mLayerGroup.createLayerStorage());
+                table.setAccountName(((NGWVectorLayer) mLayer).getAccountName());
+                table.setRemoteId(Long.parseLong(id));
+                table.setSyncType(Constants.SYNC_ALL);
+                table.setName(getText(R.string.layer_lookuptable) + " #" + id);
+                tables.add(executor.submit(new Callable<NGWLookupTable>() {
+                    @Override
+                    public NGWLookupTable call() throws Exception {
+                        table.fillFromNGW(null);
+                        return table;
+                    }
+                }));
+            }
+            executor.shutdown();
+            return tables;
+        }
+
+        /**
+         * Wait for the lookup tables and add downloaded ones to the map
+         *
+         * @return the first download error or null
+         */
+        Exception addLookupTables(List<Future<NGWLookupTable>> tables) {
+            Exception error = null;
+            for (Future<NGWLookupTable> table : tables) {
+                try {
+                    mLayerGroup.addLayer(table.get());
+                } catch (ExecutionException e) {
+                    if (error == null)
+                        error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (error == null)
+                        error = e;
+                }
+            }
+            if (!tables.isEmpty())
+                LookupTableProvider.invalidate();
+            return error;
+        }
+
         boolean showSyncDialog() {
             return mShowSyncDialog;
         }
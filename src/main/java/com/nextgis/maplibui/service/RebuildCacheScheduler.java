@@ -0,0 +1,356 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.nextgis.maplib.api.ILayer;
+import com.nextgis.maplib.api.IProgressor;
+import com.nextgis.maplib.datasource.GeoEnvelope;
+import com.nextgis.maplib.map.MapBase;
+import com.nextgis.maplib.map.MapDrawable;
+import com.nextgis.maplib.map.VectorLayer;
+import com.nextgis.maplib.util.Constants;
+import com.nextgis.maplibui.GISApplication;
+import com.nextgis.maplibui.util.ProgressChannel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.nextgis.maplib.util.Constants.TAG;
+
+/**
+ * Rebuilds caches of several vector layers at once. Layers visible in the current map bounds go
+ * first, a layer requested again while queued is rebuilt once, and each layer can be canceled
+ * alone. Progress of each layer is published to the given channel by its id.
+ */
+public class RebuildCacheScheduler
+{
+    public static final int DEFAULT_WORKERS =
+            Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+
+    protected static final long KEEP_ALIVE = 10; // seconds
+
+    protected final ThreadPoolExecutor mExecutor;
+    protected final ProgressChannel    mProgress;
+    protected final OnTaskListener     mListener;
+    protected final Handler            mHandler  = new Handler(Looper.getMainLooper());
+    protected final Map<Integer, Task> mTasks    = new HashMap<>();
+    protected final AtomicLong         mSequence = new AtomicLong();
+
+    protected volatile boolean mClosed;
+
+
+    public interface OnTaskListener
+    {
+        void onTaskStarted(int layerId);
+
+        void onTaskFinished(
+                int layerId,
+                boolean canceled);
+
+        /**
+         * No queued or running tasks left
+         */
+        void onIdle();
+    }
+
+
+    /**
+     * @param listener is called on the main thread
+     */
+    public RebuildCacheScheduler(
+            int workers,
+            ProgressChannel progress,
+            OnTaskListener listener)
+    {
+        mProgress = progress;
+        mListener = listener;
+        mExecutor = new ThreadPoolExecutor(workers, workers, KEEP_ALIVE, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+
+    public synchronized void setWorkerCount(int workers)
+    {
+        workers = Math.max(1, workers);
+        if (workers > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(workers);
+            mExecutor.setCorePoolSize(workers);
+        } else {
+            mExecutor.setCorePoolSize(workers);
+            mExecutor.setMaximumPoolSize(workers);
+        }
+    }
+
+
+    /**
+     * @return false if the layer is already queued or the scheduler is shut down
+     */
+    public synchronized boolean add(int layerId)
+    {
+        if (mClosed) {
+            return false;
+        }
+
+        Task task = mTasks.get(layerId);
+        if (null != task) {
+            if (task.mStarted) {
+                // data may have changed after the running rebuild read it
+                task.mRepeat = true;
+            }
+            return false;
+        }
+
+        task = new Task(layerId, isVisible(layerId), mSequence.getAndIncrement());
+        mTasks.put(layerId, task);
+        mExecutor.execute(task);
+        return true;
+    }
+
+
+    public synchronized void cancel(int layerId)
+    {
+        Task task = mTasks.get(layerId);
+        if (null == task) {
+            return;
+        }
+
+        task.mCanceled = true;
+        task.mRepeat = false;
+        if (mExecutor.remove(task)) {
+            finish(task);
+        }
+    }
+
+
+    public synchronized void cancelAll()
+    {
+        for (Task task : new ArrayList<>(mTasks.values())) {
+            cancel(task.mLayerId);
+        }
+    }
+
+
+    public synchronized boolean isIdle()
+    {
+        return mTasks.isEmpty();
+    }
+
+
+    /**
+     * @return ids of layers being rebuilt now
+     */
+    public synchronized List<Integer> getRunning()
+    {
+        List<Integer> running = new ArrayList<>();
+        for (Task task : mTasks.values()) {
+            if (task.mStarted) {
+                running.add(task.mLayerId);
+            }
+        }
+        return running;
+    }
+
+
+    /**
+     * Cancel all tasks, the listener and the progress channel get nothing after it
+     */
+    public void shutdown()
+    {
+        mClosed = true;
+        cancelAll();
+        mExecutor.shutdown();
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+
+    protected boolean isVisible(int layerId)
+    {
+        MapBase map = GISApplication.getLoadedMap();
+        if (!(map instanceof MapDrawable)) {
+            return false;
+        }
+
+        ILayer layer = map.getLayerById(layerId);
+        if (!(layer instanceof VectorLayer) || !((VectorLayer) layer).isVisible()) {
+            return false;
+        }
+
+        GeoEnvelope bounds = ((MapDrawable) map).getCurrentBounds();
+        GeoEnvelope extents = layer.getExtents();
+        return null != bounds && null != extents && bounds.intersects(extents);
+    }
+
+
+    protected synchronized void finish(Task task)
+    {
+        final boolean repeat = task.mRepeat && !task.mCanceled;
+        final boolean canceled = task.mCanceled;
+        final int layerId = task.mLayerId;
+        if (mTasks.get(layerId) == task) {
+            mTasks.remove(layerId);
+        }
+        if (repeat) {
+            add(layerId);
+        }
+        if (mClosed) {
+            return;
+        }
+
+        final boolean idle = mTasks.isEmpty();
+        mHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (mClosed) {
+                    return;
+                }
+                mListener.onTaskFinished(layerId, canceled);
+                if (idle) {
+                    mListener.onIdle();
+                }
+            }
+        });
+    }
+
+
+    protected class Task
+            implements Runnable, Comparable<Task>, IProgressor
+    {
+        final int     mLayerId;
+        final boolean mVisible;
+        final long    mOrder;
+
+        volatile boolean mStarted, mCanceled, mRepeat;
+        int mMax;
+
+
+        Task(
+                int layerId,
+                boolean visible,
+                long order)
+        {
+            mLayerId = layerId;
+            mVisible = visible;
+            mOrder = order;
+        }
+
+
+        @Override
+        public void run()
+        {
+            synchronized (RebuildCacheScheduler.this) {
+                if (mCanceled) {
+                    // canceled while it was taken from the queue
+                    finish(this);
+                    return;
+                }
+                mStarted = true;
+            }
+
+            mHandler.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (!mClosed) {
+                        mListener.onTaskStarted(mLayerId);
+                    }
+                }
+            });
+
+            Process.setThreadPriority(Constants.DEFAULT_DOWNLOAD_THREAD_PRIORITY);
+            try {
+                ILayer layer = GISApplication.getLoadedMap().getLayerById(mLayerId);
+                if (layer instanceof VectorLayer) {
+                    ((VectorLayer) layer).rebuildCache(this);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to rebuild the cache of layer " + mLayerId, e);
+            } finally {
+                if (!mClosed) {
+                    mProgress.publish(mLayerId, 0, mMax);
+                }
+                finish(this);
+            }
+        }
+
+
+        @Override
+        public int compareTo(Task other)
+        {
+            if (mVisible != other.mVisible) {
+                return mVisible ? -1 : 1;
+            }
+            return Long.compare(mOrder, other.mOrder);
+        }
+
+
+        @Override
+        public void setMax(int maxValue)
+        {
+            mMax = maxValue;
+        }
+
+
+        @Override
+        public boolean isCanceled()
+        {
+            return mCanceled;
+        }
+
+
+        @Override
+        public void setValue(int value)
+        {
+            if (!mClosed) {
+                mProgress.publish(mLayerId, value, mMax);
+            }
+        }
+
+
+        @Override
+        public void setIndeterminate(boolean indeterminate)
+        {
+        }
+
+
+        @Override
+        public void setMessage(String message)
+        {
+        }
+    }
+}
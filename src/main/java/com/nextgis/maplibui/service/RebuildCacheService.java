@@ -26,35 +26,29 @@ import static android.app.PendingIntent.FLAG_IMMUTABLE;
 import android.app.IntentService;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
-import android.app.Service;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.IBinder;
-import android.os.Looper;
-import android.os.Process;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 import android.text.TextUtils;
 import android.util.Log;
 
-import com.nextgis.maplib.api.IProgressor;
-import com.nextgis.maplib.map.MapBase;
-import com.nextgis.maplib.map.VectorLayer;
 import com.nextgis.maplib.util.Constants;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.activity.VectorLayerSettingsActivity;
 import com.nextgis.maplibui.util.ConstantsUI;
 import com.nextgis.maplibui.util.NotificationHelper;
+import com.nextgis.maplibui.util.ProgressChannel;
 
-import java.util.LinkedList;
 import java.util.List;
 
 import static com.nextgis.maplib.util.Constants.TAG;
 import static com.nextgis.maplibui.util.NotificationHelper.createBuilder;
 
-public class RebuildCacheService extends IntentService implements IProgressor
+public class RebuildCacheService extends IntentService
 
 {
     public static final String ACTION_ADD_TASK = "REBUILD_CACHE_ADD_TASK";
@@ -64,40 +58,57 @@ public class RebuildCacheService extends IntentService implements IProgressor
     public static final String ACTION_UPDATE = "REBUILD_CACHE_UPDATE_PROGRESS";
     public static final String KEY_PROGRESS = "progress";
     public static final String KEY_MAX = "max";
+    public static final String KEY_WORKERS = "workers";
+
+    /**
+     * Progress of the cache rebuild by layer id, coalesced to a frame rate
+     */
+    public static final ProgressChannel PROGRESS_CHANNEL = new ProgressChannel();
 
     protected NotificationManager mNotifyManager;
-    protected List<Integer> mQueue;
+    protected RebuildCacheScheduler mScheduler;
     protected int mTotalTasks;
     protected static final int NOTIFICATION_ID = 99;
     protected NotificationCompat.Builder mBuilder;
     protected Intent mProgressIntent;
 
-    protected VectorLayer mLayer;
-    protected int mProgressMax, mCurrentTasks;
+    protected int mCurrentTasks;
     protected long mLastUpdate = 0;
-    protected boolean mIsRunning, mIsCanceled, mRemoveCurrent;
-
-    MyCustomThread thread = null;
 
+    protected final ProgressChannel.OnProgressListener mProgressListener = new ProgressChannel.OnProgressListener() {
+        @Override
+        public void onProgress(ProgressChannel.Progress progress) {
+            if (mLastUpdate + ConstantsUI.NOTIFICATION_DELAY < System.currentTimeMillis()) {
+                mLastUpdate = System.currentTimeMillis();
+                mBuilder.setProgress(progress.mMax, progress.mValue, false);
+                mNotifyManager.notify(NOTIFICATION_ID, mBuilder.build());
+            }
 
-    public static class MyCustomThread extends Thread {
-
-        private Looper mLooper;
+            // for receivers out of the process
+            mProgressIntent.putExtra(KEY_PROGRESS, progress.mValue)
+                    .putExtra(KEY_MAX, progress.mMax)
+                    .putExtra(ConstantsUI.KEY_LAYER_ID, progress.mId)
+                    .setPackage(getPackageName());
+            sendBroadcast(mProgressIntent);
+        }
+    };
 
-        public MyCustomThread(Runnable runnable) {
-            super(runnable);
+    protected final RebuildCacheScheduler.OnTaskListener mTaskListener = new RebuildCacheScheduler.OnTaskListener() {
+        @Override
+        public void onTaskStarted(int layerId) {
+            mCurrentTasks++;
+            updateTitle();
         }
 
-        public void setLooper(Looper looper) {
-            mLooper = looper;
+        @Override
+        public void onTaskFinished(int layerId, boolean canceled) {
         }
 
         @Override
-        public void run() {
-            mLooper = Looper.getMainLooper();
-            super.run();
+        public void onIdle() {
+            stopService();
         }
-    }
+    };
 
     public RebuildCacheService() {
         super("RebuildCacheService");
@@ -106,9 +117,7 @@ public class RebuildCacheService extends IntentService implements IProgressor
     @Override
     protected void onHandleIntent(@Nullable Intent intent) {
         Log.d(TAG, "onHandleIntent");
-        startNextTask();
-
-        }
+    }
 
     @Override
     public void onCreate() {
@@ -142,11 +151,16 @@ public class RebuildCacheService extends IntentService implements IProgressor
             startForeground(NOTIFICATION_ID, mBuilder.build());
         }
 
-        mQueue = new LinkedList<>();
+        mScheduler = new RebuildCacheScheduler(RebuildCacheScheduler.DEFAULT_WORKERS, PROGRESS_CHANNEL, mTaskListener);
+        PROGRESS_CHANNEL.addListener(mProgressListener);
     }
 
-
-
+    @Override
+    public void onDestroy() {
+        PROGRESS_CHANNEL.removeListener(mProgressListener);
+        mScheduler.shutdown();
+        super.onDestroy();
+    }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
@@ -157,31 +171,27 @@ public class RebuildCacheService extends IntentService implements IProgressor
                 switch (action) {
                     case ACTION_ADD_TASK:
                         int layerIdAdd = intent.getIntExtra(key, Constants.NOT_FOUND);
-                        mQueue.add(layerIdAdd);
-                        mTotalTasks += 1;
-
-                        if (!mIsRunning)
-                            startNextTask();
+                        if (intent.hasExtra(KEY_WORKERS))
+                            mScheduler.setWorkerCount(intent.getIntExtra(KEY_WORKERS, RebuildCacheScheduler.DEFAULT_WORKERS));
+                        if (mScheduler.add(layerIdAdd))
+                            mTotalTasks += 1;
 
                         return START_STICKY;
                     case ACTION_REMOVE_TASK:
                         int layerIdRemove = intent.getIntExtra(key, Constants.NOT_FOUND);
-                        mCurrentTasks--;
-
-                        if (!mQueue.contains(layerIdRemove))
-                            if (mLayer != null && mLayer.getId() == layerIdRemove)
-                                mRemoveCurrent = true;
-                            else
-                                mQueue.remove(layerIdRemove);
+                        mScheduler.cancel(layerIdRemove);
                         return START_STICKY;
                     case ACTION_STOP:
-                        mQueue.clear();
-                        mIsCanceled = true;
+                        if (mScheduler.isIdle())
+                            stopService();
+                        else
+                            mScheduler.cancelAll();
                         break;
                     case ACTION_SHOW:
                         Intent settings = new Intent(this, VectorLayerSettingsActivity.class);
                         settings.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                        settings.putExtra(key, mLayer != null ? mLayer.getId() : Constants.NOT_FOUND);
+                        List<Integer> running = mScheduler.getRunning();
+                        settings.putExtra(key, running.isEmpty() ? Constants.NOT_FOUND : running.get(0));
                         startActivity(settings);
                         break;
                 }
@@ -192,122 +202,35 @@ public class RebuildCacheService extends IntentService implements IProgressor
 
     protected void stopService() {
         mCurrentTasks = 0;
+        mTotalTasks = 0;
+        // drop the pending progress so it is not sent after the final one
+        PROGRESS_CHANNEL.clear();
         mProgressIntent.putExtra(KEY_PROGRESS, 0)
                 .setPackage(getPackageName());
         sendBroadcast(mProgressIntent);
-        mLayer = null;
-
-
-            stopForeground(true);
-//        else
-//            mNotifyManager.cancel(NOTIFICATION_ID);
-
-        
-        if (thread!= null){
-            thread.interrupt();
-            try {
-                thread.join(); // Wait for the thread to finish
-            } catch (InterruptedException e) {
-
-                Log.e("TAG", e.getMessage() == null? "null on InterruptedException" : e.getMessage());
-            }
-            thread = null; // Clean up
-        }
+        PROGRESS_CHANNEL.publish(Constants.NOT_FOUND, 0, 0);
 
+        stopForeground(true);
         stopSelf();
     }
 
-    protected void startNextTask() {
-        if (mQueue.isEmpty()) {
-            stopService();
-            return;
+    protected void updateTitle() {
+        String notifyTitle;
+        if (getPackageName().equals("com.nextgis.mobile")) {
+            notifyTitle = getString(com.nextgis.maplib.R.string.rebuild_cache);
+            notifyTitle += ": " + mCurrentTasks + "/" + mTotalTasks;
+        } else {
+            notifyTitle = getString(com.nextgis.maplib.R.string.updating_data);
         }
 
-        mIsCanceled = false;
-        final IProgressor progressor = this;
-        if (thread != null)
-            thread.interrupt();
-        thread = new MyCustomThread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    mLayer = (VectorLayer) MapBase.getInstance().getLayerById(mQueue.remove(0));
-                } catch (Exception ex) {
-                    mLayer = null;
-                    Log.e("error", ex.getMessage());
-                }
-                mIsRunning = true;
-                mCurrentTasks++;
-                String notifyTitle;
-                if (getPackageName().equals("com.nextgis.mobile")) {
-                    notifyTitle = getString(com.nextgis.maplib.R.string.rebuild_cache);
-                    notifyTitle += ": " + mCurrentTasks + "/" + mTotalTasks;
-                } else {
-                    notifyTitle = getString(com.nextgis.maplib.R.string.updating_data);
-                }
-
-                mBuilder.setWhen(System.currentTimeMillis())
-                        .setContentTitle(notifyTitle)
-                        .setTicker(notifyTitle);
-                mNotifyManager.notify(NOTIFICATION_ID, mBuilder.build());
-
-                Process.setThreadPriority(Constants.DEFAULT_DOWNLOAD_THREAD_PRIORITY);
-                if (mLayer != null)
-                    mLayer.rebuildCache(progressor);
-
-                mIsRunning = mRemoveCurrent = false;
-                startNextTask();
-            }
-        });
-        thread.setLooper(Looper.myLooper());
-        thread.start();
+        mBuilder.setWhen(System.currentTimeMillis())
+                .setContentTitle(notifyTitle)
+                .setTicker(notifyTitle);
+        mNotifyManager.notify(NOTIFICATION_ID, mBuilder.build());
     }
 
     @Override
     public IBinder onBind(Intent intent) {
         return null;
     }
-
-
-
-    @Override
-    public void setMax(int maxValue) {
-        mProgressMax = maxValue;
-    }
-
-    @Override
-    public boolean isCanceled() {
-        return mIsCanceled || mRemoveCurrent;
-    }
-
-    @Override
-    public void setValue(int value) {
-        if (mLastUpdate + ConstantsUI.NOTIFICATION_DELAY < System.currentTimeMillis()) {
-            mLastUpdate = System.currentTimeMillis();
-            mBuilder.setProgress(mProgressMax, value, false);
-            mNotifyManager.notify(NOTIFICATION_ID, mBuilder.build());
-        }
-
-        int id = mLayer != null ? mLayer.getId() : Constants.NOT_FOUND;
-        try {
-            mProgressIntent.putExtra(KEY_PROGRESS, value)
-                    .putExtra(KEY_MAX, mProgressMax)
-                    .putExtra(ConstantsUI.KEY_LAYER_ID, id);
-        } catch (Exception ex){
-            Log.e(TAG, "error on setIntentValue:" + ex.getMessage());
-
-        }
-        mProgressIntent.setPackage(getPackageName());
-        sendBroadcast(mProgressIntent);
-    }
-
-    @Override
-    public void setIndeterminate(boolean indeterminate) {
-
-    }
-
-    @Override
-    public void setMessage(String message) {
-
-    }
 }
@@ -13,9 +13,9 @@ import androidx.work.WorkRequest;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
-import com.nextgis.maplib.map.MapBase;
 import com.nextgis.maplib.map.VectorLayer;
 import com.nextgis.maplib.util.Constants;
+import com.nextgis.maplibui.GISApplication;
 import java.util.concurrent.TimeUnit;
 
 public class RebuildCacheWorker extends Worker  {
@@ -56,7 +56,7 @@ public class RebuildCacheWorker extends Worker  {
             VectorLayer mLayer;
 
             try {
-                mLayer = (VectorLayer) MapBase.getInstance().getLayerById(layerid);
+                mLayer = (VectorLayer) GISApplication.getLoadedMap().getLayerById(layerid);
             } catch (Exception ex){
                 mLayer = null;
                 Log.e("error", ex.getMessage());
@@ -30,7 +30,9 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
 import android.content.pm.ServiceInfo;
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
+import android.net.Uri;
 import android.os.Build;
 import android.os.IBinder;
 import androidx.core.app.NotificationCompat;
@@ -47,33 +49,48 @@ import com.nextgis.maplib.map.RemoteTMSLayer;
 import com.nextgis.maplib.map.TMSLayer;
 import com.nextgis.maplib.util.Constants;
 import com.nextgis.maplib.util.GeoConstants;
-import com.nextgis.maplib.util.MapUtil;
+import com.nextgis.maplib.util.FileUtil;
+import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.mapui.LocalTMSLayerUI;
 import com.nextgis.maplibui.util.ConstantsUI;
 import com.nextgis.maplibui.util.NotificationHelper;
-
+import com.nextgis.maplibui.util.TileDownloadEstimator;
+import com.nextgis.maplibui.util.TileEnumerator;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.CancellationException;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.nextgis.maplib.util.Constants.DRAWING_SEPARATE_THREADS;
 import static com.nextgis.maplib.util.Constants.KEEP_ALIVE_TIME;
 import static com.nextgis.maplib.util.Constants.KEEP_ALIVE_TIME_UNIT;
 import static com.nextgis.maplib.util.Constants.MESSAGE_INTENT_RELOAD;
-import static com.nextgis.maplib.util.Constants.MESSAGE_INTENT_STYLING;
 import static com.nextgis.maplibui.util.NotificationHelper.createBuilder;
 
 /**
- * The service to batch download tiles
+ * The service to batch download tiles. Tiles are enumerated lazily and downloaded by a bounded
+ * pool of workers. Download tasks and their positions are persisted, so the service killed by the
+ * system continues from the last checkpoint after restart.
  */
 public class TileDownloadService extends Service {
     protected static final int TILE_DOWNLOAD_NOTIFICATION_ID = 7;
@@ -86,21 +103,53 @@ public class TileDownloadService extends Service {
     public static final String KEY_ZOOM_FROM   = "zoom_from";
     public static final String KEY_ZOOM_TO     = "zoom_to";
     public static final String KEY_ZOOM_LIST   = "zoom_list";
+    public static final String KEY_THREADS     = "threads";
+    public static final String KEY_HOST_CONNECTIONS = "host_connections";
+    public static final String KEY_MODE        = "download_mode";
+    public static final String KEY_MAX_AGE     = "max_age";
+
+    /**
+     * Download modes
+     */
+    public static final int MODE_ALL           = 0; // download every tile
+    public static final int MODE_SKIP_CACHED   = 1; // skip tiles present in the layer cache
+    public static final int MODE_REFRESH_STALE = 2; // skip fresh tiles, revalidate stale ones
     public static final String ACTION_STOP     = "tile_download_stop";
     public static final String ACTION_ADD_TASK = "add_tile_download_task";
 
+    protected static final String PREFS_TASKS          = "tile_download_tasks";
+    protected static final String KEY_TASKS            = "tasks";
+    protected static final String KEY_POSITION         = "position";
+    protected static final int    DEFAULT_HOST_CONNECTIONS = 4;
+    protected static final int    IN_FLIGHT_PER_THREAD = 4;
+    protected static final int    CHECKPOINT_STEP      = 200;
+    protected static final int    NOTIFY_WAIT_TIME     = 1000;
+    protected static final long   DEFAULT_MAX_AGE      = 7 * 24 * 60 * 60 * 1000L;
+    protected static final int    BUFFER_SIZE          = 8192;
+    protected static final String ETAG_EXT             = ".etag";
+
+    protected static final int REVALIDATE_FAILED       = -1;
+    protected static final int REVALIDATE_NOT_MODIFIED = 0;
+    protected static final int REVALIDATE_UPDATED      = 1;
+
+    // keyed by the host and the connection limit, tasks with other limits get their own one
+    protected static final Map<String, Semaphore> mHostSemaphores = new HashMap<>();
+
     protected boolean mForegroundStarted = false;
 
     protected NotificationManager        mNotifyManager;
     protected NotificationCompat.Builder mBuilder;
 
     protected Queue<DownloadTask> mQueue;
+    protected DownloadTask        mCurrentTask;
     protected Thread              mDownloadThread;
+    protected final Object        mTasksLock = new Object();
 
     protected volatile boolean mIsDownloadError = false;
 
     // Thread.currentThread().isInterrupted() is not work, so we use mIsDownloadInterrupted.
     protected volatile boolean mIsDownloadInterrupted = false;
+    protected volatile boolean mIsDownloadCanceled    = false;
 
     @Override
     public void onCreate() {
@@ -142,6 +191,7 @@ public class TileDownloadService extends Service {
 //        }
 
         mQueue = new ConcurrentLinkedQueue<>();
+        restoreTasks();
     }
 
     // For overriding in subclasses
@@ -183,6 +233,14 @@ public class TileDownloadService extends Service {
                 }
                 return START_STICKY;
             }
+        } else if (!mQueue.isEmpty() && mDownloadThread == null) {
+            // restarted by the system, resume saved tasks
+            if (Constants.DEBUG_MODE) {
+                Log.d(Constants.TAG, "TileDownloadService, resume " + mQueue.size() + " tasks");
+            }
+            mDownloadThread = createDownloadThread();
+            mDownloadThread.start();
+            return START_STICKY;
         }
         return START_NOT_STICKY;
     }
@@ -201,13 +259,22 @@ public class TileDownloadService extends Service {
 
         int layerid = intent.getIntExtra(ConstantsUI.KEY_LAYER_ID, -1);
 
+        List<Integer> zoomList = null;
         if (intent.hasExtra(KEY_ZOOM_FROM) && intent.hasExtra(KEY_ZOOM_TO)) {
             int zoomFrom = intent.getIntExtra(KEY_ZOOM_FROM, 0);
             int zoomTo = intent.getIntExtra(KEY_ZOOM_TO, 18);
-            addTask(layerPathName, env, zoomFrom, zoomTo, layerid);
+            zoomList = getZoomList(zoomFrom, zoomTo);
         } else if (intent.hasExtra(KEY_ZOOM_LIST)) {
-            List<Integer> zoomList = intent.getIntegerArrayListExtra(KEY_ZOOM_LIST);
-            addTask(layerPathName, env, zoomList, layerid);
+            zoomList = intent.getIntegerArrayListExtra(KEY_ZOOM_LIST);
+        }
+
+        if (null != zoomList) {
+            DownloadTask task = new DownloadTask(layerPathName, env, zoomList, layerid);
+            task.mThreadCount = Math.max(1, intent.getIntExtra(KEY_THREADS, DRAWING_SEPARATE_THREADS));
+            task.mHostConnections = Math.max(1, intent.getIntExtra(KEY_HOST_CONNECTIONS, DEFAULT_HOST_CONNECTIONS));
+            task.mMode = intent.getIntExtra(KEY_MODE, MODE_ALL);
+            task.mMaxAge = intent.getLongExtra(KEY_MAX_AGE, DEFAULT_MAX_AGE);
+            addTask(task);
         }
     }
 
@@ -217,8 +284,10 @@ public class TileDownloadService extends Service {
         if (Constants.DEBUG_MODE) {
             Log.d(Constants.TAG, "Cancel download queue");
         }
+        mIsDownloadCanceled = true;
         cancelNotification();
         clearResources();
+        clearTasks();
     }
 
     protected void cancelNotification() {
@@ -232,11 +301,17 @@ public class TileDownloadService extends Service {
 
     // For overriding in subclasses
     protected void clearResources() {
-        mQueue.clear();
+        synchronized (mTasksLock) {
+            // saved tasks are kept to resume them, see saveTasks()
+            if (mDownloadThread != null && mDownloadThread.isAlive()) {
+                mIsDownloadInterrupted = true;
+            }
+            mQueue.clear();
+            mCurrentTask = null;
+        }
         if (mDownloadThread != null && mDownloadThread.isAlive()) {
             mDownloadThread.interrupt();
             mDownloadThread = null;
-            mIsDownloadInterrupted = true;
             if (Constants.DEBUG_MODE) {
                 Log.d(Constants.TAG, "TileDownloadService.cancelDownload(), interrupt service");
             }
@@ -263,17 +338,24 @@ public class TileDownloadService extends Service {
         super.onDestroy();
     }
 
-    protected void addTask(
-            String layerPathName,
-            GeoEnvelope env,
+    protected static List<Integer> getZoomList(
             int zoomFrom,
-            int zoomTo, int layerid)
+            int zoomTo)
     {
         List<Integer> zoomList = new ArrayList<>(zoomTo - zoomFrom + 1);
         for (int zoom = zoomFrom; zoom < zoomTo + 1; ++zoom) {
             zoomList.add(zoom);
         }
-        addTask(layerPathName, env, zoomList, layerid);
+        return zoomList;
+    }
+
+    protected void addTask(
+            String layerPathName,
+            GeoEnvelope env,
+            int zoomFrom,
+            int zoomTo, int layerid)
+    {
+        addTask(layerPathName, env, getZoomList(zoomFrom, zoomTo), layerid);
     }
 
     protected void addTask(
@@ -282,7 +364,12 @@ public class TileDownloadService extends Service {
             List<Integer> zoomList,
             int layerid)
     {
-        DownloadTask task = new DownloadTask(layerPathName, env, zoomList);
+        addTask(new DownloadTask(layerPathName, env, zoomList, layerid));
+    }
+
+    protected void addTask(DownloadTask task)
+    {
+        mIsDownloadCanceled = false;
         mQueue.add(task);
 
         if (mDownloadThread == null) {
@@ -291,12 +378,14 @@ public class TileDownloadService extends Service {
                         Constants.TAG,
                         "TileDownloadService.addTask(), create and run download thread");
             }
-            mDownloadThread = createDownloadThread(layerid);
+            mDownloadThread = createDownloadThread();
             mDownloadThread.start();
         }
+
+        saveTasks();
     }
 
-    private Thread createDownloadThread(int layerid) {
+    private Thread createDownloadThread() {
         mIsDownloadInterrupted = false;
         return new Thread(new Runnable()
         {
@@ -314,20 +403,29 @@ public class TileDownloadService extends Service {
                     if (Constants.DEBUG_MODE) {
                         Log.d(Constants.TAG, "Tile download queue size " + mQueue.size());
                     }
-                    DownloadTask task = mQueue.poll();
+                    DownloadTask task = mQueue.peek();
+                    mCurrentTask = task;
                     download(task);
+
+                    if (mIsDownloadInterrupted) {
+                        // the task is kept saved with its last checkpoint
+                        break;
+                    }
+
+                    mQueue.remove(task);
+                    mCurrentTask = null;
+                    saveTasks();
+
+                    ((IGISApplication) getApplication()).setLayerToRefresh(task.getLayerId());
+                    Intent msg = new Intent(MESSAGE_INTENT_RELOAD);
+                    msg.putExtra(ConstantsUI.KEY_LAYER_ID, task.getLayerId());
+                    msg.setPackage(getApplicationContext().getPackageName());
+                    getApplication().sendBroadcast(msg);
                 }
 
                 cancelNotification();
                 stopSelf();
 
-
-                ((IGISApplication)getApplication()).setLayerToRefresh(layerid);
-                Intent msg = new Intent(MESSAGE_INTENT_RELOAD);
-                msg.putExtra( ConstantsUI.KEY_LAYER_ID, layerid);
-                msg.setPackage(getApplicationContext().getPackageName());
-                getApplication().sendBroadcast(msg);
-
                 if (Constants.DEBUG_MODE) {
                     Log.d(Constants.TAG, "TileDownloadService.stopSelf() is performed");
                     Log.d(Constants.TAG, "TileDownloadService.mDownloadThread, stopped");
@@ -336,19 +434,78 @@ public class TileDownloadService extends Service {
         });
     }
 
+    protected SharedPreferences getTasksPreferences()
+    {
+        return getSharedPreferences(PREFS_TASKS, MODE_PRIVATE);
+    }
+
+    protected void restoreTasks()
+    {
+        synchronized (mTasksLock) {
+            String tasks = getTasksPreferences().getString(KEY_TASKS, null);
+            if (TextUtils.isEmpty(tasks)) {
+                return;
+            }
+
+            try {
+                JSONArray array = new JSONArray(tasks);
+                for (int i = 0; i < array.length(); i++) {
+                    mQueue.add(new DownloadTask(array.getJSONObject(i)));
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+                getTasksPreferences().edit().remove(KEY_TASKS).apply();
+            }
+        }
+    }
+
+    protected void saveTasks()
+    {
+        synchronized (mTasksLock) {
+            if (mIsDownloadCanceled || mIsDownloadInterrupted) {
+                return;
+            }
+
+            JSONArray array = new JSONArray();
+            try {
+                DownloadTask current = mCurrentTask;
+                if (null != current && !current.isCompleted()) {
+                    array.put(current.toJSON());
+                }
+                for (DownloadTask task : mQueue) {
+                    if (task != current && !task.isCompleted()) {
+                        array.put(task.toJSON());
+                    }
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            getTasksPreferences().edit().putString(KEY_TASKS, array.toString()).commit();
+        }
+    }
+
+    protected void clearTasks()
+    {
+        synchronized (mTasksLock) {
+            getTasksPreferences().edit().remove(KEY_TASKS).commit();
+        }
+    }
+
     // For overriding in subclasses
-    protected List<TileItem> getTileItems(
-            GeoEnvelope bounds,
-            double zoom,
+    protected TileEnumerator createTileEnumerator(
+            DownloadTask task,
             TMSLayer tmsLayer)
     {
-        return MapUtil.getTileItems(bounds, zoom, tmsLayer.getTMSType());
+        return new TileEnumerator(task.getEnvelope(), task.getZoomList(), tmsLayer.getTMSType(),
+                Constants.MAX_TILES_COUNT);
     }
 
-    protected void download(DownloadTask task) {
+    protected void download(final DownloadTask task) {
         mIsDownloadError = false;
 
-        MapBase map = MapBase.getInstance();
+        MapBase map = GISApplication.getLoadedMap();
         if (null == map) {
             return;
         }
@@ -363,68 +520,39 @@ public class TileDownloadService extends Service {
             mNotifyManager.notify(TILE_DOWNLOAD_NOTIFICATION_ID, mBuilder.build());
 
             final RemoteTMSLayer tmsLayer = (RemoteTMSLayer) layer;
-            final List<TileItem> tiles = new LinkedList<>();
-            int zoomCount = task.getZoomList().size();
-
-            sendProgressorsValues(zoomCount, 0, tmsLayer.getPath().getName());
-
-            for (Integer zoom : task.getZoomList()) {
-                if (mIsDownloadInterrupted) {
-                    if (Constants.DEBUG_MODE) {
-                        Log.d(Constants.TAG,"TileDownloadService.mDownloadThread is interrupted, point 01");
-                    }
-                    return;
-                }
-
-                tiles.addAll(getTileItems(task.getEnvelope(), zoom, tmsLayer));
-
-                mBuilder.setProgress(zoomCount, zoom, false)
-                        .setContentText(getString(R.string.form_tiles_list));
-                mNotifyManager.notify(TILE_DOWNLOAD_NOTIFICATION_ID, mBuilder.build());
-                sendProgressorsValues(zoomCount, zoom, tmsLayer.getPath().getName());
-
-                if (tiles.size() > Constants.MAX_TILES_COUNT) {
-                    break;
-                }
-            }
-
-            int threadCount = DRAWING_SEPARATE_THREADS;
-            int coreCount = Runtime.getRuntime().availableProcessors();
-
-            // FIXME: More than 1 pool size causing strange behaviour on 6.0.
-            // FIXME: Check this again after 29.06.2017.
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                coreCount = 1;
-            }
+            final String layerPathName = tmsLayer.getPath().getName();
+
+            // tiles are enumerated lazily, the checkpoint is the ordinal of the first not
+            // downloaded tile
+            TileEnumerator tiles = createTileEnumerator(task, tmsLayer);
+            tiles.seek(task.getPosition());
+
+            final int tilesSize = (int) Math.min(tiles.getTotal(), Integer.MAX_VALUE);
+            final AtomicInteger processed = new AtomicInteger((int) tiles.getPosition());
+            final Checkpoint checkpoint = new Checkpoint(tiles.getPosition());
+            final DownloadStats stats = new DownloadStats();
+
+            int threadCount = task.getThreadCount();
+            // bounded window of the dispatched but not downloaded tiles, the enumeration thread
+            // waits for a free slot instead of filling the executor queue
+            final int window = threadCount * IN_FLIGHT_PER_THREAD;
+            final Semaphore inFlight = new Semaphore(window);
+            final Semaphore hostConnections =
+                    getHostConnections(tmsLayer.getURL(), task.getHostConnections());
 
             ThreadPoolExecutor threadPool =
-                    new ThreadPoolExecutor(coreCount, threadCount, KEEP_ALIVE_TIME,
-                            KEEP_ALIVE_TIME_UNIT, new LinkedBlockingQueue<Runnable>(),
-                            new RejectedExecutionHandler()
-                            {
-                                @Override
-                                public void rejectedExecution(
-                                        Runnable r,
-                                        ThreadPoolExecutor executor)
-                                {
-                                    try {
-                                        executor.getQueue().put(r);
-                                    } catch (InterruptedException e) {
-                                        e.printStackTrace();
-                                        //throw new RuntimeException("Interrupted while submitting task", e);
-                                    }
-                                }
-                            });
-
-            int tilesSize = tiles.size();
-            List<Future> futures = new ArrayList<>(tilesSize);
+                    new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_TIME,
+                            KEEP_ALIVE_TIME_UNIT, new LinkedBlockingQueue<Runnable>());
 
             int nStep = tilesSize / Constants.DRAW_NOTIFY_STEP_PERCENT;
             if (nStep == 0) {
                 nStep = 1;
             }
 
-            for (int i = 0; i < tilesSize; ++i) {
+            sendProgressorsValues(tilesSize, processed.get(), layerPathName, stats);
+
+            int dispatched = 0;
+            while (tiles.hasNext()) {
                 boolean isError = isDownloadError();
                 if (isError || mIsDownloadInterrupted) {
                     if (Constants.DEBUG_MODE) {
@@ -436,8 +564,16 @@ public class TileDownloadService extends Service {
                     break;
                 }
 
-                final TileItem tile = tiles.get(i);
-                futures.add(threadPool.submit(new Runnable()
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                final long ordinal = tiles.getPosition();
+                final TileItem tile = tiles.next();
+                checkpoint.start(ordinal);
+                threadPool.execute(new Runnable()
                 {
                     @Override
                     public void run()
@@ -445,72 +581,57 @@ public class TileDownloadService extends Service {
                         android.os.Process.setThreadPriority(
                                 Constants.DEFAULT_DRAW_THREAD_PRIORITY);
 
-                        if (!downloadTile(tmsLayer, tile)) {
-                            mIsDownloadError = true;
-                            if (Constants.DEBUG_MODE) {
-                                Log.d(
-                                        Constants.TAG,
-                                        "TileDownloadService.mDownloadThread, downloadTile() with error, layer: "
-                                                + tmsLayer.getName() + ", tile: "
-                                                + tile.toString());
+                        try {
+                            hostConnections.acquire();
+                        } catch (InterruptedException e) {
+                            inFlight.release();
+                            return;
+                        }
+
+                        try {
+                            if (!processTile(task, tmsLayer, tile, stats)) {
+                                mIsDownloadError = true;
+                                if (Constants.DEBUG_MODE) {
+                                    Log.d(
+                                            Constants.TAG,
+                                            "TileDownloadService.mDownloadThread, downloadTile() with error, layer: "
+                                                    + tmsLayer.getName() + ", tile: "
+                                                    + tile.toString());
+                                }
                             }
+                            checkpoint.finish(ordinal);
+                            processed.incrementAndGet();
+                        } finally {
+                            hostConnections.release();
+                            inFlight.release();
                         }
                     }
-                }));
-
-                if (i % nStep == 0) {
-                    mBuilder.setProgress(tilesSize, i, false)
-                            .setContentText(
-                                    getString(R.string.processing) + " " + tmsLayer.getName());
-                    // Displays the progress bar for the first time.
-                    mNotifyManager.notify(TILE_DOWNLOAD_NOTIFICATION_ID, mBuilder.build());
-                    sendProgressorsValues(tilesSize, i, tmsLayer.getPath().getName());
-                }
-            }
+                });
 
-            // in separate thread
+                if (++dispatched % nStep == 0) {
+                    notifyProgress(task, tmsLayer, tilesSize, processed.get(), stats);
+                }
 
-            // wait for download ending
-            nStep = futures.size() / Constants.DRAW_NOTIFY_STEP_PERCENT;
-            if (nStep == 0) {
-                nStep = 1;
+                if (dispatched % CHECKPOINT_STEP == 0) {
+                    task.setPosition(checkpoint.getPosition());
+                    saveTasks();
+                }
             }
 
-            int futuresSize = futures.size();
-            for (int i = 0; i < futuresSize; ++i) {
-                boolean isError = isDownloadError();
-                if (isError || mIsDownloadInterrupted) {
-                    if (Constants.DEBUG_MODE) {
-                        Log.d(
-                                Constants.TAG,
-                                "TileDownloadService.mDownloadThread is interrupted, point 03, isDownloadError: "
-                                        + isError);
+            // wait for download ending
+            while (!mIsDownloadInterrupted) {
+                try {
+                    if (inFlight.tryAcquire(window, NOTIFY_WAIT_TIME, TimeUnit.MILLISECONDS)) {
+                        inFlight.release(window);
+                        break;
                     }
+                } catch (InterruptedException e) {
                     break;
                 }
 
-                try {
-                    Future future = futures.get(i);
-                    future.get(); // wait for task ending
-
-                    if (i % nStep == 0) {
-                        mBuilder.setProgress(futuresSize, i, false)
-                                .setContentText(
-                                        getString(R.string.processing) + " " + tmsLayer.getName());
-                        // Displays the progress bar for the first time.
-                        mNotifyManager.notify(TILE_DOWNLOAD_NOTIFICATION_ID, mBuilder.build());
-                        sendProgressorsValues(futuresSize, i, tmsLayer.getPath().getName());
-                    }
-
-                } catch (CancellationException | InterruptedException e) {
-                    //e.printStackTrace();
-                } catch (ExecutionException e) {
-                    e.printStackTrace();
-                }
+                notifyProgress(task, tmsLayer, tilesSize, processed.get(), stats);
             }
 
-            sendProgressorsValues(futuresSize, futuresSize, tmsLayer.getPath().getName());
-
             threadPool.shutdownNow(); // Cancel currently executing tasks
             try {
                 // Wait a while for tasks to respond to being cancelled
@@ -527,7 +648,15 @@ public class TileDownloadService extends Service {
                 // Preserve interrupt status
                 Thread.currentThread().interrupt();
             }
+
+            task.setPosition(checkpoint.getPosition());
+            if (!tiles.hasNext() && task.getPosition() >= tiles.getTotal()) {
+                task.setCompleted(true);
+            }
+            sendProgressorsValues(tilesSize, processed.get(), layerPathName, stats);
         } else {
+            // nothing to resume for the missing or not TMS layer
+            task.setCompleted(true);
             if (Constants.DEBUG_MODE) {
                 if (layer == null) {
                     Log.d(Constants.TAG,
@@ -541,6 +670,56 @@ public class TileDownloadService extends Service {
         }
     }
 
+    protected static Semaphore getHostConnections(
+            String url,
+            int maxConnections)
+    {
+        String host = null;
+        if (!TextUtils.isEmpty(url)) {
+            host = Uri.parse(url).getHost();
+        }
+        if (null == host) {
+            host = "";
+        }
+
+        String key = host + "#" + maxConnections;
+        synchronized (mHostSemaphores) {
+            Semaphore semaphore = mHostSemaphores.get(key);
+            if (null == semaphore) {
+                semaphore = new Semaphore(maxConnections);
+                mHostSemaphores.put(key, semaphore);
+            }
+            return semaphore;
+        }
+    }
+
+    protected void notifyProgress(
+            DownloadTask task,
+            RemoteTMSLayer tmsLayer,
+            int maxValue,
+            int value,
+            DownloadStats stats)
+    {
+        String text = getString(R.string.processing) + " " + tmsLayer.getName();
+        if (task.getMode() != MODE_ALL) {
+            text += ". " + getString(R.string.download_tiles_stats, stats.getFetched(),
+                    stats.getSkipped(), stats.getRevalidated());
+        }
+        mBuilder.setProgress(maxValue, value, false).setContentText(text);
+        mNotifyManager.notify(TILE_DOWNLOAD_NOTIFICATION_ID, mBuilder.build());
+        sendProgressorsValues(maxValue, value, tmsLayer.getPath().getName(), stats);
+    }
+
+    // For overriding in subclasses
+    protected void sendProgressorsValues(
+            int maxValue,
+            int value,
+            String layerPathName,
+            DownloadStats stats)
+    {
+        sendProgressorsValues(maxValue, value, layerPathName);
+    }
+
     protected void sendProgressorsValues(
             int maxValue,
             int value,
@@ -549,6 +728,134 @@ public class TileDownloadService extends Service {
         // do nothing
     }
 
+    /**
+     * Download the tile according to the task mode.
+     *
+     * @return false if the tile should be but was not downloaded
+     */
+    protected boolean processTile(
+            DownloadTask task,
+            RemoteTMSLayer tmsLayer,
+            TileItem tile,
+            DownloadStats stats)
+    {
+        int mode = task.getMode();
+        if (mode != MODE_ALL) {
+            File tileFile = getTileFile(tmsLayer, tile);
+            if (null != tileFile && tileFile.exists()) {
+                long age = System.currentTimeMillis() - tileFile.lastModified();
+                if (mode == MODE_SKIP_CACHED || age < task.getMaxAge()) {
+                    stats.mSkipped.incrementAndGet();
+                    return true;
+                }
+
+                switch (revalidateTile(tmsLayer, tile, tileFile)) {
+                    case REVALIDATE_NOT_MODIFIED:
+                        stats.mRevalidated.incrementAndGet();
+                        return true;
+                    case REVALIDATE_UPDATED:
+                        stats.mFetched.incrementAndGet();
+                        return true;
+                    default:
+                        // fall back to the layer download
+                        break;
+                }
+            }
+        }
+
+        if (downloadTile(tmsLayer, tile)) {
+            stats.mFetched.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    // For overriding in subclasses
+    protected File getTileFile(
+            RemoteTMSLayer tmsLayer,
+            TileItem tile)
+    {
+        // the layer keeps tiles as z/x/y.tile
+        return new File(tmsLayer.getPath(), tile.toString() + Constants.TILE_EXT);
+    }
+
+    // For overriding in subclasses
+    protected String getTileUrl(
+            RemoteTMSLayer tmsLayer,
+            TileItem tile)
+    {
+        return TileDownloadEstimator.getTileUrl(tmsLayer, tile);
+    }
+
+    /**
+     * Send the conditional request for the cached tile and rewrite it only if it was changed.
+     *
+     * @return one of REVALIDATE_* values
+     */
+    protected int revalidateTile(
+            RemoteTMSLayer tmsLayer,
+            TileItem tile,
+            File tileFile)
+    {
+        String target = getTileUrl(tmsLayer, tile);
+        if (null == target) {
+            return REVALIDATE_FAILED;
+        }
+
+        File etagFile = new File(tileFile.getPath() + ETAG_EXT);
+        HttpURLConnection conn = null;
+        try {
+            conn = TileDownloadEstimator.openConnection(tmsLayer, target);
+            conn.setIfModifiedSince(tileFile.lastModified());
+            if (etagFile.exists()) {
+                conn.setRequestProperty("If-None-Match", FileUtil.readFromFile(etagFile));
+            }
+
+            int code = conn.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                tileFile.setLastModified(System.currentTimeMillis());
+                return REVALIDATE_NOT_MODIFIED;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                return REVALIDATE_FAILED;
+            }
+
+            // write to the temp file and replace the tile, so readers never see a partial tile
+            File temp = new File(tileFile.getPath() + ".tmp");
+            InputStream is = conn.getInputStream();
+            OutputStream os = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    os.write(buffer, 0, read);
+                }
+            } finally {
+                os.close();
+                is.close();
+            }
+            if (!temp.renameTo(tileFile)) {
+                temp.delete();
+                return REVALIDATE_FAILED;
+            }
+
+            String etag = conn.getHeaderField("ETag");
+            if (!TextUtils.isEmpty(etag)) {
+                FileUtil.writeToFile(etagFile, etag);
+            } else {
+                etagFile.delete();
+            }
+            return REVALIDATE_UPDATED;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return REVALIDATE_FAILED;
+        } finally {
+            if (null != conn) {
+                conn.disconnect();
+            }
+        }
+    }
+
     // For overriding in subclasses
     protected boolean downloadTile(
             RemoteTMSLayer tmsLayer,
@@ -566,20 +873,123 @@ public class TileDownloadService extends Service {
         //return mIsDownloadError;
     }
 
+    /**
+     * Counters of the tiles processed in the download modes other than MODE_ALL
+     */
+    public static class DownloadStats
+    {
+        protected final AtomicInteger mFetched     = new AtomicInteger();
+        protected final AtomicInteger mSkipped     = new AtomicInteger();
+        protected final AtomicInteger mRevalidated = new AtomicInteger();
+
+        public int getFetched()
+        {
+            return mFetched.get();
+        }
+
+        public int getSkipped()
+        {
+            return mSkipped.get();
+        }
+
+        public int getRevalidated()
+        {
+            return mRevalidated.get();
+        }
+    }
+
+    /**
+     * Tracks the lowest tile ordinal which is not downloaded yet. Tiles finish out of order, so
+     * the position can not be simply the count of the downloaded tiles.
+     */
+    protected static class Checkpoint
+    {
+        protected final TreeSet<Long> mInFlight = new TreeSet<>();
+        protected long mNext;
+
+        Checkpoint(long position)
+        {
+            mNext = position;
+        }
+
+        synchronized void start(long ordinal)
+        {
+            mInFlight.add(ordinal);
+            mNext = ordinal + 1;
+        }
+
+        synchronized void finish(long ordinal)
+        {
+            mInFlight.remove(ordinal);
+        }
+
+        synchronized long getPosition()
+        {
+            return mInFlight.isEmpty() ? mNext : mInFlight.first();
+        }
+    }
+
     public class DownloadTask
     {
         String        mLayerPathName;
         GeoEnvelope   mEnvelope;
         List<Integer> mZoomList;
+        int           mLayerId;
+        int           mThreadCount     = DRAWING_SEPARATE_THREADS;
+        int           mHostConnections = DEFAULT_HOST_CONNECTIONS;
+        int           mMode            = MODE_ALL;
+        long          mMaxAge          = DEFAULT_MAX_AGE;
+        volatile long    mPosition;
+        volatile boolean mCompleted;
 
         DownloadTask(
                 String layerPathName,
                 GeoEnvelope envelope,
-                List<Integer> zoomList)
+                List<Integer> zoomList,
+                int layerId)
         {
             mLayerPathName = layerPathName;
             mEnvelope = envelope;
             mZoomList = zoomList;
+            mLayerId = layerId;
+        }
+
+        DownloadTask(JSONObject json)
+                throws JSONException
+        {
+            mLayerPathName = json.getString(KEY_PATH);
+            mEnvelope = new GeoEnvelope(json.getDouble(KEY_MINX), json.getDouble(KEY_MAXX),
+                    json.getDouble(KEY_MINY), json.getDouble(KEY_MAXY));
+            JSONArray zooms = json.getJSONArray(KEY_ZOOM_LIST);
+            mZoomList = new ArrayList<>(zooms.length());
+            for (int i = 0; i < zooms.length(); i++) {
+                mZoomList.add(zooms.getInt(i));
+            }
+            mLayerId = json.optInt(ConstantsUI.KEY_LAYER_ID, -1);
+            mThreadCount = json.optInt(KEY_THREADS, DRAWING_SEPARATE_THREADS);
+            mHostConnections = json.optInt(KEY_HOST_CONNECTIONS, DEFAULT_HOST_CONNECTIONS);
+            mMode = json.optInt(KEY_MODE, MODE_ALL);
+            mMaxAge = json.optLong(KEY_MAX_AGE, DEFAULT_MAX_AGE);
+            mPosition = json.optLong(KEY_POSITION, 0);
+        }
+
+        JSONObject toJSON()
+                throws JSONException
+        {
+            JSONObject json = new JSONObject();
+            json.put(KEY_PATH, mLayerPathName);
+            json.put(KEY_MINX, mEnvelope.getMinX());
+            json.put(KEY_MAXX, mEnvelope.getMaxX());
+            json.put(KEY_MINY, mEnvelope.getMinY());
+            json.put(KEY_MAXY, mEnvelope.getMaxY());
+            json.put(KEY_ZOOM_LIST, new JSONArray(mZoomList));
+            json.put(ConstantsUI.KEY_LAYER_ID, mLayerId);
+            json.put(KEY_THREADS, mThreadCount);
+            json.put(KEY_HOST_CONNECTIONS, mHostConnections);
+            json.put(KEY_MODE, mMode);
+            json.put(KEY_MAX_AGE, mMaxAge);
+            json.put(KEY_POSITION, mPosition);
+            return json;
         }
 
         public String getLayerPathName()
@@ -596,5 +1006,50 @@ public class TileDownloadService extends Service {
         {
             return mZoomList;
         }
+
+        public int getLayerId()
+        {
+            return mLayerId;
+        }
+
+        int getThreadCount()
+        {
+            return mThreadCount;
+        }
+
+        int getHostConnections()
+        {
+            return mHostConnections;
+        }
+
+        int getMode()
+        {
+            return mMode;
+        }
+
+        long getMaxAge()
+        {
+            return mMaxAge;
+        }
+
+        long getPosition()
+        {
+            return mPosition;
+        }
+
+        void setPosition(long position)
+        {
+            mPosition = position;
+        }
+
+        boolean isCompleted()
+        {
+            return mCompleted;
+        }
+
+        void setCompleted(boolean completed)
+        {
+            mCompleted = completed;
+        }
     }
 }
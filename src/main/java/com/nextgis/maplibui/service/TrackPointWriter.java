@@ -0,0 +1,222 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.service;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.nextgis.maplib.util.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer for track points. Points are collected in memory and stored with one
+ * {@link ContentResolver#bulkInsert} call on a dedicated thread when the buffer reaches the flush
+ * size or the flush interval passes since the first buffered point.
+ */
+public class TrackPointWriter
+{
+    public static final long DEFAULT_FLUSH_INTERVAL = 10000;
+    public static final int  DEFAULT_FLUSH_SIZE     = 20;
+
+    protected final ContentResolver mResolver;
+    protected final Uri             mUri;
+    protected final long            mFlushInterval;
+    protected final int             mFlushSize;
+
+    protected final Object              mBufferLock = new Object();
+    protected final Object              mFlushLock  = new Object();
+    protected       List<ContentValues> mBuffer     = new ArrayList<>();
+    protected       boolean             mScheduled;
+
+    protected final AtomicLong mQueued    = new AtomicLong();
+    protected final AtomicLong mPersisted = new AtomicLong();
+
+    protected HandlerThread mThread;
+    protected Handler       mHandler;
+    protected OnFlushListener mListener;
+
+    protected final Runnable mFlushRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            flush();
+        }
+    };
+
+
+    public TrackPointWriter(
+            ContentResolver resolver,
+            Uri uri,
+            long flushInterval,
+            int flushSize)
+    {
+        mResolver = resolver;
+        mUri = uri;
+        mFlushInterval = Math.max(0, flushInterval);
+        mFlushSize = Math.max(1, flushSize);
+
+        mThread = new HandlerThread("TrackPointWriter");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+
+    public void setOnFlushListener(OnFlushListener listener)
+    {
+        mListener = listener;
+    }
+
+
+    /**
+     * Queue a copy of the point values
+     */
+    public void add(ContentValues values)
+    {
+        boolean flushNow, schedule = false;
+        synchronized (mBufferLock) {
+            mBuffer.add(new ContentValues(values));
+            mQueued.incrementAndGet();
+            flushNow = mBuffer.size() >= mFlushSize;
+            if (!flushNow && !mScheduled) {
+                mScheduled = schedule = true;
+            }
+        }
+
+        Handler handler = mHandler;
+        if (null == handler) {
+            flush();
+        } else if (flushNow) {
+            handler.removeCallbacks(mFlushRunnable);
+            handler.post(mFlushRunnable);
+        } else if (schedule) {
+            handler.postDelayed(mFlushRunnable, mFlushInterval);
+        }
+    }
+
+
+    /**
+     * Store the buffered points on the calling thread
+     *
+     * @return number of points stored
+     */
+    public int flush()
+    {
+        synchronized (mFlushLock) {
+            List<ContentValues> points;
+            synchronized (mBufferLock) {
+                mScheduled = false;
+                if (mBuffer.isEmpty()) {
+                    return 0;
+                }
+                points = mBuffer;
+                mBuffer = new ArrayList<>(mFlushSize);
+            }
+
+            int stored;
+            try {
+                stored = mResolver.bulkInsert(mUri, points.toArray(new ContentValues[0]));
+            } catch (Exception e) {
+                Log.e(Constants.TAG, "Track points were not stored: " + e.getMessage());
+                stored = 0;
+            }
+
+            if (stored < points.size()) {
+                // keep the rest for the next flush
+                synchronized (mBufferLock) {
+                    points.subList(0, stored).clear();
+                    points.addAll(mBuffer);
+                    mBuffer = points;
+                }
+            }
+
+            if (stored > 0) {
+                mPersisted.addAndGet(stored);
+                if (null != mListener) {
+                    mListener.onFlush(stored);
+                }
+            }
+            return stored;
+        }
+    }
+
+
+    /**
+     * Flush the buffer and stop the writer thread. Points added later are stored synchronously.
+     */
+    public void close()
+    {
+        Handler handler = mHandler;
+        mHandler = null;
+        if (null != handler) {
+            handler.removeCallbacks(mFlushRunnable);
+        }
+        flush();
+        if (null != mThread) {
+            mThread.quitSafely();
+            mThread = null;
+        }
+    }
+
+
+    /**
+     * @return points passed to {@link #add(ContentValues)} since creation
+     */
+    public long getQueuedCount()
+    {
+        return mQueued.get();
+    }
+
+
+    /**
+     * @return points stored in the database since creation
+     */
+    public long getPersistedCount()
+    {
+        return mPersisted.get();
+    }
+
+
+    /**
+     * @return points waiting in the buffer
+     */
+    public int getPendingCount()
+    {
+        synchronized (mBufferLock) {
+            return mBuffer.size();
+        }
+    }
+
+
+    public interface OnFlushListener
+    {
+        void onFlush(int count);
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.service;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.nextgis.maplib.api.IGISApplication;
+import com.nextgis.maplib.datasource.GeoPoint;
+import com.nextgis.maplib.map.TrackLayer;
+import com.nextgis.maplib.util.Constants;
+import com.nextgis.maplib.util.GeoConstants;
+import com.nextgis.maplib.util.SettingsConstants;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import static android.content.Context.MODE_MULTI_PROCESS;
+import static com.nextgis.maplib.util.NetworkUtil.configureSSLdefault;
+import static com.nextgis.maplib.util.NetworkUtil.getUserAgent;
+
+/**
+ * Sends unsent track points to the tracker hub. Points are read by pages ordered by timestamp and
+ * row id (keyset paging, no OFFSET), every page is encoded straight into the request body and
+ * exactly the rows of the page are marked as sent once the hub accepts it.
+ * <p>
+ * {@link #upload()} sends everything synchronously. {@link #start()} runs the uploader on its own
+ * thread, uploads are triggered by {@link #onPointsStored(int)} when enough points are stored or
+ * when the max latency passes.
+ */
+public class TrackUploader
+{
+    public static final int  PAGE_SIZE           = 100;
+    public static final int  DEFAULT_THRESHOLD   = 50;
+    public static final long DEFAULT_MAX_LATENCY = 20000;
+
+    protected static final int TIMEOUT     = 15000;
+    protected static final int BUFFER_SIZE = 8192;
+
+    // the table's _id if it is the integer primary key, points with equal timestamps differ by it
+    protected static final String FIELD_ROW_ID     = "rowid";
+    protected static final int    COLUMN_TIMESTAMP = 2;
+    protected static final int    COLUMN_ROW_ID    = 9;
+    // the content provider convention for a row limit, the cursor is never read past a page anyway
+    protected static final String PARAMETER_LIMIT  = "limit";
+
+    protected static final String[] PROJECTION = new String[] {
+            TrackLayer.FIELD_LON, TrackLayer.FIELD_LAT, TrackLayer.FIELD_TIMESTAMP,
+            TrackLayer.FIELD_ELE, TrackLayer.FIELD_SAT, TrackLayer.FIELD_FIX,
+            TrackLayer.FIELD_SPEED, TrackLayer.FIELD_ACCURACY, TrackLayer.FIELD_BEARING,
+            FIELD_ROW_ID};
+
+    protected final ContentResolver mResolver;
+    protected final Uri             mUri;
+    protected final String          mUrl;
+    protected volatile boolean      mCompress = true;
+    protected       int             mThreshold = DEFAULT_THRESHOLD;
+    protected       long            mMaxLatency = DEFAULT_MAX_LATENCY;
+
+    protected HandlerThread mThread;
+    protected Handler       mHandler;
+    protected int           mNewPoints;
+    protected boolean       mScheduled;
+
+    protected final Object mUploadLock = new Object();
+
+    protected final Runnable mUploadRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            synchronized (TrackUploader.this) {
+                mNewPoints = 0;
+                mScheduled = false;
+            }
+            upload();
+        }
+    };
+
+
+    /**
+     * @param url
+     *         packet URL of the hub, e.g. a local stand-in server in tests
+     */
+    public TrackUploader(
+            ContentResolver resolver,
+            Uri pointsUri,
+            String url)
+    {
+        mResolver = resolver;
+        mUri = pointsUri;
+        mUrl = url;
+    }
+
+
+    /**
+     * Uploader for the hub from the preferences
+     */
+    public static TrackUploader create(Context context)
+    {
+        String authority = ((IGISApplication) context.getApplicationContext()).getAuthority();
+        Uri uri = Uri.parse("content://" + authority + "/" + TrackLayer.TABLE_TRACKPOINTS);
+        String base = getPreferences(context).getString("tracker_hub_url", TrackerService.HOST);
+        String url = String.format("%s/%s/packet", base + TrackerService.URL, TrackerService.getUid(context));
+        return new TrackUploader(context.getContentResolver(), uri, url);
+    }
+
+
+    public static boolean isEnabled(Context context)
+    {
+        return getPreferences(context).getBoolean(SettingsConstants.KEY_PREF_TRACK_SEND, false);
+    }
+
+
+    protected static SharedPreferences getPreferences(Context context)
+    {
+        String name = context.getPackageName() + "_preferences";
+        return context.getSharedPreferences(name, MODE_MULTI_PROCESS);
+    }
+
+
+    /**
+     * Send request bodies gzip compressed. Switched off automatically if the hub refuses them.
+     */
+    public void setCompress(boolean compress)
+    {
+        mCompress = compress;
+    }
+
+
+    /**
+     * @param threshold
+     *         stored points which trigger an upload
+     * @param maxLatency
+     *         ms between the first stored point and the upload
+     */
+    public void setTrigger(
+            int threshold,
+            long maxLatency)
+    {
+        mThreshold = Math.max(1, threshold);
+        mMaxLatency = Math.max(0, maxLatency);
+    }
+
+
+    public synchronized void start()
+    {
+        if (null != mThread) {
+            return;
+        }
+        mThread = new HandlerThread("TrackUploader");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        // send points left from the previous run
+        mHandler.post(mUploadRunnable);
+    }
+
+
+    /**
+     * Make a last upload attempt and stop the uploader thread
+     */
+    public synchronized void stop()
+    {
+        if (null == mThread) {
+            return;
+        }
+        mHandler.removeCallbacks(mUploadRunnable);
+        mHandler.post(mUploadRunnable);
+        mThread.quitSafely();
+        mThread = null;
+        mHandler = null;
+    }
+
+
+    public synchronized void onPointsStored(int count)
+    {
+        if (null == mHandler) {
+            return;
+        }
+
+        mNewPoints += count;
+        if (mNewPoints >= mThreshold) {
+            mHandler.removeCallbacks(mUploadRunnable);
+            mHandler.post(mUploadRunnable);
+            mScheduled = true;
+        } else if (!mScheduled) {
+            mHandler.postDelayed(mUploadRunnable, mMaxLatency);
+            mScheduled = true;
+        }
+    }
+
+
+    /**
+     * Send all unsent points page by page. Stops at the first failed page, the rest is sent
+     * next time. Calls from several threads run one at a time, so a page is never posted twice.
+     *
+     * @return number of points sent
+     */
+    public int upload()
+    {
+        synchronized (mUploadLock) {
+            return uploadPages();
+        }
+    }
+
+
+    protected int uploadPages()
+    {
+        int sent = 0;
+        long lastTime = Long.MIN_VALUE;
+        long lastId = -1;
+        long[] ids = new long[PAGE_SIZE];
+        while (!Thread.currentThread().isInterrupted()) {
+            Cursor points;
+            try {
+                points = queryPage(lastTime, lastId);
+            } catch (Exception e) {
+                Log.d(Constants.TAG, "Track points query failed: " + e.getMessage());
+                return sent;
+            }
+
+            if (null == points) {
+                return sent;
+            }
+
+            int count;
+            try {
+                if (!points.moveToFirst()) {
+                    return sent;
+                }
+                count = postPage(points, ids, mCompress);
+                if (count == 0) {
+                    return sent;
+                }
+                points.moveToPosition(count - 1);
+                lastTime = points.getLong(COLUMN_TIMESTAMP);
+            } catch (IOException e) {
+                Log.d(Constants.TAG, "Track points were not sent: " + e.getMessage());
+                return sent;
+            } finally {
+                points.close();
+            }
+
+            markSent(ids, count);
+            lastId = ids[count - 1];
+            sent += count;
+            if (count < PAGE_SIZE) {
+                return sent;
+            }
+        }
+        return sent;
+    }
+
+
+    /**
+     * @return up to {@link #PAGE_SIZE} unsent points after the given timestamp and row id, in
+     * {@link #PROJECTION} order
+     */
+    protected Cursor queryPage(
+            long lastTime,
+            long lastId)
+    {
+        Uri uri = mUri.buildUpon()
+                .appendQueryParameter(PARAMETER_LIMIT, Integer.toString(PAGE_SIZE))
+                .build();
+        String selection = TrackLayer.FIELD_SENT + " = 0 AND (" + TrackLayer.FIELD_TIMESTAMP
+                + " > ? OR " + TrackLayer.FIELD_TIMESTAMP + " = ? AND " + FIELD_ROW_ID + " > ?)";
+        String time = Long.toString(lastTime);
+        String sort = TrackLayer.FIELD_TIMESTAMP + " ASC, " + FIELD_ROW_ID + " ASC";
+        return mResolver.query(uri, PROJECTION, selection,
+                new String[] {time, time, Long.toString(lastId)}, sort);
+    }
+
+
+    /**
+     * Encode up to {@link #PAGE_SIZE} points from the cursor position into the request body
+     *
+     * @param ids
+     *         receives row ids of the encoded points
+     *
+     * @return number of points accepted by the hub or 0
+     */
+    protected int postPage(
+            Cursor points,
+            long[] ids,
+            boolean compress)
+            throws IOException
+    {
+        HttpURLConnection conn = openConnection(compress);
+        try {
+            OutputStream os = conn.getOutputStream();
+            if (compress) {
+                os = new GZIPOutputStream(os, BUFFER_SIZE);
+            }
+            Writer writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), BUFFER_SIZE);
+            int count = writePage(writer, points, ids);
+            writer.close();
+
+            int code = conn.getResponseCode();
+            if (compress && (code == HttpURLConnection.HTTP_UNSUPPORTED_TYPE
+                    || code == HttpURLConnection.HTTP_BAD_REQUEST)) {
+                // the hub does not accept compressed bodies, resend as is
+                mCompress = false;
+                conn.disconnect();
+                points.moveToFirst();
+                return postPage(points, ids, false);
+            }
+
+            drain(code < 400 ? conn.getInputStream() : conn.getErrorStream());
+            if (code < 200 || code >= 300) {
+                Log.d(Constants.TAG, "Track points were not sent, response code " + code);
+                return 0;
+            }
+            return count;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+
+    protected HttpURLConnection openConnection(boolean compress)
+            throws IOException
+    {
+        HttpURLConnection conn;
+        URL url = new URL(mUrl);
+        if (mUrl.startsWith("https")) {
+            configureSSLdefault();
+            conn = (HttpsURLConnection) url.openConnection();
+        } else {
+            conn = (HttpURLConnection) url.openConnection();
+        }
+
+        conn.setConnectTimeout(TIMEOUT);
+        conn.setReadTimeout(TIMEOUT);
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setChunkedStreamingMode(0);
+        conn.setRequestProperty("User-Agent", getUserAgent(Constants.MAPLIB_USER_AGENT_PART));
+        conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        if (compress) {
+            conn.setRequestProperty("Content-Encoding", "gzip");
+        }
+        return conn;
+    }
+
+
+    protected int writePage(
+            Writer writer,
+            Cursor points,
+            long[] ids)
+            throws IOException
+    {
+        GeoPoint point = new GeoPoint();
+        int count = 0;
+        writer.write('[');
+        do {
+            if (count > 0) {
+                writer.write(',');
+            }
+            point.setCoordinates(points.getDouble(0), points.getDouble(1));
+            point.setCRS(GeoConstants.CRS_WEB_MERCATOR);
+            point.project(GeoConstants.CRS_WGS84);
+
+            writer.write("{\"lt\":");
+            writeNumber(writer, point.getY());
+            writer.write(",\"ln\":");
+            writeNumber(writer, point.getX());
+            writer.write(",\"ts\":");
+            writer.write(Long.toString(points.getLong(COLUMN_TIMESTAMP) / 1000));
+            writer.write(",\"a\":");
+            writeNumber(writer, points.getDouble(3));
+            writer.write(",\"s\":");
+            writer.write(Integer.toString(points.getInt(4)));
+            writer.write(",\"ft\":");
+            writer.write("3d".equals(points.getString(5)) ? "3" : "2");
+            writer.write(",\"sp\":");
+            writeNumber(writer, points.getDouble(6) * 18 / 5);
+            writer.write(",\"ha\":");
+            writeNumber(writer, points.getDouble(7));
+            writer.write(",\"c\":");
+            writeNumber(writer, points.getDouble(8));
+            writer.write('}');
+            ids[count] = points.getLong(COLUMN_ROW_ID);
+            count++;
+        } while (count < PAGE_SIZE && points.moveToNext());
+        writer.write(']');
+        return count;
+    }
+
+
+    protected static void writeNumber(
+            Writer writer,
+            double value)
+            throws IOException
+    {
+        writer.write(Double.isNaN(value) || Double.isInfinite(value) ? "0" : Double.toString(value));
+    }
+
+
+    protected static void drain(InputStream is)
+            throws IOException
+    {
+        if (null == is) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (is.read(buffer) != -1) {
+                // keep-alive needs the body to be read
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+
+    /**
+     * Mark the first count rows of ids as sent
+     */
+    protected void markSent(
+            long[] ids,
+            int count)
+    {
+        StringBuilder where = new StringBuilder(FIELD_ROW_ID).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                where.append(',');
+            }
+            where.append(ids[i]);
+        }
+        where.append(')');
+
+        ContentValues cv = new ContentValues();
+        cv.put(TrackLayer.FIELD_SENT, 1);
+        try {
+            mResolver.update(mUri, cv, where.toString(), null);
+        } catch (Exception e) {
+            Log.d(Constants.TAG, "Track points were not marked as sent: " + e.getMessage());
+        }
+    }
+}
@@ -32,7 +32,6 @@ import android.app.AlarmManager;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
-import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.DialogInterface;
@@ -68,21 +67,16 @@ import com.nextgis.maplib.datasource.GeoPoint;
 import com.nextgis.maplib.map.TrackLayer;
 import com.nextgis.maplib.util.Constants;
 import com.nextgis.maplib.util.GeoConstants;
-import com.nextgis.maplib.util.HttpResponse;
 import com.nextgis.maplib.util.LocationUtil;
-import com.nextgis.maplib.util.MapUtil;
-import com.nextgis.maplib.util.NetworkUtil;
 import com.nextgis.maplib.util.PermissionUtil;
 import com.nextgis.maplib.util.SettingsConstants;
 import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.util.ConstantsUI;
 import com.nextgis.maplibui.util.NotificationHelper;
+import com.nextgis.maplibui.util.SettingsConstantsUI;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 
-import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -123,6 +117,8 @@ public class TrackerService extends Service
     private Uri mContentUriTracks, mContentUriTrackPoints;
     private ContentValues mValues;
     private GeoPoint mPoint;
+    private TrackPointWriter mPointWriter;
+    private TrackUploader    mUploader;
 
     private NotificationManager mNotificationManager;
     private AlarmManager        mAlarmManager;
@@ -156,6 +152,27 @@ public class TrackerService extends Service
         mSharedPreferences = getSharedPreferences(name, MODE_MULTI_PROCESS);
         mSharedPreferencesTemp = getSharedPreferences(TEMP_PREFERENCES, MODE_PRIVATE);
 
+        long flushInterval = TrackPointWriter.DEFAULT_FLUSH_INTERVAL;
+        int flushSize = TrackPointWriter.DEFAULT_FLUSH_SIZE;
+        try {
+            flushInterval = Long.parseLong(mSharedPreferences.getString(
+                    SettingsConstantsUI.KEY_PREF_TRACKS_FLUSH_INTERVAL, flushInterval / 1000 + "")) * 1000;
+            flushSize = Integer.parseInt(mSharedPreferences.getString(
+                    SettingsConstantsUI.KEY_PREF_TRACKS_FLUSH_SIZE, flushSize + ""));
+        } catch (NumberFormatException ignored) {
+        }
+        mPointWriter = new TrackPointWriter(getContentResolver(), mContentUriTrackPoints, flushInterval, flushSize);
+        mUploader = TrackUploader.create(this);
+        mPointWriter.setOnFlushListener(new TrackPointWriter.OnFlushListener() {
+            @Override
+            public void onFlush(int count) {
+                if (TrackUploader.isEnabled(TrackerService.this)) {
+                    mUploader.start();
+                    mUploader.onPointsStored(count);
+                }
+            }
+        });
+
         mTicker = getString(R.string.tracks_running);
         mSmallIcon = R.drawable.ic_action_maps_directions_walk;
         mLargeIcon = NotificationHelper.getLargeIcon(mSmallIcon, getResources());
@@ -262,7 +279,7 @@ public class TrackerService extends Service
                             startForeground(TRACK_NOTIFICATION_ID, builder.build());
                         }
 
-                        mLocationSenderThread = createLocationSenderThread(500L);
+                        mLocationSenderThread = createLocationSenderThread();
                         mLocationSenderThread.start();
                         return START_NOT_STICKY;
                     case ACTION_STOP:
@@ -335,8 +352,8 @@ public class TrackerService extends Service
                 targetActivity = mSharedPreferencesTemp.getString(ConstantsUI.TARGET_CLASS, "");
             }
 
-            mLocationSenderThread = createLocationSenderThread(minTime);
-            mLocationSenderThread.start();
+            if (TrackUploader.isEnabled(this))
+                mUploader.start();
 
             initTargetIntent(targetActivity);
             addNotification();
@@ -412,6 +429,12 @@ public class TrackerService extends Service
     }
 
     private void stopTrack() {
+        // store buffered points before the track is closed
+        mPointWriter.flush();
+        if (Constants.DEBUG_MODE)
+            Log.d(Constants.TAG, "Track points queued: " + mPointWriter.getQueuedCount()
+                    + ", persisted: " + mPointWriter.getPersistedCount());
+
         // update unclosed tracks in DB
         closeTracks(this, (IGISApplication) getApplication());
 
@@ -532,6 +555,8 @@ public class TrackerService extends Service
 
     public void onDestroy() {
         stopTrack();
+        mPointWriter.close();
+        mUploader.stop();
         stopSelf();
 
         if (PermissionUtil.hasLocationPermissions(this)) {
@@ -549,6 +574,32 @@ public class TrackerService extends Service
         super.onDestroy();
     }
 
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        mPointWriter.flush();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mPointWriter.flush();
+    }
+
+    /**
+     * @return number of track points received since the service creation
+     */
+    public long getQueuedPointsCount() {
+        return mPointWriter.getQueuedCount();
+    }
+
+    /**
+     * @return number of track points stored in the database since the service creation
+     */
+    public long getPersistedPointsCount() {
+        return mPointWriter.getPersistedCount();
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -586,13 +637,7 @@ public class TrackerService extends Service
             mValues.put(TrackLayer.FIELD_BEARING, location.getBearing());
             mValues.put(TrackLayer.FIELD_SENT, 0);
             mValues.put(TrackLayer.FIELD_TIMESTAMP, location.getTime());
-            try {
-                getContentResolver().insert(mContentUriTrackPoints, mValues);
-                Log.d("TRACCK", "TrackerService onLocationChanged point INSERTED" );
-            } catch (Exception ignored) {
-                Log.d("TRACCK", "TrackerService onLocationChanged point INSERTED FAIL"  );
-                Log.e(TrackerService.class.getName(), "onLocation EXCEPTION!!" + ignored.getMessage());
-            }
+            mPointWriter.add(mValues);
             ((GISApplication)getApplication()).updateLocation(location);
         }
     }
@@ -660,127 +705,22 @@ public class TrackerService extends Service
         return false;
     }
 
-    private Thread createLocationSenderThread(final Long delay) {
+    // one-off upload of the points left unsent, the service stops when it is done
+    private Thread createLocationSenderThread() {
         return new Thread(new Runnable() {
             @Override
             public void run() {
-//                Log.d(Constants.TAG, "Entering sync thread");
-                while (!Thread.currentThread().isInterrupted()) {
-                    try {
-//                        Log.d(Constants.TAG, "Sleep sync thread");
-                        Thread.sleep(delay);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-
-                    try {
-                        sync();
-                    } catch (SQLiteException ignored) {
-                    }
+                if (TrackUploader.isEnabled(TrackerService.this))
+                    mUploader.upload();
 
-                    if (!mIsRunning) {
-                        removeNotification();
-                        stopSelf();
-                    }
+                if (!mIsRunning) {
+                    removeNotification();
+                    stopSelf();
                 }
             }
         });
     }
 
-    private void sync() throws SQLiteException {
-//        Log.d(Constants.TAG, "Syncing trackpoints");
-        if (mSharedPreferences.getBoolean(SettingsConstants.KEY_PREF_TRACK_SEND, false)) {
-            ContentResolver resolver = getContentResolver();
-            String selection = TrackLayer.FIELD_SENT + " = 0";
-            String sort = TrackLayer.FIELD_TIMESTAMP + " ASC";
-            Cursor points = null;
-            try {
-                points = resolver.query(mContentUriTrackPoints, null, selection, null, sort);
-            } catch (Exception ignored) {
-
-            }
-            if (points != null) {
-//                int crashes  = 0;
-                List<String> ids = new ArrayList<>();
-                if (points.moveToFirst()) {
-                    GeoPoint point = new GeoPoint();
-                    int lon = points.getColumnIndex(TrackLayer.FIELD_LON);
-                    int lat = points.getColumnIndex(TrackLayer.FIELD_LAT);
-                    int ele = points.getColumnIndex(TrackLayer.FIELD_ELE);
-                    int fix = points.getColumnIndex(TrackLayer.FIELD_FIX);
-                    int sat = points.getColumnIndex(TrackLayer.FIELD_SAT);
-                    int acc = points.getColumnIndex(TrackLayer.FIELD_ACCURACY);
-                    int bearing = points.getColumnIndex(TrackLayer.FIELD_BEARING);
-                    int speed = points.getColumnIndex(TrackLayer.FIELD_SPEED);
-                    int time = points.getColumnIndex(TrackLayer.FIELD_TIMESTAMP);
-                    JSONArray payload = new JSONArray();
-
-                    int counter = 0;
-                    do {
-                        JSONObject item = new JSONObject();
-                        try {
-                            point.setCoordinates(points.getDouble(lon), points.getDouble(lat));
-                            point.setCRS(GeoConstants.CRS_WEB_MERCATOR);
-                            point.project(GeoConstants.CRS_WGS84);
-                            item.put("lt", point.getY());
-                            item.put("ln", point.getX());
-                            item.put("ts", points.getLong(time)/1000);
-                            item.put("a", points.getDouble(ele));
-                            item.put("s", points.getInt(sat));
-                            item.put("ft", points.getString(fix).equals("3d") ? 3 : 2);
-                            item.put("sp", points.getDouble(speed) * 18 / 5);
-                            item.put("ha", points.getDouble(acc));
-                            item.put("c", points.getDouble(bearing));
-                            payload.put(item);
-                            ids.add(points.getString(time));
-                            counter++;
-
-                            if (counter >= 100) {
-                                post(payload.toString(), this, ids);
-                                payload = new JSONArray();
-                                ids.clear();
-                                counter = 0;
-                            }
-                        } catch (Exception ignored) {
-//                            crashes++;
-
-                        }
-                    } while (points.moveToNext() );
-
-                    if (counter > 0) {
-                        try {
-                            post(payload.toString(), this, ids);
-                        } catch (Exception ignored) {
-
-                        }
-                    }
-                }
-                points.close();
-            }
-        }
-    }
-
-    private boolean post(String payload, Context context, List<String> ids) throws IOException {
-        String base = mSharedPreferences.getString("tracker_hub_url", HOST);
-        String url = String.format("%s/%s/packet", base + URL, getUid(context));
-//        Log.d(Constants.TAG, "Post to " + url);
-        HttpResponse response = NetworkUtil.post(url, payload, null, null, false);
-//        Log.d(Constants.TAG, "Response is " + response.getResponseCode());
-        if (!response.isOk())
-            return  false;
-
-        ContentValues cv = new ContentValues();
-        cv.put(TrackLayer.FIELD_SENT, 1);
-        String where = TrackLayer.FIELD_TIMESTAMP + " in (" + MapUtil.makePlaceholders(ids.size()) + ")";
-        String[] timestamps = ids.toArray(new String[0]);
-        try {
-            context.getContentResolver().update(mContentUriTrackPoints, cv, where, timestamps);
-        } catch (SQLiteException ignored) {
-
-        }
-        return true;
-    }
-
     @SuppressLint("HardwareIds")
     public static String getUid(Context context) {
         String uuid = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
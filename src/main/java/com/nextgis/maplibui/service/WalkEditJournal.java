@@ -0,0 +1,190 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.service;
+
+import android.content.Context;
+
+import com.nextgis.maplib.datasource.GeoLineString;
+import com.nextgis.maplib.datasource.GeoPoint;
+import com.nextgis.maplib.util.GeoConstants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Append-only file of the walk edit vertices in Web Mercator, 16 bytes per vertex. A new vertex
+ * is one write to the end of the file, so the cost of a fix does not depend on the geometry
+ * size, and the written vertices survive a process kill. A partially written last record is
+ * ignored on read.
+ */
+public class WalkEditJournal
+{
+    protected static final String FILE_NAME   = "walkedit.journal";
+    protected static final int    RECORD_SIZE = 16;
+
+    protected final File       mFile;
+    protected final ByteBuffer mRecord = ByteBuffer.allocate(RECORD_SIZE);
+
+    protected FileOutputStream mStream;
+    protected int              mCount;
+
+
+    public WalkEditJournal(Context context)
+    {
+        mFile = getFile(context);
+    }
+
+
+    protected static File getFile(Context context)
+    {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+
+    /**
+     * Replace the journal with the vertices of the geometry
+     */
+    public synchronized void start(GeoLineString geometry)
+            throws IOException
+    {
+        close();
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(mFile, false)));
+        try {
+            for (GeoPoint point : geometry.getPoints()) {
+                out.writeDouble(point.getX());
+                out.writeDouble(point.getY());
+            }
+        } finally {
+            out.close();
+        }
+        mCount = geometry.getPointCount();
+    }
+
+
+    /**
+     * Continue the journal left by a killed process
+     */
+    public synchronized void resume()
+    {
+        close();
+        mCount = (int) (mFile.length() / RECORD_SIZE);
+    }
+
+
+    /**
+     * @return number of vertices in the journal including the new one
+     */
+    public synchronized int append(GeoPoint point)
+            throws IOException
+    {
+        if (null == mStream) {
+            truncateTail();
+            mStream = new FileOutputStream(mFile, true);
+        }
+
+        mRecord.clear();
+        mRecord.putDouble(point.getX()).putDouble(point.getY());
+        mStream.write(mRecord.array(), 0, RECORD_SIZE);
+        return ++mCount;
+    }
+
+
+    public synchronized int getCount()
+    {
+        return mCount;
+    }
+
+
+    /**
+     * Drop a partially written record, so appended records stay aligned
+     */
+    protected void truncateTail()
+            throws IOException
+    {
+        long length = mFile.length();
+        if (length % RECORD_SIZE == 0) {
+            return;
+        }
+        FileOutputStream stream = new FileOutputStream(mFile, true);
+        try {
+            stream.getChannel().truncate(length - length % RECORD_SIZE);
+        } finally {
+            stream.close();
+        }
+    }
+
+
+    public synchronized void close()
+    {
+        if (null != mStream) {
+            try {
+                mStream.close();
+            } catch (IOException ignored) {
+            }
+            mStream = null;
+        }
+    }
+
+
+    public synchronized void delete()
+    {
+        close();
+        mCount = 0;
+        mFile.delete();
+    }
+
+
+    /**
+     * Add the journal vertices to the empty line or ring
+     *
+     * @return number of vertices read
+     */
+    public static int read(
+            Context context,
+            GeoLineString geometry)
+            throws IOException
+    {
+        File file = getFile(context);
+        int count = (int) (file.length() / RECORD_SIZE);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            for (int i = 0; i < count; i++) {
+                GeoPoint point = new GeoPoint(in.readDouble(), in.readDouble());
+                point.setCRS(GeoConstants.CRS_WEB_MERCATOR);
+                geometry.add(point);
+            }
+        } finally {
+            in.close();
+        }
+        return count;
+    }
+}
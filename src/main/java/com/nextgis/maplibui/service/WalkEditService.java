@@ -48,7 +48,6 @@ import android.util.Log;
 import com.nextgis.maplib.api.GpsEventListener;
 import com.nextgis.maplib.api.ILayer;
 import com.nextgis.maplib.datasource.GeoGeometry;
-import com.nextgis.maplib.datasource.GeoGeometryFactory;
 import com.nextgis.maplib.datasource.GeoLineString;
 import com.nextgis.maplib.datasource.GeoLinearRing;
 import com.nextgis.maplib.datasource.GeoPoint;
@@ -58,10 +57,12 @@ import com.nextgis.maplib.util.GeoConstants;
 import com.nextgis.maplib.util.LocationUtil;
 import com.nextgis.maplib.util.PermissionUtil;
 import com.nextgis.maplib.util.SettingsConstants;
+import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.util.ConstantsUI;
 import com.nextgis.maplibui.util.NotificationHelper;
 
+import java.io.IOException;
 import java.util.Map;
 
 import static com.nextgis.maplibui.util.NotificationHelper.createBuilder;
@@ -79,6 +80,11 @@ public class WalkEditService extends Service implements LocationListener
     public static final String ACTION_STOP = "com.nextgis.maplibui.WALKEDIT_STOP";
     public static final String ACTION_START = "com.nextgis.maplibui.WALKEDIT_START";
     public static final String WALKEDIT_CHANGE = "com.nextgis.maplibui.WALKEDIT_CHANGE";
+    // broadcast extras, the geometry itself is read from WalkEditJournal
+    public static final String KEY_VERTEX_COUNT = "vertex_count";
+    public static final String KEY_VERTEX_X = "vertex_x";
+    public static final String KEY_VERTEX_Y = "vertex_y";
+    protected static final String KEY_GEOMETRY_TYPE = "geometry_type";
 
     private SharedPreferences mSharedPreferencesTemp;
     private LocationManager mLocationManager;
@@ -90,7 +96,8 @@ public class WalkEditService extends Service implements LocationListener
 
     protected String mTargetActivity;
     protected Bundle mTargetExtras;
-    protected GeoGeometry mGeometry;
+    protected WalkEditJournal mJournal;
+    protected int mGeometryType;
     protected int mLayerId;
     protected boolean mShowNotification;
 
@@ -101,6 +108,7 @@ public class WalkEditService extends Service implements LocationListener
         mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
         mLocationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
         mSharedPreferencesTemp = getSharedPreferences(TEMP_PREFERENCES, MODE_MULTI_PROCESS);
+        mJournal = new WalkEditJournal(this);
 
         mTicker = getString(R.string.walkedit_title);
         mSmallIcon = R.drawable.ic_action_maps_directions_walk;
@@ -129,7 +137,7 @@ public class WalkEditService extends Service implements LocationListener
             if (action != null && !TextUtils.isEmpty(action)) {
                 switch (action) {
                     case ACTION_STOP:
-                        mGeometry = null;
+                        mJournal.delete();
                         mLayerId = Constants.NOT_FOUND;
                         removeNotification();
                         stopSelf();
@@ -137,15 +145,21 @@ public class WalkEditService extends Service implements LocationListener
                     case ACTION_START:
                         int layerId = intent.getIntExtra(ConstantsUI.KEY_LAYER_ID, Constants.NOT_FOUND);
                         if (mLayerId == layerId) { // we are already running track record
-                            sendGeometryBroadcast();
+                            sendGeometryBroadcast(null);
                         } else {
                             mLayerId = layerId;
-                            mGeometry = (GeoGeometry) intent.getSerializableExtra(ConstantsUI.KEY_GEOMETRY);
-                            if (mGeometry instanceof GeoLinearRing) {
-                                GeoLinearRing ring = (GeoLinearRing) mGeometry;
+                            GeoGeometry geometry = (GeoGeometry) intent.getSerializableExtra(ConstantsUI.KEY_GEOMETRY);
+                            if (geometry instanceof GeoLinearRing) {
+                                GeoLinearRing ring = (GeoLinearRing) geometry;
                                 if (ring.isClosed())
                                     ring.remove(ring.getPointCount() - 1);
                             }
+                            mGeometryType = geometry.getType();
+                            try {
+                                mJournal.start((GeoLineString) geometry);
+                            } catch (IOException e) {
+                                Log.e(Constants.TAG, "Walk edit journal failed: " + e.getMessage());
+                            }
 
                             mTargetActivity = intent.getStringExtra(ConstantsUI.TARGET_CLASS);
                             mTargetExtras = intent.getBundleExtra(ConstantsUI.TARGET_EXTRAS);
@@ -154,7 +168,7 @@ public class WalkEditService extends Service implements LocationListener
 
                             SharedPreferences.Editor edit = mSharedPreferencesTemp.edit();
                             edit.putInt(ConstantsUI.KEY_LAYER_ID, mLayerId);
-                            edit.putString(ConstantsUI.KEY_GEOMETRY, mGeometry.toWKT(true));
+                            edit.putInt(KEY_GEOMETRY_TYPE, mGeometryType);
                             edit.putString(ConstantsUI.TARGET_CLASS, mTargetActivity);
                             edit.putBoolean(ConstantsUI.KEY_MESSAGE, mShowNotification);
                             saveBundle(edit, mTargetExtras);
@@ -165,7 +179,8 @@ public class WalkEditService extends Service implements LocationListener
             }
         } else {
             mLayerId = mSharedPreferencesTemp.getInt(ConstantsUI.KEY_LAYER_ID, Constants.NOT_FOUND);
-            mGeometry = GeoGeometryFactory.fromWKT(mSharedPreferencesTemp.getString(ConstantsUI.KEY_GEOMETRY, ""), GeoConstants.CRS_WEB_MERCATOR);
+            mGeometryType = mSharedPreferencesTemp.getInt(KEY_GEOMETRY_TYPE, GeoConstants.GTLineString);
+            mJournal.resume();
             mTargetActivity = mSharedPreferencesTemp.getString(ConstantsUI.TARGET_CLASS, "");
             mTargetExtras = loadBundle(mSharedPreferencesTemp);
             mShowNotification = mSharedPreferencesTemp.getBoolean(ConstantsUI.KEY_MESSAGE, true);
@@ -209,9 +224,16 @@ public class WalkEditService extends Service implements LocationListener
         addNotification();
     }
 
-    private void sendGeometryBroadcast() {
+    /**
+     * @param vertex the new vertex, or null if receivers should read the whole journal
+     */
+    private void sendGeometryBroadcast(GeoPoint vertex) {
         Intent broadcastIntent = new Intent(WALKEDIT_CHANGE);
-        broadcastIntent.putExtra(ConstantsUI.KEY_GEOMETRY, mGeometry);
+        broadcastIntent.putExtra(KEY_VERTEX_COUNT, mJournal.getCount());
+        if (vertex != null) {
+            broadcastIntent.putExtra(KEY_VERTEX_X, vertex.getX());
+            broadcastIntent.putExtra(KEY_VERTEX_Y, vertex.getY());
+        }
         broadcastIntent.setPackage(getApplicationContext().getPackageName());
         sendBroadcast(broadcastIntent);
     }
@@ -229,6 +251,7 @@ public class WalkEditService extends Service implements LocationListener
             Log.e("tag", ex.getMessage());
         }
         mSharedPreferencesTemp.edit().clear().apply();
+        mJournal.delete();
         removeNotification();
         stopSelf();
 
@@ -255,23 +278,22 @@ public class WalkEditService extends Service implements LocationListener
         point.setCRS(GeoConstants.CRS_WGS84);
         point.project(GeoConstants.CRS_WEB_MERCATOR);
 
-        switch (mGeometry.getType()) {
+        switch (mGeometryType) {
             case GeoConstants.GTLineString:
-                GeoLineString line = (GeoLineString) mGeometry;
-                line.add(point);
-                break;
             case GeoConstants.GTLinearRing:
-                GeoLinearRing ring = (GeoLinearRing) mGeometry;
-                ring.add(point);
                 break;
             default:
                 throw new UnsupportedOperationException("Unsupported geometry type");
         }
 
-        SharedPreferences.Editor edit = mSharedPreferencesTemp.edit();
-        edit.putString(ConstantsUI.KEY_GEOMETRY, mGeometry.toWKT(true)).apply();
+        try {
+            mJournal.append(point);
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Walk edit journal failed: " + e.getMessage());
+            return;
+        }
 
-        sendGeometryBroadcast();
+        sendGeometryBroadcast(point);
     }
 
     @Override
@@ -297,8 +319,9 @@ public class WalkEditService extends Service implements LocationListener
         if (!mShowNotification)
             return;
 
-        MapBase map = MapBase.getInstance();
-        ILayer layer = map.getLayerById(mLayerId);
+        // the main thread does not wait for the map, it is loaded already while a layer is edited
+        MapBase map = GISApplication.getLoadedMap();
+        ILayer layer = null != map ? map.getLayerById(mLayerId) : null;
         String name = "";
         if (null != layer)
             name = layer.getName();
@@ -55,6 +55,14 @@ public class CheckDirSizeTask extends AsyncTask<Void, Long, Boolean> {
 
     @Override
     protected Boolean doInBackground(Void... voids) {
+        return checkSpace();
+    }
+
+    /**
+     * Synchronous check for callers which already run in background
+     */
+    public boolean checkSpace() {
+        mNeeded = 0;
         for (VectorLayer layer : mLayers) {
             mNeeded += layer.getFields().size() * layer.getCount() * 64; // 64 is a approximately length of each feature in geojson with 4-chars field values
             mNeeded += FileUtil.getDirectorySize(layer.getPath());
@@ -81,7 +89,7 @@ public class CheckDirSizeTask extends AsyncTask<Void, Long, Boolean> {
 
         }
 
-
+        // layers exported at once are spooled to temp files before they are copied to the archive
         if (mLayers.size() > 1)
             mNeeded *= 2;
 
@@ -138,13 +146,16 @@ public class CheckDirSizeTask extends AsyncTask<Void, Long, Boolean> {
     @Override
     protected void onPostExecute(Boolean enoughSpace) {
         super.onPostExecute(enoughSpace);
-        if (enoughSpace != Boolean.valueOf(true)) {
-            String free = getFileSize(mFree);
-            String needed = getFileSize(mNeeded);
-            String message = mActivity.getString(R.string.free_space_message, needed, free);
-            AlertDialog builder = new AlertDialog.Builder(mActivity).setTitle(R.string.not_enough_space).setMessage(message)
-                    .setPositiveButton(R.string.ok, null).create();
-            builder.show();
-        }
+        if (enoughSpace != Boolean.valueOf(true))
+            showNotEnoughSpace();
+    }
+
+    public void showNotEnoughSpace() {
+        String free = getFileSize(mFree);
+        String needed = getFileSize(mNeeded);
+        String message = mActivity.getString(R.string.free_space_message, needed, free);
+        AlertDialog builder = new AlertDialog.Builder(mActivity).setTitle(R.string.not_enough_space).setMessage(message)
+                .setPositiveButton(R.string.ok, null).create();
+        builder.show();
     }
 }
@@ -0,0 +1,1110 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import android.util.Log;
+
+import com.nextgis.maplib.datasource.GeoGeometry;
+import com.nextgis.maplib.datasource.GeoGeometryFactory;
+import com.nextgis.maplib.datasource.GeoLineString;
+import com.nextgis.maplib.datasource.GeoLinearRing;
+import com.nextgis.maplib.datasource.GeoMultiLineString;
+import com.nextgis.maplib.datasource.GeoMultiPoint;
+import com.nextgis.maplib.datasource.GeoMultiPolygon;
+import com.nextgis.maplib.datasource.GeoPoint;
+import com.nextgis.maplib.datasource.GeoPolygon;
+import com.nextgis.maplib.util.GeoConstants;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.nextgis.maplib.util.Constants.TAG;
+
+/**
+ * Undo and redo history of an edited geometry. Only the current geometry is kept in full, each
+ * step keeps the changed vertices, rings or parts. Old steps are moved to a journal file when
+ * changes in memory grow too large, and the whole history is saved to a file rather than to the
+ * instance state.
+ */
+public class EditHistory
+{
+    public static final int MAX_STEPS = 1000;
+
+    protected static final int    MAX_MEMORY_POINTS = 50000;
+    protected static final double EPSILON           = 1e-3; // m, screen float round trip error
+    protected static final int    VERSION           = 1;
+
+    protected static final byte CHANGE_VERTICES = 1;
+    protected static final byte CHANGE_RINGS    = 2;
+    protected static final byte CHANGE_PARTS    = 3;
+    protected static final byte CHANGE_REPLACE  = 4;
+
+    protected final File       mJournal;
+    protected final List<Step> mSteps = new ArrayList<>();
+    protected       Model      mCurrent;
+    protected       int        mPosition;
+    protected       int        mMemoryPoints;
+
+
+    /**
+     * @param journal a file for steps moved out of memory, it is overwritten by the first step
+     */
+    public EditHistory(File journal)
+    {
+        mJournal = journal;
+    }
+
+
+    /**
+     * Add the geometry as the next state, steps to redo are dropped if the geometry is changed
+     */
+    public void add(GeoGeometry geometry)
+    {
+        Model model = Model.from(geometry);
+        if (null == mCurrent) {
+            clear();
+            mCurrent = model;
+            return;
+        }
+
+        List<Change> changes = new ArrayList<>();
+        diff(mCurrent, model, changes);
+        if (changes.isEmpty()) {
+            // not an edit, the steps to redo are kept
+            mCurrent = model;
+            return;
+        }
+
+        while (mSteps.size() > mPosition) {
+            removeStep(mSteps.size() - 1);
+        }
+
+        Step step = new Step(changes);
+        mSteps.add(step);
+        mMemoryPoints += step.mSize;
+        mPosition++;
+        mCurrent = model;
+
+        if (mSteps.size() > MAX_STEPS) {
+            removeStep(0);
+            mPosition--;
+        }
+        spill();
+    }
+
+
+    /**
+     * @return the previous geometry or null if there is nothing to undo
+     */
+    public GeoGeometry undo()
+    {
+        if (!canUndo()) {
+            return null;
+        }
+
+        Step step = load(mSteps.get(mPosition - 1));
+        if (null == step) {
+            return null;
+        }
+        step.apply(mCurrent, false);
+        mPosition--;
+        return mCurrent.toGeometry();
+    }
+
+
+    /**
+     * @return the next geometry or null if there is nothing to redo
+     */
+    public GeoGeometry redo()
+    {
+        if (!canRedo()) {
+            return null;
+        }
+
+        Step step = load(mSteps.get(mPosition));
+        if (null == step) {
+            return null;
+        }
+        step.apply(mCurrent, true);
+        mPosition++;
+        return mCurrent.toGeometry();
+    }
+
+
+    public boolean canUndo()
+    {
+        return null != mCurrent && mPosition > 0;
+    }
+
+
+    public boolean canRedo()
+    {
+        return null != mCurrent && mPosition < mSteps.size();
+    }
+
+
+    public void clear()
+    {
+        mSteps.clear();
+        mCurrent = null;
+        mPosition = 0;
+        mMemoryPoints = 0;
+        if (mJournal.exists() && !mJournal.delete()) {
+            Log.d(TAG, "Failed to delete the edit history journal");
+        }
+    }
+
+
+    /**
+     * Write all steps to the journal and the current state to the file
+     */
+    public void save(File file)
+            throws IOException
+    {
+        for (Step step : mSteps) {
+            if (step.mOffset < 0) {
+                write(step);
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(VERSION);
+            out.writeBoolean(null != mCurrent);
+            if (null != mCurrent) {
+                out.writeInt(mPosition);
+                out.writeInt(mSteps.size());
+                for (Step step : mSteps) {
+                    out.writeLong(step.mOffset);
+                    out.writeInt(step.mSize);
+                }
+                mCurrent.write(out);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+
+    /**
+     * Read the history saved by {@link #save(File)}, the history is empty if it fails
+     */
+    public boolean restore(File file)
+    {
+        mSteps.clear();
+        mCurrent = null;
+        mPosition = 0;
+        mMemoryPoints = 0;
+
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                if (in.readInt() != VERSION || !in.readBoolean()) {
+                    return false;
+                }
+
+                int position = in.readInt();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Step step = new Step(null);
+                    step.mOffset = in.readLong();
+                    step.mSize = in.readInt();
+                    mSteps.add(step);
+                }
+                mCurrent = Model.read(in);
+                mPosition = position;
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Failed to restore the edit history: " + e.getLocalizedMessage());
+            mSteps.clear();
+            return false;
+        }
+    }
+
+
+    protected void removeStep(int index)
+    {
+        Step step = mSteps.remove(index);
+        if (null != step.mChanges) {
+            mMemoryPoints -= step.mSize;
+        }
+    }
+
+
+    /**
+     * Move the oldest steps to the journal while changes in memory are too large
+     */
+    protected void spill()
+    {
+        for (int i = 0; i < mSteps.size() && mMemoryPoints > MAX_MEMORY_POINTS; i++) {
+            Step step = mSteps.get(i);
+            if (null == step.mChanges) {
+                continue;
+            }
+
+            try {
+                if (step.mOffset < 0) {
+                    write(step);
+                }
+                step.mChanges = null;
+                mMemoryPoints -= step.mSize;
+            } catch (IOException e) {
+                Log.d(TAG, "Failed to write the edit history journal: " + e.getLocalizedMessage());
+                // the oldest steps can not be kept then
+                removeStep(i--);
+                mPosition--;
+            }
+        }
+    }
+
+
+    protected void write(Step step)
+            throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(step.mChanges.size());
+        for (Change change : step.mChanges) {
+            change.write(out);
+        }
+        out.flush();
+
+        RandomAccessFile journal = new RandomAccessFile(mJournal, "rw");
+        try {
+            long offset = journal.length();
+            journal.seek(offset);
+            journal.writeInt(bytes.size());
+            journal.write(bytes.toByteArray());
+            step.mOffset = offset;
+        } finally {
+            journal.close();
+        }
+    }
+
+
+    /**
+     * @return the step with changes, read from the journal if they are not in memory
+     */
+    protected Step load(Step step)
+    {
+        if (null != step.mChanges) {
+            return step;
+        }
+
+        try {
+            RandomAccessFile journal = new RandomAccessFile(mJournal, "r");
+            byte[] bytes;
+            try {
+                journal.seek(step.mOffset);
+                bytes = new byte[journal.readInt()];
+                journal.readFully(bytes);
+            } finally {
+                journal.close();
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            int count = in.readInt();
+            List<Change> changes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                changes.add(Change.read(in));
+            }
+            return new Step(changes);
+        } catch (IOException e) {
+            Log.d(TAG, "Failed to read the edit history journal: " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+
+    protected static void diff(
+            Model from,
+            Model to,
+            List<Change> changes)
+    {
+        if (null != from.mRaw || null != to.mRaw || from.mType != to.mType
+                || from.mCrs != to.mCrs) {
+            changes.add(new Replace(from.copy(), to.copy()));
+            return;
+        }
+
+        if (from.mParts.size() != to.mParts.size()) {
+            int start = commonPrefix(from.mParts, to.mParts);
+            int end = commonSuffix(from.mParts, to.mParts, start);
+            changes.add(new PartSplice(start,
+                    new ArrayList<>(from.mParts.subList(start, from.mParts.size() - end)),
+                    new ArrayList<>(to.mParts.subList(start, to.mParts.size() - end))));
+            return;
+        }
+
+        for (int part = 0; part < from.mParts.size(); part++) {
+            List<double[]> fromRings = from.mParts.get(part);
+            List<double[]> toRings = to.mParts.get(part);
+            if (fromRings.size() != toRings.size()) {
+                int start = commonPrefix(fromRings, toRings);
+                int end = commonSuffix(fromRings, toRings, start);
+                changes.add(new RingSplice(part, start,
+                        new ArrayList<>(fromRings.subList(start, fromRings.size() - end)),
+                        new ArrayList<>(toRings.subList(start, toRings.size() - end))));
+                continue;
+            }
+
+            for (int ring = 0; ring < fromRings.size(); ring++) {
+                double[] a = fromRings.get(ring);
+                double[] b = toRings.get(ring);
+                int start = 0;
+                while (start < a.length && start < b.length && equals(a[start], b[start])) {
+                    start++;
+                }
+                start -= start % 2;
+                if (start == a.length && start == b.length) {
+                    continue;
+                }
+
+                int end = 0;
+                while (end < a.length - start && end < b.length - start
+                        && equals(a[a.length - 1 - end], b[b.length - 1 - end])) {
+                    end++;
+                }
+                end -= end % 2;
+
+                changes.add(new VertexSplice(part, ring, start / 2,
+                        slice(a, start, a.length - end), slice(b, start, b.length - end)));
+            }
+        }
+    }
+
+
+    protected static <T> int commonPrefix(
+            List<T> a,
+            List<T> b)
+    {
+        int start = 0;
+        while (start < a.size() && start < b.size() && same(a.get(start), b.get(start))) {
+            start++;
+        }
+        return start;
+    }
+
+
+    protected static <T> int commonSuffix(
+            List<T> a,
+            List<T> b,
+            int start)
+    {
+        int end = 0;
+        while (end < a.size() - start && end < b.size() - start
+                && same(a.get(a.size() - 1 - end), b.get(b.size() - 1 - end))) {
+            end++;
+        }
+        return end;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    protected static boolean same(
+            Object a,
+            Object b)
+    {
+        if (a instanceof double[]) {
+            double[] lhs = (double[]) a, rhs = (double[]) b;
+            if (lhs.length != rhs.length) {
+                return false;
+            }
+            for (int i = 0; i < lhs.length; i++) {
+                if (!equals(lhs[i], rhs[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        List<double[]> lhs = (List<double[]>) a, rhs = (List<double[]>) b;
+        if (lhs.size() != rhs.size()) {
+            return false;
+        }
+        for (int i = 0; i < lhs.size(); i++) {
+            if (!same(lhs.get(i), rhs.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Coordinates going through screen float coordinates change a little, it is not an edit
+     */
+    protected static boolean equals(
+            double a,
+            double b)
+    {
+        return Math.abs(a - b) <= EPSILON;
+    }
+
+
+    protected static double[] slice(
+            double[] array,
+            int start,
+            int end)
+    {
+        double[] slice = new double[end - start];
+        System.arraycopy(array, start, slice, 0, slice.length);
+        return slice;
+    }
+
+
+    protected static int size(List<double[]> rings)
+    {
+        int size = 0;
+        for (double[] ring : rings) {
+            size += ring.length / 2;
+        }
+        return size;
+    }
+
+
+    protected static class Step
+    {
+        List<Change> mChanges;
+        int          mSize;
+        long         mOffset = -1;
+
+
+        Step(List<Change> changes)
+        {
+            mChanges = changes;
+            if (null != changes) {
+                for (Change change : changes) {
+                    mSize += change.getSize();
+                }
+            }
+        }
+
+
+        void apply(
+                Model model,
+                boolean forward)
+        {
+            if (forward) {
+                for (Change change : mChanges) {
+                    change.apply(model, true);
+                }
+            } else {
+                for (int i = mChanges.size() - 1; i >= 0; i--) {
+                    mChanges.get(i).apply(model, false);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * A reversible change. Rings and parts are never modified in place, changes copy the lists
+     * they modify, so unchanged rings are shared by the model and the history.
+     */
+    protected static abstract class Change
+    {
+        abstract void apply(
+                Model model,
+                boolean forward);
+
+        /**
+         * @return stored vertices count
+         */
+        abstract int getSize();
+
+        abstract void write(DataOutputStream out)
+                throws IOException;
+
+
+        static Change read(DataInputStream in)
+                throws IOException
+        {
+            byte type = in.readByte();
+            switch (type) {
+                case CHANGE_VERTICES:
+                    return new VertexSplice(in.readInt(), in.readInt(), in.readInt(),
+                            readRing(in), readRing(in));
+                case CHANGE_RINGS:
+                    return new RingSplice(in.readInt(), in.readInt(), readRings(in),
+                            readRings(in));
+                case CHANGE_PARTS:
+                    int start = in.readInt();
+                    return new PartSplice(start, readParts(in), readParts(in));
+                case CHANGE_REPLACE:
+                    return new Replace(Model.read(in), Model.read(in));
+                default:
+                    throw new IOException("Unknown change type " + type);
+            }
+        }
+    }
+
+
+    /**
+     * Vertices moved, inserted or deleted in a ring
+     */
+    protected static class VertexSplice
+            extends Change
+    {
+        final int      mPart, mRing, mStart;
+        final double[] mRemoved, mInserted;
+
+
+        VertexSplice(
+                int part,
+                int ring,
+                int start,
+                double[] removed,
+                double[] inserted)
+        {
+            mPart = part;
+            mRing = ring;
+            mStart = start;
+            mRemoved = removed;
+            mInserted = inserted;
+        }
+
+
+        @Override
+        void apply(
+                Model model,
+                boolean forward)
+        {
+            double[] removed = forward ? mRemoved : mInserted;
+            double[] inserted = forward ? mInserted : mRemoved;
+            double[] ring = model.mParts.get(mPart).get(mRing);
+            int start = mStart * 2;
+
+            double[] result = new double[ring.length - removed.length + inserted.length];
+            System.arraycopy(ring, 0, result, 0, start);
+            System.arraycopy(inserted, 0, result, start, inserted.length);
+            System.arraycopy(ring, start + removed.length, result, start + inserted.length,
+                    ring.length - start - removed.length);
+
+            List<double[]> rings = new ArrayList<>(model.mParts.get(mPart));
+            rings.set(mRing, result);
+            model.mParts.set(mPart, rings);
+        }
+
+
+        @Override
+        int getSize()
+        {
+            return (mRemoved.length + mInserted.length) / 2;
+        }
+
+
+        @Override
+        void write(DataOutputStream out)
+                throws IOException
+        {
+            out.writeByte(CHANGE_VERTICES);
+            out.writeInt(mPart);
+            out.writeInt(mRing);
+            out.writeInt(mStart);
+            writeRing(out, mRemoved);
+            writeRing(out, mInserted);
+        }
+    }
+
+
+    /**
+     * Rings added to or removed from a part
+     */
+    protected static class RingSplice
+            extends Change
+    {
+        final int            mPart, mStart;
+        final List<double[]> mRemoved, mInserted;
+
+
+        RingSplice(
+                int part,
+                int start,
+                List<double[]> removed,
+                List<double[]> inserted)
+        {
+            mPart = part;
+            mStart = start;
+            mRemoved = removed;
+            mInserted = inserted;
+        }
+
+
+        @Override
+        void apply(
+                Model model,
+                boolean forward)
+        {
+            List<double[]> removed = forward ? mRemoved : mInserted;
+            List<double[]> inserted = forward ? mInserted : mRemoved;
+            List<double[]> rings = new ArrayList<>(model.mParts.get(mPart));
+            rings.subList(mStart, mStart + removed.size()).clear();
+            rings.addAll(mStart, inserted);
+            model.mParts.set(mPart, rings);
+        }
+
+
+        @Override
+        int getSize()
+        {
+            return size(mRemoved) + size(mInserted);
+        }
+
+
+        @Override
+        void write(DataOutputStream out)
+                throws IOException
+        {
+            out.writeByte(CHANGE_RINGS);
+            out.writeInt(mPart);
+            out.writeInt(mStart);
+            writeRings(out, mRemoved);
+            writeRings(out, mInserted);
+        }
+    }
+
+
+    /**
+     * Parts of a multi geometry added or removed
+     */
+    protected static class PartSplice
+            extends Change
+    {
+        final int                  mStart;
+        final List<List<double[]>> mRemoved, mInserted;
+
+
+        PartSplice(
+                int start,
+                List<List<double[]>> removed,
+                List<List<double[]>> inserted)
+        {
+            mStart = start;
+            mRemoved = removed;
+            mInserted = inserted;
+        }
+
+
+        @Override
+        void apply(
+                Model model,
+                boolean forward)
+        {
+            List<List<double[]>> removed = forward ? mRemoved : mInserted;
+            List<List<double[]>> inserted = forward ? mInserted : mRemoved;
+            model.mParts.subList(mStart, mStart + removed.size()).clear();
+            model.mParts.addAll(mStart, inserted);
+        }
+
+
+        @Override
+        int getSize()
+        {
+            int size = 0;
+            for (List<double[]> part : mRemoved) {
+                size += size(part);
+            }
+            for (List<double[]> part : mInserted) {
+                size += size(part);
+            }
+            return size;
+        }
+
+
+        @Override
+        void write(DataOutputStream out)
+                throws IOException
+        {
+            out.writeByte(CHANGE_PARTS);
+            out.writeInt(mStart);
+            writeParts(out, mRemoved);
+            writeParts(out, mInserted);
+        }
+    }
+
+
+    /**
+     * The geometry type changed or the geometry can not be split to rings
+     */
+    protected static class Replace
+            extends Change
+    {
+        final Model mBefore, mAfter;
+
+
+        Replace(
+                Model before,
+                Model after)
+        {
+            mBefore = before;
+            mAfter = after;
+        }
+
+
+        @Override
+        void apply(
+                Model model,
+                boolean forward)
+        {
+            model.assign(forward ? mAfter : mBefore);
+        }
+
+
+        @Override
+        int getSize()
+        {
+            return mBefore.getSize() + mAfter.getSize();
+        }
+
+
+        @Override
+        void write(DataOutputStream out)
+                throws IOException
+        {
+            out.writeByte(CHANGE_REPLACE);
+            mBefore.write(out);
+            mAfter.write(out);
+        }
+    }
+
+
+    /**
+     * A geometry as parts of rings of x, y pairs: a point or a line is one part with one ring,
+     * a polygon is one part with the outer ring first, multi geometries have a part per item.
+     */
+    protected static class Model
+    {
+        int                  mType;
+        int                  mCrs;
+        List<List<double[]>> mParts = new ArrayList<>();
+        /** a copy of a geometry of other types */
+        GeoGeometry          mRaw;
+
+
+        static Model from(GeoGeometry geometry)
+        {
+            Model model = new Model();
+            model.mType = geometry.getType();
+            model.mCrs = geometry.getCRS();
+
+            switch (geometry.getType()) {
+                case GeoConstants.GTPoint:
+                    GeoPoint point = (GeoPoint) geometry;
+                    model.mParts.add(Collections.singletonList(
+                            new double[] {point.getX(), point.getY()}));
+                    break;
+                case GeoConstants.GTMultiPoint:
+                    GeoMultiPoint multiPoint = (GeoMultiPoint) geometry;
+                    for (int i = 0; i < multiPoint.size(); i++) {
+                        GeoPoint item = multiPoint.get(i);
+                        model.mParts.add(Collections.singletonList(
+                                new double[] {item.getX(), item.getY()}));
+                    }
+                    break;
+                case GeoConstants.GTLineString:
+                case GeoConstants.GTLinearRing:
+                    model.mParts.add(Collections.singletonList(toArray((GeoLineString) geometry)));
+                    break;
+                case GeoConstants.GTMultiLineString:
+                    GeoMultiLineString multiLine = (GeoMultiLineString) geometry;
+                    for (int i = 0; i < multiLine.size(); i++) {
+                        model.mParts.add(Collections.singletonList(toArray(multiLine.get(i))));
+                    }
+                    break;
+                case GeoConstants.GTPolygon:
+                    model.mParts.add(toRings((GeoPolygon) geometry));
+                    break;
+                case GeoConstants.GTMultiPolygon:
+                    GeoMultiPolygon multiPolygon = (GeoMultiPolygon) geometry;
+                    for (int i = 0; i < multiPolygon.size(); i++) {
+                        model.mParts.add(toRings(multiPolygon.get(i)));
+                    }
+                    break;
+                default:
+                    model.mRaw = geometry.copy();
+                    break;
+            }
+            return model;
+        }
+
+
+        static double[] toArray(GeoLineString line)
+        {
+            List<GeoPoint> points = line.getPoints();
+            double[] array = new double[points.size() * 2];
+            for (int i = 0; i < points.size(); i++) {
+                array[i * 2] = points.get(i).getX();
+                array[i * 2 + 1] = points.get(i).getY();
+            }
+            return array;
+        }
+
+
+        static List<double[]> toRings(GeoPolygon polygon)
+        {
+            List<double[]> rings = new ArrayList<>(polygon.getInnerRingCount() + 1);
+            rings.add(toArray(polygon.getOuterRing()));
+            for (int i = 0; i < polygon.getInnerRingCount(); i++) {
+                rings.add(toArray(polygon.getInnerRing(i)));
+            }
+            return rings;
+        }
+
+
+        GeoGeometry toGeometry()
+        {
+            if (null != mRaw) {
+                return mRaw.copy();
+            }
+
+            GeoGeometry geometry;
+            switch (mType) {
+                case GeoConstants.GTPoint:
+                    geometry = toPoint(mParts.get(0).get(0), 0);
+                    break;
+                case GeoConstants.GTMultiPoint:
+                    GeoMultiPoint multiPoint = new GeoMultiPoint();
+                    for (List<double[]> part : mParts) {
+                        multiPoint.add(toPoint(part.get(0), 0));
+                    }
+                    geometry = multiPoint;
+                    break;
+                case GeoConstants.GTLineString:
+                    geometry = toLine(new GeoLineString(), mParts.get(0).get(0));
+                    break;
+                case GeoConstants.GTLinearRing:
+                    geometry = toLine(new GeoLinearRing(), mParts.get(0).get(0));
+                    break;
+                case GeoConstants.GTMultiLineString:
+                    GeoMultiLineString multiLine = new GeoMultiLineString();
+                    for (List<double[]> part : mParts) {
+                        multiLine.add(toLine(new GeoLineString(), part.get(0)));
+                    }
+                    geometry = multiLine;
+                    break;
+                case GeoConstants.GTPolygon:
+                    geometry = toPolygon(mParts.get(0));
+                    break;
+                case GeoConstants.GTMultiPolygon:
+                    GeoMultiPolygon multiPolygon = new GeoMultiPolygon();
+                    for (List<double[]> part : mParts) {
+                        multiPolygon.add(toPolygon(part));
+                    }
+                    geometry = multiPolygon;
+                    break;
+                default:
+                    return null;
+            }
+
+            geometry.setCRS(mCrs);
+            return geometry;
+        }
+
+
+        GeoPoint toPoint(
+                double[] ring,
+                int index)
+        {
+            GeoPoint point = new GeoPoint(ring[index], ring[index + 1]);
+            point.setCRS(mCrs);
+            return point;
+        }
+
+
+        GeoLineString toLine(
+                GeoLineString line,
+                double[] ring)
+        {
+            for (int i = 0; i < ring.length - 1; i += 2) {
+                line.add(toPoint(ring, i));
+            }
+            line.setCRS(mCrs);
+            return line;
+        }
+
+
+        GeoPolygon toPolygon(List<double[]> rings)
+        {
+            GeoPolygon polygon = new GeoPolygon();
+            double[] outer = rings.get(0);
+            for (int i = 0; i < outer.length - 1; i += 2) {
+                polygon.add(toPoint(outer, i));
+            }
+            for (int i = 1; i < rings.size(); i++) {
+                polygon.addInnerRing((GeoLinearRing) toLine(new GeoLinearRing(), rings.get(i)));
+            }
+            polygon.setCRS(mCrs);
+            return polygon;
+        }
+
+
+        Model copy()
+        {
+            Model model = new Model();
+            model.assign(this);
+            return model;
+        }
+
+
+        void assign(Model model)
+        {
+            mType = model.mType;
+            mCrs = model.mCrs;
+            mParts = new ArrayList<>(model.mParts);
+            mRaw = model.mRaw;
+        }
+
+
+        int getSize()
+        {
+            int size = 0;
+            for (List<double[]> part : mParts) {
+                size += size(part);
+            }
+            return null == mRaw ? size : size + 1;
+        }
+
+
+        void write(DataOutputStream out)
+                throws IOException
+        {
+            out.writeInt(mType);
+            out.writeInt(mCrs);
+            out.writeBoolean(null != mRaw);
+            if (null != mRaw) {
+                byte[] blob = mRaw.toBlob();
+                out.writeInt(blob.length);
+                out.write(blob);
+            } else {
+                writeParts(out, mParts);
+            }
+        }
+
+
+        static Model read(DataInputStream in)
+                throws IOException
+        {
+            Model model = new Model();
+            model.mType = in.readInt();
+            model.mCrs = in.readInt();
+            if (in.readBoolean()) {
+                byte[] blob = new byte[in.readInt()];
+                in.readFully(blob);
+                try {
+                    model.mRaw = GeoGeometryFactory.fromBlob(blob);
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            } else {
+                model.mParts = readParts(in);
+            }
+            return model;
+        }
+    }
+
+
+    protected static void writeRing(
+            DataOutputStream out,
+            double[] ring)
+            throws IOException
+    {
+        out.writeInt(ring.length);
+        for (double value : ring) {
+            out.writeDouble(value);
+        }
+    }
+
+
+    protected static double[] readRing(DataInputStream in)
+            throws IOException
+    {
+        double[] ring = new double[in.readInt()];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = in.readDouble();
+        }
+        return ring;
+    }
+
+
+    protected static void writeRings(
+            DataOutputStream out,
+            List<double[]> rings)
+            throws IOException
+    {
+        out.writeInt(rings.size());
+        for (double[] ring : rings) {
+            writeRing(out, ring);
+        }
+    }
+
+
+    protected static List<double[]> readRings(DataInputStream in)
+            throws IOException
+    {
+        int count = in.readInt();
+        List<double[]> rings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rings.add(readRing(in));
+        }
+        return rings;
+    }
+
+
+    protected static void writeParts(
+            DataOutputStream out,
+            List<List<double[]>> parts)
+            throws IOException
+    {
+        out.writeInt(parts.size());
+        for (List<double[]> part : parts) {
+            writeRings(out, part);
+        }
+    }
+
+
+    protected static List<List<double[]>> readParts(DataInputStream in)
+            throws IOException
+    {
+        int count = in.readInt();
+        List<List<double[]>> parts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            parts.add(readRings(in));
+        }
+        return parts;
+    }
+}
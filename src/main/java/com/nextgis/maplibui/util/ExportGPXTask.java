@@ -31,7 +31,6 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
-import android.os.SystemClock;
 import androidx.core.app.ShareCompat;
 import androidx.core.content.FileProvider;
 import androidx.appcompat.app.AlertDialog;
@@ -46,53 +45,24 @@ import com.nextgis.maplibui.R;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Formatter;
 import java.util.List;
-import java.util.Locale;
-import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
 
 import static com.nextgis.maplib.util.GeoConstants.CRS_WEB_MERCATOR;
 import static com.nextgis.maplib.util.GeoConstants.CRS_WGS84;
 
 public class ExportGPXTask extends AsyncTask<Void, Integer, Object>
         implements DialogInterface.OnClickListener {
-    private static final String XML_VERSION = "<?xml version=\"1.0\"?>";
-    private static final String GPX_VERSION = "1.1";
-    private static final String GPX_TAG = "<gpx version=\""
-            + GPX_VERSION
-            + "\" creator=\"%s\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://www.topografix.com/GPX/1/1\" xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1 http://www.topografix.com/GPX/1/1/gpx.xsd\">";
-    private static final String GPX_TAG_CLOSE = "</gpx>";
-    private static final String GPX_TAG_NAME = "<name>";
-    private static final String GPX_TAG_NAME_CLOSE = "</name>";
-    private static final String GPX_TAG_TRACK = "<trk>";
-    private static final String GPX_TAG_TRACK_CLOSE = "</trk>";
-    private static final String GPX_TAG_TRACK_SEGMENT = "<trkseg>";
-    private static final String GPX_TAG_TRACK_SEGMENT_CLOSE = "</trkseg>";
-    private static final String GPX_TAG_TRACK_SEGMENT_POINT = "<trkpt lat=\"%s\" lon=\"%s\">";
-    private static final String GPX_TAG_TRACK_SEGMENT_POINT_CLOSE = "</trkpt>";
-    private static final String GPX_TAG_TRACK_SEGMENT_POINT_TIME = "<time>%s</time>";
-    private static final String GPX_TAG_TRACK_SEGMENT_POINT_SAT = "<sat>%s</sat>";
-    private static final String GPX_TAG_TRACK_SEGMENT_POINT_ELE = "<ele>%s</ele>";
-    private static final String GPX_TAG_TRACK_SEGMENT_EXTENSION_START = "<extensions>";
-    private static final String GPX_TAG_TRACK_SEGMENT_EXTENSION_STOP = "</extensions>";
-    private static final String GPX_TAG_TRACK_SEGMENT_SATTELITES = "<satellites>%s</satellites>";
-    private static final String GPX_TAG_TRACK_SEGMENT_BEARING = "<course>%s</course>";
-    private static final String GPX_TAG_TRACK_SEGMENT_HDOP = "<hdop>%s</hdop>";
-
-
 //    private static final String GPX_TAG_TRACK_SEGMENT_POINT_FIX = "<fix>%s</fix>";
 
     protected Activity mActivity;
     private ProgressDialog mProgress;
     private List<String> mTracksId;
-    private boolean mIsCanceled, mIsChosen = true, mSeparateFiles = true;
+    private volatile boolean mIsCanceled, mSeparateFiles = true;
+    private final CountDownLatch mChosen = new CountDownLatch(1);
     private int mNoPoints = 0;
-    private String mHeader;
+    private String mCreator;
     private ArrayList<Uri> mUris;
     private ArrayList<File> mFiles;
     boolean onlyResult;
@@ -100,7 +70,7 @@ public class ExportGPXTask extends AsyncTask<Void, Integer, Object>
     ExportGPXTask(Activity activity, String creator, List<String> tracksId, boolean onlyResult) {
         mTracksId = tracksId;
         mActivity = activity;
-        mHeader = XML_VERSION + "\r\n" + String.format(GPX_TAG, creator) + "\r\n";
+        mCreator = creator;
         mUris = new ArrayList<>();
         mFiles = new ArrayList<>();
         this.onlyResult = onlyResult;
@@ -110,39 +80,38 @@ public class ExportGPXTask extends AsyncTask<Void, Integer, Object>
     protected void onPreExecute() {
         super.onPreExecute();
         if (mTracksId.size() > 1 && ! onlyResult) {
-
-            mIsChosen = false;
-            if (!onlyResult) {
-                AlertDialog.Builder mDialog = new AlertDialog.Builder(mActivity);
-                mDialog.setTitle(R.string.menu_share).setMessage(R.string.share_gpx_multiple)
-                        .setPositiveButton(R.string.share_gpx_together, this)
-                        .setNeutralButton(android.R.string.cancel, this)
-                        .setNegativeButton(R.string.share_gpx_separate, this).show();
-            }
+            AlertDialog.Builder mDialog = new AlertDialog.Builder(mActivity);
+            mDialog.setTitle(R.string.menu_share).setMessage(R.string.share_gpx_multiple)
+                    .setPositiveButton(R.string.share_gpx_together, this)
+                    .setNeutralButton(android.R.string.cancel, this)
+                    .setNegativeButton(R.string.share_gpx_separate, this).show();
             ControlHelper.lockScreenOrientation(mActivity);
-        } else if (onlyResult)
-            mIsChosen = true;
+        } else
+            mChosen.countDown();
     }
 
     @Override
     protected Object doInBackground(Void... params) {
-        while (!mIsChosen)
-            SystemClock.sleep(500);
+        try {
+            mChosen.await();
+        } catch (InterruptedException e) {
+            return null;
+        }
 
         if (mIsCanceled)
             return null;
 
         publishProgress();
         File temp = null, parent = MapUtil.prepareTempDir(mActivity, "exported_tracks", false);
+        GPXWriter writer = null;
         try {
             IGISApplication application = (IGISApplication) mActivity.getApplication();
             Uri mContentUriTracks = Uri.parse("content://" + application.getAuthority() + "/" + TrackLayer.TABLE_TRACKS);
             Cursor track, trackpoints;
-            final StringBuilder sb = new StringBuilder();
-            final Formatter f = new Formatter(sb);
+            GeoPoint point = new GeoPoint();
             if (!mSeparateFiles) {
                 temp = new File(parent, "tracks.gpx");
-                FileUtil.writeToFile(temp, mHeader);
+                writer = new GPXWriter(temp, mCreator);
             }
 
             Context app = mActivity.getApplicationContext();
@@ -157,58 +126,63 @@ public class ExportGPXTask extends AsyncTask<Void, Integer, Object>
                                                                                         trackId), null, null, null, TrackLayer.FIELD_TIMESTAMP + " ASC");
 
                 if (track != null && track.moveToFirst()) {
-                    if (mSeparateFiles) {
-                        temp = new File(parent, track.getString(0) + ".gpx");
-                        FileUtil.writeToFile(temp, mHeader);
-                    }
-
                     if (trackpoints != null && trackpoints.moveToFirst()) {
                         if (mSeparateFiles) {
-                            appendTrack(temp, track.getString(0), sb, f, trackpoints);
-                            FileUtil.writeToFile(temp, GPX_TAG_CLOSE, true);
-                            Uri uri = null;
-                            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                                if (temp != null)
-                                    uri = FileProvider.getUriForFile(app, authority, temp);
-                            } else
-                                uri = Uri.fromFile(temp);
-                            if (uri != null)
-                                mUris.add(uri);
-                            if (temp != null)
-                                mFiles.add(temp);
+                            temp = new File(parent, track.getString(0) + ".gpx");
+                            GPXWriter trackWriter = new GPXWriter(temp, mCreator);
+                            try {
+                                appendTrack(trackWriter, track.getString(0), point, trackpoints);
+                            } finally {
+                                trackWriter.close();
+                            }
+                            addResult(app, authority, temp);
                         } else
-                            appendTrack(temp, track.getString(0), sb, f, trackpoints);
-
-                        trackpoints.close();
-                    } else
+                            appendTrack(writer, track.getString(0), point, trackpoints);
+                    } else {
+                        if (mSeparateFiles)
+                            // keep an empty track file as before
+                            new GPXWriter(new File(parent, track.getString(0) + ".gpx"), mCreator).close();
                         mNoPoints++;
+                    }
 
                     track.close();
                 }
+
+                if (trackpoints != null)
+                    trackpoints.close();
             }
 
-            Uri uri = null;
             if (!mSeparateFiles) {
-                FileUtil.writeToFile(temp, GPX_TAG_CLOSE, true);
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                    if (temp != null)
-                        uri = FileProvider.getUriForFile(app, authority, temp);
-                } else
-                    uri = Uri.fromFile(temp);
-                if (uri != null)
-                    mUris.add(uri);
-                if (temp != null)
-                    mFiles.add(temp);
+                writer.close();
+                writer = null;
+                addResult(app, authority, temp);
             }
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                }
+            }
         }
 
         return mFiles;
     }
 
-    private void appendTrack(File temp, String name, StringBuilder sb, Formatter f, Cursor trackpoints) throws IOException {
-        GeoPoint point = new GeoPoint();
+    private void addResult(Context app, String authority, File file) {
+        Uri uri;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            uri = FileProvider.getUriForFile(app, authority, file);
+        else
+            uri = Uri.fromFile(file);
+        if (uri != null)
+            mUris.add(uri);
+        mFiles.add(file);
+    }
+
+    private void appendTrack(GPXWriter writer, String name, GeoPoint point, Cursor trackpoints) throws IOException {
         int latId = trackpoints.getColumnIndex(TrackLayer.FIELD_LAT);
         int lonId = trackpoints.getColumnIndex(TrackLayer.FIELD_LON);
         int timeId = trackpoints.getColumnIndex(TrackLayer.FIELD_TIMESTAMP);
@@ -218,56 +192,19 @@ public class ExportGPXTask extends AsyncTask<Void, Integer, Object>
         int bearing = trackpoints.getColumnIndex(TrackLayer.FIELD_BEARING);
         int accurancy_hdop = trackpoints.getColumnIndex(TrackLayer.FIELD_ACCURACY);
 
-        DecimalFormat df = new DecimalFormat("0", new DecimalFormatSymbols(Locale.ENGLISH));
-        df.setMaximumFractionDigits(340); //340 = DecimalFormat.DOUBLE_FRACTION_DIGITS
-
-        DecimalFormat dfFloat = new DecimalFormat("0", new DecimalFormatSymbols(Locale.ENGLISH));
-        dfFloat.setMaximumFractionDigits(1); //340 = DecimalFormat.DOUBLE_FRACTION_DIGITS
-
-        sb.setLength(0);
-        sb.append(GPX_TAG_TRACK);
-
-        if (name != null) {
-            sb.append(GPX_TAG_NAME);
-            sb.append(name);
-            sb.append(GPX_TAG_NAME_CLOSE);
-        }
-
-        sb.append(GPX_TAG_TRACK_SEGMENT);
-        FileUtil.writeToFile(temp, sb.toString(), true);
-
+        writer.beginTrack(name);
         do {
-            sb.setLength(0);
+            if (mIsCanceled)
+                break;
+
             point.setCoordinates(trackpoints.getDouble(lonId), trackpoints.getDouble(latId));
             point.setCRS(CRS_WEB_MERCATOR);
             point.project(CRS_WGS84);
-            String sLon = df.format(point.getX());
-            String sLat = df.format(point.getY());
-            f.format(GPX_TAG_TRACK_SEGMENT_POINT, sLat, sLon);
-            f.format(GPX_TAG_TRACK_SEGMENT_POINT_TIME, getTimeStampAsString(trackpoints.getLong(timeId)));
-            f.format(GPX_TAG_TRACK_SEGMENT_POINT_ELE, dfFloat.format(trackpoints.getDouble(eleId)));
-            f.format(GPX_TAG_TRACK_SEGMENT_HDOP, dfFloat.format(trackpoints.getFloat(accurancy_hdop)));
-
-            sb.append(GPX_TAG_TRACK_SEGMENT_EXTENSION_START);
-
-            f.format(GPX_TAG_TRACK_SEGMENT_SATTELITES, trackpoints.getString(satId));
-            f.format(GPX_TAG_TRACK_SEGMENT_BEARING, dfFloat.format(trackpoints.getFloat(bearing)));
-
-            sb.append(GPX_TAG_TRACK_SEGMENT_EXTENSION_STOP);
-            sb.append(GPX_TAG_TRACK_SEGMENT_POINT_CLOSE);
-            FileUtil.writeToFile(temp, sb.toString(), true);
+            writer.writePoint(point.getY(), point.getX(), trackpoints.getLong(timeId),
+                    trackpoints.getDouble(eleId), trackpoints.getFloat(accurancy_hdop),
+                    trackpoints.getInt(satId), trackpoints.getFloat(bearing));
         } while (trackpoints.moveToNext());
-
-        sb.setLength(0);
-        sb.append(GPX_TAG_TRACK_SEGMENT_CLOSE);
-        sb.append(GPX_TAG_TRACK_CLOSE);
-        FileUtil.writeToFile(temp, sb.toString(), true);
-    }
-
-    private String getTimeStampAsString(long nTimeStamp) {
-        final SimpleDateFormat utcFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.getDefault());
-        utcFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        return utcFormat.format(new Date(nTimeStamp));
+        writer.endTrack();
     }
 
     @Override
@@ -280,7 +217,7 @@ public class ExportGPXTask extends AsyncTask<Void, Integer, Object>
                 mIsCanceled = true;
                 break;
         }
-        mIsChosen = true;
+        mChosen.countDown();
     }
 
     @Override
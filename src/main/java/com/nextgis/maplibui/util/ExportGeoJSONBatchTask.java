@@ -34,6 +34,8 @@ import com.nextgis.maplib.util.Constants;
 import com.nextgis.maplib.util.MapUtil;
 import com.nextgis.maplibui.R;
 
+import org.json.JSONException;
+
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -42,7 +44,12 @@ import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -80,17 +87,18 @@ public class ExportGeoJSONBatchTask extends ExportGeoJSONTask {
 
         if (context != null) {
             try {
-                Boolean enoughSpace = null;
-                try {
-                    CheckDirSizeTask sizeTask = new CheckDirSizeTask(mActivity, mLayers,
-                            trackList.size() > 0);
-                    enoughSpace = sizeTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR).get();
-                } catch (ExecutionException | InterruptedException ignored) {
-
-                }
-
-                if (enoughSpace != Boolean.valueOf(true))
+                // already in background, no need to wait for another AsyncTask
+                final CheckDirSizeTask sizeTask = new CheckDirSizeTask(mActivity, mLayers,
+                        trackList.size() > 0);
+                if (!sizeTask.checkSpace()) {
+                    mActivity.runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            sizeTask.showNotEnoughSpace();
+                        }
+                    });
                     return R.string.not_enough_space;
+                }
 
                 if (mName.trim().isEmpty())
                     mName = Long.toString(System.currentTimeMillis());
@@ -114,44 +122,49 @@ public class ExportGeoJSONBatchTask extends ExportGeoJSONTask {
                 byte[] buffer = new byte[1024];
                 int length;
 
+                // layers are serialized concurrently and funneled into the archive, names are
+                // resolved in layer order so they do not depend on completion order
+                ZipFunnel funnel = new ZipFunnel(zos, temp.getParentFile());
+                int threads = Math.max(1, Math.min(mLayers.size(), Runtime.getRuntime().availableProcessors()));
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                List<Future<Integer>> futures = new ArrayList<>(mLayers.size());
                 ArrayList<String> existingFiles = new ArrayList<>();
                 for (VectorLayer layer : mLayers) {
-                    HyperLog.v(Constants.TAG, "ExportGeoJSONBatchTask: process " + layer.getName());
-                    try {
-                        HyperLog.v(Constants.TAG, "ExportGeoJSONBatchTask: executeOnExecutor ExportGeoJSONTask");
-                        ExportGeoJSONTask exportTask = new ExportGeoJSONTask(mActivity, layer, mProceedAttaches, true,
-                                false, null, false);
-                        Object result = exportTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR).get();
+                    String name = normalizeLayerName(layer.getName()) + ZIP_EXT;
+                    name = getUniqueName(name, existingFiles, ZIP_EXT);
+                    existingFiles.add(name);
+                    HyperLog.v(Constants.TAG, "ExportGeoJSONBatchTask: submit " + layer.getName());
+                    futures.add(pool.submit(new LayerExport(funnel, layer, name)));
+                }
 
-                        if (result instanceof File) {
-                            File file = (File) result;
-                            HyperLog.v(Constants.TAG, "ExportGeoJSONBatchTask: result is File");
-                            String name = file.getName();
-                            name = getUniqueName(name, existingFiles, ZIP_EXT);
-                            existingFiles.add(name);
-                            FileInputStream fis = new FileInputStream(file);
-                            zos.putNextEntry(new ZipEntry(name));
-
-                            HyperLog.v(Constants.TAG, "ExportGeoJSONBatchTask: put result to zip");
-                            while ((length = fis.read(buffer)) > 0)
-                                zos.write(buffer, 0, length);
-
-                            HyperLog.v(Constants.TAG, "ExportGeoJSONBatchTask: close entry");
-                            zos.closeEntry();
-                            fis.close();
-                        } else {
-                            HyperLog.v(Constants.TAG, "ExportGeoJSONBatchTask: result is NOT File: " + result);
-                            if (result == null)
-                                result = R.string.error_export_geojson;
-                            publishProgress((int) result);
-                        }
-                    } catch (ExecutionException | InterruptedException ex) {
+                for (Future<Integer> future : futures) {
+                    try {
+                        Integer result = future.get();
+                        if (result != null)
+                            publishProgress(result);
+                    } catch (ExecutionException ex) {
                         HyperLog.v(Constants.TAG, "ExportGeoJSONBatchTask: zip error: " + ex.getMessage());
                         publishProgress(com.nextgis.maplib.R.string.sync_error_io);
+                    } catch (InterruptedException ex) {
+                        mIsCanceled = true;
+                        break;
                     }
                 }
 
+                if (mIsCanceled) {
+                    // stop the writers and drop their spools, the archive is not finished
+                    pool.shutdownNow();
+                    funnel.abort();
+                    zos.close();
+                    temp.delete();
+                    return R.string.canceled;
+                }
+                pool.shutdown();
+
+                HyperLog.v(Constants.TAG, "ExportGeoJSONBatchTask: copy spooled layers to zip");
+                funnel.finish();
 
+                zos.setLevel(Deflater.DEFAULT_COMPRESSION);
                 if (trackList.size() > 0) {
                     List<String> tracksIds = new ArrayList<>();
                     for (Pair<Integer, String> pair : trackList)
@@ -206,6 +219,50 @@ public class ExportGeoJSONBatchTask extends ExportGeoJSONTask {
         return R.string.error_file_create;
     }
 
+    /**
+     * Writes the layer archive as an entry of the project archive
+     */
+    private class LayerExport implements Callable<Integer> {
+        private final ZipFunnel mFunnel;
+        private final VectorLayer mLayer;
+        private final String mName;
+
+        LayerExport(ZipFunnel funnel, VectorLayer layer, String name) {
+            mFunnel = funnel;
+            mLayer = layer;
+            mName = name;
+        }
+
+        @Override
+        public Integer call() throws IOException {
+            GeoJSONStreamWriter writer = new GeoJSONStreamWriter(mLayer, useAliases, mProceedAttaches,
+                    new GeoJSONStreamWriter.CancelSignal() {
+                        @Override
+                        public boolean isCanceled() {
+                            return mIsCanceled;
+                        }
+                    });
+
+            // the layer archive is compressed already, a failed layer is skipped
+            ZipFunnel.Entry out = mFunnel.openEntry(mName, Deflater.NO_COMPRESSION);
+            boolean exported = false;
+            try {
+                writer.writeArchive(out, mLayer.getName() + ".geojson");
+                exported = !mIsCanceled;
+                HyperLog.v(Constants.TAG, "ExportGeoJSONBatchTask: " + mLayer.getName() + " is exported");
+                return null;
+            } catch (JSONException e) {
+                HyperLog.v(Constants.TAG, "ExportGeoJSONBatchTask: JSON error: " + e.getMessage());
+                return R.string.error_export_geojson;
+            } finally {
+                if (exported)
+                    out.close();
+                else
+                    out.discard();
+            }
+        }
+    }
+
     @Override
     protected void onProgressUpdate(Integer... values) {
         super.onProgressUpdate(values);
@@ -26,50 +26,25 @@ import android.app.Activity;
 import android.app.ProgressDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.AsyncTask;
 import android.os.Build;
-import android.text.TextUtils;
 import android.widget.Toast;
 
 import com.hypertrack.hyperlog.HyperLog;
-import com.nextgis.maplib.datasource.Feature;
-import com.nextgis.maplib.datasource.Field;
 import com.nextgis.maplib.map.VectorLayer;
-import com.nextgis.maplib.util.AttachItem;
 import com.nextgis.maplib.util.Constants;
-import com.nextgis.maplib.util.GeoJSONUtil;
 import com.nextgis.maplib.util.MapUtil;
 import com.nextgis.maplib.util.PermissionUtil;
 import com.nextgis.maplibui.R;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
-import static com.nextgis.maplib.util.GeoConstants.FTDate;
-import static com.nextgis.maplib.util.GeoConstants.FTDateTime;
-import static com.nextgis.maplib.util.GeoConstants.FTTime;
-import static com.nextgis.maplib.util.GeoConstants.GEOJSON_ATTACHES;
-import static com.nextgis.maplib.util.GeoConstants.GEOJSON_CRS;
-import static com.nextgis.maplib.util.GeoConstants.GEOJSON_CRS_EPSG_3857;
-import static com.nextgis.maplib.util.GeoConstants.GEOJSON_GEOMETRY;
-import static com.nextgis.maplib.util.GeoConstants.GEOJSON_NAME;
-import static com.nextgis.maplib.util.GeoConstants.GEOJSON_PROPERTIES;
-import static com.nextgis.maplib.util.GeoConstants.GEOJSON_TYPE;
-import static com.nextgis.maplib.util.GeoConstants.GEOJSON_TYPE_FEATURES;
-import static com.nextgis.maplib.util.GeoConstants.GEOJSON_TYPE_Feature;
-import static com.nextgis.maplib.util.GeoConstants.GEOJSON_TYPE_FeatureCollection;
 import static com.nextgis.maplib.util.LayerUtil.normalizeLayerName;
 
 public class ExportGeoJSONTask extends AsyncTask<Void, Integer, Object> {
@@ -77,7 +52,7 @@ public class ExportGeoJSONTask extends AsyncTask<Void, Integer, Object> {
     Activity mActivity;
     private VectorLayer mLayer;
     private ProgressDialog mProgress;
-    boolean mIsCanceled;
+    volatile boolean mIsCanceled;
     boolean mProceedAttaches;
     private boolean mResultOnly;
     private boolean isSaveOperation;
@@ -117,13 +92,7 @@ public class ExportGeoJSONTask extends AsyncTask<Void, Integer, Object> {
     }
 
     protected String getUniqueName(String name, ArrayList<String> names, String ext) {
-        int i = 0;
-        String result = name;
-        while (names.contains(result)) {
-            i++;
-            result = name.replace(ext, "") + "-" + i + ext;
-        }
-        return result;
+        return GeoJSONStreamWriter.getUniqueName(name, names, ext);
     }
 
     @Override
@@ -146,112 +115,31 @@ public class ExportGeoJSONTask extends AsyncTask<Void, Integer, Object> {
             temp = new File(temp, fileName);
             temp.createNewFile();
             FileOutputStream fos = new FileOutputStream(temp, false);
-            ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(fos));
+            BufferedOutputStream bos = new BufferedOutputStream(fos);
 
             HyperLog.v(Constants.TAG, "ExportGeoJSONTask: temp file created");
-            JSONObject obj = new JSONObject();
-            JSONArray geoJSONFeatures = new JSONArray();
-
-            if (mIsCanceled)
-                return R.string.canceled;
-
-            HyperLog.v(Constants.TAG, "ExportGeoJSONTask: create json with crs");
-            JSONObject crs = new JSONObject();
-            crs.put(GEOJSON_TYPE, GEOJSON_NAME);
-            JSONObject crsName = new JSONObject();
-            crsName.put(GEOJSON_NAME, GEOJSON_CRS_EPSG_3857);
-            crs.put(GEOJSON_PROPERTIES, crsName);
-            obj.put(GEOJSON_CRS, crs);
-            obj.put(GEOJSON_TYPE, GEOJSON_TYPE_FeatureCollection);
-
             if (mIsCanceled)
                 return R.string.canceled;
 
-            Feature feature;
-            byte[] buffer = new byte[1024];
-            int length;
-
-            Cursor featuresCursor = mLayer.query(null, null, null, null, null);
-            HyperLog.v(Constants.TAG, "ExportGeoJSONTask: cursor fetched from db");
-            HyperLog.v(Constants.TAG, "ExportGeoJSONTask: iterate over all features");
-            if (featuresCursor != null && featuresCursor.moveToFirst()) {
-                HyperLog.v(Constants.TAG, "ExportGeoJSONTask: move to first");
-                do {
-                    if (mIsCanceled)
-                        break;
-
-                    JSONObject featureJSON = new JSONObject();
-                    featureJSON.put(GEOJSON_TYPE, GEOJSON_TYPE_Feature);
-
-                    feature = mLayer.cursorToFeature(featuresCursor);
-                    JSONObject properties = new JSONObject();
-                    properties.put(Constants.FIELD_ID, feature.getId());
-                    ArrayList<String> existingFiles = new ArrayList<>();
-                    for (Field field : feature.getFields()) {
-                        Object value = feature.getFieldValue(field.getName());
-                        if (value != null) {
-                            if (field.getType() == FTDateTime || field.getType() == FTDate || field.getType() == FTTime)
-                                value = GeoJSONUtil.formatDateTime((Long) value, field.getType());
+            GeoJSONStreamWriter writer = new GeoJSONStreamWriter(mLayer, useAliases, mProceedAttaches,
+                    new GeoJSONStreamWriter.CancelSignal() {
+                        @Override
+                        public boolean isCanceled() {
+                            return mIsCanceled;
                         }
+                    });
 
-                        boolean isNaN = value instanceof Double && ((Double) value).isNaN();
-                        properties.put(useAliases ?field.getAlias() : field.getName(), value == null || isNaN ? JSONObject.NULL : value);
-                    }
-
-                    if (mProceedAttaches) {
-                        File attachFile, featureDir = new File(mLayer.getPath(), feature.getId() + "");
-                        JSONArray attaches = new JSONArray();
-                        for (Map.Entry<String, AttachItem> attach : feature.getAttachments().entrySet()) {
-                            attachFile = new File(featureDir, attach.getKey());
-                            String displayName = attach.getValue().getDisplayName();
-                            if (TextUtils.isEmpty(displayName))
-                                displayName = attach.getKey();
-                            attaches.put(displayName);
-
-                            if (attachFile.exists()) {
-                                String[] parts = displayName.split("\\.");
-                                displayName = getUniqueName(displayName, existingFiles, "." + parts[parts.length - 1]);
-                                existingFiles.add(displayName);
-                                FileInputStream fis = new FileInputStream(attachFile);
-                                zos.putNextEntry(new ZipEntry(feature.getId() + "/" + displayName));
-
-                                while ((length = fis.read(buffer)) > 0)
-                                    zos.write(buffer, 0, length);
-
-                                zos.closeEntry();
-                                fis.close();
-                            }
-                        }
-                        properties.put(GEOJSON_ATTACHES, attaches);
-                    }
-
-                    featureJSON.put(GEOJSON_PROPERTIES, properties);
-                    featureJSON.put(GEOJSON_GEOMETRY, feature.getGeometry().toJSON());
-                    geoJSONFeatures.put(featureJSON);
-                } while (featuresCursor.moveToNext());
-
-                HyperLog.v(Constants.TAG, "ExportGeoJSONTask: close cursor");
-                featuresCursor.close();
-            } else {
+            HyperLog.v(Constants.TAG, "ExportGeoJSONTask: stream features and attaches to zip");
+            int count = writer.writeArchive(bos, mLayer.getName() + ".geojson");
+            if (count == 0)
                 publishProgress(R.string.no_features);
-            }
+
+            HyperLog.v(Constants.TAG, "ExportGeoJSONTask: close streams");
+            bos.close();
 
             if (mIsCanceled)
                 return R.string.canceled;
 
-            HyperLog.v(Constants.TAG, "ExportGeoJSONTask: put features to json");
-            obj.put(GEOJSON_TYPE_FEATURES, geoJSONFeatures);
-
-            HyperLog.v(Constants.TAG, "ExportGeoJSONTask: put json to zip");
-            buffer = obj.toString().getBytes();
-            zos.putNextEntry(new ZipEntry(mLayer.getName() + ".geojson"));
-            zos.write(buffer);
-
-            HyperLog.v(Constants.TAG, "ExportGeoJSONTask: close entry and streams");
-            zos.closeEntry();
-            zos.close();
-            fos.close();
-
             return temp;
         } catch (JSONException e) {
             e.printStackTrace();
@@ -0,0 +1,437 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import com.nextgis.maplib.datasource.GeoEnvelope;
+import com.nextgis.maplib.datasource.GeoGeometry;
+import com.nextgis.maplib.datasource.GeoGeometryCollection;
+import com.nextgis.maplib.datasource.GeoLineString;
+import com.nextgis.maplib.datasource.GeoMultiLineString;
+import com.nextgis.maplib.datasource.GeoMultiPoint;
+import com.nextgis.maplib.datasource.GeoMultiPolygon;
+import com.nextgis.maplib.datasource.GeoPoint;
+import com.nextgis.maplib.datasource.GeoPolygon;
+import com.nextgis.maplib.map.VectorLayer;
+import com.nextgis.maplib.util.Constants;
+import com.nextgis.maplib.util.GeoConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds features of a vector layer under a tap. Candidates from the layer index are tested
+ * against geometries decimated to the screen pixel at the current zoom. The decimated shapes are
+ * cached, so the next taps at this zoom do not load candidate geometries at all, only the chosen
+ * one is loaded in full.
+ */
+public class FeaturePicker
+{
+    protected static final int MAX_CACHED_POINTS = 200000;
+
+    protected static final int PART_POINTS = 0;
+    protected static final int PART_LINE   = 1;
+    protected static final int PART_RING   = 2;
+
+    protected final Map<Long, Shape> mCache = new LinkedHashMap<>(64, 0.75f, true);
+    protected int mCachedPoints;
+    protected int mLayerId = Constants.NOT_FOUND;
+    protected int mZoom    = Constants.NOT_FOUND;
+
+
+    /**
+     * @param tapEnv      the tap tolerance envelope in map coordinates
+     * @param zoom        the current map zoom
+     * @param tolerancePX the tap tolerance in pixels, half of the envelope width
+     * @return features under the tap, the nearest first; polygons containing the tap have zero
+     * distance and the smaller of them goes first
+     */
+    public List<Hit> pick(
+            VectorLayer layer,
+            GeoEnvelope tapEnv,
+            float zoom,
+            float tolerancePX)
+    {
+        if (layer.getId() != mLayerId || (int) zoom != mZoom) {
+            invalidate();
+            mLayerId = layer.getId();
+            mZoom = (int) zoom;
+        }
+
+        List<Long> ids = layer.query(tapEnv);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        double x = (tapEnv.getMinX() + tapEnv.getMaxX()) / 2;
+        double y = (tapEnv.getMinY() + tapEnv.getMaxY()) / 2;
+        double tolerance = tapEnv.width() / 2;
+        double pixel = tolerancePX > 0 ? tolerance / tolerancePX : tolerance;
+
+        // candidates ordered by envelope distance, far ones are false positives of the index
+        List<Hit> candidates = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            GeoGeometry geometry = null;
+            Shape shape = mCache.get(id);
+            if (null == shape) {
+                geometry = layer.getGeometryForId(id);
+                if (null == geometry) {
+                    continue;
+                }
+                shape = new Shape(geometry, pixel);
+                put(id, shape);
+            }
+
+            double envelopeDistance = shape.envelopeDistance(x, y);
+            if (envelopeDistance <= tolerance) {
+                candidates.add(new Hit(id, envelopeDistance, shape, geometry));
+            }
+        }
+        Collections.sort(candidates, HIT_ORDER);
+
+        List<Hit> hits = new ArrayList<>(candidates.size());
+        for (Hit candidate : candidates) {
+            double distance = candidate.mShape.distance(x, y);
+            if (distance <= tolerance) {
+                hits.add(new Hit(candidate.mFeatureId, distance, candidate.mShape,
+                        candidate.mGeometry));
+            }
+        }
+        Collections.sort(hits, HIT_ORDER);
+        return hits;
+    }
+
+
+    public void invalidate()
+    {
+        mCache.clear();
+        mCachedPoints = 0;
+    }
+
+
+    public void invalidate(int layerId)
+    {
+        if (layerId == mLayerId) {
+            invalidate();
+        }
+    }
+
+
+    protected void put(
+            long id,
+            Shape shape)
+    {
+        Shape old = mCache.put(id, shape);
+        mCachedPoints += shape.mPointCount - (null == old ? 0 : old.mPointCount);
+
+        Iterator<Shape> iterator = mCache.values().iterator();
+        while (mCachedPoints > MAX_CACHED_POINTS && iterator.hasNext()) {
+            Shape eldest = iterator.next();
+            if (eldest == shape) {
+                break;
+            }
+            mCachedPoints -= eldest.mPointCount;
+            iterator.remove();
+        }
+    }
+
+
+    protected static final Comparator<Hit> HIT_ORDER = new Comparator<Hit>()
+    {
+        @Override
+        public int compare(
+                Hit lhs,
+                Hit rhs)
+        {
+            int result = Double.compare(lhs.mDistance, rhs.mDistance);
+            if (result == 0) {
+                result = Double.compare(lhs.mShape.mArea, rhs.mShape.mArea);
+            }
+            if (result == 0) {
+                result = Long.compare(lhs.mFeatureId, rhs.mFeatureId);
+            }
+            return result;
+        }
+    };
+
+
+    public static class Hit
+    {
+        public final long   mFeatureId;
+        /** distance from the tap in map units, zero if a polygon contains the tap */
+        public final double mDistance;
+
+        protected final Shape mShape;
+        protected       GeoGeometry mGeometry;
+
+
+        Hit(
+                long featureId,
+                double distance,
+                Shape shape,
+                GeoGeometry geometry)
+        {
+            mFeatureId = featureId;
+            mDistance = distance;
+            mShape = shape;
+            mGeometry = geometry;
+        }
+
+
+        /**
+         * @return the full feature geometry, loaded from the layer if it was not loaded yet
+         */
+        public GeoGeometry getGeometry(VectorLayer layer)
+        {
+            if (null == mGeometry) {
+                mGeometry = layer.getGeometryForId(mFeatureId);
+            }
+            return mGeometry;
+        }
+    }
+
+
+    /**
+     * A geometry decimated to the pixel size, as arrays of x, y pairs
+     */
+    protected static class Shape
+    {
+        protected final List<double[]> mParts = new ArrayList<>();
+        protected final List<Integer>  mKinds = new ArrayList<>();
+        protected final double         mPixel;
+        protected int                  mPointCount;
+        protected double mMinX = Double.MAX_VALUE, mMinY = Double.MAX_VALUE;
+        protected double mMaxX = -Double.MAX_VALUE, mMaxY = -Double.MAX_VALUE;
+        protected double mArea;
+
+
+        Shape(
+                GeoGeometry geometry,
+                double pixel)
+        {
+            mPixel = pixel;
+            add(geometry);
+            mArea = mParts.isEmpty() ? 0 : (mMaxX - mMinX) * (mMaxY - mMinY);
+        }
+
+
+        protected void add(GeoGeometry geometry)
+        {
+            switch (geometry.getType()) {
+                case GeoConstants.GTPoint:
+                    GeoPoint point = (GeoPoint) geometry;
+                    addPart(new double[] {point.getX(), point.getY()}, PART_POINTS);
+                    break;
+                case GeoConstants.GTMultiPoint:
+                    GeoMultiPoint multiPoint = (GeoMultiPoint) geometry;
+                    double[] points = new double[multiPoint.size() * 2];
+                    for (int i = 0; i < multiPoint.size(); i++) {
+                        points[i * 2] = multiPoint.get(i).getX();
+                        points[i * 2 + 1] = multiPoint.get(i).getY();
+                    }
+                    addPart(points, PART_POINTS);
+                    break;
+                case GeoConstants.GTLineString:
+                    addLine((GeoLineString) geometry, PART_LINE);
+                    break;
+                case GeoConstants.GTLinearRing:
+                    addLine((GeoLineString) geometry, PART_RING);
+                    break;
+                case GeoConstants.GTMultiLineString:
+                    GeoMultiLineString multiLine = (GeoMultiLineString) geometry;
+                    for (int i = 0; i < multiLine.size(); i++) {
+                        addLine(multiLine.get(i), PART_LINE);
+                    }
+                    break;
+                case GeoConstants.GTPolygon:
+                    addPolygon((GeoPolygon) geometry);
+                    break;
+                case GeoConstants.GTMultiPolygon:
+                    GeoMultiPolygon multiPolygon = (GeoMultiPolygon) geometry;
+                    for (int i = 0; i < multiPolygon.size(); i++) {
+                        addPolygon(multiPolygon.get(i));
+                    }
+                    break;
+                case GeoConstants.GTGeometryCollection:
+                    GeoGeometryCollection collection = (GeoGeometryCollection) geometry;
+                    for (int i = 0; i < collection.size(); i++) {
+                        add(collection.get(i));
+                    }
+                    break;
+            }
+        }
+
+
+        protected void addPolygon(GeoPolygon polygon)
+        {
+            addLine(polygon.getOuterRing(), PART_RING);
+            for (int i = 0; i < polygon.getInnerRingCount(); i++) {
+                addLine(polygon.getInnerRing(i), PART_RING);
+            }
+        }
+
+
+        /**
+         * Skip vertices closer than a pixel to the last kept one
+         */
+        protected void addLine(
+                GeoLineString line,
+                int kind)
+        {
+            List<GeoPoint> points = line.getPoints();
+            if (points.isEmpty()) {
+                return;
+            }
+
+            double[] decimated = new double[points.size() * 2];
+            int count = 0;
+            double lastX = 0, lastY = 0;
+            for (int i = 0; i < points.size(); i++) {
+                GeoPoint point = points.get(i);
+                double x = point.getX(), y = point.getY();
+                boolean last = i == points.size() - 1;
+                if (count > 0 && !last && Math.abs(x - lastX) < mPixel
+                        && Math.abs(y - lastY) < mPixel) {
+                    continue;
+                }
+                decimated[count++] = x;
+                decimated[count++] = y;
+                lastX = x;
+                lastY = y;
+            }
+
+            double[] part = new double[count];
+            System.arraycopy(decimated, 0, part, 0, count);
+            addPart(part, kind);
+        }
+
+
+        protected void addPart(
+                double[] part,
+                int kind)
+        {
+            for (int i = 0; i < part.length - 1; i += 2) {
+                mMinX = Math.min(mMinX, part[i]);
+                mMaxX = Math.max(mMaxX, part[i]);
+                mMinY = Math.min(mMinY, part[i + 1]);
+                mMaxY = Math.max(mMaxY, part[i + 1]);
+            }
+            mPointCount += part.length / 2;
+            mParts.add(part);
+            mKinds.add(kind);
+        }
+
+
+        protected double envelopeDistance(
+                double x,
+                double y)
+        {
+            if (mParts.isEmpty()) {
+                return Double.MAX_VALUE;
+            }
+            double dx = Math.max(0, Math.max(mMinX - x, x - mMaxX));
+            double dy = Math.max(0, Math.max(mMinY - y, y - mMaxY));
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+
+
+        /**
+         * @return zero if the point is inside the rings, otherwise the distance to the nearest
+         * part
+         */
+        protected double distance(
+                double x,
+                double y)
+        {
+            boolean inside = false;
+            double nearest = Double.MAX_VALUE;
+            for (int p = 0; p < mParts.size(); p++) {
+                double[] part = mParts.get(p);
+                int kind = mKinds.get(p);
+
+                if (kind == PART_RING) {
+                    // even-odd over all rings handles holes and multi polygons
+                    for (int i = 0, j = part.length - 2; i < part.length - 1; j = i, i += 2) {
+                        if ((part[i + 1] > y) != (part[j + 1] > y) && x < (part[j] - part[i])
+                                * (y - part[i + 1]) / (part[j + 1] - part[i + 1]) + part[i]) {
+                            inside = !inside;
+                        }
+                    }
+                }
+
+                if (nearest > 0) {
+                    nearest = Math.min(nearest, partDistance(part, kind, x, y));
+                }
+            }
+
+            return inside ? 0 : nearest;
+        }
+
+
+        protected double partDistance(
+                double[] part,
+                int kind,
+                double x,
+                double y)
+        {
+            double nearest = Double.MAX_VALUE;
+            if (kind == PART_POINTS || part.length < 4) {
+                for (int i = 0; i < part.length - 1; i += 2) {
+                    nearest = Math.min(nearest, Math.hypot(part[i] - x, part[i + 1] - y));
+                }
+                return nearest;
+            }
+
+            for (int i = 0; i < part.length - 3; i += 2) {
+                nearest = Math.min(nearest,
+                        segmentDistance(x, y, part[i], part[i + 1], part[i + 2], part[i + 3]));
+            }
+            if (kind == PART_RING) {
+                nearest = Math.min(nearest, segmentDistance(x, y, part[part.length - 2],
+                        part[part.length - 1], part[0], part[1]));
+            }
+            return nearest;
+        }
+
+
+        protected static double segmentDistance(
+                double x,
+                double y,
+                double x1,
+                double y1,
+                double x2,
+                double y2)
+        {
+            double dx = x2 - x1, dy = y2 - y1;
+            double length = dx * dx + dy * dy;
+            double t = length == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / length;
+            t = Math.max(0, Math.min(1, t));
+            return Math.hypot(x1 + t * dx - x, y1 + t * dy - y);
+        }
+    }
+}
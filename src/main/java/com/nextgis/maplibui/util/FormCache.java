@@ -0,0 +1,754 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.nextgis.maplib.util.FileUtil;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.nextgis.maplib.util.Constants.TAG;
+import static com.nextgis.maplibui.util.ConstantsUI.JSON_ALBUM_ELEMENTS_KEY;
+import static com.nextgis.maplibui.util.ConstantsUI.JSON_KEY_LIST_KEY;
+import static com.nextgis.maplibui.util.ConstantsUI.JSON_KEY_LIST_SAVED_KEY;
+import static com.nextgis.maplibui.util.ConstantsUI.JSON_LISTS_KEY;
+import static com.nextgis.maplibui.util.ConstantsUI.JSON_PORTRAIT_ELEMENTS_KEY;
+import static com.nextgis.maplibui.util.ConstantsUI.JSON_TABS_KEY;
+import static com.nextgis.maplibui.util.ConstantsUI.JSON_TRANSLATIONS_KEY;
+
+/**
+ * Process-wide cache of compiled form definitions. A form and its ngfp meta file are parsed
+ * once, keyed by path, modification time and size of both files, kept in memory up to
+ * {@link #MAX_MEMORY_SIZE} bytes and stored in a compact binary file in the cache directory,
+ * so a cold open reads the binary file instead of parsing JSON.
+ */
+public final class FormCache
+{
+    protected static final int    FORMAT_VERSION  = 1;
+    protected static final int    MAX_MEMORY_SIZE = 2 * 1024 * 1024;
+    protected static final String CACHE_DIR       = "forms";
+
+    protected static final byte TYPE_NULL   = 0;
+    protected static final byte TYPE_FALSE  = 1;
+    protected static final byte TYPE_TRUE   = 2;
+    protected static final byte TYPE_INT    = 3;
+    protected static final byte TYPE_LONG   = 4;
+    protected static final byte TYPE_DOUBLE = 5;
+    protected static final byte TYPE_STRING = 6;
+    protected static final byte TYPE_ARRAY  = 7;
+    protected static final byte TYPE_OBJECT = 8;
+
+    protected static final LruCache<String, CompiledForm> mForms =
+            new LruCache<String, CompiledForm>(MAX_MEMORY_SIZE)
+            {
+                @Override
+                protected int sizeOf(
+                        String key,
+                        CompiledForm value)
+                {
+                    return value.mSize;
+                }
+            };
+
+    protected static final Map<String, FormLocation> mLocations = new HashMap<>();
+    protected static final ExecutorService           mExecutor  = Executors.newSingleThreadExecutor();
+    protected static final Handler                   mHandler   = new Handler(Looper.getMainLooper());
+
+
+    public interface OnFormLoadListener
+    {
+        void onFormLoaded(CompiledForm form);
+
+        void onFormError(Exception e);
+    }
+
+
+    private FormCache()
+    {
+    }
+
+
+    /**
+     * @return the compiled form if it is in memory and the files are not changed, or null
+     */
+    public static CompiledForm peek(
+            File form,
+            File meta)
+    {
+        return mForms.get(getKey(form, meta));
+    }
+
+
+    /**
+     * Load the compiled form in background, the listener is called on the main thread
+     */
+    public static void load(
+            final Context context,
+            final File form,
+            final File meta,
+            final OnFormLoadListener listener)
+    {
+        mExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    final CompiledForm compiled = get(context, form, meta);
+                    mHandler.post(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            listener.onFormLoaded(compiled);
+                        }
+                    });
+                } catch (final IOException | JSONException e) {
+                    mHandler.post(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            listener.onFormError(e);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Compile the form in background, e.g. while the form activity is starting
+     */
+    public static void preload(
+            final Context context,
+            final File form,
+            final File meta)
+    {
+        mExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    get(context, form, meta);
+                } catch (IOException | JSONException e) {
+                    Log.w(TAG, "Form preload failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Return the compiled form from memory, from the binary cache or compile it. Do not call on
+     * the main thread.
+     */
+    public static CompiledForm get(
+            Context context,
+            File form,
+            File meta)
+            throws IOException, JSONException
+    {
+        String key = getKey(form, meta);
+        CompiledForm compiled = mForms.get(key);
+        if (null != compiled) {
+            return compiled;
+        }
+
+        File cacheFile = getCacheFile(context, key);
+        try {
+            compiled = readCache(cacheFile, key);
+        } catch (IOException e) {
+            Log.w(TAG, "Form cache read failed: " + e.getMessage());
+        }
+
+        if (null == compiled) {
+            compiled = compile(form, meta);
+            writeCache(cacheFile, key, compiled);
+        }
+
+        mForms.put(key, compiled);
+        return compiled;
+    }
+
+
+    protected static String getKey(
+            File form,
+            File meta)
+    {
+        StringBuilder key = new StringBuilder();
+        key.append(form.getAbsolutePath()).append('|').append(form.lastModified()).append('|')
+                .append(form.length());
+        if (null != meta && meta.exists()) {
+            key.append('|').append(meta.getAbsolutePath()).append('|').append(meta.lastModified())
+                    .append('|').append(meta.length());
+        }
+        return key.toString();
+    }
+
+
+    /**
+     * One cache file per form path, a changed form replaces it
+     */
+    protected static File getCacheFile(
+            Context context,
+            String key)
+    {
+        String path = key.substring(0, key.indexOf('|'));
+        File dir = new File(context.getCacheDir(), CACHE_DIR);
+        return new File(dir, Integer.toHexString(path.hashCode()) + ".bin");
+    }
+
+
+    /**
+     * Find the form and meta files of the layer the way the layer directory is laid out by
+     * ngfp import. The result is kept until files are added to or removed from the directory.
+     *
+     * @return form and meta files, the form is missing if the layer has no custom form and the
+     * meta is null if it is missing
+     */
+    public static File[] findForm(
+            File layerPath,
+            long formId)
+    {
+        String key = layerPath.getAbsolutePath() + "|" + formId;
+        long modified = layerPath.lastModified();
+        synchronized (mLocations) {
+            FormLocation location = mLocations.get(key);
+            if (null != location && location.mModified == modified) {
+                return location.mFiles;
+            }
+        }
+
+        File[] files = LayerUtil.locateForm(layerPath, formId);
+        synchronized (mLocations) {
+            mLocations.put(key, new FormLocation(modified, files));
+        }
+        return files;
+    }
+
+
+    protected static CompiledForm compile(
+            File form,
+            File meta)
+            throws IOException, JSONException
+    {
+        CompiledForm compiled = new CompiledForm();
+
+        String formString = FileUtil.readFromFile(form);
+        Object json = new JSONTokener(formString).nextValue();
+        if (json instanceof JSONArray) {
+            JSONArray elements = (JSONArray) json;
+            if (elements.length() > 0) {
+                compiled.mPortrait.add(elements);
+                compiled.mLandscape.add(elements);
+            }
+        } else if (json instanceof JSONObject) {
+            JSONArray tabs = ((JSONObject) json).getJSONArray(JSON_TABS_KEY);
+            for (int i = 0; i < tabs.length(); i++) {
+                JSONObject tab = tabs.getJSONObject(i);
+                addTab(compiled.mPortrait, getElements(tab, false));
+                addTab(compiled.mLandscape, getElements(tab, true));
+            }
+        } else {
+            throw new JSONException("Form is not an array or object");
+        }
+
+        if (null != meta && meta.exists()) {
+            JSONObject metaJson = new JSONObject(FileUtil.readFromFile(meta));
+            if (metaJson.has(JSON_LISTS_KEY) && !metaJson.isNull(JSON_LISTS_KEY)) {
+                JSONObject lists = metaJson.getJSONObject(JSON_LISTS_KEY);
+                Iterator<String> i = lists.keys();
+                while (i.hasNext()) {
+                    String key = i.next();
+                    JSONArray list = lists.getJSONArray(key);
+                    List<String> value = new ArrayList<>();
+                    for (int j = 0; j < list.length(); j++) {
+                        value.add(list.getString(j));
+                    }
+                    compiled.mLists.put(key, value);
+                }
+            }
+
+            if (metaJson.has(JSON_KEY_LIST_KEY) && !metaJson.isNull(JSON_KEY_LIST_KEY)) {
+                compiled.mKeyList = metaJson.getString(JSON_KEY_LIST_KEY);
+                if (metaJson.has(JSON_KEY_LIST_SAVED_KEY)) {
+                    compiled.mSavedRow = metaJson.getInt(JSON_KEY_LIST_SAVED_KEY);
+                }
+            }
+
+            if (metaJson.has(JSON_TRANSLATIONS_KEY) && !metaJson.isNull(JSON_TRANSLATIONS_KEY)) {
+                JSONArray translations = metaJson.getJSONArray(JSON_TRANSLATIONS_KEY);
+                for (int i = 0; i < translations.length(); i++) {
+                    JSONObject translation = translations.getJSONObject(i);
+                    String translationKey = null;
+                    Map<String, String> mappings = new HashMap<>();
+                    for (Iterator<String> iter = translation.keys(); iter.hasNext(); ) {
+                        String key = iter.next();
+                        String value = translation.getString(key);
+                        if (key.equals("key")) {
+                            translationKey = value;
+                        } else {
+                            mappings.put(key, value);
+                        }
+                    }
+                    if (translationKey != null) {
+                        compiled.mTranslations.put(translationKey, mappings);
+                    }
+                }
+            }
+        }
+
+        return compiled;
+    }
+
+
+    /**
+     * Elements of the tab for the orientation, the same choice the form builder activity made
+     * when it parsed the form on every open
+     */
+    protected static JSONArray getElements(
+            JSONObject tab,
+            boolean isLand)
+            throws JSONException
+    {
+        JSONArray elements = null;
+        if (isLand && !tab.isNull(JSON_ALBUM_ELEMENTS_KEY)) {
+            elements = tab.getJSONArray(JSON_ALBUM_ELEMENTS_KEY);
+        }
+
+        if (null == elements && !isLand && !tab.isNull(JSON_PORTRAIT_ELEMENTS_KEY)) {
+            elements = tab.getJSONArray(JSON_PORTRAIT_ELEMENTS_KEY);
+        }
+
+        if (null == elements) {
+            if (!tab.isNull(JSON_ALBUM_ELEMENTS_KEY)) {
+                elements = tab.getJSONArray(JSON_ALBUM_ELEMENTS_KEY);
+            }
+
+            if (!tab.isNull(JSON_PORTRAIT_ELEMENTS_KEY)) {
+                elements = tab.getJSONArray(JSON_ALBUM_ELEMENTS_KEY);
+            }
+        }
+        return elements;
+    }
+
+
+    protected static void addTab(
+            List<JSONArray> tabs,
+            JSONArray elements)
+    {
+        if (null != elements && elements.length() > 0) {
+            tabs.add(elements);
+        }
+    }
+
+
+    protected static CompiledForm readCache(
+            File file,
+            String key)
+            throws IOException
+    {
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != FORMAT_VERSION || !key.equals(readString(in))) {
+                return null;
+            }
+
+            CompiledForm compiled = new CompiledForm();
+            readTabs(in, compiled.mPortrait);
+            readTabs(in, compiled.mLandscape);
+
+            int lists = in.readInt();
+            for (int i = 0; i < lists; i++) {
+                String name = readString(in);
+                int count = in.readInt();
+                List<String> values = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    values.add(readString(in));
+                }
+                compiled.mLists.put(name, values);
+            }
+
+            if (in.readBoolean()) {
+                compiled.mKeyList = readString(in);
+            }
+            if (in.readBoolean()) {
+                compiled.mSavedRow = in.readInt();
+            }
+
+            int translations = in.readInt();
+            for (int i = 0; i < translations; i++) {
+                String name = readString(in);
+                int count = in.readInt();
+                Map<String, String> mappings = new HashMap<>();
+                for (int j = 0; j < count; j++) {
+                    mappings.put(readString(in), readString(in));
+                }
+                compiled.mTranslations.put(name, mappings);
+            }
+
+            compiled.mSize = (int) file.length();
+            return compiled;
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+
+    protected static void writeCache(
+            File file,
+            String key,
+            CompiledForm compiled)
+            throws JSONException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, key);
+            writeTabs(out, compiled.mPortrait);
+            writeTabs(out, compiled.mLandscape);
+
+            out.writeInt(compiled.mLists.size());
+            for (Map.Entry<String, List<String>> list : compiled.mLists.entrySet()) {
+                writeString(out, list.getKey());
+                out.writeInt(list.getValue().size());
+                for (String value : list.getValue()) {
+                    writeString(out, value);
+                }
+            }
+
+            out.writeBoolean(null != compiled.mKeyList);
+            if (null != compiled.mKeyList) {
+                writeString(out, compiled.mKeyList);
+            }
+            out.writeBoolean(null != compiled.mSavedRow);
+            if (null != compiled.mSavedRow) {
+                out.writeInt(compiled.mSavedRow);
+            }
+
+            out.writeInt(compiled.mTranslations.size());
+            for (Map.Entry<String, Map<String, String>> translation : compiled.mTranslations.entrySet()) {
+                writeString(out, translation.getKey());
+                out.writeInt(translation.getValue().size());
+                for (Map.Entry<String, String> mapping : translation.getValue().entrySet()) {
+                    writeString(out, mapping.getKey());
+                    writeString(out, mapping.getValue());
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // memory stream
+            throw new JSONException(e.getMessage());
+        }
+        compiled.mSize = bytes.size();
+
+        // the memory cache works without the file
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            OutputStream stream = new BufferedOutputStream(new FileOutputStream(temp));
+            try {
+                bytes.writeTo(stream);
+            } finally {
+                stream.close();
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Form cache write failed: " + e.getMessage());
+            temp.delete();
+        }
+    }
+
+
+    protected static void readTabs(
+            DataInputStream in,
+            List<JSONArray> tabs)
+            throws IOException, JSONException
+    {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            tabs.add((JSONArray) readValue(in));
+        }
+    }
+
+
+    protected static void writeTabs(
+            DataOutputStream out,
+            List<JSONArray> tabs)
+            throws IOException, JSONException
+    {
+        out.writeInt(tabs.size());
+        for (JSONArray elements : tabs) {
+            writeValue(out, elements);
+        }
+    }
+
+
+    protected static Object readValue(DataInputStream in)
+            throws IOException, JSONException
+    {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return JSONObject.NULL;
+            case TYPE_FALSE:
+                return Boolean.FALSE;
+            case TYPE_TRUE:
+                return Boolean.TRUE;
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_ARRAY:
+                int length = in.readInt();
+                JSONArray array = new JSONArray();
+                for (int i = 0; i < length; i++) {
+                    array.put(readValue(in));
+                }
+                return array;
+            case TYPE_OBJECT:
+                int size = in.readInt();
+                JSONObject object = new JSONObject();
+                for (int i = 0; i < size; i++) {
+                    String name = readString(in);
+                    object.put(name, readValue(in));
+                }
+                return object;
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+
+    protected static void writeValue(
+            DataOutputStream out,
+            Object value)
+            throws IOException, JSONException
+    {
+        if (null == value || JSONObject.NULL.equals(value)) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TYPE_INT);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.writeByte(TYPE_ARRAY);
+            out.writeInt(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(out, array.get(i));
+            }
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            out.writeByte(TYPE_OBJECT);
+            out.writeInt(object.length());
+            for (Iterator<String> i = object.keys(); i.hasNext(); ) {
+                String name = i.next();
+                writeString(out, name);
+                writeValue(out, object.get(name));
+            }
+        } else {
+            out.writeByte(TYPE_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+
+    /**
+     * Length prefixed UTF-8, {@link DataOutputStream#writeUTF} is limited to 64 KB
+     */
+    protected static void writeString(
+            DataOutputStream out,
+            String value)
+            throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    protected static String readString(DataInputStream in)
+            throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Copy of the JSON tree, so controls may change elements without touching the cache
+     */
+    protected static Object copy(Object value)
+            throws JSONException
+    {
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            JSONArray result = new JSONArray();
+            for (int i = 0; i < array.length(); i++) {
+                result.put(copy(array.get(i)));
+            }
+            return result;
+        }
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            JSONObject result = new JSONObject();
+            for (Iterator<String> i = object.keys(); i.hasNext(); ) {
+                String name = i.next();
+                result.put(name, copy(object.get(name)));
+            }
+            return result;
+        }
+        return value;
+    }
+
+
+    /**
+     * Parsed form and meta file. Element arrays are chosen for both orientations when the form
+     * is compiled.
+     */
+    public static class CompiledForm
+    {
+        protected final List<JSONArray>                  mPortrait     = new ArrayList<>();
+        protected final List<JSONArray>                  mLandscape    = new ArrayList<>();
+        protected final Map<String, List<String>>        mLists        = new HashMap<>();
+        protected final Map<String, Map<String, String>> mTranslations = new HashMap<>();
+        protected       String                           mKeyList;
+        protected       Integer                          mSavedRow;
+        protected       int                              mSize;
+
+
+        /**
+         * @return element arrays of the tabs, copies which the caller may change
+         */
+        public List<JSONArray> getTabs(boolean isLand)
+                throws JSONException
+        {
+            List<JSONArray> source = isLand ? mLandscape : mPortrait;
+            List<JSONArray> tabs = new ArrayList<>(source.size());
+            for (JSONArray elements : source) {
+                tabs.add((JSONArray) copy(elements));
+            }
+            return tabs;
+        }
+
+
+        public Map<String, List<String>> getLists()
+        {
+            return Collections.unmodifiableMap(mLists);
+        }
+
+
+        public Map<String, Map<String, String>> getTranslations()
+        {
+            return Collections.unmodifiableMap(mTranslations);
+        }
+
+
+        /**
+         * @return the list column used to choose a row, or null
+         */
+        public String getKeyList()
+        {
+            return mKeyList;
+        }
+
+
+        /**
+         * @return the chosen row saved in the meta file, or null
+         */
+        public Integer getSavedRow()
+        {
+            return mSavedRow;
+        }
+    }
+
+
+    protected static class FormLocation
+    {
+        final long   mModified;
+        final File[] mFiles;
+
+
+        FormLocation(
+                long modified,
+                File[] files)
+        {
+            mModified = modified;
+            mFiles = files;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Buffered GPX 1.1 serializer which keeps one stream open for the whole file. Numbers and
+ * timestamps are formatted into a reusable buffer, so writing a track point does not allocate.
+ */
+public class GPXWriter
+        implements Closeable
+{
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected static final String XML_VERSION = "<?xml version=\"1.0\"?>";
+    protected static final String GPX_TAG_START = "<gpx version=\"1.1\" creator=\"";
+    protected static final String GPX_TAG_END = "\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://www.topografix.com/GPX/1/1\" xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1 http://www.topografix.com/GPX/1/1/gpx.xsd\">";
+    protected static final String GPX_TAG_CLOSE = "</gpx>";
+
+    /**
+     * Fraction digits of WGS84 coordinates, 1e-9 degree is less than a millimetre
+     */
+    protected static final int COORDINATE_DIGITS = 9;
+    protected static final int VALUE_DIGITS      = 1;
+
+    protected static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L};
+
+    protected final Writer        mWriter;
+    protected final StringBuilder mBuffer = new StringBuilder(256);
+    protected char[]              mChars  = new char[256];
+
+
+    public GPXWriter(
+            File file,
+            String creator)
+            throws IOException
+    {
+        mWriter = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file, false), "UTF-8"), BUFFER_SIZE);
+        mBuffer.setLength(0);
+        mBuffer.append(XML_VERSION).append("\r\n").append(GPX_TAG_START);
+        appendEscaped(creator);
+        mBuffer.append(GPX_TAG_END).append("\r\n");
+        flushBuffer();
+    }
+
+
+    public void beginTrack(String name)
+            throws IOException
+    {
+        mBuffer.setLength(0);
+        mBuffer.append("<trk>");
+        if (name != null) {
+            mBuffer.append("<name>");
+            appendEscaped(name);
+            mBuffer.append("</name>");
+        }
+        mBuffer.append("<trkseg>");
+        flushBuffer();
+    }
+
+
+    /**
+     * @param lat
+     *         WGS84 latitude
+     * @param lon
+     *         WGS84 longitude
+     * @param time
+     *         UTC milliseconds
+     */
+    public void writePoint(
+            double lat,
+            double lon,
+            long time,
+            double ele,
+            double hdop,
+            int satellites,
+            double bearing)
+            throws IOException
+    {
+        mBuffer.setLength(0);
+        mBuffer.append("<trkpt lat=\"");
+        appendFixed(lat, COORDINATE_DIGITS);
+        mBuffer.append("\" lon=\"");
+        appendFixed(lon, COORDINATE_DIGITS);
+        mBuffer.append("\"><time>");
+        appendTimestamp(time);
+        mBuffer.append("</time><ele>");
+        appendFixed(ele, VALUE_DIGITS);
+        mBuffer.append("</ele><hdop>");
+        appendFixed(hdop, VALUE_DIGITS);
+        mBuffer.append("</hdop><extensions><satellites>");
+        mBuffer.append(satellites);
+        mBuffer.append("</satellites><course>");
+        appendFixed(bearing, VALUE_DIGITS);
+        mBuffer.append("</course></extensions></trkpt>");
+        flushBuffer();
+    }
+
+
+    public void endTrack()
+            throws IOException
+    {
+        mWriter.write("</trkseg></trk>");
+    }
+
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        mWriter.write(GPX_TAG_CLOSE);
+        mWriter.close();
+    }
+
+
+    protected void flushBuffer()
+            throws IOException
+    {
+        int length = mBuffer.length();
+        if (mChars.length < length) {
+            mChars = new char[length * 2];
+        }
+        mBuffer.getChars(0, length, mChars, 0);
+        mWriter.write(mChars, 0, length);
+    }
+
+
+    protected void appendEscaped(String text)
+    {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    mBuffer.append("&amp;");
+                    break;
+                case '<':
+                    mBuffer.append("&lt;");
+                    break;
+                case '>':
+                    mBuffer.append("&gt;");
+                    break;
+                case '"':
+                    mBuffer.append("&quot;");
+                    break;
+                default:
+                    mBuffer.append(c);
+            }
+        }
+    }
+
+
+    /**
+     * Append the value rounded to the digits without exponent and trailing zeros
+     */
+    protected void appendFixed(
+            double value,
+            int digits)
+    {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            mBuffer.append('0');
+            return;
+        }
+
+        long scale = POWERS_OF_TEN[digits];
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            mBuffer.append('-');
+        }
+
+        mBuffer.append(scaled / scale);
+        long fraction = scaled % scale;
+        if (fraction == 0) {
+            return;
+        }
+
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        mBuffer.append('.');
+        for (long p = POWERS_OF_TEN[digits - 1]; p > fraction; p /= 10) {
+            mBuffer.append('0');
+        }
+        mBuffer.append(fraction);
+    }
+
+
+    /**
+     * Append UTC time as yyyy-MM-dd'T'HH:mm:ss'Z'
+     */
+    protected void appendTimestamp(long millis)
+    {
+        long seconds = Math.floorDiv(millis, 1000L);
+        long days = Math.floorDiv(seconds, 86400L);
+        int secondOfDay = (int) Math.floorMod(seconds, 86400L);
+
+        // civil from days, http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        append(year, 4);
+        mBuffer.append('-');
+        append(month, 2);
+        mBuffer.append('-');
+        append(day, 2);
+        mBuffer.append('T');
+        append(secondOfDay / 3600, 2);
+        mBuffer.append(':');
+        append(secondOfDay / 60 % 60, 2);
+        mBuffer.append(':');
+        append(secondOfDay % 60, 2);
+        mBuffer.append('Z');
+    }
+
+
+    protected void append(
+            long value,
+            int width)
+    {
+        for (long p = POWERS_OF_TEN[width - 1]; p > 1 && value < p; p /= 10) {
+            mBuffer.append('0');
+        }
+        mBuffer.append(value);
+    }
+}
@@ -0,0 +1,937 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.Log;
+
+import com.nextgis.maplib.api.IProgressor;
+import com.nextgis.maplib.datasource.Field;
+import com.nextgis.maplib.datasource.GeoGeometry;
+import com.nextgis.maplib.datasource.GeoGeometryFactory;
+import com.nextgis.maplib.datasource.GeoLineString;
+import com.nextgis.maplib.datasource.GeoMultiLineString;
+import com.nextgis.maplib.datasource.GeoMultiPoint;
+import com.nextgis.maplib.datasource.GeoMultiPolygon;
+import com.nextgis.maplib.datasource.GeoPoint;
+import com.nextgis.maplib.datasource.GeoPolygon;
+import com.nextgis.maplib.map.MapContentProviderHelper;
+import com.nextgis.maplib.map.VectorLayer;
+import com.nextgis.maplib.util.Constants;
+import com.nextgis.maplib.util.GeoConstants;
+import com.nextgis.maplib.util.LayerUtil;
+import com.nextgis.maplibui.GISApplication;
+import com.nextgis.maplibui.R;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static com.nextgis.maplib.util.Constants.TAG;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_ATTACHES;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_CRS;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_CRS_EPSG_3857;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_GEOMETRY;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_NAME;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_PROPERTIES;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_TYPE;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_TYPE_FEATURES;
+
+/**
+ * Creates or fills a vector layer from a GeoJSON feature collection without reading the whole
+ * document.
+ * Features are read one by one, decoded by a small worker pool in batches and inserted with a
+ * prepared statement in large transactions. The layer cache is built once at the end. A canceled
+ * import deletes the rows it has committed, so the layer is left as it was.
+ */
+public class GeoJSONStreamImporter
+{
+    public static final int DEFAULT_WORKERS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    protected static final int BUFFER_SIZE      = 64 * 1024;
+    protected static final int BATCH_SIZE       = 500;   // features per decode task
+    protected static final int TRANSACTION_SIZE = 20000; // rows per transaction
+    protected static final int PROGRESS_STEP    = 1024;  // bytes per progress unit
+
+    protected final Context     mContext;
+    protected final VectorLayer mLayer;
+    protected final IProgressor mProgressor;
+    protected final int         mWorkers;
+
+    protected CountingInputStream mCounter;
+    protected boolean             mCreateLayer;
+    protected Schema              mSchema;
+    protected SQLiteDatabase      mDatabase;
+    protected SQLiteStatement     mInsert;
+    protected int                 mCount, mSkipped, mInTransaction;
+    protected long                mStartTime;
+    protected long                mFirstId = Constants.NOT_FOUND;
+
+
+    public GeoJSONStreamImporter(
+            Context context,
+            VectorLayer layer,
+            int workers,
+            IProgressor progressor)
+    {
+        mContext = context;
+        mLayer = layer;
+        mWorkers = Math.max(1, workers);
+        mProgressor = progressor;
+    }
+
+
+    /**
+     * Read the GeoJSON or a zip with GeoJSON from the stream and create the layer from its first
+     * features. The stream is closed.
+     *
+     * @param length stream length in bytes or -1 if not known
+     * @return imported features count or -1 if the document has no features with geometry, the
+     * layer is not created then. 0 if canceled, the layer has no features then.
+     */
+    public int importFrom(
+            InputStream in,
+            long length)
+            throws IOException, JSONException
+    {
+        mCreateLayer = true;
+        return read(in, length, GeoConstants.CRS_WGS84);
+    }
+
+
+    /**
+     * Fill the already created layer, feature properties are matched to the layer fields by name,
+     * alias or normalized name. The stream is closed.
+     *
+     * @param crs of the features if the document does not define it
+     * @return imported features count, 0 if canceled and the layer keeps only its previous features
+     */
+    public int fillFrom(
+            InputStream in,
+            long length,
+            int crs)
+            throws IOException, JSONException
+    {
+        mCreateLayer = false;
+        mSchema = new Schema(mLayer.getGeometryType());
+        List<Field> fields = mLayer.getFields();
+        for (Field field : fields) {
+            mSchema.add(field.getName(), field);
+        }
+        // layers created from GeoJSON keep the original property names as aliases
+        for (int i = 0; i < fields.size(); i++) {
+            String alias = fields.get(i).getAlias();
+            if (null != alias && !mSchema.mIndexes.containsKey(alias)) {
+                mSchema.mIndexes.put(alias, i);
+            }
+        }
+        return read(in, length, crs);
+    }
+
+
+    protected int read(
+            InputStream in,
+            long length,
+            int crs)
+            throws IOException, JSONException
+    {
+        mCounter = new CountingInputStream(in);
+        InputStream source = new BufferedInputStream(mCounter, BUFFER_SIZE);
+        if (isZip(source)) {
+            source = openGeoJSONEntry(new ZipInputStream(source));
+        }
+
+        if (null != mProgressor) {
+            mProgressor.setIndeterminate(length <= 0);
+            mProgressor.setMax((int) (length / PROGRESS_STEP));
+        }
+
+        mStartTime = SystemClock.elapsedRealtime();
+        JsonReader reader = new JsonReader(new InputStreamReader(source, "UTF-8"));
+        try {
+            boolean hasFeatures = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (GEOJSON_CRS.equals(name)) {
+                    int declared = readCRS(reader);
+                    if (hasFeatures && declared != crs) {
+                        // the crs member came after the features, they were read with a wrong one
+                        reproject(crs, declared);
+                    }
+                    crs = declared;
+                } else if (GEOJSON_TYPE_FEATURES.equals(name)) {
+                    readFeatures(reader, crs);
+                    hasFeatures = true;
+                    if (isCanceled()) {
+                        discardImported();
+                        return mCount;
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (mCreateLayer && (!hasFeatures || null == mSchema)) {
+                return Constants.NOT_FOUND;
+            }
+        } finally {
+            reader.close();
+        }
+
+        Log.d(TAG, "GeoJSON import: " + mCount + " features, " + mSkipped + " skipped in "
+                + (SystemClock.elapsedRealtime() - mStartTime) + " ms");
+
+        // the spatial cache is built once instead of per inserted feature
+        mLayer.rebuildCache(mProgressor);
+        return mCount;
+    }
+
+
+    protected void readFeatures(
+            JsonReader reader,
+            int crs)
+            throws IOException, JSONException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(mWorkers);
+        ArrayDeque<Future<List<Row>>> pending = new ArrayDeque<>();
+        List<JSONObject> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            if (!mCreateLayer) {
+                prepareInsert();
+            }
+
+            reader.beginArray();
+            while (reader.hasNext() && !isCanceled()) {
+                Object feature = readValue(reader);
+                if (!(feature instanceof JSONObject)) {
+                    continue;
+                }
+
+                batch.add((JSONObject) feature);
+                if (null == mSchema) {
+                    // the layer type and fields are inferred from the whole first batch
+                    if (batch.size() < BATCH_SIZE) {
+                        continue;
+                    }
+                    if (!createLayer(batch)) {
+                        // no geometry to get the layer type from yet
+                        mSkipped += batch.size();
+                        batch = new ArrayList<>(BATCH_SIZE);
+                        continue;
+                    }
+                }
+
+                if (batch.size() == BATCH_SIZE) {
+                    pending.add(pool.submit(new DecodeTask(batch, mSchema, crs)));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                    // keep a bounded number of decoded batches in memory
+                    if (pending.size() > mWorkers * 2) {
+                        write(pending.poll().get());
+                    }
+                }
+            }
+
+            if (isCanceled()) {
+                return;
+            }
+            reader.endArray();
+
+            if (null == mSchema && !batch.isEmpty() && !createLayer(batch)) {
+                mSkipped += batch.size();
+            }
+            if (null != mSchema && !batch.isEmpty()) {
+                pending.add(pool.submit(new DecodeTask(batch, mSchema, crs)));
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll().get());
+            }
+
+            if (null != mDatabase && mInTransaction > 0) {
+                mDatabase.setTransactionSuccessful();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof JSONException) {
+                throw (JSONException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+            if (null != mDatabase && mDatabase.inTransaction()) {
+                mDatabase.endTransaction();
+            }
+            if (null != mInsert) {
+                mInsert.close();
+            }
+        }
+    }
+
+
+    /**
+     * @return false if the features have no geometry to get the layer type from
+     */
+    protected boolean createLayer(List<JSONObject> features)
+            throws JSONException
+    {
+        mSchema = createSchema(features);
+        if (null == mSchema) {
+            return false;
+        }
+
+        mLayer.create(mSchema.mGeometryType, mSchema.mFields);
+        prepareInsert();
+        return true;
+    }
+
+
+    protected void prepareInsert()
+    {
+        MapContentProviderHelper map = (MapContentProviderHelper) GISApplication.getLoadedMap();
+        if (null == map) {
+            throw new IllegalArgumentException("The map should extends MapContentProviderHelper or inherited");
+        }
+
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (Field field : mSchema.mFields) {
+            columns.append("\"").append(field.getName()).append("\",");
+            values.append("?,");
+        }
+        columns.append("\"").append(Constants.FIELD_GEOM).append("\"");
+        values.append("?");
+
+        mDatabase = map.getDatabase(false);
+        mInsert = mDatabase.compileStatement(
+                "INSERT INTO \"" + mLayer.getPath().getName() + "\" (" + columns + ") VALUES (" + values + ")");
+        mDatabase.beginTransaction();
+    }
+
+
+    protected void write(List<Row> rows)
+    {
+        for (Row row : rows) {
+            if (null == row.mGeometry) {
+                mSkipped++;
+                continue;
+            }
+
+            mInsert.clearBindings();
+            for (int i = 0; i < row.mValues.length; i++) {
+                Object value = row.mValues[i];
+                if (value instanceof Long) {
+                    mInsert.bindLong(i + 1, (Long) value);
+                } else if (value instanceof Double) {
+                    mInsert.bindDouble(i + 1, (Double) value);
+                } else if (value instanceof String) {
+                    mInsert.bindString(i + 1, (String) value);
+                } else {
+                    mInsert.bindNull(i + 1);
+                }
+            }
+            mInsert.bindBlob(row.mValues.length + 1, row.mGeometry);
+            long id = mInsert.executeInsert();
+            if (Constants.NOT_FOUND == mFirstId) {
+                mFirstId = id;
+            }
+            mCount++;
+
+            if (++mInTransaction >= TRANSACTION_SIZE) {
+                mDatabase.setTransactionSuccessful();
+                mDatabase.endTransaction();
+                mDatabase.beginTransaction();
+                mInTransaction = 0;
+            }
+        }
+        publishProgress();
+    }
+
+
+    /**
+     * Delete the rows committed by a canceled import, earlier transactions are not rolled back
+     */
+    protected void discardImported()
+    {
+        if (null != mDatabase && Constants.NOT_FOUND != mFirstId) {
+            mDatabase.delete("\"" + mLayer.getPath().getName() + "\"", Constants.FIELD_ID + " >= ?",
+                    new String[] {Long.toString(mFirstId)});
+        }
+        Log.d(TAG, "GeoJSON import canceled, " + mCount + " features deleted");
+        mCount = 0;
+    }
+
+
+    /**
+     * Project the imported rows again, if the document defines its crs after the features
+     *
+     * @param fromCrs the features were read with
+     * @param toCrs defined by the document
+     */
+    protected void reproject(
+            int fromCrs,
+            int toCrs)
+    {
+        if (null == mDatabase || Constants.NOT_FOUND == mFirstId) {
+            return;
+        }
+
+        String table = "\"" + mLayer.getPath().getName() + "\"";
+        SQLiteStatement update = mDatabase.compileStatement("UPDATE " + table + " SET \""
+                + Constants.FIELD_GEOM + "\" = ? WHERE " + Constants.FIELD_ID + " = ?");
+        Cursor cursor = mDatabase.query(table, new String[] {Constants.FIELD_ID, Constants.FIELD_GEOM},
+                Constants.FIELD_ID + " >= ?", new String[] {Long.toString(mFirstId)}, null, null, null);
+        mDatabase.beginTransaction();
+        try {
+            while (cursor.moveToNext()) {
+                GeoGeometry geometry = GeoGeometryFactory.fromBlob(cursor.getBlob(1));
+                // back to the coordinates as read, then from the declared crs
+                geometry.setCRS(GeoConstants.CRS_WEB_MERCATOR);
+                if (fromCrs != GeoConstants.CRS_WEB_MERCATOR && !geometry.project(fromCrs)) {
+                    continue;
+                }
+                geometry.setCRS(toCrs);
+                if (toCrs != GeoConstants.CRS_WEB_MERCATOR && !geometry.project(GeoConstants.CRS_WEB_MERCATOR)) {
+                    continue;
+                }
+
+                update.bindBlob(1, geometry.toBlob());
+                update.bindLong(2, cursor.getLong(0));
+                update.executeUpdateDelete();
+            }
+            mDatabase.setTransactionSuccessful();
+        } catch (IOException e) {
+            Log.d(TAG, "GeoJSON import: failed to reproject the features, " + e.getLocalizedMessage());
+        } finally {
+            mDatabase.endTransaction();
+            cursor.close();
+            update.close();
+        }
+    }
+
+
+    protected void publishProgress()
+    {
+        if (null == mProgressor) {
+            return;
+        }
+
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - mStartTime);
+        long rate = mCount * 1000L / elapsed;
+        mProgressor.setValue((int) (mCounter.getCount() / PROGRESS_STEP));
+        mProgressor.setMessage(mContext.getString(R.string.import_features_rate, mCount, rate));
+    }
+
+
+    protected boolean isCanceled()
+    {
+        return null != mProgressor && mProgressor.isCanceled();
+    }
+
+
+    /**
+     * Field types are widened over all the features, integer to long to real to string. Single
+     * geometries are promoted to multi if the features mix both.
+     *
+     * @return the schema or null if no feature has geometry
+     */
+    protected static Schema createSchema(List<JSONObject> features)
+            throws JSONException
+    {
+        int geometryType = Constants.NOT_FOUND;
+        Map<String, Integer> types = new LinkedHashMap<>();
+        for (JSONObject feature : features) {
+            JSONObject geometry = feature.optJSONObject(GEOJSON_GEOMETRY);
+            if (null != geometry) {
+                int type = GeoGeometryFactory.typeFromString(geometry.getString(GEOJSON_TYPE));
+                if (Constants.NOT_FOUND == geometryType) {
+                    geometryType = type;
+                } else if (type != geometryType && toMultiType(type) == toMultiType(geometryType)) {
+                    geometryType = toMultiType(type);
+                }
+            }
+
+            JSONObject properties = feature.optJSONObject(GEOJSON_PROPERTIES);
+            if (null == properties) {
+                continue;
+            }
+
+            Iterator<String> keys = properties.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (Constants.FIELD_ID.equals(key) || GEOJSON_ATTACHES.equals(key)) {
+                    continue;
+                }
+
+                Integer type = types.get(key);
+                int valueType = getFieldType(properties.get(key));
+                types.put(key, null == type ? valueType : widenFieldType(type, valueType));
+            }
+        }
+
+        if (Constants.NOT_FOUND == geometryType) {
+            return null;
+        }
+
+        Schema schema = new Schema(geometryType);
+        for (Map.Entry<String, Integer> entry : types.entrySet()) {
+            String key = entry.getKey();
+            // a property with only null values is kept as a string
+            int type = Constants.NOT_FOUND == entry.getValue() ? GeoConstants.FTString : entry.getValue();
+            schema.add(key, new Field(type, LayerUtil.normalizeFieldName(key), key));
+        }
+        return schema;
+    }
+
+
+    /**
+     * @return the field type or NOT_FOUND for a null value
+     */
+    protected static int getFieldType(Object value)
+    {
+        if (JSONObject.NULL.equals(value)) {
+            return Constants.NOT_FOUND;
+        } else if (value instanceof Long) {
+            long number = (Long) value;
+            return number == (int) number ? GeoConstants.FTInteger : GeoConstants.FTLong;
+        } else if (value instanceof Double) {
+            return GeoConstants.FTReal;
+        }
+        return GeoConstants.FTString;
+    }
+
+
+    protected static int widenFieldType(
+            int type,
+            int valueType)
+    {
+        if (type == valueType || Constants.NOT_FOUND == valueType) {
+            return type;
+        } else if (Constants.NOT_FOUND == type) {
+            return valueType;
+        } else if (GeoConstants.FTString == type || GeoConstants.FTString == valueType) {
+            return GeoConstants.FTString;
+        } else if (GeoConstants.FTReal == type || GeoConstants.FTReal == valueType) {
+            return GeoConstants.FTReal;
+        }
+        // integer and long
+        return GeoConstants.FTLong;
+    }
+
+
+    /**
+     * @return the multi type for a single geometry type, other types are returned as is
+     */
+    protected static int toMultiType(int type)
+    {
+        switch (type) {
+            case GeoConstants.GTPoint:
+                return GeoConstants.GTMultiPoint;
+            case GeoConstants.GTLineString:
+                return GeoConstants.GTMultiLineString;
+            case GeoConstants.GTPolygon:
+                return GeoConstants.GTMultiPolygon;
+            default:
+                return type;
+        }
+    }
+
+
+    /**
+     * @return the geometry of the layer type, a single geometry promoted to multi if needed, or
+     * null if the geometry does not fit the layer
+     */
+    protected static GeoGeometry toLayerType(
+            GeoGeometry geometry,
+            int layerType)
+    {
+        int type = geometry.getType();
+        if (type == layerType) {
+            return geometry;
+        }
+
+        switch (layerType) {
+            case GeoConstants.GTMultiPoint:
+                if (GeoConstants.GTPoint == type) {
+                    GeoMultiPoint multiPoint = new GeoMultiPoint();
+                    multiPoint.add((GeoPoint) geometry);
+                    return multiPoint;
+                }
+                return null;
+            case GeoConstants.GTMultiLineString:
+                if (GeoConstants.GTLineString == type) {
+                    GeoMultiLineString multiLine = new GeoMultiLineString();
+                    multiLine.add((GeoLineString) geometry);
+                    return multiLine;
+                }
+                return null;
+            case GeoConstants.GTMultiPolygon:
+                if (GeoConstants.GTPolygon == type) {
+                    GeoMultiPolygon multiPolygon = new GeoMultiPolygon();
+                    multiPolygon.add((GeoPolygon) geometry);
+                    return multiPolygon;
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+
+    protected static int readCRS(JsonReader reader)
+            throws IOException, JSONException
+    {
+        Object crs = readValue(reader);
+        if (crs instanceof JSONObject) {
+            JSONObject properties = ((JSONObject) crs).optJSONObject(GEOJSON_PROPERTIES);
+            if (null != properties && GEOJSON_CRS_EPSG_3857.equals(properties.optString(GEOJSON_NAME))) {
+                return GeoConstants.CRS_WEB_MERCATOR;
+            }
+        }
+        return GeoConstants.CRS_WGS84;
+    }
+
+
+    /**
+     * Read the next value as org.json objects, so a single feature is built at a time
+     */
+    protected static Object readValue(JsonReader reader)
+            throws IOException, JSONException
+    {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    object.put(reader.nextName(), readValue(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case NUMBER:
+                String number = reader.nextString();
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    return Double.parseDouble(number);
+                }
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+
+    protected static boolean isZip(InputStream in)
+            throws IOException
+    {
+        in.mark(4);
+        byte[] header = new byte[4];
+        int read = in.read(header);
+        in.reset();
+        return read == 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4;
+    }
+
+
+    protected static InputStream openGeoJSONEntry(ZipInputStream zis)
+            throws IOException
+    {
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".geojson")) {
+                return zis;
+            }
+        }
+        zis.close();
+        throw new IOException("No GeoJSON file in the archive");
+    }
+
+
+    protected static class Schema
+    {
+        final int                  mGeometryType;
+        final List<Field>          mFields  = new ArrayList<>();
+        final Map<String, Integer> mIndexes = new HashMap<>();
+
+
+        Schema(int geometryType)
+        {
+            mGeometryType = geometryType;
+        }
+
+
+        void add(
+                String key,
+                Field field)
+        {
+            mIndexes.put(key, mFields.size());
+            mFields.add(field);
+        }
+    }
+
+
+    protected static class Row
+    {
+        final Object[] mValues;
+        final byte[]   mGeometry;
+
+
+        Row(
+                Object[] values,
+                byte[] geometry)
+        {
+            mValues = values;
+            mGeometry = geometry;
+        }
+    }
+
+
+    protected static class DecodeTask
+            implements Callable<List<Row>>
+    {
+        final List<JSONObject>     mFeatures;
+        final Schema               mSchema;
+        final int                  mCRS;
+        // property name to field index, null if there is no field for it
+        final Map<String, Integer> mKeys = new HashMap<>();
+
+
+        DecodeTask(
+                List<JSONObject> features,
+                Schema schema,
+                int crs)
+        {
+            mFeatures = features;
+            mSchema = schema;
+            mCRS = crs;
+        }
+
+
+        @Override
+        public List<Row> call()
+                throws JSONException, IOException
+        {
+            List<Row> rows = new ArrayList<>(mFeatures.size());
+            for (JSONObject feature : mFeatures) {
+                rows.add(new Row(decodeValues(feature), decodeGeometry(feature)));
+            }
+            return rows;
+        }
+
+
+        byte[] decodeGeometry(JSONObject feature)
+                throws JSONException, IOException
+        {
+            JSONObject json = feature.optJSONObject(GEOJSON_GEOMETRY);
+            if (null == json) {
+                return null;
+            }
+
+            GeoGeometry geometry = GeoGeometryFactory.fromJson(json);
+            if (null == geometry) {
+                return null;
+            }
+
+            // the layer type is fixed by the first batch, other geometries are skipped
+            geometry = toLayerType(geometry, mSchema.mGeometryType);
+            if (null == geometry) {
+                return null;
+            }
+
+            geometry.setCRS(mCRS);
+            if (mCRS != GeoConstants.CRS_WEB_MERCATOR && !geometry.project(GeoConstants.CRS_WEB_MERCATOR)) {
+                return null;
+            }
+            return geometry.toBlob();
+        }
+
+
+        Object[] decodeValues(JSONObject feature)
+        {
+            Object[] values = new Object[mSchema.mFields.size()];
+            JSONObject properties = feature.optJSONObject(GEOJSON_PROPERTIES);
+            if (null == properties) {
+                return values;
+            }
+
+            Iterator<String> keys = properties.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                Integer index = getIndex(key);
+                if (null != index) {
+                    values[index] = toFieldValue(properties.opt(key), mSchema.mFields.get(index).getType());
+                }
+            }
+            return values;
+        }
+
+
+        /**
+         * @return the field index for the property name or null if the layer has no such field
+         */
+        Integer getIndex(String key)
+        {
+            if (mKeys.containsKey(key)) {
+                return mKeys.get(key);
+            }
+
+            Integer index = mSchema.mIndexes.get(key);
+            if (null == index) {
+                index = mSchema.mIndexes.get(LayerUtil.normalizeFieldName(key));
+            }
+            mKeys.put(key, index);
+            return index;
+        }
+
+
+        static Object toFieldValue(
+                Object value,
+                int type)
+        {
+            if (null == value || JSONObject.NULL.equals(value)) {
+                return null;
+            }
+
+            switch (type) {
+                case GeoConstants.FTInteger:
+                case GeoConstants.FTLong:
+                    if (value instanceof Number) {
+                        return ((Number) value).longValue();
+                    }
+                    try {
+                        return Long.parseLong(value.toString());
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                case GeoConstants.FTReal:
+                    if (value instanceof Number) {
+                        return ((Number) value).doubleValue();
+                    }
+                    try {
+                        return Double.parseDouble(value.toString());
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                default:
+                    return value.toString();
+            }
+        }
+    }
+
+
+    protected static class CountingInputStream
+            extends FilterInputStream
+    {
+        protected long mCount;
+
+
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+
+        long getCount()
+        {
+            return mCount;
+        }
+
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            int b = super.read();
+            if (b >= 0) {
+                mCount++;
+            }
+            return b;
+        }
+
+
+        @Override
+        public int read(
+                byte[] b,
+                int off,
+                int len)
+                throws IOException
+        {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+
+        @Override
+        public long skip(long n)
+                throws IOException
+        {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
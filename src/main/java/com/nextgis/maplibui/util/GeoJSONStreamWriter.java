@@ -0,0 +1,455 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import com.nextgis.maplib.datasource.Field;
+import com.nextgis.maplib.datasource.GeoGeometry;
+import com.nextgis.maplib.datasource.GeoGeometryFactory;
+import com.nextgis.maplib.map.VectorLayer;
+import com.nextgis.maplib.util.AttachItem;
+import com.nextgis.maplib.util.Constants;
+import com.nextgis.maplib.util.GeoJSONUtil;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.nextgis.maplib.util.GeoConstants.FTDate;
+import static com.nextgis.maplib.util.GeoConstants.FTDateTime;
+import static com.nextgis.maplib.util.GeoConstants.FTTime;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_ATTACHES;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_CRS;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_CRS_EPSG_3857;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_GEOMETRY;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_NAME;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_PROPERTIES;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_TYPE;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_TYPE_FEATURES;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_TYPE_Feature;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_TYPE_FeatureCollection;
+
+/**
+ * Writes a vector layer as GeoJSON feature collection straight to a stream while the cursor
+ * advances, so memory usage does not depend on the feature count. Column indices are resolved
+ * once per export instead of building a {@link com.nextgis.maplib.datasource.Feature} per row.
+ */
+public class GeoJSONStreamWriter
+{
+    protected static final int BUFFER_SIZE = 8192;
+
+    public interface CancelSignal
+    {
+        boolean isCanceled();
+    }
+
+    protected final VectorLayer  mLayer;
+    protected final boolean      mUseAliases;
+    protected final boolean      mProceedAttaches;
+    protected final CancelSignal mCancelSignal;
+
+
+    public GeoJSONStreamWriter(
+            VectorLayer layer,
+            boolean useAliases,
+            boolean proceedAttaches,
+            CancelSignal cancelSignal)
+    {
+        mLayer = layer;
+        mUseAliases = useAliases;
+        mProceedAttaches = proceedAttaches;
+        mCancelSignal = cancelSignal;
+    }
+
+
+    /**
+     * Write the zip archive with the GeoJSON entry and attachments to the stream. The stream is
+     * flushed but not closed.
+     *
+     * @return written features count
+     */
+    public int writeArchive(
+            OutputStream out,
+            String entryName)
+            throws IOException, JSONException
+    {
+        ZipOutputStream zos = new ZipOutputStream(new NonClosingOutputStream(out));
+        zos.putNextEntry(new ZipEntry(entryName));
+        int count = writeFeatures(zos);
+        zos.closeEntry();
+
+        if (!isCanceled()) {
+            writeAttaches(zos, "");
+        }
+
+        zos.finish();
+        zos.flush();
+        return count;
+    }
+
+
+    /**
+     * Write the feature collection to the stream. The stream is flushed but not closed.
+     *
+     * @return written features count
+     */
+    public int writeFeatures(OutputStream out)
+            throws IOException, JSONException
+    {
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new NonClosingOutputStream(out), "UTF-8"), BUFFER_SIZE);
+
+        writer.write("{");
+        writeKey(writer, GEOJSON_TYPE);
+        writer.write(JSONObject.quote(GEOJSON_TYPE_FeatureCollection));
+        writer.write(",");
+        writeKey(writer, GEOJSON_CRS);
+        writer.write("{");
+        writeKey(writer, GEOJSON_TYPE);
+        writer.write(JSONObject.quote(GEOJSON_NAME));
+        writer.write(",");
+        writeKey(writer, GEOJSON_PROPERTIES);
+        writer.write("{");
+        writeKey(writer, GEOJSON_NAME);
+        writer.write(JSONObject.quote(GEOJSON_CRS_EPSG_3857));
+        writer.write("}},");
+        writeKey(writer, GEOJSON_TYPE_FEATURES);
+        writer.write("[");
+
+        int count = 0;
+        Cursor cursor = mLayer.query(null, null, null, null, null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    Columns columns = new Columns(cursor);
+                    do {
+                        if (isCanceled()) {
+                            break;
+                        }
+
+                        if (count > 0) {
+                            writer.write(",");
+                        }
+                        writeFeature(writer, cursor, columns);
+                        count++;
+                    } while (cursor.moveToNext());
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        writer.write("]}");
+        writer.flush();
+        return count;
+    }
+
+
+    /**
+     * Copy feature attachments to the archive as {@code <prefix><feature id>/<name>} entries.
+     * Names are deduplicated per feature the same way they are listed in the GeoJSON.
+     */
+    public void writeAttaches(
+            ZipOutputStream zos,
+            String prefix)
+            throws IOException
+    {
+        if (!mProceedAttaches) {
+            return;
+        }
+
+        Cursor cursor = mLayer.query(new String[] {Constants.FIELD_ID}, null, null, null, null);
+        if (cursor == null) {
+            return;
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length;
+        try {
+            if (!cursor.moveToFirst()) {
+                return;
+            }
+
+            do {
+                if (isCanceled()) {
+                    break;
+                }
+
+                long id = cursor.getLong(0);
+                Map<String, AttachItem> attaches = mLayer.getAttachMap(id + "");
+                if (attaches == null || attaches.isEmpty()) {
+                    continue;
+                }
+
+                File featureDir = new File(mLayer.getPath(), id + "");
+                List<String> existingFiles = new ArrayList<>();
+                for (Map.Entry<String, AttachItem> attach : attaches.entrySet()) {
+                    File attachFile = new File(featureDir, attach.getKey());
+                    if (!attachFile.exists()) {
+                        continue;
+                    }
+
+                    String displayName = getDisplayName(attach);
+                    String[] parts = displayName.split("\\.");
+                    displayName = getUniqueName(displayName, existingFiles,
+                            "." + parts[parts.length - 1]);
+                    existingFiles.add(displayName);
+
+                    FileInputStream fis = new FileInputStream(attachFile);
+                    try {
+                        zos.putNextEntry(new ZipEntry(prefix + id + "/" + displayName));
+                        while ((length = fis.read(buffer)) > 0) {
+                            zos.write(buffer, 0, length);
+                        }
+                        zos.closeEntry();
+                    } finally {
+                        fis.close();
+                    }
+                }
+            } while (cursor.moveToNext());
+        } finally {
+            cursor.close();
+        }
+    }
+
+
+    public static String getUniqueName(
+            String name,
+            List<String> names,
+            String ext)
+    {
+        int i = 0;
+        String result = name;
+        while (names.contains(result)) {
+            i++;
+            result = name.replace(ext, "") + "-" + i + ext;
+        }
+        return result;
+    }
+
+
+    protected boolean isCanceled()
+    {
+        return mCancelSignal != null && mCancelSignal.isCanceled();
+    }
+
+
+    protected void writeFeature(
+            Writer writer,
+            Cursor cursor,
+            Columns columns)
+            throws IOException, JSONException
+    {
+        long id = cursor.getLong(columns.mId);
+
+        writer.write("{");
+        writeKey(writer, GEOJSON_TYPE);
+        writer.write(JSONObject.quote(GEOJSON_TYPE_Feature));
+        writer.write(",");
+        writeKey(writer, GEOJSON_PROPERTIES);
+        writer.write("{");
+        writeKey(writer, Constants.FIELD_ID);
+        writer.write(Long.toString(id));
+
+        for (int i = 0; i < columns.mFields.size(); i++) {
+            Field field = columns.mFields.get(i);
+            writer.write(",");
+            writeKey(writer, mUseAliases ? field.getAlias() : field.getName());
+            writeValue(writer, cursor, columns.mFieldIndices[i], field.getType());
+        }
+
+        if (mProceedAttaches) {
+            writer.write(",");
+            writeKey(writer, GEOJSON_ATTACHES);
+            writer.write("[");
+            Map<String, AttachItem> attaches = mLayer.getAttachMap(id + "");
+            if (attaches != null) {
+                boolean first = true;
+                for (Map.Entry<String, AttachItem> attach : attaches.entrySet()) {
+                    if (!first) {
+                        writer.write(",");
+                    }
+                    writer.write(JSONObject.quote(getDisplayName(attach)));
+                    first = false;
+                }
+            }
+            writer.write("]");
+        }
+
+        writer.write("},");
+        writeKey(writer, GEOJSON_GEOMETRY);
+        GeoGeometry geometry = getGeometry(cursor, columns, id);
+        writer.write(geometry == null ? "null" : geometry.toJSON().toString());
+        writer.write("}");
+    }
+
+
+    protected GeoGeometry getGeometry(
+            Cursor cursor,
+            Columns columns,
+            long id)
+    {
+        if (columns.mGeometry >= 0) {
+            byte[] blob = cursor.getBlob(columns.mGeometry);
+            if (blob != null) {
+                try {
+                    return GeoGeometryFactory.fromBlob(blob);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return mLayer.getGeometryForId(id);
+    }
+
+
+    protected static void writeKey(
+            Writer writer,
+            String key)
+            throws IOException
+    {
+        writer.write(JSONObject.quote(key));
+        writer.write(":");
+    }
+
+
+    protected static void writeValue(
+            Writer writer,
+            Cursor cursor,
+            int index,
+            int fieldType)
+            throws IOException, JSONException
+    {
+        if (index < 0) {
+            writer.write("null");
+            return;
+        }
+
+        switch (cursor.getType(index)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                long value = cursor.getLong(index);
+                if (fieldType == FTDateTime || fieldType == FTDate || fieldType == FTTime) {
+                    writer.write(JSONObject.quote(GeoJSONUtil.formatDateTime(value, fieldType)));
+                } else {
+                    writer.write(Long.toString(value));
+                }
+                break;
+            case Cursor.FIELD_TYPE_FLOAT:
+                double real = cursor.getDouble(index);
+                if (Double.isNaN(real) || Double.isInfinite(real)) {
+                    writer.write("null");
+                } else {
+                    writer.write(JSONObject.numberToString(real));
+                }
+                break;
+            case Cursor.FIELD_TYPE_STRING:
+                writer.write(JSONObject.quote(cursor.getString(index)));
+                break;
+            default:
+                writer.write("null");
+                break;
+        }
+    }
+
+
+    protected static String getDisplayName(Map.Entry<String, AttachItem> attach)
+    {
+        String displayName = attach.getValue().getDisplayName();
+        if (TextUtils.isEmpty(displayName)) {
+            displayName = attach.getKey();
+        }
+        return displayName;
+    }
+
+
+    /**
+     * Cursor column indices resolved once per export
+     */
+    protected class Columns
+    {
+        final int         mId;
+        final int         mGeometry;
+        final List<Field> mFields;
+        final int[]       mFieldIndices;
+
+
+        Columns(Cursor cursor)
+        {
+            mId = cursor.getColumnIndex(Constants.FIELD_ID);
+            mGeometry = cursor.getColumnIndex(Constants.FIELD_GEOM);
+            mFields = mLayer.getFields();
+            mFieldIndices = new int[mFields.size()];
+            for (int i = 0; i < mFields.size(); i++) {
+                mFieldIndices[i] = cursor.getColumnIndex(mFields.get(i).getName());
+            }
+        }
+    }
+
+
+    /**
+     * Lets the writer close its encoder without closing the zip stream.
+     */
+    protected static class NonClosingOutputStream
+            extends FilterOutputStream
+    {
+        NonClosingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+
+        @Override
+        public void write(
+                byte[] b,
+                int off,
+                int len)
+                throws IOException
+        {
+            out.write(b, off, len);
+        }
+
+
+        @Override
+        public void close()
+                throws IOException
+        {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.nextgis.maplib.api.ILayer;
+import com.nextgis.maplib.map.Layer;
+import com.nextgis.maplib.map.LayerGroup;
+import com.nextgis.maplib.util.FileUtil;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.nextgis.maplib.util.Constants.TAG;
+
+/**
+ * A short list of the map layers (name, type, visibility) saved after the map is loaded. It is
+ * read on the next start to show the layers before the map itself is loaded.
+ */
+public final class LayerManifest
+{
+    protected static final String MANIFEST_EXT = ".manifest";
+    protected static final String KEY_LAYERS   = "layers";
+    protected static final String KEY_NAME     = "name";
+    protected static final String KEY_TYPE     = "type";
+    protected static final String KEY_VISIBLE  = "visible";
+    protected static final String KEY_PATH     = "path";
+    protected static final String KEY_DEPTH    = "depth";
+
+
+    private LayerManifest()
+    {
+    }
+
+
+    public static File getFile(
+            Context context,
+            String mapName)
+    {
+        return new File(context.getCacheDir(), mapName + MANIFEST_EXT);
+    }
+
+
+    /**
+     * @return the layers of the last loaded map, or an empty list if the map was never loaded
+     */
+    public static List<Entry> read(File file)
+    {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+
+        try {
+            JSONArray layers = new JSONObject(FileUtil.readFromFile(file)).getJSONArray(KEY_LAYERS);
+            List<Entry> entries = new ArrayList<>(layers.length());
+            for (int i = 0; i < layers.length(); i++) {
+                JSONObject layer = layers.getJSONObject(i);
+                entries.add(new Entry(layer.getString(KEY_NAME), layer.getInt(KEY_TYPE),
+                        layer.optBoolean(KEY_VISIBLE, true), layer.optString(KEY_PATH),
+                        layer.optInt(KEY_DEPTH)));
+            }
+            return entries;
+        } catch (IOException | JSONException e) {
+            Log.d(TAG, "Failed to read the layer manifest: " + e.getLocalizedMessage());
+            return Collections.emptyList();
+        }
+    }
+
+
+    public static void write(
+            File file,
+            LayerGroup map)
+    {
+        try {
+            JSONArray layers = new JSONArray();
+            addLayers(layers, map, 0);
+            JSONObject root = new JSONObject();
+            root.put(KEY_LAYERS, layers);
+            FileUtil.writeToFile(file, root.toString());
+        } catch (IOException | JSONException e) {
+            Log.d(TAG, "Failed to write the layer manifest: " + e.getLocalizedMessage());
+        }
+    }
+
+
+    protected static void addLayers(
+            JSONArray layers,
+            LayerGroup group,
+            int depth)
+            throws JSONException
+    {
+        for (int i = 0; i < group.getLayerCount(); i++) {
+            ILayer layer = group.getLayer(i);
+            JSONObject object = new JSONObject();
+            object.put(KEY_NAME, layer.getName());
+            object.put(KEY_TYPE, layer.getType());
+            object.put(KEY_VISIBLE, !(layer instanceof Layer) || ((Layer) layer).isVisible());
+            object.put(KEY_PATH, layer.getPath().getName());
+            object.put(KEY_DEPTH, depth);
+            layers.put(object);
+
+            if (layer instanceof LayerGroup) {
+                addLayers(layers, (LayerGroup) layer, depth + 1);
+            }
+        }
+    }
+
+
+    public static class Entry
+    {
+        public final String  mName;
+        public final int     mType;
+        public final boolean mVisible;
+        public final String  mPath;
+        public final int     mDepth;
+
+
+        Entry(
+                String name,
+                int type,
+                boolean visible,
+                String path,
+                int depth)
+        {
+            mName = name;
+            mType = type;
+            mVisible = visible;
+            mPath = path;
+            mDepth = depth;
+        }
+    }
+}
@@ -29,11 +29,15 @@ import android.os.AsyncTask;
 import android.widget.Toast;
 
 import com.hypertrack.hyperlog.HyperLog;
+import com.nextgis.maplib.api.ILayer;
 import com.nextgis.maplib.datasource.GeoGeometry;
+import com.nextgis.maplib.map.MapBase;
+import com.nextgis.maplib.map.MapContentProviderHelper;
 import com.nextgis.maplib.map.VectorLayer;
 import com.nextgis.maplib.util.Constants;
 import com.nextgis.maplib.util.FileUtil;
 import com.nextgis.maplib.util.GeoConstants;
+import com.nextgis.maplibui.GISApplication;
 import com.nextgis.maplibui.R;
 import com.nextgis.maplibui.activity.FormBuilderModifyAttributesActivity;
 import com.nextgis.maplibui.activity.ModifyAttributesActivity;
@@ -79,6 +83,22 @@ public final class LayerUtil {
         return lookupTableIds;
     }
 
+    /**
+     * @return the map the layer is added to, the loaded map if the layer is removed from it
+     * already, or null if there is none
+     */
+    public static MapContentProviderHelper getMap(ILayer layer) {
+        ILayer parent = layer;
+        while (null != parent && !(parent instanceof MapContentProviderHelper))
+            parent = parent.getParent();
+
+        if (null != parent)
+            return (MapContentProviderHelper) parent;
+
+        MapBase map = GISApplication.getLoadedMap();
+        return map instanceof MapContentProviderHelper ? (MapContentProviderHelper) map : null;
+    }
+
     public static void showEditForm(VectorLayer layer, Context context, long featureId, GeoGeometry geometry,
                                     long mFormId) {
         if (!layer.isFieldsInitialized()) {
@@ -93,25 +113,58 @@ public final class LayerUtil {
         }
 
         Intent intent;
-        //check custom form
+        //check custom form, the location is cached until the layer directory changes
+        File[] files = FormCache.findForm(layer.getPath(), mFormId);
+        File form = files[0];
+
+        if (form.exists()) {
+            //show custom form
+            intent = new Intent(context, FormBuilderModifyAttributesActivity.class);
+            intent.putExtra(KEY_FORM_PATH, form);
+            File meta = files[1];
+            if (meta != null)
+                intent.putExtra(KEY_META_PATH, meta);
+            // parse while the activity is starting
+            FormCache.preload(context.getApplicationContext(), form, meta);
+        } else {
+            //if not exist show standard form
+            intent = new Intent(context, ModifyAttributesActivity.class);
+        }
+
+        intent.putExtra(KEY_LAYER_ID, layer.getId());
+        intent.putExtra(KEY_FEATURE_ID, featureId);
+        intent.putExtra(KEY_GEOMETRY_CHANGED, isGeometryChanged);
+        if (null != geometry)
+            intent.putExtra(KEY_GEOMETRY, geometry);
+
+        ((Activity) context).startActivityForResult(intent, IVectorLayerUI.MODIFY_REQUEST);
+    }
+
+
+    /**
+     * Find the custom form of the layer
+     *
+     * @return form file which may not exist and meta file or null
+     */
+    public static File[] locateForm(File layerPath, long mFormId) {
         String formPrefix = mFormId + "_";
-        File form = new File(layer.getPath(), formPrefix+ ConstantsUI.FILE_FORM);
+        File form = new File(layerPath, formPrefix+ ConstantsUI.FILE_FORM);
 
         try {
 
         if (!form.exists()){ //try to find file
             // try to search
-            String newDefForm = findFormJsonPrefix(layer.getPath().toString());
+            String newDefForm = findFormJsonPrefix(layerPath.toString());
             if (newDefForm != null) {
 
-                File metaCheck = new File(layer.getPath(), newDefForm + "_" + LayerFillService.NGFP_META);
+                File metaCheck = new File(layerPath, newDefForm + "_" + LayerFillService.NGFP_META);
                 if (metaCheck.exists()){
-                    form = new File(layer.getPath(), newDefForm + "_" + ConstantsUI.FILE_FORM);
+                    form = new File(layerPath, newDefForm + "_" + ConstantsUI.FILE_FORM);
                     formPrefix = newDefForm;
                 }else {
-                    File metaCheck2 = new File(layer.getPath(),  LayerFillService.NGFP_META);
+                    File metaCheck2 = new File(layerPath,  LayerFillService.NGFP_META);
                     if (metaCheck2.exists()){
-                        form = new File(layer.getPath(),  ConstantsUI.FILE_FORM);
+                        form = new File(layerPath,  ConstantsUI.FILE_FORM);
                         formPrefix = newDefForm;
                     }
                 }
@@ -125,28 +178,10 @@ public final class LayerUtil {
             HyperLog.exception(Constants.TAG, exception);
         }
 
-        if (form.exists()) {
-            //show custom form
-            intent = new Intent(context, FormBuilderModifyAttributesActivity.class);
-            intent.putExtra(KEY_FORM_PATH, form);
-            File meta = new File(layer.getPath(), formPrefix + LayerFillService.NGFP_META);
-            if (meta.exists())
-                intent.putExtra(KEY_META_PATH, meta);
-        } else {
-            //if not exist show standard form
-            intent = new Intent(context, ModifyAttributesActivity.class);
-        }
-
-        intent.putExtra(KEY_LAYER_ID, layer.getId());
-        intent.putExtra(KEY_FEATURE_ID, featureId);
-        intent.putExtra(KEY_GEOMETRY_CHANGED, isGeometryChanged);
-        if (null != geometry)
-            intent.putExtra(KEY_GEOMETRY, geometry);
-
-        ((Activity) context).startActivityForResult(intent, IVectorLayerUI.MODIFY_REQUEST);
+        File meta = new File(layerPath, formPrefix + LayerFillService.NGFP_META);
+        return new File[]{form, meta.exists() ? meta : null};
     }
 
-
     public static String findFormJsonPrefix(String directoryPath) {
         File dir = new File(directoryPath);
 
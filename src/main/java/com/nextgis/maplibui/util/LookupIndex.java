@@ -0,0 +1,316 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Values and aliases of a lookup table with a search index for autocomplete. Queries of three
+ * letters and more are answered from the intersection of trigram postings, so they do not scan
+ * the table, shorter ones scan the folded aliases. The index is built on the first search.
+ */
+public class LookupIndex
+{
+    protected static final int GRAM_SIZE = 3;
+
+    protected final String[]             mAliases;
+    protected final String[]             mValues;
+    protected final Map<String, String>  mAliasValueMap;
+    protected final Map<String, Integer> mValuePositions;
+    protected final String[]             mDistinct;
+
+    protected String[]           mLower;
+    protected Map<String, int[]> mGrams;
+
+
+    /**
+     * @param aliases
+     *         aliases in display order
+     * @param values
+     *         values of the aliases
+     */
+    public LookupIndex(
+            List<String> aliases,
+            List<String> values)
+    {
+        mAliases = aliases.toArray(new String[0]);
+        mValues = values.toArray(new String[0]);
+
+        Map<String, String> aliasValueMap = new LinkedHashMap<>(mAliases.length * 2);
+        mValuePositions = new HashMap<>(mAliases.length * 2);
+        for (int i = 0; i < mAliases.length; i++) {
+            aliasValueMap.put(mAliases[i], mValues[i]);
+            if (!mValuePositions.containsKey(mValues[i])) {
+                mValuePositions.put(mValues[i], i);
+            }
+        }
+        mAliasValueMap = Collections.unmodifiableMap(aliasValueMap);
+        mDistinct = aliasValueMap.keySet().toArray(new String[0]);
+    }
+
+
+    /**
+     * @return all aliases in display order, duplicates included
+     */
+    public List<String> getAliases()
+    {
+        return Collections.unmodifiableList(Arrays.asList(mAliases));
+    }
+
+
+    /**
+     * @return distinct aliases in display order
+     */
+    public List<String> getDistinctAliases()
+    {
+        return Collections.unmodifiableList(Arrays.asList(mDistinct));
+    }
+
+
+    public Map<String, String> getAliasValueMap()
+    {
+        return mAliasValueMap;
+    }
+
+
+    /**
+     * @return position of the value in {@link #getAliases()} or -1
+     */
+    public int getPosition(String value)
+    {
+        Integer position = null == value ? null : mValuePositions.get(value);
+        return null == position ? -1 : position;
+    }
+
+
+    /**
+     * @return alias of the value or null
+     */
+    public String getAlias(String value)
+    {
+        int position = getPosition(value);
+        return position < 0 ? null : mAliases[position];
+    }
+
+
+    public int size()
+    {
+        return mAliases.length;
+    }
+
+
+    /**
+     * Aliases containing the text, case insensitive regardless of the locale. Aliases starting
+     * with the text come first, otherwise the display order is kept.
+     *
+     * @param limit
+     *         maximum number of results
+     */
+    public List<String> search(
+            CharSequence text,
+            int limit)
+    {
+        if (null == text || text.length() == 0) {
+            return getDistinctAliases().subList(0, Math.min(limit, mDistinct.length));
+        }
+
+        buildIndex();
+        String query = fold(text.toString());
+
+        if (query.length() < GRAM_SIZE) {
+            return match(query, null, limit);
+        }
+
+        int[] candidates = null;
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_SIZE <= query.length(); i++) {
+            grams.add(query.substring(i, i + GRAM_SIZE));
+        }
+        for (String gram : grams) {
+            int[] postings = mGrams.get(gram);
+            if (null == postings) {
+                return new ArrayList<>();
+            }
+            candidates = null == candidates ? postings : intersect(candidates, postings);
+            if (candidates.length == 0) {
+                return new ArrayList<>();
+            }
+        }
+
+        return match(query, candidates, limit);
+    }
+
+
+    /**
+     * @param candidates
+     *         ascending ids to check or null to check all aliases
+     */
+    protected List<String> match(
+            String query,
+            int[] candidates,
+            int limit)
+    {
+        int count = null == candidates ? mLower.length : candidates.length;
+        List<String> starting = new ArrayList<>();
+        List<String> containing = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (starting.size() >= limit) {
+                break;
+            }
+            int id = null == candidates ? i : candidates[i];
+            String lower = mLower[id];
+            if (lower.startsWith(query)) {
+                starting.add(mDistinct[id]);
+            } else if (containing.size() < limit && lower.contains(query)) {
+                containing.add(mDistinct[id]);
+            }
+        }
+
+        for (int i = 0; starting.size() < limit && i < containing.size(); i++) {
+            starting.add(containing.get(i));
+        }
+        return starting;
+    }
+
+
+    protected synchronized void buildIndex()
+    {
+        if (null != mGrams) {
+            return;
+        }
+
+        String[] lowerAliases = new String[mDistinct.length];
+        Map<String, IntList> grams = new HashMap<>();
+
+        for (int id = 0; id < mDistinct.length; id++) {
+            String lower = fold(mDistinct[id]);
+            lowerAliases[id] = lower;
+
+            for (int i = 0; i + GRAM_SIZE <= lower.length(); i++) {
+                add(grams, lower.substring(i, i + GRAM_SIZE), id);
+            }
+        }
+
+        mLower = lowerAliases;
+        mGrams = toArrays(grams);
+    }
+
+
+    /**
+     * Lower case of every char, independent of the locale. Unlike {@link String#toLowerCase()}
+     * it keeps the length, e.g. for the capital I with dot above.
+     */
+    protected static String fold(String text)
+    {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+
+    protected static void add(
+            Map<String, IntList> postings,
+            String key,
+            int id)
+    {
+        IntList list = postings.get(key);
+        if (null == list) {
+            list = new IntList();
+            postings.put(key, list);
+        }
+        list.addOnce(id);
+    }
+
+
+    protected static Map<String, int[]> toArrays(Map<String, IntList> postings)
+    {
+        Map<String, int[]> result = new HashMap<>(postings.size() * 2);
+        for (Map.Entry<String, IntList> entry : postings.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return result;
+    }
+
+
+    /**
+     * Intersection of ascending postings
+     */
+    protected static int[] intersect(
+            int[] first,
+            int[] second)
+    {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < first.length && j < second.length; ) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+
+    protected static class IntList
+    {
+        int[] mItems = new int[4];
+        int   mSize;
+
+
+        /**
+         * Ids are added in ascending order, so a repeated id is the last one
+         */
+        void addOnce(int id)
+        {
+            if (mSize > 0 && mItems[mSize - 1] == id) {
+                return;
+            }
+            if (mSize == mItems.length) {
+                mItems = Arrays.copyOf(mItems, mSize * 2);
+            }
+            mItems[mSize++] = id;
+        }
+
+
+        int[] toArray()
+        {
+            return Arrays.copyOf(mItems, mSize);
+        }
+    }
+}
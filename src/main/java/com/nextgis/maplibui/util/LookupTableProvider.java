@@ -0,0 +1,157 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import com.nextgis.maplib.api.ILayer;
+import com.nextgis.maplib.map.MapBase;
+import com.nextgis.maplib.map.MapContentProviderHelper;
+import com.nextgis.maplib.map.NGWLookupTable;
+import com.nextgis.maplibui.GISApplication;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared access to lookup tables of the map for form controls. Tables are resolved by account
+ * and remote id without walking the layers, and their values are kept as a {@link LookupIndex}
+ * until the table data is replaced by a sync.
+ */
+public final class LookupTableProvider
+{
+    protected static final Map<String, NGWLookupTable> mTables  = new HashMap<>();
+    protected static final Map<String, Entry>          mIndexes = new HashMap<>();
+
+
+    private LookupTableProvider()
+    {
+    }
+
+
+    protected static String getKey(
+            String account,
+            long remoteId)
+    {
+        return account + "|" + remoteId;
+    }
+
+
+    /**
+     * @return the lookup table or null if it is not in the map or the map is not loaded yet
+     */
+    public static synchronized NGWLookupTable getTable(
+            String account,
+            long remoteId)
+    {
+        MapBase map = GISApplication.getLoadedMap();
+        if (null == map) {
+            // the main thread does not wait while the map is loaded
+            return null;
+        }
+        if (!(map instanceof MapContentProviderHelper)) {
+            throw new IllegalArgumentException("The map should extends MapContentProviderHelper or inherited");
+        }
+
+        String key = getKey(account, remoteId);
+        NGWLookupTable table = mTables.get(key);
+        if (null != table && map.getLayerById(table.getId()) == table) {
+            return table;
+        }
+
+        // tables were added or removed
+        mTables.clear();
+        for (int i = 0; i < map.getLayerCount(); i++) {
+            ILayer layer = map.getLayer(i);
+            if (layer instanceof NGWLookupTable) {
+                NGWLookupTable lookupTable = (NGWLookupTable) layer;
+                mTables.put(getKey(lookupTable.getAccountName(), lookupTable.getRemoteId()), lookupTable);
+            }
+        }
+        return mTables.get(key);
+    }
+
+
+    /**
+     * @return values of the lookup table or null if it is not in the map
+     */
+    public static synchronized LookupIndex getIndex(
+            String account,
+            long remoteId)
+    {
+        NGWLookupTable table = getTable(account, remoteId);
+        if (null == table) {
+            return null;
+        }
+
+        String key = getKey(account, remoteId);
+        Map<String, String> data = table.getData();
+        Entry entry = mIndexes.get(key);
+        if (null != entry && entry.mTable == table && entry.mData == data && entry.mSize == data.size()) {
+            return entry.mIndex;
+        }
+
+        List<String> aliases = new ArrayList<>(data.size());
+        List<String> values = new ArrayList<>(data.size());
+        for (Map.Entry<String, String> value : data.entrySet()) {
+            values.add(value.getKey());
+            aliases.add(value.getValue());
+        }
+
+        entry = new Entry(table, data, new LookupIndex(aliases, values));
+        mIndexes.put(key, entry);
+        return entry.mIndex;
+    }
+
+
+    /**
+     * Drop cached values, e.g. after lookup tables are synced, created or deleted
+     */
+    public static synchronized void invalidate()
+    {
+        mTables.clear();
+        mIndexes.clear();
+    }
+
+
+    protected static class Entry
+    {
+        final NGWLookupTable      mTable;
+        final Map<String, String> mData;
+        final int                 mSize;
+        final LookupIndex         mIndex;
+
+
+        Entry(
+                NGWLookupTable table,
+                Map<String, String> data,
+                LookupIndex index)
+        {
+            mTable = table;
+            mData = data;
+            mSize = data.size();
+            mIndex = index;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process progress of background tasks. Workers publish every tick, listeners get only the
+ * latest state of each task not more often than once per frame, on the main thread.
+ */
+public class ProgressChannel
+{
+    public static final long FRAME_INTERVAL = 100; // ms
+
+    protected static final long  RATE_INTERVAL = 500; // ms
+    protected static final float RATE_SMOOTH   = 0.3f;
+
+    protected final Handler                  mHandler   = new Handler(Looper.getMainLooper());
+    protected final List<OnProgressListener> mListeners = new CopyOnWriteArrayList<>();
+    protected final Map<Integer, Tracker>    mTrackers  = new HashMap<>();
+    protected       long                     mLastDelivery;
+    protected       boolean                  mScheduled;
+
+    protected final Runnable mDeliver = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            deliver();
+        }
+    };
+
+
+    public interface OnProgressListener
+    {
+        void onProgress(Progress progress);
+    }
+
+
+    public void addListener(OnProgressListener listener)
+    {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+
+    public void removeListener(OnProgressListener listener)
+    {
+        mListeners.remove(listener);
+    }
+
+
+    public void publish(
+            int id,
+            int value,
+            int max)
+    {
+        publish(id, value, max, null, false);
+    }
+
+
+    /**
+     * Store the task state. May be called from any thread for every processed item.
+     */
+    public synchronized void publish(
+            int id,
+            int value,
+            int max,
+            String message,
+            boolean indeterminate)
+    {
+        long now = SystemClock.elapsedRealtime();
+        Tracker tracker = mTrackers.get(id);
+        if (null == tracker || value < tracker.mValue) {
+            tracker = new Tracker(now, value);
+            mTrackers.put(id, tracker);
+        }
+
+        tracker.mValue = value;
+        tracker.mMax = max;
+        tracker.mMessage = message;
+        tracker.mIndeterminate = indeterminate;
+        tracker.mDirty = true;
+
+        if (!mScheduled) {
+            mScheduled = true;
+            mHandler.postDelayed(mDeliver, Math.max(0, mLastDelivery + FRAME_INTERVAL - now));
+        }
+    }
+
+
+    /**
+     * Forget the task, its pending state is not delivered
+     */
+    public synchronized void remove(int id)
+    {
+        mTrackers.remove(id);
+    }
+
+
+    /**
+     * Forget all tasks, e.g. before the final status of a service is sent another way
+     */
+    public synchronized void clear()
+    {
+        mTrackers.clear();
+        mHandler.removeCallbacks(mDeliver);
+        mScheduled = false;
+    }
+
+
+    protected void deliver()
+    {
+        List<Progress> ready = new ArrayList<>();
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            for (Map.Entry<Integer, Tracker> entry : mTrackers.entrySet()) {
+                Tracker tracker = entry.getValue();
+                if (tracker.mDirty) {
+                    tracker.mDirty = false;
+                    tracker.updateRate(now);
+                    ready.add(tracker.toProgress(entry.getKey()));
+                }
+            }
+            mLastDelivery = now;
+            mScheduled = false;
+        }
+
+        for (OnProgressListener listener : mListeners) {
+            for (Progress progress : ready) {
+                listener.onProgress(progress);
+            }
+        }
+    }
+
+
+    protected static class Tracker
+    {
+        int     mValue, mMax;
+        String  mMessage;
+        boolean mIndeterminate, mDirty;
+        long    mRateTime;
+        int     mRateValue;
+        float   mRate;
+
+
+        Tracker(
+                long time,
+                int value)
+        {
+            mRateTime = time;
+            mRateValue = value;
+        }
+
+
+        void updateRate(long now)
+        {
+            long elapsed = now - mRateTime;
+            if (elapsed < RATE_INTERVAL) {
+                return;
+            }
+
+            float rate = (mValue - mRateValue) * 1000f / elapsed;
+            mRate = mRate == 0 ? rate : mRate + (rate - mRate) * RATE_SMOOTH;
+            mRateTime = now;
+            mRateValue = mValue;
+        }
+
+
+        Progress toProgress(int id)
+        {
+            long eta = -1;
+            if (mRate > 0 && mMax > mValue) {
+                eta = (long) ((mMax - mValue) * 1000f / mRate);
+            }
+            return new Progress(id, mValue, mMax, mMessage, mIndeterminate, mRate, eta);
+        }
+    }
+
+
+    public static class Progress
+    {
+        public final int     mId;
+        public final int     mValue;
+        public final int     mMax;
+        public final String  mMessage;
+        public final boolean mIndeterminate;
+        /** processed items per second, 0 if not known yet */
+        public final float   mRate;
+        /** estimated time left in ms, -1 if not known yet */
+        public final long    mEta;
+
+
+        Progress(
+                int id,
+                int value,
+                int max,
+                String message,
+                boolean indeterminate,
+                float rate,
+                long eta)
+        {
+            mId = id;
+            mValue = value;
+            mMax = max;
+            mMessage = message;
+            mIndeterminate = indeterminate;
+            mRate = rate;
+            mEta = eta;
+        }
+    }
+}
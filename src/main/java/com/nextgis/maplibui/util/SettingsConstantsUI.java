@@ -51,6 +51,8 @@ public interface SettingsConstantsUI
     String KEY_PREF_MAP_BG               = "map_bg";
     String KEY_PREF_LAYER_LABEL          = "layer_label";
     String KEY_PREF_SHOW_GEO_DIALOG      = "show_geo_dialog";
+    String KEY_PREF_TRACKS_FLUSH_INTERVAL = "tracks_flush_interval";
+    String KEY_PREF_TRACKS_FLUSH_SIZE     = "tracks_flush_size";
 
 
     String KEY_PREF_OFFLINE_SYNC_ON     = "offline_sync_on";
@@ -0,0 +1,249 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.nextgis.maplib.datasource.GeoEnvelope;
+import com.nextgis.maplib.datasource.TileItem;
+import com.nextgis.maplib.map.RemoteTMSLayer;
+import com.nextgis.maplib.util.NetworkUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+
+/**
+ * Estimates disk usage and download time for a tile download task. Average tile size and time
+ * are measured by downloading a few tiles, the tile count comes from
+ * {@link TileEnumerator#getTileCount}.
+ */
+public class TileDownloadEstimator
+{
+    protected static final String HTTP_GET    = "GET";
+    protected static final int    TIMEOUT     = 15000;
+    protected static final int    BUFFER_SIZE = 8192;
+
+    protected final RemoteTMSLayer mLayer;
+    protected final GeoEnvelope    mEnvelope;
+    protected final int            mThreadCount;
+
+    protected volatile boolean mIsSampled;
+    protected          boolean mIsSampleTried;
+    protected volatile long    mAverageSize;
+    protected volatile long    mAverageTime;
+
+
+    public TileDownloadEstimator(
+            RemoteTMSLayer layer,
+            GeoEnvelope envelope,
+            int threadCount)
+    {
+        mLayer = layer;
+        mEnvelope = envelope;
+        mThreadCount = Math.max(1, threadCount);
+    }
+
+
+    public boolean isSampled()
+    {
+        return mIsSampled;
+    }
+
+
+    /**
+     * Download up to sampleCount tiles evenly spread over the envelope at the zoom level and
+     * remember their average size and download time. Nothing is written to the layer cache.
+     * Tiles are downloaded once, later calls wait for the first one and reuse its result, so
+     * the server is not hit again when the zoom range changes.
+     *
+     * @return true if at least one tile was downloaded
+     */
+    public synchronized boolean sample(
+            int zoom,
+            int sampleCount)
+    {
+        if (mIsSampleTried) {
+            return mIsSampled;
+        }
+        mIsSampleTried = true;
+
+        TileEnumerator tiles = new TileEnumerator(mEnvelope, Collections.singletonList(zoom),
+                mLayer.getTMSType());
+        long total = tiles.getTotal();
+        int count = (int) Math.min(sampleCount, total);
+
+        long bytes = 0, time = 0;
+        int downloaded = 0;
+        for (int i = 0; i < count; i++) {
+            tiles.seek(total * i / count + total / (2 * count));
+            if (!tiles.hasNext()) {
+                break;
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            long size = fetchTileSize(mLayer, tiles.next());
+            if (size > 0) {
+                time += SystemClock.elapsedRealtime() - start;
+                bytes += size;
+                downloaded++;
+            }
+        }
+
+        if (downloaded == 0) {
+            return false;
+        }
+
+        mAverageSize = bytes / downloaded;
+        mAverageTime = time / downloaded;
+        mIsSampled = true;
+        return true;
+    }
+
+
+    public long getAverageTileSize()
+    {
+        return mAverageSize;
+    }
+
+
+    /**
+     * @return expected disk usage in bytes or -1 if tiles are not sampled
+     */
+    public long getBytes(long tileCount)
+    {
+        return mIsSampled ? tileCount * mAverageSize : -1;
+    }
+
+
+    /**
+     * @return expected download time in seconds or -1 if tiles are not sampled
+     */
+    public long getSeconds(long tileCount)
+    {
+        return mIsSampled ? tileCount * mAverageTime / mThreadCount / 1000 : -1;
+    }
+
+
+    public static String getTileUrl(
+            RemoteTMSLayer layer,
+            TileItem tile)
+    {
+        String url = layer.getURL();
+        if (TextUtils.isEmpty(url)) {
+            return null;
+        }
+
+        url = expandSubdomains(url, tile.getX() + tile.getY());
+        url = url.replace("{x}", Integer.toString(tile.getX()))
+                .replace("{y}", Integer.toString(tile.getY()))
+                .replace("{z}", Integer.toString(tile.getZoomLevel()));
+        return url.contains("{") ? null : url;
+    }
+
+
+    /**
+     * Replace the {a,b,c} subdomain template with one of the hosts, neighbour tiles go to
+     * different hosts.
+     */
+    public static String expandSubdomains(
+            String url,
+            int seed)
+    {
+        int start = url.indexOf('{');
+        while (start >= 0) {
+            int end = url.indexOf('}', start);
+            if (end < 0) {
+                break;
+            }
+
+            String[] hosts = url.substring(start + 1, end).split(",");
+            if (hosts.length > 1) {
+                String host = hosts[Math.abs(seed % hosts.length)].trim();
+                return url.substring(0, start) + host + url.substring(end + 1);
+            }
+            start = url.indexOf('{', end);
+        }
+        return url;
+    }
+
+
+    public static HttpURLConnection openConnection(
+            RemoteTMSLayer layer,
+            String target)
+            throws IOException
+    {
+        // the same connection and credentials the layer downloads its tiles with
+        HttpURLConnection conn = NetworkUtil.getHttpConnection(HTTP_GET, target,
+                layer.getLogin(), layer.getPassword());
+        if (null == conn) {
+            throw new IOException("Failed to open the connection to " + target);
+        }
+
+        conn.setConnectTimeout(TIMEOUT);
+        conn.setReadTimeout(TIMEOUT);
+        return conn;
+    }
+
+
+    protected static long fetchTileSize(
+            RemoteTMSLayer layer,
+            TileItem tile)
+    {
+        String target = getTileUrl(layer, tile);
+        if (null == target) {
+            return -1;
+        }
+
+        HttpURLConnection conn = null;
+        try {
+            conn = openConnection(layer, target);
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return -1;
+            }
+
+            InputStream is = conn.getInputStream();
+            long size = 0;
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    size += read;
+                }
+            } finally {
+                is.close();
+            }
+            return size;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        } finally {
+            if (null != conn) {
+                conn.disconnect();
+            }
+        }
+    }
+}
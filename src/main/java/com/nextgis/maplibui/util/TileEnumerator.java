@@ -0,0 +1,236 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import com.nextgis.maplib.datasource.GeoEnvelope;
+import com.nextgis.maplib.datasource.TileItem;
+import com.nextgis.maplib.util.GeoConstants;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams tiles covering an envelope for a set of zoom levels without materialising them.
+ * Tiles are enumerated zoom by zoom, column by column, in the same order as
+ * {@link com.nextgis.maplib.util.MapUtil#getTileItems}, so every tile has a stable ordinal which
+ * can be used as a download checkpoint.
+ */
+public class TileEnumerator
+        implements Iterator<TileItem>
+{
+    protected final List<ZoomRange> mRanges;
+    protected final int             mTmsType;
+    protected final long            mTotal;
+
+    protected int  mRange;
+    protected long mPosition;
+    protected long mRangeOffset;
+
+
+    public TileEnumerator(
+            GeoEnvelope bounds,
+            List<Integer> zoomList,
+            int tmsType)
+    {
+        this(bounds, zoomList, tmsType, Long.MAX_VALUE);
+    }
+
+
+    /**
+     * @param maxTiles
+     *         zoom levels are added while the total count does not exceed this value. The zoom
+     *         which crosses the limit is still included.
+     */
+    public TileEnumerator(
+            GeoEnvelope bounds,
+            List<Integer> zoomList,
+            int tmsType,
+            long maxTiles)
+    {
+        mTmsType = tmsType;
+        mRanges = new ArrayList<>(zoomList.size());
+        long total = 0;
+        for (Integer zoom : zoomList) {
+            ZoomRange range = new ZoomRange(bounds, zoom);
+            mRanges.add(range);
+            total += range.mCount;
+            if (total > maxTiles) {
+                break;
+            }
+        }
+        mTotal = total;
+    }
+
+
+    /**
+     * Analytic tile count for the envelope at the zoom level.
+     */
+    public static long getTileCount(
+            GeoEnvelope bounds,
+            int zoom)
+    {
+        return new ZoomRange(bounds, zoom).mCount;
+    }
+
+
+    public long getTotal()
+    {
+        return mTotal;
+    }
+
+
+    /**
+     * @return the ordinal of the tile which will be returned by the next {@link #next()} call
+     */
+    public long getPosition()
+    {
+        return mPosition;
+    }
+
+
+    /**
+     * Move to the tile with the ordinal without enumerating preceding tiles.
+     */
+    public void seek(long position)
+    {
+        if (position < 0) {
+            position = 0;
+        }
+        mRange = 0;
+        mRangeOffset = 0;
+        while (mRange < mRanges.size()
+                && mRangeOffset + mRanges.get(mRange).mCount <= position) {
+            mRangeOffset += mRanges.get(mRange).mCount;
+            mRange++;
+        }
+        mPosition = Math.min(position, mTotal);
+    }
+
+
+    @Override
+    public boolean hasNext()
+    {
+        return mPosition < mTotal;
+    }
+
+
+    @Override
+    public TileItem next()
+    {
+        while (mRange < mRanges.size()
+                && mPosition - mRangeOffset >= mRanges.get(mRange).mCount) {
+            mRangeOffset += mRanges.get(mRange).mCount;
+            mRange++;
+        }
+        if (mRange >= mRanges.size()) {
+            throw new NoSuchElementException();
+        }
+
+        ZoomRange range = mRanges.get(mRange);
+        long index = mPosition - mRangeOffset;
+        mPosition++;
+        return range.getTile((int) (index / range.mRows), (int) (index % range.mRows), mTmsType);
+    }
+
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+
+    protected static class ZoomRange
+    {
+        final int    mZoom;
+        final int    mTilesInMap;
+        final double mTileSize;
+        final int    mBegX, mBegY;
+        final int    mColumns, mRows;
+        final long   mCount;
+
+
+        ZoomRange(
+                GeoEnvelope bounds,
+                int zoom)
+        {
+            mZoom = zoom;
+            mTilesInMap = 1 << zoom;
+            double half = mTilesInMap * 0.5;
+            mTileSize = GeoConstants.MERCATOR_MAX * 2 / mTilesInMap;
+
+            int begX = (int) Math.floor(bounds.getMinX() / mTileSize + half);
+            int begY = (int) Math.floor(bounds.getMinY() / mTileSize + half);
+            int endX = (int) Math.ceil(bounds.getMaxX() / mTileSize + half);
+            int endY = (int) Math.ceil(bounds.getMaxY() / mTileSize + half);
+            if (begX == endX) {
+                endX++;
+            }
+            if (begY == endY) {
+                endY++;
+            }
+            if (begY < 0) {
+                begY = 0;
+            }
+            if (endY > mTilesInMap) {
+                endY = mTilesInMap;
+            }
+
+            mBegX = begX;
+            mBegY = begY;
+            mColumns = Math.max(endX - begX, 0);
+            mRows = Math.max(endY - begY, 0);
+            mCount = (long) mColumns * mRows;
+        }
+
+
+        TileItem getTile(
+                int column,
+                int row,
+                int tmsType)
+        {
+            int x = mBegX + column;
+            int y = mBegY + row;
+
+            int realX = x;
+            if (realX < 0) {
+                realX += mTilesInMap;
+            } else if (realX >= mTilesInMap) {
+                realX -= mTilesInMap;
+            }
+
+            int realY = y;
+            if (tmsType == GeoConstants.TMSTYPE_OSM) {
+                realY = mTilesInMap - y - 1;
+            }
+
+            double minX = -GeoConstants.MERCATOR_MAX + realX * mTileSize;
+            double minY = -GeoConstants.MERCATOR_MAX + y * mTileSize;
+            GeoEnvelope env = new GeoEnvelope(minX, minX + mTileSize, minY, minY + mTileSize);
+            return new TileItem(realX, realY, mZoom, env);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Lets several threads write entries of one zip archive concurrently. Each writer spools its
+ * entry to memory (or to a temp file when it grows), completed spools are copied in completion
+ * order as soon as the archive is free. An entry which failed is discarded and never reaches the
+ * archive.
+ */
+public class ZipFunnel
+{
+    protected static final int  BUFFER_SIZE         = 8192;
+    protected static final long SPOOL_MEMORY_LIMIT  = 4 * 1024 * 1024;
+
+    protected final ZipOutputStream mZos;
+    protected final File            mSpoolDir;
+    protected final ReentrantLock   mLock    = new ReentrantLock();
+    protected final Queue<Entry>    mPending = new ConcurrentLinkedQueue<>();
+    protected volatile boolean      mAborted;
+
+
+    public ZipFunnel(
+            ZipOutputStream zos,
+            File spoolDir)
+    {
+        mZos = zos;
+        mSpoolDir = spoolDir;
+    }
+
+
+    /**
+     * Open the entry for writing. Closing the returned stream completes the entry,
+     * {@link Entry#discard()} drops it.
+     *
+     * @param level
+     *         deflater level of the entry, e.g. {@link java.util.zip.Deflater#NO_COMPRESSION}
+     *         for already compressed data
+     */
+    public Entry openEntry(
+            String name,
+            int level)
+    {
+        return new Entry(name, level);
+    }
+
+
+    /**
+     * Copy the spooled entries left. Call after all entry streams are closed.
+     */
+    public void finish()
+            throws IOException
+    {
+        mLock.lock();
+        try {
+            drain();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+
+    /**
+     * Drop the spooled entries and fail further writes, e.g. when the export is canceled. Waits
+     * for an entry being copied now, the archive is not written after the call.
+     */
+    public void abort()
+    {
+        mAborted = true;
+        mLock.lock();
+        try {
+            Entry entry;
+            while ((entry = mPending.poll()) != null) {
+                entry.delete();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+
+    /**
+     * Must be called with the lock held
+     */
+    protected void drain()
+            throws IOException
+    {
+        Entry entry;
+        while ((entry = mPending.poll()) != null) {
+            if (mAborted) {
+                entry.delete();
+                continue;
+            }
+            try {
+                mZos.setLevel(entry.mLevel);
+                mZos.putNextEntry(new ZipEntry(entry.mName));
+                entry.copyTo(mZos);
+                mZos.closeEntry();
+            } finally {
+                entry.delete();
+            }
+        }
+    }
+
+
+    public class Entry
+            extends OutputStream
+    {
+        protected final String mName;
+        protected final int    mLevel;
+
+        protected ByteArrayOutputStream mMemory = new ByteArrayOutputStream(BUFFER_SIZE);
+        protected File                  mFile;
+        protected OutputStream          mFileStream;
+        protected boolean               mClosed;
+
+
+        Entry(
+                String name,
+                int level)
+        {
+            mName = name;
+            mLevel = level;
+        }
+
+
+        @Override
+        public void write(int b)
+                throws IOException
+        {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+
+        @Override
+        public void write(
+                byte[] b,
+                int off,
+                int len)
+                throws IOException
+        {
+            if (mAborted) {
+                throw new IOException("The archive is aborted");
+            }
+
+            if (mFileStream != null) {
+                mFileStream.write(b, off, len);
+                return;
+            }
+
+            if (mMemory.size() + len > SPOOL_MEMORY_LIMIT) {
+                mFile = File.createTempFile("spool", null, mSpoolDir);
+                mFileStream = new FileOutputStream(mFile);
+                mMemory.writeTo(mFileStream);
+                mMemory = null;
+                mFileStream.write(b, off, len);
+                return;
+            }
+
+            mMemory.write(b, off, len);
+        }
+
+
+        /**
+         * Complete the entry, it is copied to the archive if the archive is free now or later
+         * by another entry or {@link #finish()}.
+         */
+        @Override
+        public void close()
+                throws IOException
+        {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+
+            if (mFileStream != null) {
+                mFileStream.close();
+            }
+            mPending.add(this);
+
+            if (mLock.tryLock()) {
+                try {
+                    drain();
+                } finally {
+                    mLock.unlock();
+                }
+            }
+        }
+
+
+        /**
+         * Drop the entry written so far, it is not added to the archive
+         */
+        public void discard()
+        {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+
+            if (mFileStream != null) {
+                try {
+                    mFileStream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            delete();
+        }
+
+
+        void copyTo(OutputStream out)
+                throws IOException
+        {
+            if (mFile == null) {
+                mMemory.writeTo(out);
+                return;
+            }
+
+            InputStream is = new FileInputStream(mFile);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int length;
+                while ((length = is.read(buffer)) > 0) {
+                    out.write(buffer, 0, length);
+                }
+            } finally {
+                is.close();
+            }
+        }
+
+
+        void delete()
+        {
+            mMemory = null;
+            if (mFile != null) {
+                mFile.delete();
+            }
+        }
+    }
+}
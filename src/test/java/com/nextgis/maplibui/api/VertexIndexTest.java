@@ -0,0 +1,227 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VertexIndexTest
+{
+    protected static final float TOLERANCE = 20; // px
+
+
+    @Test
+    public void findMatchesFullScan()
+    {
+        Random random = new Random(7);
+        List<float[]> rings = createRings(random, 12, 60, 1080, 1920);
+        VertexIndex index = new VertexIndex();
+        index.build(rings);
+
+        for (int i = 0; i < 2000; i++) {
+            float x = random.nextFloat() * 1200 - 60;
+            float y = random.nextFloat() * 2040 - 60;
+            assertFound(index, rings, x - TOLERANCE, y - TOLERANCE, x + TOLERANCE, y + TOLERANCE);
+        }
+        // an envelope over many cells
+        assertFound(index, rings, 100, 200, 900, 1500);
+    }
+
+
+    @Test
+    public void equalDistanceFindsFirstPoint()
+    {
+        List<float[]> rings = new ArrayList<>();
+        rings.add(new float[] {0, 0, 50, 50, 100, 100});
+        rings.add(new float[] {60, 40, 40, 60, 50, 50});
+        VertexIndex index = new VertexIndex();
+        index.build(rings);
+
+        assertTrue(index.find(rings, 40, 40, 60, 60));
+        assertEquals(0, index.getFoundRing());
+        assertEquals(2, index.getFoundPoint());
+
+        rings.set(0, null);
+        index.build(rings);
+        assertTrue(index.find(rings, 40, 40, 60, 60));
+        assertEquals(1, index.getFoundRing());
+        assertEquals(4, index.getFoundPoint());
+        // 40, 60 and 50, 50 are as far from the center, the first one in the ring wins
+        assertTrue(index.find(rings, 30, 40, 70, 80));
+        assertEquals(1, index.getFoundRing());
+        assertEquals(2, index.getFoundPoint());
+    }
+
+
+    @Test
+    public void pointsOutsideEnvelopeAreNotFound()
+    {
+        List<float[]> rings = new ArrayList<>();
+        rings.add(new float[] {10, 10, 500, 500});
+        VertexIndex index = new VertexIndex();
+        index.build(rings);
+
+        assertFalse(index.find(rings, 20, 20, 490, 490));
+        assertEquals(-1, index.getFoundRing());
+        assertFalse(index.find(rings, 600, 600, 700, 700));
+        assertTrue(index.find(rings, 490, 490, 510, 510));
+        assertEquals(2, index.getFoundPoint());
+    }
+
+
+    @Test
+    public void emptyIndexFindsNothing()
+    {
+        VertexIndex index = new VertexIndex();
+        assertTrue(index.isDirty());
+
+        List<float[]> rings = new ArrayList<>();
+        index.build(rings);
+        assertFalse(index.isDirty());
+        assertFalse(index.find(rings, -10, -10, 10, 10));
+
+        rings.add(null);
+        rings.add(new float[0]);
+        index.build(rings);
+        assertFalse(index.find(rings, -10, -10, 10, 10));
+
+        index.invalidate();
+        assertTrue(index.isDirty());
+    }
+
+
+    @Test
+    public void rebuildReusesArrays()
+    {
+        Random random = new Random(11);
+        VertexIndex index = new VertexIndex();
+        index.build(createRings(random, 20, 100, 2000, 2000));
+
+        // fewer points in a smaller area leave stale data in the reused arrays
+        List<float[]> rings = createRings(random, 3, 10, 300, 300);
+        index.build(rings);
+        for (int i = 0; i < 500; i++) {
+            float x = random.nextFloat() * 300;
+            float y = random.nextFloat() * 300;
+            assertFound(index, rings, x - TOLERANCE, y - TOLERANCE, x + TOLERANCE, y + TOLERANCE);
+        }
+    }
+
+
+    @Test
+    public void longThinRing()
+    {
+        float[] points = new float[2000];
+        for (int i = 0; i < points.length; i += 2) {
+            points[i] = i * 50;
+            points[i + 1] = i % 4 == 0 ? 0 : 3;
+        }
+        List<float[]> rings = Arrays.asList(points);
+        VertexIndex index = new VertexIndex();
+        index.build(rings);
+
+        assertTrue(index.find(rings, 49990, -5, 50010, 5));
+        assertEquals(1000, index.getFoundPoint());
+        assertFound(index, rings, 20000, -10, 30000, 10);
+    }
+
+
+    protected static void assertFound(
+            VertexIndex index,
+            List<float[]> rings,
+            double minX,
+            double minY,
+            double maxX,
+            double maxY)
+    {
+        int[] expected = findNearest(rings, minX, minY, maxX, maxY);
+        boolean found = index.find(rings, minX, minY, maxX, maxY);
+        assertEquals(expected[0] != -1, found);
+        assertEquals(expected[0], index.getFoundRing());
+        assertEquals(expected[1], index.getFoundPoint());
+    }
+
+
+    protected static int[] findNearest(
+            List<float[]> rings,
+            double minX,
+            double minY,
+            double maxX,
+            double maxY)
+    {
+        double centerX = (minX + maxX) / 2, centerY = (minY + maxY) / 2;
+        double nearest = Double.MAX_VALUE;
+        int[] found = {-1, -1};
+        for (int ring = 0; ring < rings.size(); ring++) {
+            float[] points = rings.get(ring);
+            if (null == points) {
+                continue;
+            }
+
+            for (int i = 0; i < points.length - 1; i += 2) {
+                float x = points[i], y = points[i + 1];
+                if (x < minX || x > maxX || y < minY || y > maxY) {
+                    continue;
+                }
+
+                double distance = (x - centerX) * (x - centerX) + (y - centerY) * (y - centerY);
+                if (distance < nearest) {
+                    nearest = distance;
+                    found[0] = ring;
+                    found[1] = i;
+                }
+            }
+        }
+        return found;
+    }
+
+
+    protected static List<float[]> createRings(
+            Random random,
+            int count,
+            int size,
+            float width,
+            float height)
+    {
+        List<float[]> rings = new ArrayList<>();
+        for (int ring = 0; ring < count; ring++) {
+            float[] points = new float[size * 2];
+            for (int i = 0; i < points.length; i += 2) {
+                // rounded to get equal distances too
+                points[i] = Math.round(random.nextFloat() * width);
+                points[i + 1] = Math.round(random.nextFloat() * height);
+            }
+            rings.add(points);
+        }
+        return rings;
+    }
+}
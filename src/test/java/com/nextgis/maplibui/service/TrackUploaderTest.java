@@ -0,0 +1,504 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.service;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrackUploaderTest
+{
+    protected static final Pattern TIMESTAMP = Pattern.compile("\"ts\":(\\d+)");
+
+    protected HttpServer mServer;
+    protected String     mUrl;
+
+    // stand-in hub state
+    protected final List<Long>    mReceived  = Collections.synchronizedList(new ArrayList<Long>());
+    protected final List<Boolean> mGzipped   = Collections.synchronizedList(new ArrayList<Boolean>());
+    protected volatile boolean    mRefuseGzip;
+    protected volatile int        mFailAfter = Integer.MAX_VALUE;
+    protected volatile long       mDelay;
+
+
+    @Before
+    public void setUp()
+            throws IOException
+    {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/packet", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange)
+                    throws IOException
+            {
+                boolean gzip = "gzip".equals(
+                        exchange.getRequestHeaders().getFirst("Content-Encoding"));
+                byte[] body = read(gzip
+                        ? new GZIPInputStream(exchange.getRequestBody())
+                        : exchange.getRequestBody());
+
+                try {
+                    Thread.sleep(mDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                int code = 200;
+                if (gzip && mRefuseGzip) {
+                    code = 415;
+                } else if (mGzipped.size() >= mFailAfter) {
+                    code = 500;
+                } else {
+                    mGzipped.add(gzip);
+                    Matcher matcher = TIMESTAMP.matcher(new String(body, "UTF-8"));
+                    while (matcher.find()) {
+                        mReceived.add(Long.parseLong(matcher.group(1)));
+                    }
+                }
+                exchange.sendResponseHeaders(code, -1);
+                exchange.close();
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/packet";
+    }
+
+
+    @After
+    public void tearDown()
+    {
+        mServer.stop(0);
+    }
+
+
+    @Test
+    public void pagesByTimeAndIdAndMarksSentRows()
+    {
+        // three pages, every timestamp is shared by two points
+        int size = TrackUploader.PAGE_SIZE * 2 + 50;
+        PointTable table = new PointTable(size);
+        for (int i = 0; i < size; i++) {
+            table.add(i / 2);
+        }
+        FakeUploader uploader = new FakeUploader(mUrl, table);
+
+        assertEquals(table.size(), uploader.upload());
+        assertEquals(3, mGzipped.size());
+        assertFalse(mGzipped.contains(false));
+        assertEquals(table.size(), mReceived.size());
+        for (int i = 0; i < table.size(); i++) {
+            assertEquals(i / 2, (long) mReceived.get(i));
+        }
+        assertEquals(table.size(), table.countSent());
+        assertEquals(0, uploader.upload());
+        assertEquals(3, mGzipped.size());
+    }
+
+
+    @Test
+    public void pointsStoredDuringUploadAreNotMarked()
+    {
+        PointTable table = new PointTable(TrackUploader.PAGE_SIZE * 2);
+        for (int i = 0; i < TrackUploader.PAGE_SIZE; i++) {
+            table.add(7);
+        }
+        table.mAddOnQuery = TrackUploader.PAGE_SIZE;
+        FakeUploader uploader = new FakeUploader(mUrl, table);
+
+        // the second page is stored with the same timestamp after the first one was read
+        uploader.upload();
+        assertEquals(table.size(), mReceived.size());
+        assertEquals(table.size(), table.countSent());
+    }
+
+
+    @Test
+    public void failedPageIsNotMarked()
+    {
+        PointTable table = new PointTable(TrackUploader.PAGE_SIZE * 2);
+        for (int i = 0; i < TrackUploader.PAGE_SIZE * 2; i++) {
+            table.add(i);
+        }
+        mFailAfter = 1;
+        FakeUploader uploader = new FakeUploader(mUrl, table);
+
+        assertEquals(TrackUploader.PAGE_SIZE, uploader.upload());
+        assertEquals(TrackUploader.PAGE_SIZE, table.countSent());
+        for (int i = 0; i < TrackUploader.PAGE_SIZE; i++) {
+            assertTrue(table.mSent[i]);
+            assertFalse(table.mSent[i + TrackUploader.PAGE_SIZE]);
+        }
+
+        mFailAfter = Integer.MAX_VALUE;
+        assertEquals(TrackUploader.PAGE_SIZE, uploader.upload());
+        assertEquals(table.size(), table.countSent());
+    }
+
+
+    @Test
+    public void fallsBackToPlainBody()
+    {
+        PointTable table = new PointTable(10);
+        for (int i = 0; i < 10; i++) {
+            table.add(i);
+        }
+        mRefuseGzip = true;
+        FakeUploader uploader = new FakeUploader(mUrl, table);
+
+        assertEquals(10, uploader.upload());
+        assertEquals(1, mGzipped.size());
+        assertFalse(mGzipped.get(0));
+        assertFalse(uploader.mCompress);
+        assertEquals(10, table.countSent());
+    }
+
+
+    @Test
+    public void sendsInTimestampOrder()
+    {
+        // rows stored out of time order, e.g. points of a previous run written late
+        int size = TrackUploader.PAGE_SIZE + 20;
+        PointTable table = new PointTable(size);
+        for (int i = 0; i < size; i++) {
+            table.add(size - i);
+        }
+        FakeUploader uploader = new FakeUploader(mUrl, table);
+
+        assertEquals(size, uploader.upload());
+        assertEquals(size, mReceived.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals(i + 1, (long) mReceived.get(i));
+        }
+    }
+
+
+    @Test
+    public void concurrentUploadsSendPointsOnce()
+            throws InterruptedException
+    {
+        int size = TrackUploader.PAGE_SIZE * 3;
+        PointTable table = new PointTable(size);
+        for (int i = 0; i < size; i++) {
+            table.add(i);
+        }
+        mDelay = 50;
+        final FakeUploader uploader = new FakeUploader(mUrl, table);
+
+        // the tracker's sender thread and the uploader thread at once
+        Thread other = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                uploader.upload();
+            }
+        });
+        other.start();
+        uploader.upload();
+        other.join();
+
+        assertEquals(size, mReceived.size());
+        assertEquals(3, mGzipped.size());
+        assertEquals(size, table.countSent());
+    }
+
+
+    protected static byte[] read(InputStream is)
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        is.close();
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Track points table, the row id is the index + 1
+     */
+    protected static class PointTable
+    {
+        protected final long[]    mTimestamps;
+        protected final boolean[] mSent;
+        protected       int       mSize;
+        protected       int       mAddOnQuery;
+
+
+        public PointTable(int capacity)
+        {
+            mTimestamps = new long[capacity];
+            mSent = new boolean[capacity];
+        }
+
+
+        public void add(long seconds)
+        {
+            mTimestamps[mSize++] = seconds * 1000;
+        }
+
+
+        public int size()
+        {
+            return mSize;
+        }
+
+
+        public int countSent()
+        {
+            int count = 0;
+            for (int i = 0; i < mSize; i++) {
+                if (mSent[i]) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+
+        public synchronized Cursor query(
+                long lastTime,
+                long lastId)
+        {
+            List<Integer> rows = new ArrayList<>();
+            for (int i = 0; i < mSize; i++) {
+                long time = mTimestamps[i];
+                if (!mSent[i] && (time > lastTime || time == lastTime && i + 1 > lastId)) {
+                    rows.add(i);
+                }
+            }
+            // ORDER BY timestamp, rowid LIMIT page
+            Collections.sort(rows, new Comparator<Integer>()
+            {
+                @Override
+                public int compare(
+                        Integer lhs,
+                        Integer rhs)
+                {
+                    int result = Long.compare(mTimestamps[lhs], mTimestamps[rhs]);
+                    return result != 0 ? result : Integer.compare(lhs, rhs);
+                }
+            });
+            if (rows.size() > TrackUploader.PAGE_SIZE) {
+                rows = new ArrayList<>(rows.subList(0, TrackUploader.PAGE_SIZE));
+            }
+            Cursor cursor = new PointCursor(this, rows);
+
+            // points written by the tracker meanwhile, with the timestamp of the last read one
+            for (; mAddOnQuery > 0; mAddOnQuery--) {
+                add(mTimestamps[mSize - 1] / 1000);
+            }
+            return cursor;
+        }
+    }
+
+
+    protected static class PointCursor
+            extends AbstractCursor
+    {
+        protected final PointTable    mTable;
+        protected final List<Integer> mRows;
+        protected       int           mPosition = -1;
+
+
+        public PointCursor(
+                PointTable table,
+                List<Integer> rows)
+        {
+            mTable = table;
+            mRows = rows;
+        }
+
+
+        @Override
+        public int getCount()
+        {
+            return mRows.size();
+        }
+
+
+        @Override
+        public int getPosition()
+        {
+            return mPosition;
+        }
+
+
+        @Override
+        public boolean moveToPosition(int position)
+        {
+            mPosition = Math.max(-1, Math.min(position, mRows.size()));
+            return mPosition >= 0 && mPosition < mRows.size();
+        }
+
+
+        @Override
+        public boolean moveToFirst()
+        {
+            return moveToPosition(0);
+        }
+
+
+        @Override
+        public boolean moveToNext()
+        {
+            return moveToPosition(mPosition + 1);
+        }
+
+
+        @Override
+        public void close()
+        {
+        }
+
+
+        @Override
+        public String[] getColumnNames()
+        {
+            return TrackUploader.PROJECTION;
+        }
+
+
+        @Override
+        public String getString(int column)
+        {
+            return 5 == column ? "3d" : Double.toString(getDouble(column));
+        }
+
+
+        @Override
+        public short getShort(int column)
+        {
+            return (short) getLong(column);
+        }
+
+
+        @Override
+        public int getInt(int column)
+        {
+            return (int) getLong(column);
+        }
+
+
+        @Override
+        public long getLong(int column)
+        {
+            int row = mRows.get(mPosition);
+            switch (column) {
+                case 2:
+                    return mTable.mTimestamps[row];
+                case TrackUploader.COLUMN_ROW_ID:
+                    return row + 1;
+                default:
+                    return row;
+            }
+        }
+
+
+        @Override
+        public float getFloat(int column)
+        {
+            return getLong(column);
+        }
+
+
+        @Override
+        public double getDouble(int column)
+        {
+            return getLong(column);
+        }
+
+
+        @Override
+        public boolean isNull(int column)
+        {
+            return false;
+        }
+    }
+
+
+    protected static class FakeUploader
+            extends TrackUploader
+    {
+        protected final PointTable mTable;
+
+
+        public FakeUploader(
+                String url,
+                PointTable table)
+        {
+            super(null, null, url);
+            mTable = table;
+        }
+
+
+        @Override
+        protected Cursor queryPage(
+                long lastTime,
+                long lastId)
+        {
+            return mTable.query(lastTime, lastId);
+        }
+
+
+        @Override
+        protected void markSent(
+                long[] ids,
+                int count)
+        {
+            synchronized (mTable) {
+                for (int i = 0; i < count; i++) {
+                    mTable.mSent[(int) ids[i] - 1] = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import com.nextgis.maplib.datasource.GeoGeometry;
+import com.nextgis.maplib.datasource.GeoLineString;
+import com.nextgis.maplib.datasource.GeoLinearRing;
+import com.nextgis.maplib.datasource.GeoMultiPolygon;
+import com.nextgis.maplib.datasource.GeoPoint;
+import com.nextgis.maplib.datasource.GeoPolygon;
+import com.nextgis.maplib.util.GeoConstants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EditHistoryTest
+{
+    protected static final double DELTA = 1e-9;
+
+    protected File mJournal, mState;
+
+
+    @Before
+    public void setUp()
+            throws IOException
+    {
+        mJournal = File.createTempFile("history", ".journal");
+        mState = File.createTempFile("history", ".state");
+    }
+
+
+    @After
+    public void tearDown()
+    {
+        mJournal.delete();
+        mState.delete();
+    }
+
+
+    @Test
+    public void vertexMoveKeepsChangedVertex()
+    {
+        EditHistory history = new EditHistory(mJournal);
+        double[] line = {0, 0, 10, 0, 20, 0, 30, 0, 40, 0};
+        history.add(createLine(line));
+        assertFalse(history.canUndo());
+
+        double[] moved = line.clone();
+        moved[5] = 15;
+        history.add(createLine(moved));
+        assertTrue(history.canUndo());
+        assertEquals(1, history.mSteps.size());
+
+        List<EditHistory.Change> changes = history.mSteps.get(0).mChanges;
+        assertEquals(1, changes.size());
+        EditHistory.VertexSplice change = (EditHistory.VertexSplice) changes.get(0);
+        assertEquals(2, change.mStart);
+        assertArrayEquals(new double[] {20, 0}, change.mRemoved, DELTA);
+        assertArrayEquals(new double[] {20, 15}, change.mInserted, DELTA);
+
+        assertArrayEquals(line, toArray(history.undo()), DELTA);
+        assertFalse(history.canUndo());
+        assertNull(history.undo());
+        assertArrayEquals(moved, toArray(history.redo()), DELTA);
+        assertFalse(history.canRedo());
+        assertNull(history.redo());
+    }
+
+
+    @Test
+    public void insertAndDeleteVertices()
+    {
+        EditHistory history = new EditHistory(mJournal);
+        double[] line = {0, 0, 10, 0, 20, 0};
+        double[] inserted = {0, 0, 5, 5, 10, 0, 20, 0};
+        double[] deleted = {0, 0, 5, 5, 20, 0};
+        history.add(createLine(line));
+        history.add(createLine(inserted));
+        history.add(createLine(deleted));
+
+        EditHistory.VertexSplice change =
+                (EditHistory.VertexSplice) history.mSteps.get(1).mChanges.get(0);
+        assertEquals(2, change.mStart);
+        assertEquals(0, change.mInserted.length);
+
+        assertArrayEquals(inserted, toArray(history.undo()), DELTA);
+        assertArrayEquals(line, toArray(history.undo()), DELTA);
+        assertArrayEquals(inserted, toArray(history.redo()), DELTA);
+        assertArrayEquals(deleted, toArray(history.redo()), DELTA);
+    }
+
+
+    @Test
+    public void screenRoundTripIsNotAnEdit()
+    {
+        EditHistory history = new EditHistory(mJournal);
+        // web mercator coordinates with float screen round trip errors
+        double[] line = {4187591.52, 7509405.47, 4187611.85, 7509422.01};
+        double[] noisy = {4187591.5204, 7509405.4697, 4187611.8499, 7509422.0103};
+        double[] moved = {4187591.52, 7509405.47, 4187611.85, 7509422.02};
+
+        history.add(createLine(line));
+        history.add(createLine(noisy));
+        assertFalse(history.canUndo());
+
+        // a centimetre is an edit
+        history.add(createLine(moved));
+        assertTrue(history.canUndo());
+        history.undo();
+        assertTrue(history.canRedo());
+
+        // the redo step stays after a geometry with no changes
+        history.add(createLine(noisy));
+        assertTrue(history.canRedo());
+        assertEquals(1, history.mSteps.size());
+        assertArrayEquals(moved, toArray(history.redo()), EditHistory.EPSILON);
+    }
+
+
+    @Test
+    public void newEditDropsRedo()
+    {
+        EditHistory history = new EditHistory(mJournal);
+        history.add(createLine(0, 0, 10, 0));
+        history.add(createLine(0, 0, 10, 10));
+        history.add(createLine(0, 0, 10, 20));
+        history.undo();
+        history.undo();
+        assertEquals(2, history.mSteps.size());
+
+        history.add(createLine(0, 5, 10, 0));
+        assertFalse(history.canRedo());
+        assertEquals(1, history.mSteps.size());
+        assertArrayEquals(new double[] {0, 0, 10, 0}, toArray(history.undo()), DELTA);
+    }
+
+
+    @Test
+    public void ringsAndParts()
+    {
+        EditHistory history = new EditHistory(mJournal);
+        GeoPolygon square = createSquare(0, 0, 100);
+        history.add(square);
+
+        GeoPolygon withHole = createSquare(0, 0, 100);
+        withHole.addInnerRing(createRing(createSquare(40, 40, 20).getOuterRing()));
+        history.add(withHole);
+        assertTrue(history.mSteps.get(0).mChanges.get(0) instanceof EditHistory.RingSplice);
+
+        GeoMultiPolygon multiPolygon = new GeoMultiPolygon();
+        multiPolygon.add(createSquare(0, 0, 100));
+        history.add(multiPolygon);
+        assertTrue(history.mSteps.get(1).mChanges.get(0) instanceof EditHistory.Replace);
+
+        GeoMultiPolygon twoParts = new GeoMultiPolygon();
+        twoParts.add(createSquare(0, 0, 100));
+        twoParts.add(createSquare(200, 0, 50));
+        history.add(twoParts);
+        assertTrue(history.mSteps.get(2).mChanges.get(0) instanceof EditHistory.PartSplice);
+
+        assertEquals(GeoConstants.GTMultiPolygon, history.undo().getType());
+        GeoGeometry polygon = history.undo();
+        assertEquals(GeoConstants.GTPolygon, polygon.getType());
+        assertEquals(1, ((GeoPolygon) polygon).getInnerRingCount());
+        polygon = history.undo();
+        assertEquals(0, ((GeoPolygon) polygon).getInnerRingCount());
+        assertArrayEquals(toArray(square.getOuterRing()),
+                toArray(((GeoPolygon) polygon).getOuterRing()), DELTA);
+
+        history.redo();
+        history.redo();
+        GeoMultiPolygon result = (GeoMultiPolygon) history.redo();
+        assertEquals(2, result.size());
+        assertArrayEquals(toArray(createSquare(200, 0, 50).getOuterRing()),
+                toArray(result.get(1).getOuterRing()), DELTA);
+    }
+
+
+    @Test
+    public void spilledStepsAndSavedState()
+            throws IOException
+    {
+        EditHistory history = new EditHistory(mJournal);
+        int size = EditHistory.MAX_MEMORY_POINTS / 2;
+        for (int step = 0; step < 4; step++) {
+            history.add(createLine(createCoordinates(size, step)));
+        }
+        // every step has all vertices replaced, older ones are in the journal
+        assertTrue(history.mMemoryPoints <= EditHistory.MAX_MEMORY_POINTS);
+        assertNull(history.mSteps.get(0).mChanges);
+        assertTrue(mJournal.length() > 0);
+
+        assertArrayEquals(createCoordinates(size, 2), toArray(history.undo()), DELTA);
+        history.save(mState);
+
+        EditHistory restored = new EditHistory(mJournal);
+        assertTrue(restored.restore(mState));
+        assertTrue(restored.canRedo());
+        assertArrayEquals(createCoordinates(size, 1), toArray(restored.undo()), DELTA);
+        assertArrayEquals(createCoordinates(size, 0), toArray(restored.undo()), DELTA);
+        assertFalse(restored.canUndo());
+        restored.redo();
+        restored.redo();
+        assertArrayEquals(createCoordinates(size, 3), toArray(restored.redo()), DELTA);
+    }
+
+
+    protected static double[] createCoordinates(
+            int size,
+            int step)
+    {
+        double[] coordinates = new double[size * 2];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = i + step;
+        }
+        return coordinates;
+    }
+
+
+    protected static GeoLineString createLine(double... coordinates)
+    {
+        GeoLineString line = new GeoLineString();
+        for (int i = 0; i < coordinates.length - 1; i += 2) {
+            line.add(new GeoPoint(coordinates[i], coordinates[i + 1]));
+        }
+        line.setCRS(GeoConstants.CRS_WEB_MERCATOR);
+        return line;
+    }
+
+
+    protected static GeoLinearRing createRing(GeoLineString line)
+    {
+        GeoLinearRing ring = new GeoLinearRing();
+        for (GeoPoint point : line.getPoints()) {
+            ring.add(new GeoPoint(point.getX(), point.getY()));
+        }
+        return ring;
+    }
+
+
+    protected static GeoPolygon createSquare(
+            double x,
+            double y,
+            double size)
+    {
+        GeoPolygon polygon = new GeoPolygon();
+        polygon.add(new GeoPoint(x, y));
+        polygon.add(new GeoPoint(x + size, y));
+        polygon.add(new GeoPoint(x + size, y + size));
+        polygon.add(new GeoPoint(x, y + size));
+        polygon.add(new GeoPoint(x, y));
+        polygon.setCRS(GeoConstants.CRS_WEB_MERCATOR);
+        return polygon;
+    }
+
+
+    protected static double[] toArray(GeoGeometry geometry)
+    {
+        List<GeoPoint> points = ((GeoLineString) geometry).getPoints();
+        double[] array = new double[points.size() * 2];
+        for (int i = 0; i < points.size(); i++) {
+            array[i * 2] = points.get(i).getX();
+            array[i * 2 + 1] = points.get(i).getY();
+        }
+        return array;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import com.nextgis.maplib.datasource.GeoEnvelope;
+import com.nextgis.maplib.datasource.GeoGeometry;
+import com.nextgis.maplib.datasource.GeoLineString;
+import com.nextgis.maplib.datasource.GeoLinearRing;
+import com.nextgis.maplib.datasource.GeoMultiLineString;
+import com.nextgis.maplib.datasource.GeoPoint;
+import com.nextgis.maplib.datasource.GeoPolygon;
+import com.nextgis.maplib.map.VectorLayer;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FeaturePickerTest
+{
+    protected static final double DELTA = 1e-9;
+
+
+    @Test
+    public void pointAndLineDistance()
+    {
+        FeaturePicker.Shape point = new FeaturePicker.Shape(new GeoPoint(3, 4), 0.1);
+        assertEquals(5, point.distance(0, 0), DELTA);
+
+        FeaturePicker.Shape line = new FeaturePicker.Shape(createLine(0, 0, 10, 0, 10, 10), 0.1);
+        // projected inside a segment, past the end and at a vertex
+        assertEquals(2, line.distance(5, 2), DELTA);
+        assertEquals(5, line.distance(-3, -4), DELTA);
+        assertEquals(0, line.distance(10, 0), DELTA);
+        assertEquals(1, line.distance(11, 5), DELTA);
+    }
+
+
+    @Test
+    public void polygonContainsTap()
+    {
+        GeoPolygon polygon = createSquare(0, 0, 10);
+        GeoLinearRing hole = new GeoLinearRing();
+        for (double[] point : new double[][] {{4, 4}, {6, 4}, {6, 6}, {4, 6}, {4, 4}}) {
+            hole.add(new GeoPoint(point[0], point[1]));
+        }
+        polygon.addInnerRing(hole);
+
+        FeaturePicker.Shape shape = new FeaturePicker.Shape(polygon, 0.1);
+        assertEquals(0, shape.distance(2, 2), DELTA);
+        // in the hole the nearest edge is the hole one
+        assertEquals(0.5, shape.distance(5, 4.5), DELTA);
+        assertEquals(3, shape.distance(13, 5), DELTA);
+        assertEquals(100, shape.mArea, DELTA);
+    }
+
+
+    @Test
+    public void multiLineNearestPart()
+    {
+        GeoMultiLineString multiLine = new GeoMultiLineString();
+        multiLine.add(createLine(0, 8, 10, 8));
+        multiLine.add(createLine(0, 1, 10, 1));
+        FeaturePicker.Shape shape = new FeaturePicker.Shape(multiLine, 0.1);
+        assertEquals(1, shape.distance(5, 0), DELTA);
+        assertEquals(1, shape.envelopeDistance(5, 0), DELTA);
+        assertEquals(0, shape.envelopeDistance(5, 5), DELTA);
+    }
+
+
+    @Test
+    public void decimationKeepsEnds()
+    {
+        GeoLineString line = new GeoLineString();
+        for (int i = 0; i <= 100; i++) {
+            line.add(new GeoPoint(i * 0.1, 0));
+        }
+        line.add(new GeoPoint(10, 0.05));
+
+        FeaturePicker.Shape shape = new FeaturePicker.Shape(line, 1);
+        double[] part = shape.mParts.get(0);
+        assertEquals(12, shape.mPointCount);
+        assertEquals(0, part[0], DELTA);
+        assertEquals(10, part[part.length - 2], DELTA);
+        assertEquals(0.05, part[part.length - 1], DELTA);
+        assertEquals(1, shape.distance(4.5, 1), DELTA);
+    }
+
+
+    @Test
+    public void pickOrdersHits()
+    {
+        FakeLayer layer = new FakeLayer();
+        layer.put(1, new GeoPoint(103, 100));
+        layer.put(2, createLine(90, 101, 110, 101));
+        layer.put(3, createSquare(50, 50, 100));
+        layer.put(4, createSquare(95, 95, 10));
+        layer.put(5, new GeoPoint(108, 100));
+        layer.put(6, new GeoPoint(100, 97));
+
+        FeaturePicker picker = new FeaturePicker();
+        List<FeaturePicker.Hit> hits = picker.pick(layer, new GeoEnvelope(95, 105, 95, 105), 10, 5);
+        // the smaller polygon first, equal distances by id, the far point is out of the tolerance
+        assertEquals(5, hits.size());
+        assertEquals(4, hits.get(0).mFeatureId);
+        assertEquals(3, hits.get(1).mFeatureId);
+        assertEquals(2, hits.get(2).mFeatureId);
+        assertEquals(1, hits.get(3).mFeatureId);
+        assertEquals(6, hits.get(4).mFeatureId);
+        assertEquals(0, hits.get(0).mDistance, DELTA);
+        assertEquals(1, hits.get(2).mDistance, DELTA);
+        assertEquals(3, hits.get(3).mDistance, DELTA);
+        assertEquals(3, hits.get(4).mDistance, DELTA);
+        assertSame(layer.mGeometries.get(4L), hits.get(0).getGeometry(layer));
+    }
+
+
+    @Test
+    public void cachedShapesAreNotLoaded()
+    {
+        FakeLayer layer = new FakeLayer();
+        layer.put(1, new GeoPoint(100, 100));
+        layer.put(2, createLine(0, 0, 300, 300));
+
+        FeaturePicker picker = new FeaturePicker();
+        GeoEnvelope tapEnv = new GeoEnvelope(95, 105, 95, 105);
+        assertEquals(2, picker.pick(layer, tapEnv, 10, 5).size());
+        assertEquals(2, layer.mLoads);
+
+        List<FeaturePicker.Hit> hits = picker.pick(layer, tapEnv, 10.5f, 5);
+        assertEquals(2, hits.size());
+        assertEquals(2, layer.mLoads);
+        // only the chosen geometry is loaded
+        assertSame(layer.mGeometries.get(hits.get(0).mFeatureId), hits.get(0).getGeometry(layer));
+        assertEquals(3, layer.mLoads);
+
+        // another zoom decimates again
+        picker.pick(layer, tapEnv, 11, 5);
+        assertEquals(5, layer.mLoads);
+        picker.invalidate(layer.getId());
+        picker.pick(layer, tapEnv, 11, 5);
+        assertEquals(7, layer.mLoads);
+        assertTrue(picker.mCachedPoints > 0);
+    }
+
+
+    protected static GeoLineString createLine(double... coordinates)
+    {
+        GeoLineString line = new GeoLineString();
+        for (int i = 0; i < coordinates.length - 1; i += 2) {
+            line.add(new GeoPoint(coordinates[i], coordinates[i + 1]));
+        }
+        return line;
+    }
+
+
+    protected static GeoPolygon createSquare(
+            double x,
+            double y,
+            double size)
+    {
+        GeoPolygon polygon = new GeoPolygon();
+        polygon.add(new GeoPoint(x, y));
+        polygon.add(new GeoPoint(x + size, y));
+        polygon.add(new GeoPoint(x + size, y + size));
+        polygon.add(new GeoPoint(x, y + size));
+        polygon.add(new GeoPoint(x, y));
+        return polygon;
+    }
+
+
+    /**
+     * Returns all features from the index, as far ones are index false positives
+     */
+    protected static class FakeLayer
+            extends VectorLayer
+    {
+        protected final Map<Long, GeoGeometry> mGeometries = new LinkedHashMap<>();
+        protected int mLoads;
+
+
+        FakeLayer()
+        {
+            super(null, new File("fake"));
+        }
+
+
+        void put(
+                long id,
+                GeoGeometry geometry)
+        {
+            mGeometries.put(id, geometry);
+        }
+
+
+        @Override
+        public List<Long> query(GeoEnvelope env)
+        {
+            return new ArrayList<>(mGeometries.keySet());
+        }
+
+
+        @Override
+        public GeoGeometry getGeometryForId(long rowId)
+        {
+            mLoads++;
+            return mGeometries.get(rowId);
+        }
+    }
+}
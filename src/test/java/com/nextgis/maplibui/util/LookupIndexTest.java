@@ -0,0 +1,168 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LookupIndexTest
+{
+    protected static final List<String> ALIASES = Arrays.asList(
+            "River Road", "Big river", "Eric street", "riverside", "Old Mill", "RIVET", "Big river",
+            "Mill lane", "Lane end");
+
+
+    @Test
+    public void emptyQueryReturnsDistinctAliases()
+    {
+        LookupIndex index = create(ALIASES);
+        assertEquals(ALIASES.size(), index.size());
+        assertEquals(8, index.getDistinctAliases().size());
+        assertEquals(Arrays.asList("River Road", "Big river", "Eric street"), index.search("", 3));
+        assertEquals(index.getDistinctAliases(), index.search(null, 100));
+    }
+
+
+    @Test
+    public void shortQueryMatchesSubstrings()
+    {
+        LookupIndex index = create(ALIASES);
+        assertEquals(Arrays.asList("River Road", "riverside", "RIVET", "Big river", "Eric street"),
+                index.search("ri", 10));
+        assertEquals(Arrays.asList("Mill lane", "Old Mill"), index.search("M", 10));
+        assertEquals(Arrays.asList("River Road", "riverside"), index.search("rI", 2));
+        assertEquals(Arrays.asList("Eric street"), index.search("ic", 10));
+        assertTrue(index.search("zz", 10).isEmpty());
+    }
+
+
+    @Test
+    public void foldKeepsLength()
+    {
+        // lower case of capital I with dot above is two chars in String.toLowerCase
+        LookupIndex index = create(Arrays.asList("Kilis", "\u0130stanbul"));
+        assertEquals(Arrays.asList("\u0130stanbul", "Kilis"), index.search("\u0130s", 10));
+        assertEquals(Arrays.asList("\u0130stanbul"), index.search("istan", 10));
+        assertEquals(Arrays.asList("\u0130stanbul"), index.search("\u0130STANBUL", 10));
+    }
+
+
+    @Test
+    public void longQueryStartingAliasesFirst()
+    {
+        LookupIndex index = create(ALIASES);
+        assertEquals(Arrays.asList("River Road", "riverside", "Big river"),
+                index.search("river", 10));
+        assertEquals(Arrays.asList("Mill lane", "Old Mill"), index.search("mill", 10));
+        assertEquals(Arrays.asList("River Road", "riverside"), index.search("RIVER", 2));
+        assertEquals(Arrays.asList("Eric street"), index.search("ric st", 10));
+        assertTrue(index.search("rivers road", 10).isEmpty());
+    }
+
+
+    @Test
+    public void queryMatchesScan()
+    {
+        Random random = new Random(42);
+        String letters = "abcde ";
+        List<String> aliases = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder alias = new StringBuilder();
+            int length = 3 + random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                alias.append(letters.charAt(random.nextInt(letters.length())));
+            }
+            aliases.add(alias.toString());
+        }
+        LookupIndex index = create(aliases);
+
+        for (int i = 0; i < 200; i++) {
+            StringBuilder query = new StringBuilder();
+            int length = 1 + random.nextInt(5);
+            for (int j = 0; j < length; j++) {
+                query.append(letters.charAt(random.nextInt(letters.length())));
+            }
+            int limit = 1 + random.nextInt(30);
+            assertEquals(scan(index.getDistinctAliases(), query.toString(), limit),
+                    index.search(query, limit));
+        }
+    }
+
+
+    @Test
+    public void valuePositions()
+    {
+        LookupIndex index = create(ALIASES);
+        assertEquals(0, index.getPosition("v0"));
+        // the first alias of a repeated value
+        assertEquals(1, index.getPosition("v1"));
+        assertEquals("Big river", index.getAlias("v1"));
+        assertEquals("v1", index.getAliasValueMap().get("Big river"));
+        assertEquals(-1, index.getPosition("missing"));
+        assertEquals(-1, index.getPosition(null));
+        assertNull(index.getAlias("missing"));
+    }
+
+
+    /**
+     * Value of every alias is "v" and the position of its first occurrence
+     */
+    protected static LookupIndex create(List<String> aliases)
+    {
+        List<String> values = new ArrayList<>();
+        for (String alias : aliases) {
+            values.add("v" + aliases.indexOf(alias));
+        }
+        return new LookupIndex(aliases, values);
+    }
+
+
+    protected static List<String> scan(
+            List<String> aliases,
+            String query,
+            int limit)
+    {
+        List<String> starting = new ArrayList<>();
+        List<String> containing = new ArrayList<>();
+        for (String alias : aliases) {
+            String lower = alias.toLowerCase(Locale.ROOT);
+            if (lower.startsWith(query)) {
+                starting.add(alias);
+            } else if (lower.contains(query)) {
+                containing.add(alias);
+            }
+        }
+        starting.addAll(containing);
+        return starting.subList(0, Math.min(limit, starting.size()));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class TileDownloadEstimatorTest
+{
+    protected static final String TEMPLATE = "http://{a,b,c}.tile.openstreetmap.org/{z}/{x}/{y}.png";
+
+
+    @Test
+    public void subdomainsAreExpanded()
+    {
+        Set<String> urls = new HashSet<>();
+        for (int seed = 0; seed < 6; seed++) {
+            urls.add(TileDownloadEstimator.expandSubdomains(TEMPLATE, seed));
+        }
+
+        assertEquals(3, urls.size());
+        for (String url : urls) {
+            assertEquals(url, -1, url.indexOf(','));
+            assertEquals(url, "{z}/{x}/{y}.png", url.substring(url.indexOf('{')));
+        }
+        assertEquals("http://b.tile.openstreetmap.org/{z}/{x}/{y}.png",
+                TileDownloadEstimator.expandSubdomains(TEMPLATE, 4));
+    }
+
+
+    @Test
+    public void urlWithoutSubdomainsIsKept()
+    {
+        String url = "https://tile.example.com/{z}/{x}/{y}.png";
+        assertEquals(url, TileDownloadEstimator.expandSubdomains(url, 7));
+        assertEquals("http://{a}/x", TileDownloadEstimator.expandSubdomains("http://{a}/x", 1));
+    }
+}
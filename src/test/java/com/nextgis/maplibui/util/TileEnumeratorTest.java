@@ -0,0 +1,167 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * Author:   Dmitry Baryshnikov (aka Bishop), bishop.dev@gmail.com
+ * Author:   NikitaFeodonit, nfeodonit@yandex.com
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplibui.util;
+
+import com.nextgis.maplib.datasource.GeoEnvelope;
+import com.nextgis.maplib.datasource.TileItem;
+import com.nextgis.maplib.util.GeoConstants;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TileEnumeratorTest
+{
+    protected static final GeoEnvelope ENVELOPE =
+            new GeoEnvelope(-1500000, 2500000, -800000, 1200000);
+    protected static final List<Integer> ZOOMS = Arrays.asList(3, 4, 5);
+
+
+    @Test
+    public void countMatchesEnumeration()
+    {
+        TileEnumerator tiles = new TileEnumerator(ENVELOPE, ZOOMS, GeoConstants.TMSTYPE_OSM);
+
+        long expected = 0;
+        for (int zoom : ZOOMS) {
+            expected += TileEnumerator.getTileCount(ENVELOPE, zoom);
+        }
+        assertEquals(expected, tiles.getTotal());
+
+        Set<String> seen = new HashSet<>();
+        long count = 0;
+        while (tiles.hasNext()) {
+            TileItem tile = tiles.next();
+            assertTrue(seen.add(key(tile)));
+            count++;
+        }
+        assertEquals(expected, count);
+        assertEquals(expected, tiles.getPosition());
+    }
+
+
+    @Test
+    public void seekReturnsSameTiles()
+    {
+        List<TileItem> all = enumerate(new TileEnumerator(ENVELOPE, ZOOMS, GeoConstants.TMSTYPE_OSM));
+
+        TileEnumerator tiles = new TileEnumerator(ENVELOPE, ZOOMS, GeoConstants.TMSTYPE_OSM);
+        for (int position = all.size() - 1; position >= 0; position -= 3) {
+            tiles.seek(position);
+            assertEquals(position, tiles.getPosition());
+            assertEquals(key(all.get(position)), key(tiles.next()));
+        }
+
+        // zoom boundaries
+        long offset = 0;
+        for (int zoom : ZOOMS) {
+            tiles.seek(offset);
+            TileItem tile = tiles.next();
+            assertEquals(zoom, tile.getZoomLevel());
+            assertEquals(key(all.get((int) offset)), key(tile));
+            offset += TileEnumerator.getTileCount(ENVELOPE, zoom);
+        }
+    }
+
+
+    @Test(expected = NoSuchElementException.class)
+    public void seekPastEnd()
+    {
+        TileEnumerator tiles = new TileEnumerator(ENVELOPE, ZOOMS, GeoConstants.TMSTYPE_OSM);
+        tiles.seek(tiles.getTotal() + 10);
+        assertEquals(tiles.getTotal(), tiles.getPosition());
+        assertFalse(tiles.hasNext());
+        tiles.next();
+    }
+
+
+    @Test
+    public void negativeSeekStartsFromBeginning()
+    {
+        TileEnumerator tiles = new TileEnumerator(ENVELOPE, ZOOMS, GeoConstants.TMSTYPE_OSM);
+        TileItem first = tiles.next();
+        tiles.seek(-5);
+        assertEquals(0, tiles.getPosition());
+        assertEquals(key(first), key(tiles.next()));
+    }
+
+
+    @Test
+    public void maxTilesKeepsCrossingZoom()
+    {
+        long first = TileEnumerator.getTileCount(ENVELOPE, 3);
+        long second = TileEnumerator.getTileCount(ENVELOPE, 4);
+        TileEnumerator tiles =
+                new TileEnumerator(ENVELOPE, ZOOMS, GeoConstants.TMSTYPE_OSM, first + 1);
+        assertEquals(first + second, tiles.getTotal());
+    }
+
+
+    @Test
+    public void tileCountCoversEnvelope()
+    {
+        // the whole world at zoom 2 is 4 x 4 tiles
+        double max = GeoConstants.MERCATOR_MAX;
+        assertEquals(16, TileEnumerator.getTileCount(new GeoEnvelope(-max, max, -max, max), 2));
+        // a point still needs one tile
+        assertEquals(1, TileEnumerator.getTileCount(new GeoEnvelope(10, 10, 10, 10), 7));
+    }
+
+
+    @Test
+    public void tilesIntersectEnvelope()
+    {
+        for (TileItem tile : enumerate(
+                new TileEnumerator(ENVELOPE, ZOOMS, GeoConstants.TMSTYPE_TMS))) {
+            GeoEnvelope env = tile.getEnvelope();
+            assertTrue(env.getMaxX() > ENVELOPE.getMinX() && env.getMinX() < ENVELOPE.getMaxX());
+            assertTrue(env.getMaxY() > ENVELOPE.getMinY() && env.getMinY() < ENVELOPE.getMaxY());
+        }
+    }
+
+
+    protected static List<TileItem> enumerate(TileEnumerator tiles)
+    {
+        List<TileItem> list = new ArrayList<>();
+        while (tiles.hasNext()) {
+            list.add(tiles.next());
+        }
+        return list;
+    }
+
+
+    protected static String key(TileItem tile)
+    {
+        return tile.getZoomLevel() + "/" + tile.getX() + "/" + tile.getY();
+    }
+}